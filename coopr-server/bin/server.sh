@@ -28,7 +28,8 @@ APP_NAME="coopr-server"
 COOPR_SERVER_CONF=${COOPR_SERVER_CONF:-/etc/coopr/conf}
 CLASSPATH="${COOPR_HOME}/server/lib/*:${COOPR_SERVER_CONF}"
 MAIN_CLASS="co.cask.coopr.runtime.ServerMain"
-UPGRADE_CLASS="co.cask.coopr.upgrade.UpgradeTo0_9_9"
+# upgrade steps, run in order
+UPGRADE_CLASSES="co.cask.coopr.upgrade.UpgradeTo0_9_9 co.cask.coopr.upgrade.UpgradeTo0_9_10"
 PID_DIR=${PID_DIR:-/var/run/coopr}
 pid="${PID_DIR}/${APP_NAME}.pid"
 
@@ -124,9 +125,15 @@ upgrade() {
   check_before_start
 
   echo "Updating Coopr Server ... (this may take a while...)"
-  nice -1 ${JAVACMD} ${JVM_OPTS} -classpath ${CLASSPATH} ${UPGRADE_CLASS} \
-    >> ${COOPR_LOG_DIR}/${APP_NAME}.log 2>&1
-  echo ${!} > ${pid}
+  for upgrade_class in ${UPGRADE_CLASSES}; do
+    nice -1 ${JAVACMD} ${JVM_OPTS} -classpath ${CLASSPATH} ${upgrade_class} \
+      >> ${COOPR_LOG_DIR}/${APP_NAME}.log 2>&1
+    ret=${?}
+    if [ ${ret} -ne 0 ]; then
+      echo "Upgrade step ${upgrade_class} failed, see ${COOPR_LOG_DIR}/${APP_NAME}.log"
+      return ${ret}
+    fi
+  done
 }
 
 case ${1} in
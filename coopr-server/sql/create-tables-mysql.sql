@@ -25,6 +25,7 @@ CREATE TABLE IF NOT EXISTS clusters (
     expire_time TIMESTAMP NULL,
     status VARCHAR(32),
     latest_job_num BIGINT,
+    num_nodes INTEGER,
     cluster MEDIUMBLOB,
     PRIMARY KEY (id),
     INDEX cluster_account_index (tenant_id, owner_id, id),
@@ -37,6 +38,8 @@ CREATE TABLE IF NOT EXISTS jobs (
     status VARCHAR(32),
     create_time TIMESTAMP DEFAULT '0000-00-00 00:00:00',
     job MEDIUMBLOB,
+    completed_tasks BIGINT,
+    failed_tasks BIGINT,
     PRIMARY KEY (cluster_id, job_num),
     FOREIGN KEY (cluster_id) REFERENCES clusters(id),
     INDEX ctime_index (create_time)
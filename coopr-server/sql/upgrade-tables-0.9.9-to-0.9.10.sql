@@ -0,0 +1,25 @@
+#
+# Copyright © 2016 Cask Data, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# to use, run:
+# mysql -u $user -p -h $hostname $dbname < upgrade-tables-0.9.9-to-0.9.10.sql
+
+# Node count column for cluster overviews. Run "server.sh upgrade" afterwards to fill it in for existing clusters.
+ALTER TABLE `clusters` ADD COLUMN num_nodes INTEGER AFTER latest_job_num;
+
+# Counts of finished tasks, which spare the job scheduler from looking at every task of a stage as tasks finish.
+# Jobs that already exist are left without counts, and are scheduled by looking at their tasks.
+ALTER TABLE `jobs` ADD COLUMN completed_tasks BIGINT AFTER job;
+ALTER TABLE `jobs` ADD COLUMN failed_tasks BIGINT AFTER completed_tasks;
@@ -2,7 +2,6 @@ package co.cask.coopr.cluster;
 
 import co.cask.coopr.scheduler.ClusterAction;
 import co.cask.coopr.scheduler.task.ClusterJob;
-import co.cask.coopr.scheduler.task.ClusterTask;
 import com.google.common.base.Objects;
 
 /**
@@ -18,14 +17,7 @@ public class ClusterJobProgress {
     this.action = job.getClusterAction();
     this.actionstatus = job.getJobStatus();
     this.stepstotal = job.getTaskStatus().size();
-
-    int completedTasks = 0;
-    for (ClusterTask.Status taskStatus : job.getTaskStatus().values()) {
-      if (taskStatus == ClusterTask.Status.COMPLETE) {
-        completedTasks++;
-      }
-    }
-    this.stepscompleted = completedTasks;
+    this.stepscompleted = job.getCompletedTaskCount();
   }
 
   public ClusterAction getAction() {
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.cluster;
+
+import co.cask.coopr.scheduler.task.ClusterJob;
+import com.google.common.base.Objects;
+
+/**
+ * Lightweight overview of a {@link Cluster}, containing only fields that the cluster store keeps in their own columns.
+ * Reading overviews does not require deserializing the full cluster or its jobs.
+ */
+public class ClusterOverview {
+  private final String id;
+  private final String name;
+  private final String ownerId;
+  private final long createTime;
+  private final long expireTime;
+  private final int numNodes;
+  private final Cluster.Status status;
+  private final ClusterJob.Status latestJobStatus;
+
+  public ClusterOverview(String id, String name, String ownerId, long createTime, long expireTime, int numNodes,
+                         Cluster.Status status, ClusterJob.Status latestJobStatus) {
+    this.id = id;
+    this.name = name;
+    this.ownerId = ownerId;
+    this.createTime = createTime;
+    this.expireTime = expireTime;
+    this.numNodes = numNodes;
+    this.status = status;
+    this.latestJobStatus = latestJobStatus;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getOwnerId() {
+    return ownerId;
+  }
+
+  public long getCreateTime() {
+    return createTime;
+  }
+
+  public long getExpireTime() {
+    return expireTime;
+  }
+
+  public int getNumNodes() {
+    return numNodes;
+  }
+
+  public Cluster.Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Get the status of the latest job of the cluster.
+   *
+   * @return Status of the latest job of the cluster, or null if the cluster has no jobs.
+   */
+  public ClusterJob.Status getLatestJobStatus() {
+    return latestJobStatus;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    ClusterOverview that = (ClusterOverview) o;
+
+    return Objects.equal(id, that.id) &&
+      Objects.equal(name, that.name) &&
+      Objects.equal(ownerId, that.ownerId) &&
+      createTime == that.createTime &&
+      expireTime == that.expireTime &&
+      numNodes == that.numNodes &&
+      status == that.status &&
+      latestJobStatus == that.latestJobStatus;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(id, name, ownerId, createTime, expireTime, numNodes, status, latestJobStatus);
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("id", id)
+      .add("name", name)
+      .add("ownerId", ownerId)
+      .add("createTime", createTime)
+      .add("expireTime", expireTime)
+      .add("numNodes", numNodes)
+      .add("status", status)
+      .add("latestJobStatus", latestJobStatus)
+      .toString();
+  }
+}
@@ -16,6 +16,7 @@
 package co.cask.coopr.cluster;
 
 import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.QueueGroup;
 import co.cask.coopr.common.queue.QueueService;
@@ -43,14 +44,9 @@ import co.cask.coopr.spec.plugin.FieldSchema;
 import co.cask.coopr.spec.plugin.ParameterType;
 import co.cask.coopr.spec.plugin.PluginFields;
 import co.cask.coopr.spec.plugin.ProviderType;
-import co.cask.coopr.spec.template.AbstractTemplate;
 import co.cask.coopr.spec.template.ClusterTemplate;
-import co.cask.coopr.spec.template.Include;
-import co.cask.coopr.spec.template.Parent;
-import co.cask.coopr.spec.template.PartialTemplate;
 import co.cask.coopr.spec.template.SizeConstraint;
 import co.cask.coopr.spec.template.TemplateImmutabilityException;
-import co.cask.coopr.spec.template.TemplateMerger;
 import co.cask.coopr.spec.template.TemplateNotFoundException;
 import co.cask.coopr.spec.template.TemplateValidationException;
 import co.cask.coopr.store.cluster.ClusterStore;
@@ -94,7 +90,7 @@ public class ClusterService {
   private final QueueGroup clusterQueues;
   private final QueueGroup solverQueues;
   private final QueueGroup jobQueues;
-  private final TemplateMerger templateMerger;
+  private final TemplateResolver templateResolver;
 
   @Inject
   public ClusterService(ClusterStoreService clusterStoreService,
@@ -106,7 +102,7 @@ public class ClusterService {
                         Solver solver,
                         IdService idService,
                         CredentialStore credentialStore,
-                        Gson gson, TemplateMerger templateMerger) {
+                        Gson gson, TemplateResolver templateResolver) {
     this.clusterStoreService = clusterStoreService;
     this.clusterStore = clusterStoreService.getSystemView();
     this.entityStoreService = entityStoreService;
@@ -120,7 +116,7 @@ public class ClusterService {
     this.clusterQueues = queueService.getQueueGroup(QueueType.CLUSTER);
     this.solverQueues = queueService.getQueueGroup(QueueType.SOLVER);
     this.jobQueues = queueService.getQueueGroup(QueueType.JOB);
-    this.templateMerger = templateMerger;
+    this.templateResolver = templateResolver;
   }
 
   /**
@@ -448,6 +444,8 @@ public class ClusterService {
 
       clusterJob.setJobStatus(ClusterJob.Status.RUNNING);
       clusterJob.setStatusMessage("Resumed by user.");
+      // tasks may have finished while the job was paused
+      clusterJob.resetCurrentStageTaskCounts();
       clusterStore.writeClusterJob(clusterJob);
       // Reschedule the job.
       jobQueues.add(account.getTenantId(), new Element(clusterJob.getJobId()));
@@ -756,8 +754,7 @@ public class ClusterService {
    */
   public ClusterTemplate resolveTemplate(Account account, ClusterTemplate clusterTemplate)
     throws TemplateNotFoundException, TemplateImmutabilityException, IOException, TemplateValidationException {
-    EntityStoreView entityStore = entityStoreService.getView(account);
-    return resolveTemplate(entityStore, clusterTemplate);
+    return templateResolver.resolveTemplate(account, clusterTemplate);
   }
 
   /**
@@ -773,56 +770,6 @@ public class ClusterService {
    */
   public ClusterTemplate resolveTemplate(Account account, String templateName)
     throws IOException, TemplateNotFoundException, TemplateImmutabilityException, TemplateValidationException {
-    EntityStoreView entityStore = entityStoreService.getView(account);
-    ClusterTemplate clusterTemplate = entityStore.getClusterTemplate(templateName);
-    if  (clusterTemplate == null) {
-      throw new TemplateNotFoundException("Cluster template " + templateName + " does not exist");
-    }
-    return resolveTemplate(entityStore, clusterTemplate);
-  }
-
-  private ClusterTemplate resolveTemplate(EntityStoreView entityStore, ClusterTemplate clusterTemplate)
-    throws IOException, TemplateImmutabilityException, TemplateNotFoundException, TemplateValidationException {
-    Set<AbstractTemplate> mergeSet = getMergeCollection(entityStore, clusterTemplate);
-    return templateMerger.merge(mergeSet, clusterTemplate);
-  }
-
-  /*
-  Merging in order Parent Includes -> Parent -> Child Includes -> Child -> ...
-  TODO: merging with mandatory partials and user-level attributes(???)
-   */
-  private Set<AbstractTemplate> getMergeCollection(EntityStoreView entityStore, ClusterTemplate clusterTemplate)
-    throws IOException, TemplateNotFoundException {
-    Set<AbstractTemplate> forMerge;
-    Parent parent = clusterTemplate.getParent();
-    if (parent != null) {
-      ClusterTemplate parentTemplate = entityStore.getClusterTemplate(parent.getName());
-      if (parentTemplate == null) {
-        throw new TemplateNotFoundException(parent.getName() + " parent template not found.");
-      }
-      forMerge = getMergeCollection(entityStore, parentTemplate);
-    } else {
-      forMerge = Sets.newLinkedHashSet();
-    }
-    Set<AbstractTemplate> includes = resolvePartialIncludes(entityStore, clusterTemplate.getIncludes());
-    forMerge.addAll(includes);
-    forMerge.add(clusterTemplate);
-
-    return forMerge;
-  }
-
-  private Set<AbstractTemplate> resolvePartialIncludes(EntityStoreView entityStore, Set<Include> includes)
-    throws IOException, TemplateNotFoundException {
-    Set<AbstractTemplate> partials = Sets.newLinkedHashSet();
-    if (includes != null) {
-      for (Include include : includes) {
-        PartialTemplate partialTemplate = entityStore.getPartialTemplate(include.getName());
-        if (partialTemplate == null) {
-          throw new TemplateNotFoundException(include.getName() + " partial template not found.");
-        }
-        partials.add(partialTemplate);
-      }
-    }
-    return partials;
+    return templateResolver.resolveTemplate(account, templateName, Constants.FIND_MAX_VERSION);
   }
 }
@@ -16,6 +16,7 @@
 package co.cask.coopr.cluster;
 
 import co.cask.coopr.macro.Expander;
+import co.cask.coopr.macro.eval.ClusterServiceIndex;
 import co.cask.coopr.spec.Link;
 import co.cask.coopr.spec.service.Service;
 import com.google.common.base.Objects;
@@ -176,13 +177,21 @@ public class Node implements Comparable<Node> {
    * purposes.
    */
   public void populateLinks(Cluster cluster, Set<Node> nodes) {
+    populateLinks(cluster, ClusterServiceIndex.of(nodes));
+  }
+
+  /**
+   * Get all service links on the node, combine them all, and expand any macros in them using the given index of the
+   * cluster nodes. Only useful for display purposes.
+   */
+  public void populateLinks(Cluster cluster, ClusterServiceIndex serviceIndex) {
     // take links from the services on this node, expand any self macros that may be there, and combine them all
     ImmutableList.Builder<Link> linksBuilder = ImmutableList.builder();
     for (Service service : services) {
       for (Link link : service.getLinks()) {
         try {
           // The service link may have macros like %host.self% that should get expanded.
-          linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), cluster, nodes, this)));
+          linksBuilder.add(new Link(link.getLabel(), Expander.expand(link.getUrl(), cluster, serviceIndex, this)));
         } catch (Exception e) {
           // if we couldn't expand the macro, just use the original string
           linksBuilder.add(link);
@@ -0,0 +1,348 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.cluster;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.spec.template.AbstractTemplate;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.Include;
+import co.cask.coopr.spec.template.Parent;
+import co.cask.coopr.spec.template.PartialTemplate;
+import co.cask.coopr.spec.template.TemplateImmutabilityException;
+import co.cask.coopr.spec.template.TemplateMerger;
+import co.cask.coopr.spec.template.TemplateNotFoundException;
+import co.cask.coopr.spec.template.TemplateValidationException;
+import co.cask.coopr.store.entity.BaseEntityStoreView;
+import co.cask.coopr.store.entity.EntityChangeListener;
+import co.cask.coopr.store.entity.EntityStoreService;
+import co.cask.coopr.store.entity.EntityStoreView;
+import com.google.common.base.Objects;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves cluster templates by merging them with their parents and included partial templates. The templates to
+ * merge for stored cluster templates, and the merged templates themselves, are cached by tenant, template name and
+ * version. Each cached template is recorded in a graph as depending on the cluster template itself, its parent and
+ * its partial templates. When one of those changes, the cached template and everything that extends it is evicted.
+ * If the entities of a tenant were changed by another server, all cached templates of the tenant are evicted.
+ */
+public class TemplateResolver implements EntityChangeListener {
+  private final EntityStoreService entityStoreService;
+  private final TemplateMerger templateMerger;
+  private final Gson gson;
+  private final int maxSize;
+  // least recently used first
+  private final Map<Key, Entry> entries;
+  // from templates to the cached templates that depend on them
+  private final SetMultimap<Dependency, Key> dependents;
+  // incremented on every eviction, so that templates resolved during an eviction are not cached
+  private long numInvalidations;
+
+  @Inject
+  private TemplateResolver(EntityStoreService entityStoreService, TemplateMerger templateMerger,
+                           Gson gson, Configuration conf) {
+    this(entityStoreService, templateMerger, gson, conf.getInt(Constants.TEMPLATE_CACHE_MAX_SIZE));
+  }
+
+  // for unit tests
+  TemplateResolver(EntityStoreService entityStoreService, TemplateMerger templateMerger, Gson gson, int maxSize) {
+    this.entityStoreService = entityStoreService;
+    this.templateMerger = templateMerger;
+    this.gson = gson;
+    this.maxSize = maxSize;
+    this.dependents = HashMultimap.create();
+    this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        if (size() > TemplateResolver.this.maxSize) {
+          removeDependencies(eldest.getKey(), eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+    entityStoreService.addChangeListener(this);
+  }
+
+  /**
+   * Build cluster template from provided includes and parents. The parents are taken from the cache.
+   *
+   * @param account Account of the user that is trying to resolve a cluster template.
+   * @param clusterTemplate Cluster template which can contains includes and parents.
+   * @return Cluster Template with merged body from includes and parents.
+   * @throws IOException if there was some error reading from stores.
+   * @throws TemplateNotFoundException if a parent or partial template can't be found in store.
+   * @throws TemplateImmutabilityException if some template tries to override immutable template config.
+   * @throws TemplateValidationException if template after merge does not has some required fields.
+   */
+  public ClusterTemplate resolveTemplate(Account account, ClusterTemplate clusterTemplate)
+    throws IOException, TemplateNotFoundException, TemplateImmutabilityException, TemplateValidationException {
+    EntityStoreView entityStore = entityStoreService.getView(account);
+    Set<Dependency> dependencies = Sets.newHashSet();
+    Set<AbstractTemplate> mergeSet = getMergeCollection(entityStore, account.getTenantId(),
+                                                        clusterTemplate, dependencies);
+    // the merged template shares parts of the cached templates, so callers get a copy
+    return copy(templateMerger.merge(mergeSet, clusterTemplate));
+  }
+
+  /**
+   * Build a stored cluster template from its includes and parents. The merged template is taken from the cache.
+   *
+   * @param account Account of the user that is trying to resolve a cluster template.
+   * @param templateName Cluster template name.
+   * @param version Version of the cluster template, or {@link Constants#FIND_MAX_VERSION} for the latest version.
+   * @return Cluster Template with merged body from includes and parents.
+   * @throws IOException if there was some error reading from stores.
+   * @throws TemplateNotFoundException if the template, or a parent or partial template, can't be found in store.
+   * @throws TemplateImmutabilityException if some template tries to override immutable template config.
+   * @throws TemplateValidationException if template after merge does not has some required fields.
+   */
+  public ClusterTemplate resolveTemplate(Account account, String templateName, int version)
+    throws IOException, TemplateNotFoundException, TemplateImmutabilityException, TemplateValidationException {
+    EntityStoreView entityStore = entityStoreService.getView(account);
+    Entry entry = getEntry(entityStore, account.getTenantId(), templateName, version);
+    if (entry == null) {
+      throw new TemplateNotFoundException("Cluster template " + templateName + " does not exist");
+    }
+    String resolved = entry.resolved;
+    if (resolved == null) {
+      resolved = gson.toJson(templateMerger.merge(entry.mergeCollection, entry.template), ClusterTemplate.class);
+      entry.resolved = resolved;
+    }
+    return gson.fromJson(resolved, ClusterTemplate.class);
+  }
+
+  @Override
+  public void entityChanged(String tenantId, BaseEntityStoreView.EntityType entityType, String entityName) {
+    if (entityType == BaseEntityStoreView.EntityType.CLUSTER_TEMPLATE ||
+      entityType == BaseEntityStoreView.EntityType.PARTIAL_TEMPLATE) {
+      synchronized (this) {
+        numInvalidations++;
+        evictDependents(new Dependency(tenantId, entityType, entityName));
+      }
+    }
+  }
+
+  @Override
+  public synchronized void entitiesChanged(String tenantId) {
+    numInvalidations++;
+    Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<Key, Entry> entry = iter.next();
+      if (entry.getKey().tenantId.equals(tenantId)) {
+        removeDependencies(entry.getKey(), entry.getValue());
+        iter.remove();
+      }
+    }
+  }
+
+  // for unit tests
+  synchronized boolean isCached(String tenantId, String templateName, int version) {
+    return entries.containsKey(new Key(tenantId, templateName, version));
+  }
+
+  /*
+  Merging in order Parent Includes -> Parent -> Child Includes -> Child -> ...
+  TODO: merging with mandatory partials and user-level attributes(???)
+   */
+  private Set<AbstractTemplate> getMergeCollection(EntityStoreView entityStore, String tenantId,
+                                                   ClusterTemplate clusterTemplate, Set<Dependency> dependencies)
+    throws IOException, TemplateNotFoundException {
+    Set<AbstractTemplate> forMerge = Sets.newLinkedHashSet();
+    Parent parent = clusterTemplate.getParent();
+    if (parent != null) {
+      Entry parentEntry = getEntry(entityStore, tenantId, parent.getName(), Constants.FIND_MAX_VERSION);
+      if (parentEntry == null) {
+        throw new TemplateNotFoundException(parent.getName() + " parent template not found.");
+      }
+      forMerge.addAll(parentEntry.mergeCollection);
+      dependencies.add(new Dependency(tenantId, BaseEntityStoreView.EntityType.CLUSTER_TEMPLATE, parent.getName()));
+    }
+    Set<Include> includes = clusterTemplate.getIncludes();
+    if (includes != null) {
+      for (Include include : includes) {
+        PartialTemplate partialTemplate = entityStore.getPartialTemplate(include.getName());
+        if (partialTemplate == null) {
+          throw new TemplateNotFoundException(include.getName() + " partial template not found.");
+        }
+        forMerge.add(partialTemplate);
+        dependencies.add(new Dependency(tenantId, BaseEntityStoreView.EntityType.PARTIAL_TEMPLATE,
+                                        include.getName()));
+      }
+    }
+    forMerge.add(clusterTemplate);
+    return forMerge;
+  }
+
+  // returns null if the template does not exist
+  private Entry getEntry(EntityStoreView entityStore, String tenantId, String templateName, int version)
+    throws IOException, TemplateNotFoundException {
+    Key key = new Key(tenantId, templateName, version);
+    long invalidations;
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null) {
+        return entry;
+      }
+      invalidations = numInvalidations;
+    }
+
+    ClusterTemplate template = version == Constants.FIND_MAX_VERSION ?
+      entityStore.getClusterTemplate(templateName) : entityStore.getClusterTemplate(templateName, version);
+    if (template == null) {
+      return null;
+    }
+    Set<Dependency> dependencies = Sets.newHashSet();
+    dependencies.add(new Dependency(tenantId, BaseEntityStoreView.EntityType.CLUSTER_TEMPLATE, templateName));
+    Set<AbstractTemplate> mergeCollection = getMergeCollection(entityStore, tenantId, template, dependencies);
+    Entry entry = new Entry(template, ImmutableList.copyOf(mergeCollection), ImmutableSet.copyOf(dependencies));
+
+    synchronized (this) {
+      // something the template depends on may have changed while it was read
+      if (invalidations == numInvalidations && maxSize > 0) {
+        Entry existing = entries.put(key, entry);
+        if (existing != null) {
+          removeDependencies(key, existing);
+        }
+        for (Dependency dependency : entry.dependencies) {
+          dependents.put(dependency, key);
+        }
+      }
+    }
+    return entry;
+  }
+
+  // must hold the lock
+  private void evictDependents(Dependency dependency) {
+    List<Key> keys = Lists.newArrayList(dependents.removeAll(dependency));
+    for (Key key : keys) {
+      Entry entry = entries.remove(key);
+      if (entry != null) {
+        removeDependencies(key, entry);
+        // templates that extend the evicted template
+        evictDependents(new Dependency(key.tenantId, BaseEntityStoreView.EntityType.CLUSTER_TEMPLATE, key.name));
+      }
+    }
+  }
+
+  // must hold the lock
+  private void removeDependencies(Key key, Entry entry) {
+    for (Dependency dependency : entry.dependencies) {
+      dependents.remove(dependency, key);
+    }
+  }
+
+  private ClusterTemplate copy(ClusterTemplate template) {
+    return gson.fromJson(gson.toJson(template, ClusterTemplate.class), ClusterTemplate.class);
+  }
+
+  /**
+   * Cached cluster template, with the templates to merge for it. The merged template is cached as json the first
+   * time the stored template itself is resolved.
+   */
+  private static final class Entry {
+    private final ClusterTemplate template;
+    private final List<AbstractTemplate> mergeCollection;
+    private final Set<Dependency> dependencies;
+    private volatile String resolved;
+
+    private Entry(ClusterTemplate template, List<AbstractTemplate> mergeCollection, Set<Dependency> dependencies) {
+      this.template = template;
+      this.mergeCollection = mergeCollection;
+      this.dependencies = dependencies;
+    }
+  }
+
+  /**
+   * Tenant, name and version of a cached cluster template.
+   */
+  private static final class Key {
+    private final String tenantId;
+    private final String name;
+    private final int version;
+
+    private Key(String tenantId, String name, int version) {
+      this.tenantId = tenantId;
+      this.name = name;
+      this.version = version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return version == other.version && tenantId.equals(other.tenantId) && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(tenantId, name, version);
+    }
+  }
+
+  /**
+   * Template that cached templates can depend on.
+   */
+  private static final class Dependency {
+    private final String tenantId;
+    private final BaseEntityStoreView.EntityType entityType;
+    private final String name;
+
+    private Dependency(String tenantId, BaseEntityStoreView.EntityType entityType, String name) {
+      this.tenantId = tenantId;
+      this.entityType = entityType;
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Dependency)) {
+        return false;
+      }
+      Dependency other = (Dependency) o;
+      return entityType == other.entityType && tenantId.equals(other.tenantId) && name.equals(other.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(tenantId, entityType, name);
+    }
+  }
+}
@@ -42,6 +42,9 @@ public class ConstraintsCodec extends AbstractCodec<Constraints> {
     jsonObj.add("layout", context.serialize(constraints.getLayoutConstraint()));
     jsonObj.add("services", context.serialize(constraints.getServiceConstraints()));
     jsonObj.add("size", context.serialize(constraints.getSizeConstraint()));
+    if (constraints.getLayoutSolver() != null) {
+      jsonObj.addProperty("solver", constraints.getLayoutSolver());
+    }
 
     return jsonObj;
   }
@@ -56,7 +59,8 @@ public class ConstraintsCodec extends AbstractCodec<Constraints> {
       context.deserialize(jsonObj.get("services"),
                           new TypeToken<Map<String, ServiceConstraint>>() { }.getType());
     SizeConstraint sizeConstraint = context.deserialize(jsonObj.get("size"), SizeConstraint.class);
+    String layoutSolver = context.deserialize(jsonObj.get("solver"), String.class);
 
-    return new Constraints(serviceConstraints, layoutConstraint, sizeConstraint);
+    return new Constraints(serviceConstraints, layoutConstraint, sizeConstraint, layoutSolver);
   }
 }
@@ -41,6 +41,9 @@ public class ServiceConstraintCodec extends AbstractCodec<ServiceConstraint> {
     JsonObject quantities = new JsonObject();
     quantities.add("min", context.serialize(serviceConstraint.getMinCount()));
     quantities.add("max", context.serialize(serviceConstraint.getMaxCount()));
+    if (serviceConstraint.getRatio() != null) {
+      quantities.add("ratio", context.serialize(serviceConstraint.getRatio()));
+    }
     jsonObj.add("quantities", quantities);
 
     return jsonObj;
@@ -54,12 +57,13 @@ public class ServiceConstraintCodec extends AbstractCodec<ServiceConstraint> {
     JsonObject quantities = jsonObj.get("quantities").getAsJsonObject();
     Integer min = context.deserialize(quantities.get("min"), Integer.class);
     Integer max = context.deserialize(quantities.get("max"), Integer.class);
+    Double ratio = context.deserialize(quantities.get("ratio"), Double.class);
     Set<String> requiredHardwareTypes = context.deserialize(jsonObj.get("hardwaretypes"),
                                                             new TypeToken<Set<String>>() { }.getType());
     Set<String> requiredImageTypes = context.deserialize(jsonObj.get("imagetypes"),
                                                          new TypeToken<Set<String>>() { }.getType());
 
 
-    return new ServiceConstraint(requiredHardwareTypes, requiredImageTypes, min, max);
+    return new ServiceConstraint(requiredHardwareTypes, requiredImageTypes, min, max, ratio);
   }
 }
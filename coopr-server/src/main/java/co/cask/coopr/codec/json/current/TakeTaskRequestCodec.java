@@ -37,7 +37,9 @@ public class TakeTaskRequestCodec implements JsonDeserializer<TakeTaskRequest> {
     String workerId = context.deserialize(jsonObj.get("workerId"), String.class);
     String provisionerId = context.deserialize(jsonObj.get("provisionerId"), String.class);
     String tenantId = context.deserialize(jsonObj.get("tenantId"), String.class);
+    Integer maxTasks = context.deserialize(jsonObj.get("maxTasks"), Integer.class);
+    Long waitMs = context.deserialize(jsonObj.get("waitMs"), Long.class);
 
-    return new TakeTaskRequest(workerId, provisionerId, tenantId);
+    return new TakeTaskRequest(workerId, provisionerId, tenantId, maxTasks, waitMs);
   }
 }
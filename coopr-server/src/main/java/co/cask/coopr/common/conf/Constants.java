@@ -53,15 +53,20 @@ public class Constants {
   public static final String DB_PASSWORD = "server.db.password";
   public static final String DB_VALIDATION_QUERY = "server.jdbc.validation.query";
   public static final String DB_MAX_ACTIVE_CONNECTIONS = "server.jdbc.max.active.connections";
+  public static final String DB_STATEMENT_CACHE_SIZE = "server.jdbc.statement.cache.size";
   public static final String LOCAL_DATA_DIR = "server.local.data.dir";
   public static final String EMBEDDED_DERBY_DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
 
   public static final String SCHEDULER_INTERVAL_SECS = "server.scheduler.run.interval.seconds";
   public static final String SOLVER_NUM_THREADS = "server.solver.num.threads";
+  public static final String JOB_SCHEDULER_NUM_THREADS = "server.scheduler.job.num.threads";
   public static final String TASK_TIMEOUT_SECS = "server.task.timeout.seconds";
+  public static final String TASK_TAKE_MAX_WAIT_MS = "server.task.take.max.wait.ms";
+  public static final String TASK_TAKE_WAIT_NUM_THREADS = "server.task.take.wait.num.threads";
   public static final String CLUSTER_CLEANUP_SECS = "server.cluster.cleanup.seconds";
   public static final String NETTY_EXEC_NUM_THREADS = "server.netty.exec.num.threads";
   public static final String NETTY_WORKER_NUM_THREADS = "server.netty.worker.num.threads";
+  public static final String QUEUE_ZK_MODE = "server.queue.zk.mode";
 
   public static final String MAX_PER_NODE_LOG_LENGTH = "server.node.max.log.length";
   public static final String MAX_PER_NODE_NUM_ACTIONS = "server.node.max.num.actions";
@@ -70,6 +75,17 @@ public class Constants {
 
   public static final String ID_START_NUM = "server.ids.start.num";
   public static final String ID_INCREMENT_BY = "server.ids.increment.by";
+  public static final String ID_TASK_LEASE_SIZE = "server.ids.task.lease.size";
+
+  public static final String ENTITY_CACHE_MAX_SIZE = "server.entity.cache.max.size";
+  public static final String TEMPLATE_CACHE_MAX_SIZE = "server.template.cache.max.size";
+  public static final String SOLVER_CACHE_MAX_SIZE = "server.solver.cache.max.size";
+  public static final String LAYOUT_SOLVER = "server.solver.layout";
+  public static final String SOLVER_ADD_SERVICES_TIMEOUT_MS = "server.solver.add.services.timeout.ms";
+  public static final String TENANT_CACHE_MAX_SIZE = "server.tenant.cache.max.size";
+  public static final String TENANT_CACHE_SECS = "server.tenant.cache.secs";
+  public static final String TOKEN_CACHE_MAX_SIZE = "server.token.cache.max.size";
+  public static final String TOKEN_CACHE_SECS = "server.token.cache.secs";
 
   public static final String CALLBACK_CLASS = "server.callback.class";
   public static final String PLUGIN_STORE_CLASS = "server.plugin.store.class";
@@ -95,6 +111,9 @@ public class Constants {
     public static final String KEYSTORE_PASSWORD = prefix + "encrypt.keystore.password";
     public static final String KEY_ALIAS = prefix + "encrypt.key.alias";
     public static final String KEY_PASSWORD = prefix + "encrypt.key.password";
+    public static final String CACHE_ENABLED = prefix + "cache.enabled";
+    public static final String CACHE_MAX_SIZE = prefix + "cache.max.size";
+    public static final String CACHE_TTL_SECS = prefix + "cache.ttl.seconds";
   }
 
   /**
@@ -25,6 +25,7 @@ import java.util.UUID;
 public class Element {
   private String id;
   private String value;
+  private long createTs;
 
   /**
    * Queue element with the given id and value.
@@ -35,6 +36,7 @@ public class Element {
   public Element(String id, String value) {
     this.id = id;
     this.value = value;
+    this.createTs = System.currentTimeMillis();
   }
 
   /**
@@ -64,6 +66,16 @@ public class Element {
     return value;
   }
 
+  /**
+   * Timestamp in milliseconds of when the element was created, which is when it was first queued in most cases.
+   *
+   * @return Timestamp in milliseconds of when the element was created, or 0 for elements queued before the timestamp
+   *         was recorded.
+   */
+  public long getCreateTs() {
+    return createTs;
+  }
+
   @Override
   public String toString() {
     JsonObject object = new JsonObject();
@@ -18,9 +18,12 @@ package co.cask.coopr.common.queue;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Service;
+import org.apache.twill.common.Cancellable;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * A group of {@link TrackingQueue TrackingQueues} that usually serve a similar purpose. Elements must be added to
@@ -60,6 +63,40 @@ public interface QueueGroup extends Service {
    */
   Element take(String queueName, String consumerId);
 
+  /**
+   * Take up to the given number of elements from a specific queue in the group.
+   *
+   * @param queueName Name of the queue to take elements from.
+   * @param consumerId Id of the consumer taking the elements.
+   * @param maxElements Maximum number of elements to take.
+   * @return Elements from the queue, or an empty list if there are no elements to take.
+   */
+  List<Element> take(String queueName, String consumerId, int maxElements);
+
+  /**
+   * Watch for the next time an element is added to, or placed back in, the given queue by any instance of the group.
+   * Setting the watch does not block. Instead, the returned future is set once the watch is in place, so a caller
+   * that finds the queue empty after that will not miss the next element. The inner future may also be set when
+   * nothing was added, so callers should try to take an element when it is set and watch again if there is none.
+   *
+   * @param queueName Name of the queue to watch.
+   * @return Future that is set once the watch is in place, with a future that is set with the queue name when an
+   *         element may have been added to the queue.
+   */
+  ListenableFuture<ListenableFuture<String>> watchForElements(String queueName);
+
+  /**
+   * Adds a listener that is called whenever an element may have been added to, or placed back in, any queue of the
+   * group by any instance of the group, including queues created after the listener was added. As with
+   * {@link #watchForElements(String)}, the listener may be called when nothing was added, and a burst of additions
+   * may result in a single call.
+   *
+   * @param listener Listener to call.
+   * @param executor Executor to call the listener with.
+   * @return Cancellable to remove the listener.
+   */
+  Cancellable addElementsListener(Runnable listener, Executor executor);
+
   /**
    * Records progress of consuming the given element from the given queue.
    *
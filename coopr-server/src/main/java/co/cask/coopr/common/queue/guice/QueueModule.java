@@ -1,10 +1,12 @@
 package co.cask.coopr.common.queue.guice;
 
+import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.QueueService;
 import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.common.queue.internal.LazyZKTrackingQueue;
+import co.cask.coopr.common.queue.internal.ZKQueueMode;
 import co.cask.coopr.common.queue.internal.ZKQueueService;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
@@ -16,14 +18,17 @@ import org.apache.twill.zookeeper.ZKClient;
  */
 public class QueueModule extends AbstractModule {
   private final ZKClient zkClient;
+  private final Configuration conf;
 
-  public QueueModule(ZKClient zkClient) {
+  public QueueModule(ZKClient zkClient, Configuration conf) {
     this.zkClient = zkClient;
+    this.conf = conf;
   }
 
   @Override
   protected void configure() {
-    TrackingQueue balancerQueue = new LazyZKTrackingQueue(zkClient, QueueType.BALANCER.getPath());
+    TrackingQueue balancerQueue = new LazyZKTrackingQueue(zkClient, QueueType.BALANCER.getPath(),
+                                                          ZKQueueMode.fromConf(conf));
     bind(TrackingQueue.class)
       .annotatedWith(Names.named(Constants.Queue.WORKER_BALANCE)).toInstance(balancerQueue);
 
@@ -41,6 +41,16 @@ public interface ElementsTracking {
    */
   Element startConsuming(String consumerId);
 
+  /**
+   * Start consuming up to the given number of elements from the queue, in the order they would be returned by
+   * {@link #startConsuming(String)}. Implementations should lease all elements under a single lock acquisition.
+   *
+   * @param consumerId Id of the consumer.
+   * @param maxElements Maximum number of elements to start consuming.
+   * @return Elements to start consuming, or an empty list if there are none.
+   */
+  List<Element> startConsuming(String consumerId, int maxElements);
+
   /**
    * Stop consuming an element and add it back to the queue to allow it to be consumed again. The operation may
    * fail if there is no element in the queue matching the element id, or if the element is being consumed by a
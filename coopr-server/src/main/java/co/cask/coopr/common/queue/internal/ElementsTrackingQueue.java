@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -60,6 +61,13 @@ public class ElementsTrackingQueue implements TrackingQueue {
     return elementsTracking.startConsuming(consumerId);
   }
 
+  @Override
+  public List<Element> take(String consumerId, int maxElements) {
+    Preconditions.checkArgument(consumerId != null, "id of the consumer that takes elements should not be null");
+    Preconditions.checkArgument(maxElements > 0, "number of elements to take must be positive");
+    return elementsTracking.startConsuming(consumerId, maxElements);
+  }
+
   @Override
   public PossessionState recordProgress(String consumerId, String elementId, ConsumingStatus status, String result) {
     Preconditions.checkArgument(consumerId != null, "id of the consumer that reports progress should not be null");
@@ -54,6 +54,19 @@ public class InMemoryElementsTracking implements ElementsTracking {
     return element.element;
   }
 
+  @Override
+  public synchronized List<Element> startConsuming(String consumerId, int maxElements) {
+    List<Element> elements = Lists.newArrayList();
+    while (elements.size() < maxElements) {
+      Element element = startConsuming(consumerId);
+      if (element == null) {
+        break;
+      }
+      elements.add(element);
+    }
+    return elements;
+  }
+
   @Override
   public synchronized boolean stopConsumingAndAddBackToQueue(String elementId, String consumerId) {
     ElementBeingConsumed element = inProgress.get(elementId);
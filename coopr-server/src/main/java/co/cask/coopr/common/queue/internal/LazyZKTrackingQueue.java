@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.twill.zookeeper.ZKClient;
 
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Tracking queue backed by zookeeper that does not initialize any state in zookeeper until some queue operation is
@@ -31,16 +32,29 @@ import java.util.Iterator;
 public class LazyZKTrackingQueue implements TrackingQueue {
   private final ZKClient zkClient;
   private final String zkQueuePath;
+  private final ZKQueueMode mode;
   private TrackingQueue queue;
 
   public LazyZKTrackingQueue(ZKClient zkClient, String zkQueuePath) {
+    this(zkClient, zkQueuePath, ZKQueueMode.MAP);
+  }
+
+  /**
+   * Create a lazy queue at the given path.
+   *
+   * @param zkClient Client to use for zookeeper operations.
+   * @param zkQueuePath Path of the queue in zookeeper.
+   * @param mode How the queue keeps track of its elements in zookeeper.
+   */
+  public LazyZKTrackingQueue(ZKClient zkClient, String zkQueuePath, ZKQueueMode mode) {
     this.zkClient = zkClient;
     this.zkQueuePath = zkQueuePath;
+    this.mode = mode;
   }
 
   private synchronized TrackingQueue getQueue() {
     if (queue == null) {
-      queue = new ElementsTrackingQueue(new ZKElementsTracking(zkClient, zkQueuePath));
+      queue = new ElementsTrackingQueue(mode.createElementsTracking(zkClient, zkQueuePath));
     }
     return queue;
   }
@@ -55,6 +69,11 @@ public class LazyZKTrackingQueue implements TrackingQueue {
     return getQueue().take(consumerId);
   }
 
+  @Override
+  public List<Element> take(String consumerId, int maxElements) {
+    return getQueue().take(consumerId, maxElements);
+  }
+
   @Override
   public TrackingQueue.PossessionState recordProgress(String consumerId, String elementId,
                                                       TrackingQueue.ConsumingStatus status, String result) {
@@ -21,7 +21,10 @@ import co.cask.coopr.common.zookeeper.ZKClientExt;
 import co.cask.coopr.common.zookeeper.lib.ReentrantDistributedLock;
 import co.cask.coopr.common.zookeeper.lib.Serializer;
 import co.cask.coopr.common.zookeeper.lib.SynchronizedZKMap;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.gson.Gson;
@@ -42,23 +45,43 @@ import javax.annotation.Nullable;
  * Given that queue is not going to be big, at max will contain hundreds or thousands of elements *for simplicity* we
  * use {@link Map} backed by ZK - underneath:
  * <p/>
- * Again, for simplicity we use *single* lock and wrap all methods with it.
+ * Again, for simplicity we use *single* lock and wrap all methods with it. In incremental mode, adding elements,
+ * starting to consume them and operations on a single element are done without the lock, with
+ * {@link SynchronizedZKMap#update(String, Function)} and {@link SynchronizedZKMap#removeIf(String, Predicate)},
+ * which check that the element did not change underneath. Element ids are unique, so adding needs no check. Consumers
+ * that pick the same element race to assign it, and the ones that lose move on to the next elements. Operations that
+ * walk through all elements for other purposes still take the lock.
  */
 public class ZKElementsTracking implements ElementsTracking {
   private static final Logger LOG = LoggerFactory.getLogger(ZKElementsTracking.class);
   // Moves to the top of the queue. Since we reset priority when we start consuming, it is safe to use 0L here
   // See {@link #getCurrentHighestPriority()} for more info.
   private static final long HIGHEST_PRIORITY = 0L;
-  private static final String NO_CONSUMER_ASSIGNED = "";
+  static final String NO_CONSUMER_ASSIGNED = "";
   private static final EntrySerializer ENTRY_SERIALIZER = new EntrySerializer();
 
   private final ThreadLocal<Lock> globalLock;
-  private final Map<String, Entry> queueElements;
+  private final SynchronizedZKMap<Entry> queueElements;
+  private final boolean incremental;
 
   public ZKElementsTracking(final ZKClient zkClient, final String basePath)  {
+    this(zkClient, basePath, false);
+  }
+
+  /**
+   * Create elements tracking for the queue at the given path.
+   *
+   * @param zkClient Client to use for zookeeper operations.
+   * @param basePath Path of the queue in zookeeper.
+   * @param incremental Whether the underlying map should only reload elements changed by other processes.
+   */
+  public ZKElementsTracking(final ZKClient zkClient, final String basePath, boolean incremental)  {
     String queuePath = basePath + "/queue";
     Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, queuePath));
-    this.queueElements = new SynchronizedZKMap<Entry>(zkClient, queuePath + "/map", ENTRY_SERIALIZER);
+    // incremental mode keeps its map at a separate path, as the two modes cannot read each other's writes
+    String mapPath = queuePath + (incremental ? "/incrementalmap" : "/map");
+    this.queueElements = new SynchronizedZKMap<Entry>(zkClient, mapPath, ENTRY_SERIALIZER, incremental);
+    this.incremental = incremental;
 
     this.globalLock = new ThreadLocal<Lock>() {
       @Override
@@ -73,13 +96,13 @@ public class ZKElementsTracking implements ElementsTracking {
     try {
       // we actually may need no lock here: we just adding new element (it is assumed that test adds unique
       // elems into queue)
-      globalLock.get().lock();
+      lockElementOperation();
       try {
         Entry entry = new Entry(element, getCurrentHighestPriority());
         queueElements.put(entry.element.getId(), entry);
         return true;
       } finally {
-        globalLock.get().unlock();
+        unlockElementOperation();
       }
     } catch (Exception e) {
       LOG.error("error during adding to queue", e);
@@ -89,56 +112,71 @@ public class ZKElementsTracking implements ElementsTracking {
 
   @Override
   public Element startConsuming(String consumerId) {
+    List<Element> started = startConsuming(consumerId, 1);
+    return started.isEmpty() ? null : started.get(0);
+  }
+
+  @Override
+  public List<Element> startConsuming(final String consumerId, int maxElements) {
+    List<Element> started = Lists.newArrayList();
     try {
-      globalLock.get().lock();
+      // in incremental mode consumers may pick the same elements, but only one of them gets to assign each element
+      lockElementOperation();
       try {
-        Entry entry = getNotStartedWithHighestPriority();
-        if (entry == null) {
-          return null;
+        List<Entry> candidates = getNotStartedWithHighestPriority(maxElements);
+        while (!candidates.isEmpty()) {
+          for (Entry entry : candidates) {
+            final long now = getCurrentHighestPriority();
+            Entry startedEntry = updateIfConsumer(entry.element.getId(), NO_CONSUMER_ASSIGNED,
+                                                  new Function<Entry, Entry>() {
+              @Override
+              public Entry apply(Entry input) {
+                return new Entry(input.element, now, now, consumerId);
+              }
+            });
+            if (startedEntry != null) {
+              started.add(startedEntry.element);
+            }
+          }
+          if (started.size() >= maxElements) {
+            break;
+          }
+          // some elements were removed or taken while we were looking at them, try the next ones
+          candidates = getNotStartedWithHighestPriority(maxElements - started.size());
         }
-        entry.consumerId = consumerId;
-        entry.lastProgressReportTs = System.currentTimeMillis();
-        entry.priority = getCurrentHighestPriority();
-        queueElements.put(entry.element.getId(), entry);
-        return entry.element;
       } finally {
-        globalLock.get().unlock();
+        unlockElementOperation();
       }
     } catch (Exception e) {
       LOG.error("error during start consuming", e);
-      return null;
     }
+    return started;
   }
 
-  private Entry getNotStartedWithHighestPriority() throws Exception {
-    Entry result = null;
-    for (Entry entry : queueElements.values()) {
-      // we are walking thru *all* element items, hence need to skip those that are in progress
-      if (!NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-        continue;
-      }
-      // choosing entry with highest priority
-      if (result == null || result.priority > entry.priority) {
-        result = entry;
+  private List<Entry> getNotStartedWithHighestPriority(int maxEntries) throws Exception {
+    // we are walking thru *all* element items, hence need to skip those that are in progress
+    Iterable<Entry> notStarted = Iterables.filter(queueElements.values(), new Predicate<Entry>() {
+      @Override
+      public boolean apply(Entry input) {
+        return NO_CONSUMER_ASSIGNED.equals(input.consumerId);
       }
-    }
-    return result;
+    });
+    // choosing entries with highest priority. Sort is stable, so ties go to the entry seen first as they always have
+    List<Entry> sorted = Lists.newArrayList(notStarted);
+    Collections.sort(sorted);
+    return sorted.size() > maxEntries ? sorted.subList(0, maxEntries) : sorted;
   }
 
   @Override
   public boolean stopConsumingAndAddBackToQueue(String elementId, String consumerId) {
     try {
-      globalLock.get().lock();
+      lockElementOperation();
       try {
-        Entry entry = queueElements.get(elementId);
-
-        if (entry == null || !consumerId.equals(entry.consumerId)) {
+        if (stopAndReschedule(elementId, consumerId) == null) {
           return false;
         }
-        stopAndReschedule(entry);
-
       } finally {
-        globalLock.get().unlock();
+        unlockElementOperation();
       }
     } catch (Exception e) {
       LOG.error("error during stop & reschedule", e);
@@ -148,25 +186,59 @@ public class ZKElementsTracking implements ElementsTracking {
     return true;
   }
 
-  private void stopAndReschedule(Entry entry) throws Exception {
-    entry.consumerId = NO_CONSUMER_ASSIGNED;
-    entry.lastProgressReportTs = 0;
-    queueElements.put(entry.element.getId(), entry);
+  private Entry stopAndReschedule(String elementId, String consumerId) {
+    return updateIfConsumer(elementId, consumerId, new Function<Entry, Entry>() {
+      @Override
+      public Entry apply(Entry input) {
+        return new Entry(input.element, input.priority, 0L, NO_CONSUMER_ASSIGNED);
+      }
+    });
+  }
+
+  // in map mode adding, taking and operations on a single element take the queue-wide lock like all other operations.
+  // In incremental mode they rely on the versioned writes of the map instead.
+  private void lockElementOperation() {
+    if (!incremental) {
+      globalLock.get().lock();
+    }
+  }
+
+  private void unlockElementOperation() {
+    if (!incremental) {
+      globalLock.get().unlock();
+    }
+  }
+
+  /**
+   * Updates the element with the given id if it is assigned to the given consumer.
+   *
+   * @return the updated entry, or null if the element does not exist or is not assigned to the given consumer
+   */
+  private Entry updateIfConsumer(String elementId, final String consumerId, final Function<Entry, Entry> updater) {
+    return queueElements.update(elementId, new Function<Entry, Entry>() {
+      @Override
+      public Entry apply(Entry input) {
+        return consumerId.equals(input.consumerId) ? updater.apply(input) : null;
+      }
+    });
   }
 
   @Override
-  public boolean finishConsuming(String elementId, String consumerId) {
+  public boolean finishConsuming(String elementId, final String consumerId) {
     try {
-      globalLock.get().lock();
+      lockElementOperation();
       try {
-        Entry entry = queueElements.get(elementId);
-        if (entry == null || !consumerId.equals(entry.consumerId)) {
+        Entry removed = queueElements.removeIf(elementId, new Predicate<Entry>() {
+          @Override
+          public boolean apply(Entry input) {
+            return consumerId.equals(input.consumerId);
+          }
+        });
+        if (removed == null) {
           return false;
         }
-        queueElements.remove(elementId);
-
       } finally {
-        globalLock.get().unlock();
+        unlockElementOperation();
       }
     } catch (Exception e) {
       LOG.error("error during marking finishConsuming", e);
@@ -179,17 +251,20 @@ public class ZKElementsTracking implements ElementsTracking {
   @Override
   public boolean recordProgress(String elementId, String consumerId) {
     try {
-      globalLock.get().lock();
+      lockElementOperation();
       try {
-        Entry entry = queueElements.get(elementId);
-        if (entry == null || !consumerId.equals(entry.consumerId)) {
+        final long now = System.currentTimeMillis();
+        Entry updated = updateIfConsumer(elementId, consumerId, new Function<Entry, Entry>() {
+          @Override
+          public Entry apply(Entry input) {
+            return new Entry(input.element, input.priority, now, input.consumerId);
+          }
+        });
+        if (updated == null) {
           return false;
         }
-        entry.lastProgressReportTs = System.currentTimeMillis();
-        queueElements.put(entry.element.getId(), entry);
-
       } finally {
-        globalLock.get().unlock();
+        unlockElementOperation();
       }
     } catch (Exception e) {
       LOG.error("error during checking state", e);
@@ -213,7 +288,7 @@ public class ZKElementsTracking implements ElementsTracking {
                                                      entry.consumerId,
                                                      entry.lastProgressReportTs);
           if (stopAndReschedule) {
-            stopAndReschedule(entry);
+            stopAndReschedule(entry.element.getId(), entry.consumerId);
           }
         }
 
@@ -229,11 +304,11 @@ public class ZKElementsTracking implements ElementsTracking {
   @Override
   public boolean remove(String elementId) {
     try {
-      globalLock.get().lock();
+      lockElementOperation();
       try {
         queueElements.remove(elementId);
       } finally {
-        globalLock.get().unlock();
+        unlockElementOperation();
       }
     } catch (Exception e) {
       LOG.error("error during removing element", e);
@@ -262,15 +337,16 @@ public class ZKElementsTracking implements ElementsTracking {
   @Override
   public boolean toHighestPriority(String elementId) {
     try {
-      globalLock.get().lock();
+      lockElementOperation();
       try {
-        Entry entry = queueElements.get(elementId);
-        if (NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
-          entry.priority = HIGHEST_PRIORITY;
-          queueElements.put(entry.element.getId(), entry);
-        }
+        updateIfConsumer(elementId, NO_CONSUMER_ASSIGNED, new Function<Entry, Entry>() {
+          @Override
+          public Entry apply(Entry input) {
+            return new Entry(input.element, HIGHEST_PRIORITY, input.lastProgressReportTs, input.consumerId);
+          }
+        });
       } finally {
-        globalLock.get().unlock();
+        unlockElementOperation();
       }
     } catch (Exception e) {
       LOG.error("error during promoting element to highest priority", e);
@@ -382,7 +458,7 @@ public class ZKElementsTracking implements ElementsTracking {
     }
   }
 
-  private static final class EntrySerializer implements Serializer<Entry> {
+  static final class EntrySerializer implements Serializer<Entry> {
     private static final ThreadLocal<Gson> GSON = new ThreadLocal<Gson>() {
       @Override
       protected Gson initialValue() {
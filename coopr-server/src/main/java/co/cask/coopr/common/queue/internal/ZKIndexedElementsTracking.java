@@ -0,0 +1,494 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.queue.internal;
+
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.common.queue.QueuedElement;
+import co.cask.coopr.common.zookeeper.ZKClientExt;
+import co.cask.coopr.common.zookeeper.lib.ReentrantDistributedLock;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.twill.zookeeper.NodeChildren;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Implementation of {@link ElementsTracking} that keeps separate zookeeper indexes for queued elements and elements
+ * being consumed, so that taking an element does not require walking through every element in the queue.
+ * <p/>
+ * Layout in zookeeper under the base path:
+ * <ul>
+ *   <li>{@code indexed/elements/<elementId>} holds the element data, its priority and its consumer.</li>
+ *   <li>{@code indexed/queued/<priority>-<elementId>} is an empty node for every element that is not being consumed.
+ *   The priority is zero padded so that the natural ordering of node names is the order elements are taken in.</li>
+ *   <li>{@code indexed/inprogress/<elementId>} is an empty node for every element that is being consumed.</li>
+ * </ul>
+ * The queued index is cached in memory as a sorted set, and is only re-read from zookeeper if the children version of
+ * the index node shows that another process has changed it. As with {@link ZKElementsTracking}, all operations are
+ * guarded by a single distributed lock.
+ */
+public class ZKIndexedElementsTracking implements ElementsTracking {
+  private static final Logger LOG = LoggerFactory.getLogger(ZKIndexedElementsTracking.class);
+  // Moves to the top of the queue. Since we reset priority when we start consuming, it is safe to use 0L here
+  // See {@link #getCurrentHighestPriority()} for more info.
+  private static final long HIGHEST_PRIORITY = 0L;
+  private static final ZKElementsTracking.EntrySerializer ENTRY_SERIALIZER = new ZKElementsTracking.EntrySerializer();
+
+  private final ZKClient zkClient;
+  private final String elementsPath;
+  private final String queuedPath;
+  private final String inProgressPath;
+  private final ThreadLocal<Lock> globalLock;
+
+  // in-memory view of the queued index, in the order elements should be taken
+  private final NavigableSet<String> queuedIndex;
+  // children version of the queued index node that the in-memory view corresponds to
+  private int queuedIndexVersion;
+
+  public ZKIndexedElementsTracking(final ZKClient zkClient, final String basePath) {
+    String indexedPath = basePath + "/indexed";
+    this.zkClient = zkClient;
+    this.elementsPath = indexedPath + "/elements";
+    this.queuedPath = indexedPath + "/queued";
+    this.inProgressPath = indexedPath + "/inprogress";
+    Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, elementsPath));
+    Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, queuedPath));
+    Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, inProgressPath));
+    this.queuedIndex = Sets.newTreeSet();
+    this.queuedIndexVersion = -1;
+
+    this.globalLock = new ThreadLocal<Lock>() {
+      @Override
+      protected Lock initialValue() {
+        return new ReentrantDistributedLock(zkClient, basePath);
+      }
+    };
+  }
+
+  @Override
+  public boolean addToQueue(Element element) {
+    try {
+      globalLock.get().lock();
+      try {
+        // adding an element with an id that is already in the queue replaces the old one
+        ZKElementsTracking.Entry existing = getEntry(element.getId());
+        if (existing != null) {
+          removeFromIndex(existing);
+        }
+        ZKElementsTracking.Entry entry = new ZKElementsTracking.Entry(element, getCurrentHighestPriority());
+        Futures.getUnchecked(ZKClientExt.createOrSet(zkClient, getElementPath(element.getId()),
+                                                     ENTRY_SERIALIZER.serialize(entry), CreateMode.PERSISTENT));
+        addToQueuedIndex(entry);
+        return true;
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during adding to queue", e);
+      return false;
+    }
+  }
+
+  @Override
+  public Element startConsuming(String consumerId) {
+    List<Element> started = startConsuming(consumerId, 1);
+    return started.isEmpty() ? null : started.get(0);
+  }
+
+  @Override
+  public List<Element> startConsuming(String consumerId, int maxElements) {
+    List<Element> started = Lists.newArrayList();
+    try {
+      globalLock.get().lock();
+      try {
+        syncQueuedIndex();
+        while (started.size() < maxElements) {
+          String indexNode = getFirstQueued();
+          if (indexNode == null) {
+            break;
+          }
+          ZKElementsTracking.Entry entry = getEntry(getElementId(indexNode));
+          if (entry == null || !ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(entry.consumerId) ||
+            !indexNode.equals(getQueuedIndexNode(entry))) {
+            // index node is left over from an interrupted operation, it does not point to a queued element
+            removeFromQueuedIndex(indexNode);
+            continue;
+          }
+          entry.consumerId = consumerId;
+          entry.lastProgressReportTs = System.currentTimeMillis();
+          entry.priority = getCurrentHighestPriority();
+          // an in-progress node can be left over from a consumer that died before removing it, in which case the
+          // element is queued again and this consumer takes over the lease
+          Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, getInProgressPath(entry.element.getId())));
+          putEntry(entry);
+          removeFromQueuedIndex(indexNode);
+          started.add(entry.element);
+        }
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during start consuming", e);
+    }
+    return started;
+  }
+
+  @Override
+  public boolean stopConsumingAndAddBackToQueue(String elementId, String consumerId) {
+    try {
+      globalLock.get().lock();
+      try {
+        ZKElementsTracking.Entry entry = getEntry(elementId);
+        if (entry == null || !consumerId.equals(entry.consumerId)) {
+          return false;
+        }
+        stopAndReschedule(entry);
+
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during stop & reschedule", e);
+      // it is OK to leave it now in "in-progress" list - we'll attempt to reschedule it by timeout
+    }
+    return true;
+  }
+
+  private void stopAndReschedule(ZKElementsTracking.Entry entry) {
+    entry.consumerId = ZKElementsTracking.NO_CONSUMER_ASSIGNED;
+    entry.lastProgressReportTs = 0;
+    addToQueuedIndex(entry);
+    putEntry(entry);
+    Futures.getUnchecked(ZKClientExt.delete(zkClient, getInProgressPath(entry.element.getId()), true));
+  }
+
+  @Override
+  public boolean finishConsuming(String elementId, String consumerId) {
+    try {
+      globalLock.get().lock();
+      try {
+        ZKElementsTracking.Entry entry = getEntry(elementId);
+        if (entry == null || !consumerId.equals(entry.consumerId)) {
+          return false;
+        }
+        Futures.getUnchecked(ZKClientExt.delete(zkClient, getElementPath(elementId), true));
+        Futures.getUnchecked(ZKClientExt.delete(zkClient, getInProgressPath(elementId), true));
+
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during marking finishConsuming", e);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean recordProgress(String elementId, String consumerId) {
+    try {
+      globalLock.get().lock();
+      try {
+        ZKElementsTracking.Entry entry = getEntry(elementId);
+        if (entry == null || !consumerId.equals(entry.consumerId)) {
+          return false;
+        }
+        entry.lastProgressReportTs = System.currentTimeMillis();
+        putEntry(entry);
+
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during checking state", e);
+      // should be OK not do anything: we are just reporting a progress...
+    }
+    return true;
+  }
+
+  @Override
+  public void walkThruElementsBeingConsumed(Walker walker) {
+    try {
+      globalLock.get().lock();
+      try {
+        List<String> elementIds = Futures.getUnchecked(zkClient.getChildren(inProgressPath)).getChildren();
+        for (ZKElementsTracking.Entry entry : getEntries(elementIds)) {
+          if (ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
+            continue;
+          }
+          boolean stopAndReschedule = walker.process(entry.element,
+                                                     entry.consumerId,
+                                                     entry.lastProgressReportTs);
+          if (stopAndReschedule) {
+            stopAndReschedule(entry);
+          }
+        }
+
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during walking", e);
+      // should be OK not do anything: we'll walk thru next time :)
+    }
+  }
+
+  @Override
+  public boolean remove(String elementId) {
+    try {
+      globalLock.get().lock();
+      try {
+        ZKElementsTracking.Entry entry = getEntry(elementId);
+        if (entry != null) {
+          removeFromIndex(entry);
+          Futures.getUnchecked(ZKClientExt.delete(zkClient, getElementPath(elementId), true));
+        }
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during removing element", e);
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean removeAll() {
+    try {
+      globalLock.get().lock();
+      try {
+        deleteChildren(queuedPath);
+        deleteChildren(inProgressPath);
+        deleteChildren(elementsPath);
+        synchronized (queuedIndex) {
+          queuedIndex.clear();
+          queuedIndexVersion = -1;
+        }
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during cleanup of the queue", e);
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean toHighestPriority(String elementId) {
+    try {
+      globalLock.get().lock();
+      try {
+        ZKElementsTracking.Entry entry = getEntry(elementId);
+        if (entry != null && ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
+          String oldIndexNode = getQueuedIndexNode(entry);
+          entry.priority = HIGHEST_PRIORITY;
+          addToQueuedIndex(entry);
+          putEntry(entry);
+          removeFromQueuedIndex(oldIndexNode);
+        }
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during promoting element to highest priority", e);
+    }
+
+    return true;
+  }
+
+  @Override
+  public List<QueuedElement> getQueued() {
+    List<QueuedElement> list = Lists.newArrayList();
+    try {
+      globalLock.get().lock();
+      try {
+        syncQueuedIndex();
+        List<String> elementIds = Lists.newArrayList();
+        synchronized (queuedIndex) {
+          for (String indexNode : queuedIndex) {
+            elementIds.add(getElementId(indexNode));
+          }
+        }
+        // entries are returned in the order of the ids, which is the order of priority
+        for (ZKElementsTracking.Entry entry : getEntries(elementIds)) {
+          if (ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
+            list.add(entry);
+          }
+        }
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during getting queued elements", e);
+    }
+
+    return list;
+  }
+
+  @Override
+  public List<QueuedElement> getBeingConsumed() {
+    ImmutableList.Builder<QueuedElement> listBuilder = new ImmutableList.Builder<QueuedElement>();
+    try {
+      globalLock.get().lock();
+      try {
+        List<String> elementIds = Futures.getUnchecked(zkClient.getChildren(inProgressPath)).getChildren();
+        for (ZKElementsTracking.Entry entry : getEntries(elementIds)) {
+          if (!ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
+            listBuilder.add(entry);
+          }
+        }
+      } finally {
+        globalLock.get().unlock();
+      }
+    } catch (Exception e) {
+      LOG.error("error during getting queued elements", e);
+    }
+
+    return listBuilder.build();
+  }
+
+  @Override
+  public int size() {
+    Stat stat = Futures.getUnchecked(zkClient.exists(elementsPath));
+    return stat == null ? 0 : stat.getNumChildren();
+  }
+
+  /**
+   * Brings the in-memory view of the queued index up to date if some other process changed the index. Must be called
+   * while holding the global lock.
+   */
+  private void syncQueuedIndex() {
+    Stat stat = Futures.getUnchecked(zkClient.exists(queuedPath));
+    synchronized (queuedIndex) {
+      if (stat != null && stat.getCversion() == queuedIndexVersion) {
+        return;
+      }
+    }
+    NodeChildren children = Futures.getUnchecked(zkClient.getChildren(queuedPath));
+    synchronized (queuedIndex) {
+      queuedIndex.clear();
+      queuedIndex.addAll(children.getChildren());
+      queuedIndexVersion = children.getStat().getCversion();
+    }
+  }
+
+  private String getFirstQueued() {
+    synchronized (queuedIndex) {
+      return queuedIndex.isEmpty() ? null : queuedIndex.first();
+    }
+  }
+
+  private void addToQueuedIndex(ZKElementsTracking.Entry entry) {
+    String indexNode = getQueuedIndexNode(entry);
+    Futures.getUnchecked(zkClient.create(queuedPath + "/" + indexNode, null, CreateMode.PERSISTENT));
+    synchronized (queuedIndex) {
+      queuedIndex.add(indexNode);
+      // every child create or delete increments the children version by one. If the view was stale before, it will
+      // still be seen as stale and be reloaded the next time it is needed.
+      queuedIndexVersion++;
+    }
+  }
+
+  private void removeFromQueuedIndex(String indexNode) {
+    Futures.getUnchecked(ZKClientExt.delete(zkClient, queuedPath + "/" + indexNode, true));
+    synchronized (queuedIndex) {
+      queuedIndex.remove(indexNode);
+      queuedIndexVersion++;
+    }
+  }
+
+  private void removeFromIndex(ZKElementsTracking.Entry entry) {
+    if (ZKElementsTracking.NO_CONSUMER_ASSIGNED.equals(entry.consumerId)) {
+      removeFromQueuedIndex(getQueuedIndexNode(entry));
+    } else {
+      Futures.getUnchecked(ZKClientExt.delete(zkClient, getInProgressPath(entry.element.getId()), true));
+    }
+  }
+
+  private ZKElementsTracking.Entry getEntry(String elementId) {
+    NodeData nodeData = Futures.getUnchecked(ZKClientExt.getDataOrNull(zkClient, getElementPath(elementId)));
+    return nodeData == null ? null : ENTRY_SERIALIZER.deserialize(nodeData.getData());
+  }
+
+  /**
+   * Fetches the entries for the given element ids in parallel, skipping ones that no longer exist.
+   */
+  private List<ZKElementsTracking.Entry> getEntries(Collection<String> elementIds) {
+    List<ListenableFuture<NodeData>> dataFutures = Lists.newArrayListWithCapacity(elementIds.size());
+    for (String elementId : elementIds) {
+      dataFutures.add(ZKClientExt.getDataOrNull(zkClient, getElementPath(elementId)));
+    }
+    List<ZKElementsTracking.Entry> entries = Lists.newArrayListWithCapacity(elementIds.size());
+    for (NodeData nodeData : Futures.getUnchecked(Futures.allAsList(dataFutures))) {
+      if (nodeData != null) {
+        entries.add(ENTRY_SERIALIZER.deserialize(nodeData.getData()));
+      }
+    }
+    return entries;
+  }
+
+  private void putEntry(ZKElementsTracking.Entry entry) {
+    Futures.getUnchecked(zkClient.setData(getElementPath(entry.element.getId()), ENTRY_SERIALIZER.serialize(entry)));
+  }
+
+  private void deleteChildren(String path) {
+    NodeChildren nodeChildren = Futures.getUnchecked(zkClient.getChildren(path));
+    List<ListenableFuture<String>> deleteFutures = Lists.newArrayList();
+    for (String node : nodeChildren.getChildren()) {
+      deleteFutures.add(ZKClientExt.delete(zkClient, path + "/" + node, true));
+    }
+    Futures.getUnchecked(Futures.allAsList(deleteFutures));
+  }
+
+  private String getElementPath(String elementId) {
+    return elementsPath + "/" + elementId;
+  }
+
+  private String getInProgressPath(String elementId) {
+    return inProgressPath + "/" + elementId;
+  }
+
+  private static String getQueuedIndexNode(ZKElementsTracking.Entry entry) {
+    // 19 digits is enough for any non-negative long
+    return String.format("%019d-%s", entry.priority, entry.element.getId());
+  }
+
+  private static String getElementId(String queuedIndexNode) {
+    return queuedIndexNode.substring(queuedIndexNode.indexOf('-') + 1);
+  }
+
+  /**
+   * @return the highest priority an element which is currently in the queue can have
+   */
+  private long getCurrentHighestPriority() {
+    // See ZKElementsTracking#getCurrentHighestPriority() for why the current time is used
+    return System.currentTimeMillis();
+  }
+}
@@ -27,19 +27,33 @@ import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.zookeeper.NodeChildren;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKOperations;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * Implementation of a {@link QueueGroup} that uses queues built on zookeeper. Whenever a queue name is referenced in a
@@ -47,9 +61,15 @@ import java.util.Set;
  * zookeeper to make sure queues added or deleted by another instance of the group are reflected in this group.
  */
 public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
+  private static final Logger LOG = LoggerFactory.getLogger(ZKQueueGroup.class);
   private final ZKClient zkClient;
   private final QueueType queueType;
   private final LoadingCache<String, TrackingQueue> queueMap;
+  // watches shared by everyone waiting for elements in a queue, removed once they fire
+  private final ConcurrentMap<String, ElementsWatch> elementsWatches;
+  private final List<ElementsListener> elementsListeners;
+  // queues that currently have a watch feeding the elements listeners
+  private final Set<String> listenedQueues;
 
   /**
    * Create a zookeeper queue group of the given type, using the given zookeeper client. Physical queues in the group
@@ -59,21 +79,37 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
    * @param zkClient Client to use for zookeeper operations.
    * @param queueType Type of queues in the group.
    */
-  ZKQueueGroup(final ZKClient zkClient, final QueueType queueType) {
+  ZKQueueGroup(ZKClient zkClient, QueueType queueType) {
+    this(zkClient, queueType, ZKQueueMode.MAP);
+  }
+
+  /**
+   * Create a zookeeper queue group of the given type, using the given zookeeper client.
+   *
+   * @param zkClient Client to use for zookeeper operations.
+   * @param queueType Type of queues in the group.
+   * @param mode How queues in the group keep track of their elements in zookeeper.
+   */
+  ZKQueueGroup(final ZKClient zkClient, final QueueType queueType, final ZKQueueMode mode) {
     this.zkClient = zkClient;
     this.queueType = queueType;
+    this.elementsWatches = Maps.newConcurrentMap();
+    this.elementsListeners = new CopyOnWriteArrayList<ElementsListener>();
+    this.listenedQueues = Sets.newSetFromMap(Maps.<String, Boolean>newConcurrentMap());
     this.queueMap = CacheBuilder.newBuilder().build(
       new CacheLoader<String, TrackingQueue>() {
         @Override
         public TrackingQueue load(String queueName) throws Exception {
-          return new LazyZKTrackingQueue(zkClient, getZKPathForQueue(queueName));
+          return new LazyZKTrackingQueue(zkClient, getZKPathForQueue(queueName), mode);
         }
       });
   }
 
   @Override
   public ListenableFuture<String> add(String queueName, Element element) {
-    return queueMap.getUnchecked(queueName).add(element);
+    ListenableFuture<String> result = queueMap.getUnchecked(queueName).add(element);
+    notifyElementsAdded(queueName);
+    return result;
   }
 
   /**
@@ -93,10 +129,110 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
     return queueMap.getUnchecked(queueName).take(consumerId);
   }
 
+  @Override
+  public List<Element> take(String queueName, String consumerId, int maxElements) {
+    return queueMap.getUnchecked(queueName).take(consumerId, maxElements);
+  }
+
   @Override
   public TrackingQueue.PossessionState recordProgress(String consumerId, String queueName, String elementId,
                                                       TrackingQueue.ConsumingStatus status, String result) {
-    return queueMap.getUnchecked(queueName).recordProgress(consumerId, elementId, status, result);
+    TrackingQueue.PossessionState state =
+      queueMap.getUnchecked(queueName).recordProgress(consumerId, elementId, status, result);
+    if (status == TrackingQueue.ConsumingStatus.FAILED && state == TrackingQueue.PossessionState.POSSESSES) {
+      // element was placed back in the queue
+      notifyElementsAdded(queueName);
+    }
+    return state;
+  }
+
+  @Override
+  public ListenableFuture<ListenableFuture<String>> watchForElements(String queueName) {
+    return getElementsWatch(queueName).watchSet;
+  }
+
+  @Override
+  public Cancellable addElementsListener(Runnable listener, Executor executor) {
+    final ElementsListener elementsListener = new ElementsListener(listener, executor);
+    elementsListeners.add(elementsListener);
+    for (String queueName : queueMap.asMap().keySet()) {
+      listenToQueue(queueName);
+    }
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        elementsListeners.remove(elementsListener);
+      }
+    };
+  }
+
+  private ElementsWatch getElementsWatch(String queueName) {
+    ElementsWatch watch = new ElementsWatch(queueName);
+    ElementsWatch existing = elementsWatches.putIfAbsent(queueName, watch);
+    if (existing != null) {
+      return existing;
+    }
+    watch.start();
+    return watch;
+  }
+
+  /**
+   * Keeps a watch on the given queue for as long as there are elements listeners and the queue exists. Listeners are
+   * called each time the watch fires, and once when the queue is first listened to, as it may already have elements.
+   */
+  private void listenToQueue(final String queueName) {
+    if (elementsListeners.isEmpty() || !listenedQueues.add(queueName)) {
+      return;
+    }
+    callElementsListeners();
+    final ListenableFuture<String> changed = getElementsWatch(queueName).changed;
+    changed.addListener(new Runnable() {
+      @Override
+      public void run() {
+        listenedQueues.remove(queueName);
+        if (isFailed(changed)) {
+          // the queue is listened to again the next time queues are refreshed
+          LOG.warn("Unable to watch queue {} for new elements.", queueName);
+        } else if (queueMap.asMap().containsKey(queueName)) {
+          listenToQueue(queueName);
+        } else {
+          callElementsListeners();
+        }
+      }
+    }, MoreExecutors.sameThreadExecutor());
+  }
+
+  private static boolean isFailed(ListenableFuture<?> future) {
+    try {
+      future.get();
+      return false;
+    } catch (Exception e) {
+      return true;
+    }
+  }
+
+  private void callElementsListeners() {
+    for (ElementsListener elementsListener : elementsListeners) {
+      elementsListener.executor.execute(elementsListener.listener);
+    }
+  }
+
+  /**
+   * Touches the queue node so that watches set by {@link #watchForElements(String)} in any instance of the group fire.
+   */
+  private void notifyElementsAdded(final String queueName) {
+    Futures.addCallback(zkClient.setData(getZKPathForQueue(queueName), new byte[0]), new FutureCallback<Stat>() {
+      @Override
+      public void onSuccess(Stat result) {
+        // no-op
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // waiters will not be woken up early, but will still time out and try again
+        LOG.warn("Unable to notify watchers of queue {} of new elements.", queueName, t);
+      }
+    });
   }
 
   @Override
@@ -164,6 +300,11 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
       queueMap.refresh(queueName);
     }
 
+    // queues created by this instance are already cached, but may not be listened to yet
+    for (String queueName : queueNames) {
+      listenToQueue(queueName);
+    }
+
     Set<String> toRemove = Sets.difference(existingQueues, queueNames);
     for (String queueName : toRemove) {
       queueMap.invalidate(queueName);
@@ -225,6 +366,61 @@ public class ZKQueueGroup extends AbstractIdleService implements QueueGroup {
     }
   }
 
+  /**
+   * Listener for elements added to any queue in the group, along with the executor to call it with.
+   */
+  private static final class ElementsListener {
+    private final Runnable listener;
+    private final Executor executor;
+
+    private ElementsListener(Runnable listener, Executor executor) {
+      this.listener = listener;
+      this.executor = executor;
+    }
+  }
+
+  /**
+   * Data watch on a queue node, shared by everyone waiting for elements in that queue until it fires.
+   */
+  private final class ElementsWatch implements Watcher {
+    private final String queueName;
+    private final SettableFuture<String> changed;
+    private final SettableFuture<ListenableFuture<String>> watchSet;
+
+    private ElementsWatch(String queueName) {
+      this.queueName = queueName;
+      this.changed = SettableFuture.create();
+      this.watchSet = SettableFuture.create();
+    }
+
+    private void start() {
+      // exists also sets the watch if the queue does not exist yet, in which case it fires when the queue is created
+      Futures.addCallback(zkClient.exists(getZKPathForQueue(queueName), this), new FutureCallback<Stat>() {
+        @Override
+        public void onSuccess(Stat result) {
+          watchSet.set(changed);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          fail(t);
+        }
+      });
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+      elementsWatches.remove(queueName, this);
+      changed.set(queueName);
+    }
+
+    private void fail(Throwable t) {
+      elementsWatches.remove(queueName, this);
+      watchSet.setException(t);
+      changed.setException(t);
+    }
+  }
+
   private String getZKPathForQueue(String queueName) {
     return queueType.getPath() + "/" + queueName;
   }
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.queue.internal;
+
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import org.apache.twill.zookeeper.ZKClient;
+
+import java.util.Locale;
+
+/**
+ * How zookeeper backed queues keep track of their elements. Each mode uses its own layout in zookeeper, so all
+ * servers must use the same mode, and queued elements are not carried over when the mode is changed.
+ */
+public enum ZKQueueMode {
+  // a single map of all elements, fully reloaded whenever another process changes it
+  MAP,
+  // a single map of all elements, where only elements changed by another process are reloaded. Every write also
+  // updates the change log on the single entries node of the map, which limits the write rate of a queue to what one
+  // znode can take.
+  INCREMENTAL_MAP,
+  // separate indexes for queued and in progress elements, with queued elements ordered by priority
+  INDEXED;
+
+  /**
+   * Get the queue mode from the given configuration.
+   *
+   * @param conf Configuration to get the mode from.
+   * @return Queue mode set in the configuration.
+   */
+  public static ZKQueueMode fromConf(Configuration conf) {
+    return valueOf(conf.get(Constants.QUEUE_ZK_MODE, MAP.name()).toUpperCase(Locale.ENGLISH));
+  }
+
+  /**
+   * Create the {@link ElementsTracking} for a queue at the given path.
+   *
+   * @param zkClient Client to use for zookeeper operations.
+   * @param basePath Path of the queue in zookeeper.
+   * @return Elements tracking for the queue.
+   */
+  ElementsTracking createElementsTracking(ZKClient zkClient, String basePath) {
+    switch (this) {
+      case INCREMENTAL_MAP:
+        return new ZKElementsTracking(zkClient, basePath, true);
+      case INDEXED:
+        return new ZKIndexedElementsTracking(zkClient, basePath);
+      default:
+        return new ZKElementsTracking(zkClient, basePath);
+    }
+  }
+}
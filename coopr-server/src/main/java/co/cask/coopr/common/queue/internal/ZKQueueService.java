@@ -16,6 +16,7 @@
 
 package co.cask.coopr.common.queue.internal;
 
+import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.queue.QueueGroup;
 import co.cask.coopr.common.queue.QueueService;
 import co.cask.coopr.common.queue.QueueType;
@@ -33,10 +34,11 @@ public class ZKQueueService extends AbstractIdleService implements QueueService
   private final Map<QueueType, QueueGroup> queueGroups;
 
   @Inject
-  private ZKQueueService(ZKClient zkClient) {
+  private ZKQueueService(ZKClient zkClient, Configuration conf) {
+    ZKQueueMode mode = ZKQueueMode.fromConf(conf);
     ImmutableMap.Builder<QueueType, QueueGroup> builder = ImmutableMap.builder();
     for (QueueType type : QueueType.GROUP_TYPES) {
-      builder.put(type, new ZKQueueGroup(zkClient, type));
+      builder.put(type, new ZKQueueGroup(zkClient, type, mode));
     }
     this.queueGroups = builder.build();
   }
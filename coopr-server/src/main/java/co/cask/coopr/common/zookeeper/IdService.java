@@ -17,29 +17,38 @@ package co.cask.coopr.common.zookeeper;
 
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
-import co.cask.coopr.common.zookeeper.lib.ReentrantDistributedLock;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.Inject;
 import org.apache.twill.zookeeper.NodeData;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.data.Stat;
 
-import java.util.concurrent.locks.Lock;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Uses Zookeeper for creating new unique ids.
+ * Uses Zookeeper for creating new unique ids. Each counter in Zookeeper is only changed with a versioned set, so
+ * servers do not need a lock to get ids. Task ids are leased from the counter in blocks, which are then handed out
+ * locally. Cluster and job ids are leased one at a time so that they keep increasing across servers, as jobs of a
+ * cluster are ordered by their id.
  */
 public final class IdService extends AbstractIdleService {
   private static final String IDS_BASEPATH = "/ids";
 
   private final long startId;
   private final long incrementBy;
-  private ThreadLocal<Lock> idLock;
+  private final int taskLeaseSize;
+  private final Map<Type, AtomicReference<IdBlock>> idBlocks;
 
   private final ZKClient zkClient;
 
@@ -60,33 +69,27 @@ public final class IdService extends AbstractIdleService {
 
   @Inject
   private IdService(final ZKClient zkClient, Configuration conf)  {
-    this.zkClient = zkClient;
-    this.startId = conf.getInt(Constants.ID_START_NUM);
-    this.incrementBy = conf.getInt(Constants.ID_INCREMENT_BY);
+    this(zkClient, conf.getLong(Constants.ID_START_NUM), conf.getLong(Constants.ID_INCREMENT_BY),
+         conf.getInt(Constants.ID_TASK_LEASE_SIZE));
   }
 
   // for unit testing
-  IdService(final ZKClient zkClient, int startId, int incrementBy) {
+  IdService(final ZKClient zkClient, long startId, long incrementBy, int taskLeaseSize) {
+    Preconditions.checkArgument(taskLeaseSize > 0, "Task id lease size must be positive.");
     this.zkClient = zkClient;
     this.startId = startId;
     this.incrementBy = incrementBy;
+    this.taskLeaseSize = taskLeaseSize;
+    this.idBlocks = Maps.newEnumMap(Type.class);
+    for (Type type : Type.values()) {
+      idBlocks.put(type, new AtomicReference<IdBlock>(new IdBlock(0, 0)));
+    }
   }
 
   @Override
   protected void startUp() {
-    this.idLock = new ThreadLocal<Lock>() {
-      @Override
-      protected Lock initialValue() {
-        return new ReentrantDistributedLock(zkClient, IDS_BASEPATH + "/lock");
-      }
-    };
-    idLock.get().lock();
-    try {
-      for (Type type : Type.values()) {
-        initializeCounter(type);
-      }
-    } finally {
-      idLock.get().unlock();
+    for (Type type : Type.values()) {
+      initializeCounter(type);
     }
   }
 
@@ -124,24 +127,68 @@ public final class IdService extends AbstractIdleService {
     return new TaskId(jobId, generateId(Type.TASK));
   }
 
-  // This generally should not be a noticeable amount of time compared to the time it takes to perform tasks
-  // TODO: try optimistic locking before actual locking to improve performance.
   private long generateId(Type type) {
-    idLock.get().lock();
-    try {
+    AtomicReference<IdBlock> blockRef = idBlocks.get(type);
+    while (true) {
+      IdBlock block = blockRef.get();
+      long id = block.next.getAndAdd(incrementBy);
+      if (id < block.end) {
+        return id;
+      }
+      // block is used up, lease a new one unless another thread already did
+      synchronized (blockRef) {
+        if (blockRef.get() == block) {
+          blockRef.set(leaseBlock(type));
+        }
+      }
+    }
+  }
+
+  /**
+   * Lease a block of ids from the counter of the given type, retrying if another server changed the counter between
+   * reading and writing it.
+   */
+  private IdBlock leaseBlock(Type type) {
+    long numIds = type == Type.TASK ? taskLeaseSize : 1;
+    while (true) {
       NodeData nodeData = Futures.getUnchecked(zkClient.getData(type.path));
       long counterVal = Longs.fromByteArray(nodeData.getData());
-      Futures.getUnchecked(zkClient.setData(type.path, Longs.toByteArray(counterVal + incrementBy)));
-      return counterVal;
-    } finally {
-      idLock.get().unlock();
+      long end = counterVal + numIds * incrementBy;
+      try {
+        Futures.getUnchecked(zkClient.setData(type.path, Longs.toByteArray(end), nodeData.getStat().getVersion()));
+        return new IdBlock(counterVal, end);
+      } catch (UncheckedExecutionException e) {
+        if (!(e.getCause() instanceof KeeperException.BadVersionException)) {
+          throw e;
+        }
+      }
     }
   }
 
   private void initializeCounter(Type type) {
     Stat stat = Futures.getUnchecked(zkClient.exists(type.path));
     if (stat == null) {
-      Futures.getUnchecked(zkClient.create(type.path, Longs.toByteArray(startId), CreateMode.PERSISTENT, true));
+      try {
+        Futures.getUnchecked(zkClient.create(type.path, Longs.toByteArray(startId), CreateMode.PERSISTENT, true));
+      } catch (UncheckedExecutionException e) {
+        // another server may have initialized the counter at the same time
+        if (!(e.getCause() instanceof KeeperException.NodeExistsException)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Ids leased from a counter, from the next id to hand out up to, but not including, the end of the block.
+   */
+  private static final class IdBlock {
+    private final AtomicLong next;
+    private final long end;
+
+    private IdBlock(long next, long end) {
+      this.next = new AtomicLong(next);
+      this.end = end;
     }
   }
 }
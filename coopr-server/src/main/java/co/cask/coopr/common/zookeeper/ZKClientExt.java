@@ -93,6 +93,48 @@ public final class ZKClientExt {
     return resultFuture;
   }
 
+  /**
+   * Acts as {@link ZKClient#setData(String, byte[])} if node exists, otherwise as
+   * {@link ZKClient#create(String, byte[], org.apache.zookeeper.CreateMode, boolean)}. Same as
+   * {@link #createOrSet(ZKClient, String, byte[], org.apache.zookeeper.CreateMode, boolean)}, but takes one less round
+   * trip when the node is expected to exist already.
+   */
+  public static ListenableFuture<SetResult> setOrCreate(final ZKClient zkClient, final String path,
+                                                        @Nullable final byte[] data, final CreateMode createMode,
+                                                        final boolean createParent) {
+    final SettableFuture<SetResult> resultFuture = SettableFuture.create();
+
+    OperationFuture<Stat> setDataResult = zkClient.setData(path, data);
+    Futures.addCallback(setDataResult, new FutureCallback<Stat>() {
+      @Override
+      public void onSuccess(Stat result) {
+        resultFuture.set(new SetResult(null, result));
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (causedBy(t, KeeperException.NoNodeException.class)) {
+          ListenableFuture<SetResult> createResult = createOrSet(zkClient, path, data, createMode, createParent);
+          Futures.addCallback(createResult, new FutureCallback<SetResult>() {
+            @Override
+            public void onSuccess(SetResult result) {
+              resultFuture.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              resultFuture.setException(t);
+            }
+          });
+          return;
+        }
+        resultFuture.setException(t);
+      }
+    });
+
+    return resultFuture;
+  }
+
   /**
    * Result of {@link #createOrSet(ZKClient, String, byte[], org.apache.zookeeper.CreateMode, boolean)} operation.
    * {@link #getPath()}
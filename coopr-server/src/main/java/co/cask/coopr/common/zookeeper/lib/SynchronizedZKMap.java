@@ -16,23 +16,39 @@
 package co.cask.coopr.common.zookeeper.lib;
 
 import co.cask.coopr.common.zookeeper.ZKClientExt;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.twill.zookeeper.NodeChildren;
 import org.apache.twill.zookeeper.NodeData;
 import org.apache.twill.zookeeper.OperationFuture;
 import org.apache.twill.zookeeper.ZKClient;
 import org.apache.twill.zookeeper.ZKClients;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 
 /**
@@ -40,106 +56,177 @@ import java.util.concurrent.locks.Lock;
  * by Zookeeper.
  * <p/>
  * Does not permit null keys or values.
+ * <p/>
+ * By default, the in-memory view is fully reloaded whenever the children version of the entries node changes. In
+ * incremental mode, every write also appends the changed key to a bounded change log kept as the data of the entries
+ * node, so that other instances only need to fetch the entries that changed since their view was loaded. They fall
+ * back to a full reload if they are too far behind. All instances that share a path must use the same mode.
+ * <p/>
+ * An entry and the change log are written in two zookeeper operations, so a writer that dies in between leaves a
+ * change that is not in the log. To catch such changes, instances in incremental mode watch every entry they loaded,
+ * and fetch the entries reported changed by a watch again on the next read. Entries that were added or removed without
+ * being in the log show up as a difference between the number of entries in the view and the number of children of
+ * the entries node, which is read along with the log, in which case the children are compared with the view. The
+ * change log is still needed since watches are delivered asynchronously, and a read must see the changes that other
+ * instances finished before it.
+ * <p/>
+ * Since every write in incremental mode sets the data of the one entries node, writes to a map are serialized on that
+ * znode, and every writer contends for its version. Incremental mode suits maps that are read much more often than
+ * they are written. Maps with heavy write loads should be split across several maps, or use the default mode.
+ * <p/>
+ * Also in incremental mode, writes do not take the distributed lock. Entries are written without a lock, and
+ * {@link #update(String, Function)} and {@link #removeIf(String, Predicate)} use the version of the entry node to
+ * detect concurrent changes, retrying if the entry was changed by someone else. This keeps single key operations at
+ * one or two zookeeper round trips. A put is two round trips, one for the entry and one for the change log. They can
+ * not be made a single multi operation, as the zookeeper client used here has no support for it. Callers that need
+ * to keep invariants across several keys should use their own lock.
  *
  * @param <T> Type of object to keep in map values.
  */
 public class SynchronizedZKMap<T> implements Map<String, T> {
   private static final String ENTRIES_PATH = "/entries";
   private static final String LOCK_PATH = "/lock";
+  private static final int MAX_CHANGE_LOG_SIZE = 100;
+  // change log marker for a change that affects all entries, like clearing the map
+  private static final String ALL_ENTRIES_CHANGED = "";
+  private static final Joiner CHANGE_LOG_JOINER = Joiner.on('\n');
+  private static final Splitter CHANGE_LOG_SPLITTER = Splitter.on('\n');
   private final ZKClient zkClient;
   private final Serializer<T> serializer;
+  private final boolean incremental;
 
   private final Lock globalLock;
   private Map<String, T> currentView;
+  // children version of the entries node, or the data version of it in incremental mode
   private int currentViewVersion;
+  // keys of the latest changes and the data version of the entries node they were read at. Used in incremental mode.
+  private List<String> changeLog;
+  private int changeLogVersion;
+  // data versions of the entry nodes in the current view. Used in incremental mode.
+  private final Map<String, Integer> currentNodeVersions;
+  // number of entries when the change log was read. Used in incremental mode.
+  private int entriesCount;
+  // keys of entries that are watched, and of entries that were changed according to their watches. Changed by the
+  // zookeeper event thread, used in incremental mode.
+  private final Set<String> watchedKeys;
+  private final Set<String> watchedChanges;
 
   public SynchronizedZKMap(ZKClient zkClient, String namespace, Serializer<T> serializer) {
-    this(namespace == null ? zkClient : ZKClients.namespace(zkClient, namespace), serializer);
+    this(zkClient, namespace, serializer, false);
+  }
+
+  public SynchronizedZKMap(ZKClient zkClient, String namespace, Serializer<T> serializer, boolean incremental) {
+    this(namespace == null ? zkClient : ZKClients.namespace(zkClient, namespace), serializer, incremental);
   }
 
   public SynchronizedZKMap(ZKClient zkClient, Serializer<T> serializer) {
+    this(zkClient, serializer, false);
+  }
+
+  /**
+   * Create a map backed by zookeeper.
+   *
+   * @param zkClient Client to use for zookeeper operations, namespaced to the path of the map.
+   * @param serializer Serializer for map values.
+   * @param incremental Whether to refresh the in-memory view incrementally, fetching only changed entries.
+   */
+  public SynchronizedZKMap(ZKClient zkClient, Serializer<T> serializer, boolean incremental) {
     this.zkClient = zkClient;
     this.serializer = serializer;
+    this.incremental = incremental;
     this.currentView = Maps.newHashMap();
     this.currentViewVersion = -1;
+    this.changeLog = ImmutableList.of();
+    this.changeLogVersion = -1;
+    this.currentNodeVersions = Maps.newHashMap();
+    this.watchedKeys = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    this.watchedChanges = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     this.globalLock = new ReentrantDistributedLock(zkClient, LOCK_PATH);
   }
 
   @Override
   public synchronized int size() {
-    globalLock.lock();
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       return currentView.size();
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
   @Override
   public synchronized boolean isEmpty() {
-    globalLock.lock();
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       return currentView.isEmpty();
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
   @Override
   public synchronized boolean containsKey(Object key) {
-    globalLock.lock();
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       return currentView.containsKey(key);
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
   @Override
   public synchronized boolean containsValue(Object value) {
-    globalLock.lock();
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       return currentView.containsValue(value);
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
   @Override
   public synchronized T get(Object key) {
-    globalLock.lock();
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       return currentView.get(key);
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
   // note: may not return value and still delete smth from ZK if in-memory view is stale
   public synchronized T put(String key, T value) {
-    globalLock.lock();
+    acquireLock();
     try {
-      reloadCacheIfNeeded();
+      // in incremental mode the write does not depend on the view, and a stale change log is read again when the
+      // change is recorded, so the view is not brought up to date first
+      if (!incremental) {
+        reloadCacheIfNeeded();
+      }
       return putInternal(key, value);
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
   // note: we may return null even though we removed non-null element if the view in memory is stale. Which is OK
   @Override
   public synchronized T remove(Object key) {
-    globalLock.lock();
+    if (incremental) {
+      // only the caller that actually deleted the entry gets the value back
+      return removeOptimistically((String) key, Predicates.<T>alwaysTrue());
+    }
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       return removeInternal(key);
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
@@ -150,53 +237,233 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
   }
 
   public synchronized void clear() {
-    globalLock.lock();
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       clearInternal();
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
   @Override
   public synchronized Set<String> keySet() {
-    globalLock.lock();
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       return currentView.keySet();
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
   @Override
   public synchronized Collection<T> values() {
-    globalLock.lock();
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       return currentView.values();
     } finally {
-      globalLock.unlock();
+      releaseLock();
     }
   }
 
   @Override
   public synchronized Set<Entry<String, T>> entrySet() {
-    globalLock.lock();
+    acquireLock();
     try {
       reloadCacheIfNeeded();
       return currentView.entrySet();
+    } finally {
+      releaseLock();
+    }
+  }
+
+  /**
+   * Atomically updates the value of the given key, if it exists. The updater is given the current value and returns
+   * the new value, or null to leave the value as it is. The updater must not modify the value it is given, and may be
+   * called more than once if the value is changed concurrently.
+   *
+   * @param key Key to update.
+   * @param updater Function that computes the new value from the current value.
+   * @return The new value, or null if the key does not exist or the updater returned null.
+   */
+  public synchronized T update(String key, Function<T, T> updater) {
+    if (incremental) {
+      return updateOptimistically(key, updater);
+    }
+    globalLock.lock();
+    try {
+      reloadCacheIfNeeded();
+      T current = currentView.get(key);
+      if (current == null) {
+        return null;
+      }
+      T updated = updater.apply(current);
+      if (updated != null) {
+        putInternal(key, updated);
+      }
+      return updated;
     } finally {
       globalLock.unlock();
     }
   }
 
+  /**
+   * Atomically removes the given key if its current value matches the given predicate. The predicate may be called
+   * more than once if the value is changed concurrently.
+   *
+   * @param key Key to remove.
+   * @param predicate Predicate the current value must match for it to be removed.
+   * @return The removed value, or null if the key does not exist or its value did not match.
+   */
+  public synchronized T removeIf(String key, Predicate<T> predicate) {
+    if (incremental) {
+      return removeOptimistically(key, predicate);
+    }
+    globalLock.lock();
+    try {
+      reloadCacheIfNeeded();
+      T current = currentView.get(key);
+      if (current == null || !predicate.apply(current)) {
+        return null;
+      }
+      return removeInternal(key);
+    } finally {
+      globalLock.unlock();
+    }
+  }
+
+  private T updateOptimistically(String key, Function<T, T> updater) {
+    String itemNodePath = getItemNodePath(key);
+    // start from the current view, and only fetch the entry if it turns out to be stale
+    T current = currentView.get(key);
+    Integer version = currentNodeVersions.get(key);
+    while (true) {
+      if (current == null || version == null) {
+        NodeData nodeData = Futures.getUnchecked(getEntryData(key));
+        if (nodeData == null) {
+          updateView(key, null, -1);
+          return null;
+        }
+        current = serializer.deserialize(nodeData.getData());
+        version = nodeData.getStat().getVersion();
+        // keep the view in line with what we just read, so callers scanning the view do not pick it up again
+        updateView(key, current, version);
+      }
+      T updated = updater.apply(current);
+      if (updated == null) {
+        return null;
+      }
+      try {
+        Stat stat = Futures.getUnchecked(zkClient.setData(itemNodePath, serializer.serialize(updated), version));
+        updateView(key, updated, stat.getVersion());
+        recordChange(key);
+        watchAgain(key);
+        return updated;
+      } catch (UncheckedExecutionException e) {
+        if (!isConcurrentChange(e)) {
+          throw e;
+        }
+        current = null;
+      }
+    }
+  }
+
+  private T removeOptimistically(String key, Predicate<T> predicate) {
+    String itemNodePath = getItemNodePath(key);
+    T current = currentView.get(key);
+    Integer version = currentNodeVersions.get(key);
+    while (true) {
+      if (current == null || version == null) {
+        NodeData nodeData = Futures.getUnchecked(getEntryData(key));
+        if (nodeData == null) {
+          updateView(key, null, -1);
+          return null;
+        }
+        current = serializer.deserialize(nodeData.getData());
+        version = nodeData.getStat().getVersion();
+        // keep the view in line with what we just read, so callers scanning the view do not pick it up again
+        updateView(key, current, version);
+      }
+      if (!predicate.apply(current)) {
+        return null;
+      }
+      try {
+        Futures.getUnchecked(zkClient.delete(itemNodePath, version));
+        updateView(key, null, -1);
+        recordChange(key);
+        return current;
+      } catch (UncheckedExecutionException e) {
+        if (!isConcurrentChange(e)) {
+          throw e;
+        }
+        current = null;
+      }
+    }
+  }
+
+  /**
+   * Makes the next read fetch an entry this instance just wrote, so that the entry is watched again. Its watch was
+   * used up by the write, or it was never set for a new entry. The fetch runs alongside the read of the change log.
+   */
+  private void watchAgain(String key) {
+    watchedChanges.add(key);
+  }
+
+  private boolean isConcurrentChange(UncheckedExecutionException e) {
+    return e.getCause() instanceof KeeperException.BadVersionException ||
+      e.getCause() instanceof KeeperException.NoNodeException;
+  }
+
+  private void updateView(String key, T value, int nodeVersion) {
+    if (value == null && !currentView.containsKey(key)) {
+      return;
+    }
+    Map<String, T> current = Maps.newHashMap(currentView);
+    if (value == null) {
+      current.remove(key);
+      currentNodeVersions.remove(key);
+    } else {
+      current.put(key, value);
+      currentNodeVersions.put(key, nodeVersion);
+    }
+    currentView = ImmutableMap.copyOf(current);
+  }
+
+  private void acquireLock() {
+    // in incremental mode writes detect concurrent changes themselves
+    if (!incremental) {
+      globalLock.lock();
+    }
+  }
+
+  private void releaseLock() {
+    if (!incremental) {
+      globalLock.unlock();
+    }
+  }
+
   private T putInternal(String key, T value) {
     Map<String, T> current = Maps.newHashMap(currentView);
     T result = current.put(key, value);
     currentView = ImmutableMap.<String, T>builder().putAll(current).build();
     String itemNodePath = getItemNodePath(key);
+    if (incremental) {
+      // other instances learn about the change from the change log, so the node can simply be updated
+      ZKClientExt.SetResult setResult;
+      if (result == null) {
+        setResult = Futures.getUnchecked(ZKClientExt.createOrSet(zkClient, itemNodePath, serializer.serialize(value),
+                                                                 CreateMode.PERSISTENT, true));
+      } else {
+        setResult = Futures.getUnchecked(ZKClientExt.setOrCreate(zkClient, itemNodePath, serializer.serialize(value),
+                                                                 CreateMode.PERSISTENT, true));
+      }
+      currentNodeVersions.put(key, setResult.getStat() == null ? 0 : setResult.getStat().getVersion());
+      recordChange(key);
+      watchAgain(key);
+      return result;
+    }
     // Note: we do delete and add new node with new data VS createOrSet() so that cversion of children change (we depend
     //       on it when checking if the current in-memory view is stale)
     Futures.getUnchecked(ZKClientExt.delete(zkClient, itemNodePath, true));
@@ -220,6 +487,10 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
     // note: we cannot only issue remove from zk if removed != null because even if removed == null this could mean
     //       the element was removed (and for other race-condition reasons)
     Futures.getUnchecked(ZKClientExt.delete(zkClient, getItemNodePath((String) key), true));
+    if (incremental) {
+      currentNodeVersions.remove(key);
+      recordChange((String) key);
+    }
 
     return removed;
   }
@@ -233,10 +504,18 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
         deleteFutures.add(ZKClientExt.delete(zkClient, getNodePath(node), true));
       }
       Futures.getUnchecked(Futures.allAsList(deleteFutures));
+      if (incremental) {
+        currentNodeVersions.clear();
+        recordChange(ALL_ENTRIES_CHANGED);
+      }
     }
   }
 
   private void reloadCacheIfNeeded() {
+    if (incremental) {
+      reloadChangesIfNeeded();
+      return;
+    }
     NodeChildren nodeChildren = Futures.getUnchecked(ZKClientExt.getChildrenOrNull(zkClient, ENTRIES_PATH));
     if (nodeChildren == null) {
       if (currentView.size() > 0) {
@@ -274,6 +553,211 @@ public class SynchronizedZKMap<T> implements Map<String, T> {
     currentViewVersion = trueVersion;
   }
 
+  /**
+   * Brings the in-memory view up to date in incremental mode, fetching only the entries that were changed since the
+   * view was last loaded, according to the change log or to their watches.
+   */
+  private void reloadChangesIfNeeded() {
+    // start fetching the entries that were reported changed by their watches while the change log is read
+    Map<String, ListenableFuture<NodeData>> keyAndDataFutures = Maps.newHashMap();
+    for (String key : ImmutableList.copyOf(watchedChanges)) {
+      watchedChanges.remove(key);
+      keyAndDataFutures.put(key, getEntryData(key));
+    }
+
+    if (!readChangeLog()) {
+      if (currentView.size() > 0) {
+        currentView = Collections.emptyMap();
+      }
+      currentNodeVersions.clear();
+      currentViewVersion = -1;
+      return;
+    }
+
+    if (currentViewVersion == changeLogVersion && keyAndDataFutures.isEmpty() &&
+      currentView.size() == entriesCount) {
+      return;
+    }
+
+    int changesCount = changeLogVersion - currentViewVersion;
+    if (currentViewVersion < 0 || changesCount < 0 || changesCount > changeLog.size()) {
+      // the change log does not go back far enough, or the entries node was recreated
+      reloadAll();
+      return;
+    }
+    Set<String> changedKeys = Sets.newHashSet(changeLog.subList(changeLog.size() - changesCount, changeLog.size()));
+    if (changedKeys.contains(ALL_ENTRIES_CHANGED)) {
+      reloadAll();
+      return;
+    }
+    for (String key : changedKeys) {
+      if (!keyAndDataFutures.containsKey(key)) {
+        keyAndDataFutures.put(key, getEntryData(key));
+      }
+    }
+    Map<String, T> updated = Maps.newHashMap(currentView);
+    applyEntryData(updated, keyAndDataFutures);
+
+    if (updated.size() != entriesCount) {
+      // entries were added or removed without being in the change log, or were changed while they were fetched
+      NodeChildren nodeChildren = Futures.getUnchecked(ZKClientExt.getChildrenOrNull(zkClient, ENTRIES_PATH));
+      Set<String> children = nodeChildren == null ?
+        ImmutableSet.<String>of() : ImmutableSet.copyOf(nodeChildren.getChildren());
+      for (String removedKey : ImmutableList.copyOf(Sets.difference(updated.keySet(), children))) {
+        updated.remove(removedKey);
+        currentNodeVersions.remove(removedKey);
+      }
+      keyAndDataFutures.clear();
+      for (String addedKey : Sets.difference(children, updated.keySet())) {
+        keyAndDataFutures.put(addedKey, getEntryData(addedKey));
+      }
+      applyEntryData(updated, keyAndDataFutures);
+    }
+
+    currentView = ImmutableMap.copyOf(updated);
+    currentViewVersion = changeLogVersion;
+  }
+
+  /**
+   * Waits for the given entry fetches and applies their results to the given view.
+   */
+  private void applyEntryData(Map<String, T> view, Map<String, ListenableFuture<NodeData>> keyAndDataFutures) {
+    Futures.getUnchecked(Futures.successfulAsList(keyAndDataFutures.values()));
+    for (Entry<String, ListenableFuture<NodeData>> keyAndData : keyAndDataFutures.entrySet()) {
+      NodeData nodeData = Futures.getUnchecked(keyAndData.getValue());
+      if (nodeData == null) {
+        view.remove(keyAndData.getKey());
+        currentNodeVersions.remove(keyAndData.getKey());
+      } else {
+        view.put(keyAndData.getKey(), serializer.deserialize(nodeData.getData()));
+        currentNodeVersions.put(keyAndData.getKey(), nodeData.getStat().getVersion());
+      }
+    }
+  }
+
+  /**
+   * Reloads all entries in incremental mode. The view is marked with the version of the change log read before the
+   * entries were listed, so that changes made while reloading are fetched again next time.
+   */
+  private void reloadAll() {
+    int version = changeLogVersion;
+    NodeChildren nodeChildren = Futures.getUnchecked(ZKClientExt.getChildrenOrNull(zkClient, ENTRIES_PATH));
+    currentNodeVersions.clear();
+    if (nodeChildren == null) {
+      currentView = Collections.emptyMap();
+      currentViewVersion = -1;
+      return;
+    }
+
+    Map<String, ListenableFuture<NodeData>> nodeAndDataFutures = Maps.newHashMap();
+    for (String node : nodeChildren.getChildren()) {
+      nodeAndDataFutures.put(node, getEntryData(node));
+    }
+    Futures.getUnchecked(Futures.successfulAsList(nodeAndDataFutures.values()));
+
+    ImmutableMap.Builder<String, T> builder = ImmutableMap.builder();
+    for (Entry<String, ListenableFuture<NodeData>> nodeAndData : nodeAndDataFutures.entrySet()) {
+      NodeData nodeData = Futures.getUnchecked(nodeAndData.getValue());
+      // node may have been removed after listing
+      if (nodeData != null) {
+        builder.put(nodeAndData.getKey(), serializer.deserialize(nodeData.getData()));
+        currentNodeVersions.put(nodeAndData.getKey(), nodeData.getStat().getVersion());
+      }
+    }
+
+    currentView = builder.build();
+    currentViewVersion = version;
+  }
+
+  /**
+   * Fetches an entry and watches it for changes if it is not watched yet, or returns null in the future if it does
+   * not exist. Used in incremental mode.
+   */
+  private ListenableFuture<NodeData> getEntryData(final String key) {
+    if (!watchedKeys.add(key)) {
+      return ZKClientExt.getDataOrNull(zkClient, getItemNodePath(key));
+    }
+    ListenableFuture<NodeData> dataFuture = ZKClientExt.getDataOrNull(zkClient, getItemNodePath(key), new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+        if (event.getType() == Event.EventType.NodeDataChanged || event.getType() == Event.EventType.NodeDeleted) {
+          watchedKeys.remove(key);
+          watchedChanges.add(key);
+        }
+      }
+    });
+    Futures.addCallback(dataFuture, new FutureCallback<NodeData>() {
+      @Override
+      public void onSuccess(NodeData result) {
+        if (result == null) {
+          // no watch is left on entries that do not exist
+          watchedKeys.remove(key);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        watchedKeys.remove(key);
+      }
+    });
+    return dataFuture;
+  }
+
+  /**
+   * Reads the change log from the data of the entries node.
+   *
+   * @return false if the entries node does not exist, true otherwise.
+   */
+  private boolean readChangeLog() {
+    NodeData entriesData = Futures.getUnchecked(ZKClientExt.getDataOrNull(zkClient, ENTRIES_PATH));
+    if (entriesData == null) {
+      changeLog = ImmutableList.of();
+      changeLogVersion = -1;
+      entriesCount = 0;
+      return false;
+    }
+    byte[] data = entriesData.getData();
+    changeLog = data == null || data.length == 0 ?
+      ImmutableList.<String>of() : ImmutableList.copyOf(CHANGE_LOG_SPLITTER.split(new String(data, Charsets.UTF_8)));
+    changeLogVersion = entriesData.getStat().getVersion();
+    entriesCount = entriesData.getStat().getNumChildren();
+    return true;
+  }
+
+  /**
+   * Appends the given key to the change log, using the version of the entries node to detect concurrent changes.
+   * If the in-memory view was up to date before the change, it is kept marked as up to date.
+   */
+  private void recordChange(String key) {
+    while (true) {
+      if (changeLogVersion < 0 && !readChangeLog()) {
+        // nothing was ever written, so there is nothing others could have seen
+        return;
+      }
+      List<String> updatedLog = Lists.newArrayList(changeLog);
+      updatedLog.add(key);
+      if (updatedLog.size() > MAX_CHANGE_LOG_SIZE) {
+        updatedLog = updatedLog.subList(updatedLog.size() - MAX_CHANGE_LOG_SIZE, updatedLog.size());
+      }
+      byte[] data = CHANGE_LOG_JOINER.join(updatedLog).getBytes(Charsets.UTF_8);
+      try {
+        Stat stat = Futures.getUnchecked(zkClient.setData(ENTRIES_PATH, data, changeLogVersion));
+        if (currentViewVersion == changeLogVersion) {
+          currentViewVersion = stat.getVersion();
+        }
+        changeLog = ImmutableList.copyOf(updatedLog);
+        changeLogVersion = stat.getVersion();
+        return;
+      } catch (UncheckedExecutionException e) {
+        if (!(e.getCause() instanceof KeeperException.BadVersionException)) {
+          throw e;
+        }
+        // someone else changed the log since we read it
+        readChangeLog();
+      }
+    }
+  }
+
 
   private synchronized String getItemNodePath(String key) {
     return getNodePath(key);
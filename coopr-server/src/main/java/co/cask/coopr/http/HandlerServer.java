@@ -21,6 +21,7 @@ import co.cask.cdap.security.auth.TokenValidator;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.http.handler.auth.SecurityAuthenticationHttpHandler;
+import co.cask.coopr.http.handler.auth.ValidatedTokenCache;
 import co.cask.http.HttpHandler;
 import co.cask.http.NettyHttpService;
 import co.cask.http.SSLConfig;
@@ -61,6 +62,9 @@ abstract class HandlerServer extends AbstractIdleService {
     int numWorkerThreads = conf.getInt(Constants.NETTY_WORKER_NUM_THREADS);
     final boolean securityEnabled = conf.getBoolean(co.cask.cdap.common.conf.Constants.Security.ENABLED);
     final String realm = conf.get(co.cask.cdap.common.conf.Constants.Security.CFG_REALM);
+    // every connection has its own authentication handler, so they share the tokens that passed validation
+    final ValidatedTokenCache validatedTokens = new ValidatedTokenCache(conf.getInt(Constants.TOKEN_CACHE_MAX_SIZE),
+                                                                        conf.getInt(Constants.TOKEN_CACHE_SECS));
 
     NettyHttpService.Builder builder = NettyHttpService.builder();
     builder.addHttpHandlers(handlers);
@@ -82,7 +86,7 @@ abstract class HandlerServer extends AbstractIdleService {
           }
           input.addAfter(DECODER_CHANNEL_HANDLER_NAME, AUTHENTICATION_CHANNEL_HANDLER_NAME,
                          new SecurityAuthenticationHttpHandler(realm, tokenValidator, cConf, accessTokenTransformer,
-                                                               discoveryServiceClient));
+                                                               discoveryServiceClient, validatedTokens));
           return input;
         }
       });
@@ -58,7 +58,7 @@ public abstract class AbstractAuthHandler extends AbstractHttpHandler {
       return null;
     }
     try {
-      Tenant tenant = tenantStore.getTenantByName(tenantName);
+      Tenant tenant = tenantStore.getCachedTenantByName(tenantName);
       if (tenant == null) {
         responder.sendError(HttpResponseStatus.NOT_FOUND, "Tenant does not exist.");
         return null;
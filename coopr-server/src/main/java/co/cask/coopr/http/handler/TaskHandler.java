@@ -20,10 +20,15 @@ import co.cask.coopr.http.HttpHelper;
 import co.cask.coopr.http.request.FinishTaskRequest;
 import co.cask.coopr.http.request.TakeTaskRequest;
 import co.cask.coopr.scheduler.task.MissingEntityException;
+import co.cask.coopr.scheduler.task.SchedulableTask;
 import co.cask.coopr.scheduler.task.TaskQueueService;
 import co.cask.http.AbstractHttpHandler;
 import co.cask.http.HttpResponder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
@@ -31,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 
@@ -54,6 +60,8 @@ public final class TaskHandler extends AbstractHttpHandler {
    * Take a task from the queue to execute. Post body must contain a workerId key, which must also be passed back
    * when finishing a task. Tasks are returned as a json object with taskId, jobId, clusterId, taskName and nodeId
    * as key value pairs, and with a config key whose value is a json object with all the configuration settings.
+   * If the body contains a waitMs key and there is no task available, the request waits up to that many milliseconds
+   * for a task to be queued before returning with no task.
    *
    * @param request The request to take a task.
    * @param responder Responder to send the response.
@@ -62,21 +70,65 @@ public final class TaskHandler extends AbstractHttpHandler {
   @Path("/take")
   public void handleTakeTask(HttpRequest request, HttpResponder responder) {
     TakeTaskRequest takeRequest = HttpHelper.decodeRequestBody(request, responder, TakeTaskRequest.class, gson);
+    if (takeRequest == null) {
+      return;
+    }
+    takeTasks(takeRequest, 1, false, responder);
+  }
+
+  /**
+   * Take a batch of tasks from the queue to execute. Post body is the same as for {@link #handleTakeTask}, with an
+   * optional maxTasks key for the maximum number of tasks to take, defaulting to 1. Tasks are returned as a json array
+   * of task objects, each in the same format as returned when taking a single task. Each task must be finished
+   * separately.
+   *
+   * @param request The request to take tasks.
+   * @param responder Responder to send the response.
+   */
+  @POST
+  @Path("/take/batch")
+  public void handleTakeTasks(HttpRequest request, HttpResponder responder) {
+    TakeTaskRequest takeRequest = HttpHelper.decodeRequestBody(request, responder, TakeTaskRequest.class, gson);
+    if (takeRequest == null) {
+      return;
+    }
+    takeTasks(takeRequest, takeRequest.getMaxTasks(), true, responder);
+  }
 
+  private void takeTasks(final TakeTaskRequest takeRequest, int maxTasks, final boolean batch,
+                         final HttpResponder responder) {
+    ListenableFuture<List<SchedulableTask>> tasksFuture;
     try {
-      String taskJson = taskQueueService.takeNextClusterTask(takeRequest);
-      if (taskJson == null) {
-        responder.sendStatus(HttpResponseStatus.NO_CONTENT);
-        return;
-      }
-      responder.sendString(HttpResponseStatus.OK, taskJson);
+      tasksFuture = taskQueueService.waitForClusterTasks(takeRequest, maxTasks);
     } catch (IOException e) {
       LOG.error("Exception while taking task.", e);
       responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error taking task.");
+      return;
     } catch (MissingEntityException e) {
       responder.sendError(HttpResponseStatus.FORBIDDEN, "Provisioner " + takeRequest.getProvisionerId()
         + " is not registered.");
+      return;
     }
+
+    // if the request is waiting for a task, the response is sent later from another thread
+    Futures.addCallback(tasksFuture, new FutureCallback<List<SchedulableTask>>() {
+      @Override
+      public void onSuccess(List<SchedulableTask> tasks) {
+        if (tasks.isEmpty()) {
+          responder.sendStatus(HttpResponseStatus.NO_CONTENT);
+        } else if (batch) {
+          responder.sendJson(HttpResponseStatus.OK, tasks, new TypeToken<List<SchedulableTask>>() { }.getType(), gson);
+        } else {
+          responder.sendString(HttpResponseStatus.OK, gson.toJson(tasks.get(0)));
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.error("Exception while taking task.", t);
+        responder.sendError(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Error taking task.");
+      }
+    });
   }
 
   /**
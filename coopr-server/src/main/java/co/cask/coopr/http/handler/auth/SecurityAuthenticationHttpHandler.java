@@ -68,17 +68,25 @@ public class SecurityAuthenticationHttpHandler extends SimpleChannelHandler {
   private final Iterable<Discoverable> discoverables;
   private final CConfiguration configuration;
   private final String realm;
+  private final ValidatedTokenCache validatedTokens;
 
 
+  /**
+   * Create a handler that validates access tokens.
+   *
+   * @param validatedTokens Cache of tokens that passed validation, shared by the handlers of all connections.
+   */
   public SecurityAuthenticationHttpHandler(String realm, TokenValidator tokenValidator,
                                            CConfiguration configuration,
                                            AccessTokenTransformer accessTokenTransformer,
-                                           DiscoveryServiceClient discoveryServiceClient) {
+                                           DiscoveryServiceClient discoveryServiceClient,
+                                           ValidatedTokenCache validatedTokens) {
     this.realm = realm;
     this.tokenValidator = tokenValidator;
     this.accessTokenTransformer = accessTokenTransformer;
     this.discoverables = discoveryServiceClient.discover(Constants.Service.EXTERNAL_AUTHENTICATION);
     this.configuration = configuration;
+    this.validatedTokens = validatedTokens;
   }
 
   /**
@@ -110,7 +118,8 @@ public class SecurityAuthenticationHttpHandler extends SimpleChannelHandler {
     logEntry.setClientIP(((InetSocketAddress) ctx.getChannel().getRemoteAddress()).getAddress());
     logEntry.setRequestLine(msg.getMethod(), msg.getUri(), msg.getProtocolVersion());
 
-    TokenState tokenState = tokenValidator.validate(accessToken);
+    AccessTokenTransformer.AccessTokenIdentifierPair validatedToken = validatedTokens.get(accessToken);
+    TokenState tokenState = validatedToken == null ? tokenValidator.validate(accessToken) : TokenState.VALID;
     if (!tokenState.isValid()) {
       HttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.UNAUTHORIZED);
       logEntry.setResponseCode(HttpResponseStatus.UNAUTHORIZED.getCode());
@@ -147,8 +156,11 @@ public class SecurityAuthenticationHttpHandler extends SimpleChannelHandler {
       writeFuture.addListener(ChannelFutureListener.CLOSE);
       return false;
     } else {
-      AccessTokenTransformer.AccessTokenIdentifierPair accessTokenIdentifierPair =
-        accessTokenTransformer.transform(accessToken);
+      AccessTokenTransformer.AccessTokenIdentifierPair accessTokenIdentifierPair = validatedToken;
+      if (accessTokenIdentifierPair == null) {
+        accessTokenIdentifierPair = accessTokenTransformer.transform(accessToken);
+        validatedTokens.put(accessToken, accessTokenIdentifierPair);
+      }
       logEntry.setUserName(accessTokenIdentifierPair.getAccessTokenIdentifierObj().getUsername());
       msg.setHeader(HttpHeaders.Names.AUTHORIZATION,
                     "CDAP-verified " + accessTokenIdentifierPair.getAccessTokenIdentifierStr());
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.http.handler.auth;
+
+import co.cask.cdap.security.auth.AccessTokenTransformer;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Cache of access tokens that passed validation, shared by the authentication handlers of all connections so that
+ * a token is not validated on every request. Tokens are kept for a limited time, and never past their own expiration.
+ */
+public class ValidatedTokenCache {
+  private final Cache<String, AccessTokenTransformer.AccessTokenIdentifierPair> validatedTokens;
+
+  /**
+   * Create a cache of validated tokens.
+   *
+   * @param maxSize Maximum number of tokens to keep.
+   * @param ttlSecs Seconds to keep a token after it was validated.
+   */
+  public ValidatedTokenCache(int maxSize, long ttlSecs) {
+    this(maxSize, ttlSecs, Ticker.systemTicker());
+  }
+
+  ValidatedTokenCache(int maxSize, long ttlSecs, Ticker ticker) {
+    this.validatedTokens = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterWrite(ttlSecs, TimeUnit.SECONDS)
+      .ticker(ticker)
+      .build();
+  }
+
+  /**
+   * Get a token that passed validation before and has not expired since.
+   *
+   * @param accessToken Access token from the request.
+   * @return Transformed access token, or null if it has to be validated.
+   */
+  @Nullable
+  AccessTokenTransformer.AccessTokenIdentifierPair get(@Nullable String accessToken) {
+    if (accessToken == null) {
+      return null;
+    }
+    AccessTokenTransformer.AccessTokenIdentifierPair validatedToken = validatedTokens.getIfPresent(accessToken);
+    if (validatedToken != null &&
+      validatedToken.getAccessTokenIdentifierObj().getExpireTimestamp() < System.currentTimeMillis()) {
+      // let the validator report the expiration
+      validatedTokens.invalidate(accessToken);
+      return null;
+    }
+    return validatedToken;
+  }
+
+  /**
+   * Add a token that passed validation.
+   *
+   * @param accessToken Access token from the request.
+   * @param validatedToken Transformed access token.
+   */
+  void put(String accessToken, AccessTokenTransformer.AccessTokenIdentifierPair validatedToken) {
+    validatedTokens.put(accessToken, validatedToken);
+  }
+
+  /**
+   * Remove a token, so that it is validated again the next time it is used.
+   *
+   * @param accessToken Access token to remove.
+   */
+  public void invalidate(String accessToken) {
+    validatedTokens.invalidate(accessToken);
+  }
+}
@@ -3,11 +3,8 @@ package co.cask.coopr.http.request;
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.scheduler.ClusterAction;
 import co.cask.coopr.scheduler.task.ClusterJob;
-import co.cask.coopr.scheduler.task.ClusterTask;
 import com.google.common.base.Objects;
 
-import java.util.Map;
-
 /**
  * The response to a cluster status call.
  */
@@ -24,16 +21,8 @@ public class ClusterStatusResponse {
     this.status = cluster.getStatus();
     this.actionstatus = job.getJobStatus();
     this.action = job.getClusterAction();
-    Map<String, ClusterTask.Status> taskStatus = job.getTaskStatus();
-
-    int completedTasks = 0;
-    for (Map.Entry<String, ClusterTask.Status> entry : taskStatus.entrySet()) {
-      if (entry.getValue().equals(ClusterTask.Status.COMPLETE)) {
-        completedTasks++;
-      }
-    }
-    this.stepscompleted = completedTasks;
-    this.stepstotal = taskStatus.size();
+    this.stepscompleted = job.getCompletedTaskCount();
+    this.stepstotal = job.getTaskStatus().size();
   }
 
   public String getClusterid() {
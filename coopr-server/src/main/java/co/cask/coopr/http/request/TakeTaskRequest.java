@@ -10,14 +10,28 @@ public class TakeTaskRequest {
   private final String workerId;
   private final String provisionerId;
   private final String tenantId;
+  private final Integer maxTasks;
+  private final Long waitMs;
 
   public TakeTaskRequest(String workerId, String provisionerId, String tenantId) {
+    this(workerId, provisionerId, tenantId, null);
+  }
+
+  public TakeTaskRequest(String workerId, String provisionerId, String tenantId, Integer maxTasks) {
+    this(workerId, provisionerId, tenantId, maxTasks, null);
+  }
+
+  public TakeTaskRequest(String workerId, String provisionerId, String tenantId, Integer maxTasks, Long waitMs) {
     Preconditions.checkArgument(workerId != null && !workerId.isEmpty(), "workerId must be specified.");
     Preconditions.checkArgument(provisionerId != null && !provisionerId.isEmpty(), "provisionerId must be specified.");
     Preconditions.checkArgument(tenantId != null && !tenantId.isEmpty(), "tenantId must be specified.");
+    Preconditions.checkArgument(maxTasks == null || maxTasks > 0, "maxTasks must be positive.");
+    Preconditions.checkArgument(waitMs == null || waitMs >= 0, "waitMs must not be negative.");
     this.workerId = workerId;
     this.provisionerId = provisionerId;
     this.tenantId = tenantId;
+    this.maxTasks = maxTasks;
+    this.waitMs = waitMs;
   }
 
   public String getWorkerId() {
@@ -32,6 +46,24 @@ public class TakeTaskRequest {
     return tenantId;
   }
 
+  /**
+   * Get the maximum number of tasks to take in one request. Only used when taking a batch of tasks.
+   *
+   * @return Maximum number of tasks to take, defaulting to 1.
+   */
+  public int getMaxTasks() {
+    return maxTasks == null ? 1 : maxTasks;
+  }
+
+  /**
+   * Get how long the request should wait for a task to be queued if there is none available right away.
+   *
+   * @return Milliseconds to wait for a task, defaulting to 0 for not waiting.
+   */
+  public long getWaitMs() {
+    return waitMs == null ? 0 : waitMs;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -45,11 +77,13 @@ public class TakeTaskRequest {
 
     return Objects.equal(workerId, that.workerId) &&
       Objects.equal(provisionerId, that.provisionerId) &&
-      Objects.equal(tenantId, that.tenantId);
+      Objects.equal(tenantId, that.tenantId) &&
+      Objects.equal(maxTasks, that.maxTasks) &&
+      Objects.equal(waitMs, that.waitMs);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(workerId, provisionerId, tenantId);
+    return Objects.hashCode(workerId, provisionerId, tenantId, maxTasks, waitMs);
   }
 }
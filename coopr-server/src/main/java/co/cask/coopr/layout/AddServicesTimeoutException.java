@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.layout.change.ClusterLayoutChange;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Thrown to indicate that no way to add services to a cluster was found within the time allowed. Contains the best
+ * partial plan that was found, which is the one that adds the most services.
+ */
+public class AddServicesTimeoutException extends Exception {
+  private final List<ClusterLayoutChange> partialChanges;
+  private final Set<String> addedServices;
+  private final Set<String> missingServices;
+
+  public AddServicesTimeoutException(long timeoutMs, List<ClusterLayoutChange> partialChanges,
+                                     Set<String> addedServices, Set<String> missingServices) {
+    super(String.format("Could not find a way to add services within %d ms. The best partial layout found adds " +
+                          "services %s, but not services %s.", timeoutMs, addedServices, missingServices));
+    this.partialChanges = ImmutableList.copyOf(partialChanges);
+    this.addedServices = ImmutableSet.copyOf(addedServices);
+    this.missingServices = ImmutableSet.copyOf(missingServices);
+  }
+
+  /**
+   * Get the changes of the best partial plan, which add all the added services to the cluster.
+   *
+   * @return Changes of the best partial plan.
+   */
+  public List<ClusterLayoutChange> getPartialChanges() {
+    return partialChanges;
+  }
+
+  /**
+   * Get the services that the best partial plan adds to the cluster.
+   *
+   * @return Services that the best partial plan adds.
+   */
+  public Set<String> getAddedServices() {
+    return addedServices;
+  }
+
+  /**
+   * Get the services that the best partial plan does not add to the cluster.
+   *
+   * @return Services that the best partial plan does not add.
+   */
+  public Set<String> getMissingServices() {
+    return missingServices;
+  }
+}
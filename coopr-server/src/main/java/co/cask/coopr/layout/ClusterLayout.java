@@ -129,8 +129,7 @@ public class ClusterLayout {
       ServiceConstraint constraint = serviceConstraints.get(entry.getElement());
       if (constraint != null) {
         int serviceCount = entry.getCount();
-        // TODO: ratio constraint
-        if (serviceCount < constraint.getMinCount() || serviceCount > constraint.getMaxCount()
+        if (serviceCount < constraint.getMinCount(layout.size()) || serviceCount > constraint.getMaxCount()
           || serviceCount > layout.size()) {
           return false;
         }
@@ -17,7 +17,9 @@ package co.cask.coopr.layout;
 
 import co.cask.coopr.spec.template.ClusterTemplate;
 import co.cask.coopr.spec.template.ServiceConstraint;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 
 import java.util.List;
 import java.util.Map;
@@ -61,9 +63,25 @@ public class ClusterLayoutFinder {
    * array being the number of nodes to use of the i'th node layout. For example, returning {5, 3, 0, 0, 1} means
    * there should be 5 of the first node layout, 3 of the second, and 1 of the fifth.
    *
+   * Layouts are searched in the same order as {@link SlottedCombinationIterator} goes through them, with as many of
+   * the most preferred node layouts as possible first. Instead of checking every layout, the search assigns node
+   * counts one node layout at a time, and skips all layouts that start with an assignment that cannot lead to a valid
+   * cluster anymore, because a service is over its max, or because the remaining node layouts cannot place enough
+   * nodes or enough of a service to reach its min.
+   *
    * @return Array containing how many of each node type to use.
    */
   public int[] findValidNodeCounts() {
+    // no cluster is possible if the most preferred nodes cannot fill it, which also keeps the result the same as the
+    // result of going through all layouts
+    if (getInitialNodeCounts() == null) {
+      return null;
+    }
+    return new LayoutSearch().search();
+  }
+
+  // for unit testing only, goes through all layouts from the initial one until it finds a valid one.
+  int[] findValidNodeCountsByEnumeration() {
     int[] initialLayout = getInitialNodeCounts();
     if (initialLayout == null) {
       return null;
@@ -111,6 +129,7 @@ public class ClusterLayoutFinder {
 
   // initialize the node counts to the first possible cluster layout based on max service counts.
   private int[] getInitialNodeCounts() {
+    resetServiceCounts();
     int[] nodeCounts = new int[nodePreferences.size()];
     // start off with as many of the most preferred node layout as possible
     for (int i = 0; i < nodeCounts.length; i++) {
@@ -160,6 +179,12 @@ public class ClusterLayoutFinder {
     return sum;
   }
 
+  private void resetServiceCounts() {
+    for (String service : serviceCounts.keySet()) {
+      serviceCounts.put(service, 0);
+    }
+  }
+
   // update service counts from changing nodePreferences[nodeNum] by nodesChanged
   private void updateServiceCounts(int nodeNum, int nodesChanged) {
     for (String service : nodePreferences.get(nodeNum).getServiceNames()) {
@@ -177,8 +202,7 @@ public class ClusterLayoutFinder {
       String service = entry.getKey();
       ServiceConstraint constraint = entry.getValue();
       int serviceCount = serviceCounts.get(service);
-      // TODO: ratio constraint
-      if (serviceCount < constraint.getMinCount() || serviceCount > constraint.getMaxCount()
+      if (serviceCount < constraint.getMinCount(numMachines) || serviceCount > constraint.getMaxCount()
         || serviceCount > numMachines) {
         return false;
       }
@@ -189,9 +213,7 @@ public class ClusterLayoutFinder {
 
   // for unit testing only
   boolean isValidCluster(int[] nodeCounts) {
-    for (String service : serviceCounts.keySet()) {
-      serviceCounts.put(service, 0);
-    }
+    resetServiceCounts();
     for (int i = 0; i < nodeCounts.length; i++) {
       int nodeCount = nodeCounts[i];
       if (nodeCount > 0) {
@@ -200,4 +222,182 @@ public class ClusterLayoutFinder {
     }
     return isValidCluster(serviceCounts);
   }
+
+  /**
+   * Depth first search through node counts, assigning the count of one node layout per level from high to low. Only
+   * services with constraints are tracked, by index, since the others can never make a cluster invalid.
+   */
+  private final class LayoutSearch {
+    private final int numLayouts;
+    private final int[] minCounts;
+    private final int[] maxCounts;
+    // constrained services of each node layout
+    private final int[][] layoutServices;
+    // whether the j'th node layout has the k'th service
+    private final boolean[][] layoutHasService;
+    // whether the j'th or a later node layout has both the k'th and the l'th service
+    private final boolean[][][] laterLayoutsShare;
+    private final int[] counts;
+    private final int[] nodeCounts;
+    // how many more nodes each later node layout could take, computed for every assignment
+    private final int[] capacities;
+
+    private LayoutSearch() {
+      this.numLayouts = nodePreferences.size();
+      int numServices = serviceConstraints.size();
+      this.minCounts = new int[numServices];
+      this.maxCounts = new int[numServices];
+      Map<String, Integer> serviceIndexes = Maps.newHashMap();
+      for (Map.Entry<String, ServiceConstraint> entry : serviceConstraints.entrySet()) {
+        int index = serviceIndexes.size();
+        serviceIndexes.put(entry.getKey(), index);
+        minCounts[index] = entry.getValue().getMinCount(numMachines);
+        maxCounts[index] = entry.getValue().getMaxCount();
+      }
+      this.layoutServices = new int[numLayouts][];
+      this.layoutHasService = new boolean[numLayouts][numServices];
+      for (int i = 0; i < numLayouts; i++) {
+        List<Integer> indexes = Lists.newArrayList();
+        for (String service : nodePreferences.get(i).getServiceNames()) {
+          Integer index = serviceIndexes.get(service);
+          if (index != null) {
+            indexes.add(index);
+            layoutHasService[i][index] = true;
+          }
+        }
+        layoutServices[i] = Ints.toArray(indexes);
+      }
+      this.laterLayoutsShare = new boolean[numLayouts + 1][numServices][numServices];
+      for (int i = numLayouts - 1; i >= 0; i--) {
+        for (int service = 0; service < numServices; service++) {
+          laterLayoutsShare[i][service] = laterLayoutsShare[i + 1][service].clone();
+        }
+        for (int service : layoutServices[i]) {
+          for (int other : layoutServices[i]) {
+            laterLayoutsShare[i][service][other] = true;
+          }
+        }
+      }
+      this.counts = new int[numServices];
+      this.nodeCounts = new int[numLayouts];
+      this.capacities = new int[numLayouts];
+    }
+
+    private int[] search() {
+      return numLayouts > 0 && canComplete(0, numMachines) && search(0, numMachines) ? nodeCounts : null;
+    }
+
+    // assign the node count of the i'th node layout and all node layouts after it
+    private boolean search(int i, int remaining) {
+      if (i == numLayouts - 1) {
+        // all remaining nodes must go to the last node layout
+        if (remaining > getCapacity(i, remaining)) {
+          return false;
+        }
+        assign(i, remaining);
+        if (minCountsReached()) {
+          return true;
+        }
+        assign(i, 0);
+        return false;
+      }
+      for (int nodeCount = getCapacity(i, remaining); nodeCount >= 0; nodeCount--) {
+        assign(i, nodeCount);
+        if (canComplete(i + 1, remaining - nodeCount) && search(i + 1, remaining - nodeCount)) {
+          return true;
+        }
+      }
+      assign(i, 0);
+      return false;
+    }
+
+    private void assign(int i, int nodeCount) {
+      int diff = nodeCount - nodeCounts[i];
+      nodeCounts[i] = nodeCount;
+      for (int service : layoutServices[i]) {
+        counts[service] += diff;
+      }
+    }
+
+    // how many nodes of the i'th node layout can be added without going over a service max
+    private int getCapacity(int i, int remaining) {
+      int capacity = remaining;
+      for (int service : layoutServices[i]) {
+        capacity = Math.min(capacity, maxCounts[service] - counts[service]);
+      }
+      return capacity;
+    }
+
+    // whether the node layouts starting at the given one could place the remaining nodes, and place enough of each
+    // service to reach its min. Capacities are upper bounds, as they ignore that the layouts share services. Services
+    // that no later node layout has together need separate nodes, so the nodes they still need are added up.
+    private boolean canComplete(int first, int remaining) {
+      if (remaining == 0) {
+        return minCountsReached();
+      }
+      int totalCapacity = 0;
+      for (int j = first; j < numLayouts; j++) {
+        capacities[j] = getCapacity(j, remaining);
+        totalCapacity += capacities[j];
+        if (totalCapacity >= remaining) {
+          // no overflow, and enough capacity is all that is needed to know
+          totalCapacity = remaining;
+        }
+      }
+      if (totalCapacity < remaining) {
+        return false;
+      }
+      for (int service = 0; service < counts.length; service++) {
+        int needed = minCounts[service] - counts[service];
+        if (needed <= 0) {
+          continue;
+        }
+        if (needed > remaining) {
+          return false;
+        }
+        int serviceCapacity = 0;
+        for (int j = first; j < numLayouts && serviceCapacity < needed; j++) {
+          if (layoutHasService[j][service]) {
+            serviceCapacity += capacities[j];
+          }
+        }
+        if (serviceCapacity < needed) {
+          return false;
+        }
+      }
+      return getSeparateNodesNeeded(first) <= remaining;
+    }
+
+    // lower bound on the nodes needed to reach the mins, from services that later node layouts never have together
+    private int getSeparateNodesNeeded(int first) {
+      boolean[][] share = laterLayoutsShare[first];
+      int[] separateServices = new int[counts.length];
+      int numSeparate = 0;
+      int nodesNeeded = 0;
+      for (int service = 0; service < counts.length; service++) {
+        int needed = minCounts[service] - counts[service];
+        if (needed <= 0) {
+          continue;
+        }
+        boolean separate = true;
+        for (int i = 0; i < numSeparate && separate; i++) {
+          separate = !share[service][separateServices[i]];
+        }
+        if (separate) {
+          separateServices[numSeparate++] = service;
+          nodesNeeded += needed;
+        }
+      }
+      return nodesNeeded;
+    }
+
+    private boolean minCountsReached() {
+      for (int service = 0; service < counts.length; service++) {
+        if (counts[service] < minCounts[service]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 }
@@ -17,29 +17,57 @@ package co.cask.coopr.layout;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.layout.change.AddServiceChangeIterator;
 import co.cask.coopr.layout.change.ClusterLayoutChange;
 import co.cask.coopr.layout.change.ClusterLayoutTracker;
 import co.cask.coopr.spec.template.Constraints;
 import co.cask.coopr.spec.template.ServiceConstraint;
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.inject.Inject;
 
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class that takes in an existing cluster and a request to update the cluster in some way, whether its by adding
  * services, removing services, adding nodes, or removing nodes.
  */
 public class ClusterLayoutUpdater {
-  private static final ServiceMaxComparator serviceComparator = new ServiceMaxComparator();
+  // failed states are no longer remembered past this, which only costs time
+  private static final int MAX_FAILED_STATES = 100000;
+  private final long timeoutMs;
 
+  @Inject
+  private ClusterLayoutUpdater(Configuration conf) {
+    this(conf.getLong(Constants.SOLVER_ADD_SERVICES_TIMEOUT_MS));
+  }
+
+  // for unit tests
+  ClusterLayoutUpdater(long timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+
+  /**
+   * Find a way to add services to a cluster. Services are added one at a time, most constrained service first, and
+   * the search backtracks whenever a service cannot be added.
+   *
+   * @param cluster Cluster to add services to.
+   * @param clusterNodes Nodes of the cluster.
+   * @param servicesToAdd Services to add to the cluster.
+   * @return Tracker with the changes that add the services, or null if the services cannot be added.
+   * @throws AddServicesTimeoutException if no way to add the services was found within the time allowed.
+   * @throws Exception
+   */
   public ClusterLayoutTracker addServicesToCluster(Cluster cluster, Set<Node> clusterNodes,
                                                    Set<String> servicesToAdd) throws Exception {
     Preconditions.checkArgument(cluster != null, "Cannot add services to a nonexistant cluster.");
@@ -49,63 +77,152 @@ public class ClusterLayoutUpdater {
     Constraints clusterConstraints = cluster.getClusterTemplate().getConstraints();
     ClusterLayout clusterLayout = ClusterLayout.fromNodes(clusterNodes, clusterConstraints);
 
-    Set<String> servicesToAddCopy = Sets.newHashSet(servicesToAdd);
-    SortedSet<Map.Entry<String, ServiceConstraint>> sortedConstraints = Sets.newTreeSet(serviceComparator);
-    sortedConstraints.addAll(clusterConstraints.getServiceConstraints().entrySet());
-    Queue<String> sortedServices = Lists.newLinkedList();
-    for (Map.Entry<String, ServiceConstraint> entry : sortedConstraints) {
-      if (servicesToAddCopy.contains(entry.getKey())) {
-        sortedServices.add(entry.getKey());
-        servicesToAddCopy.remove(entry.getKey());
-      }
-    }
-    // any service without a constraint has no limit on the number of nodes it can be placed on, so add them to the end
-    sortedServices.addAll(servicesToAddCopy);
-
     ClusterLayoutTracker tracker = new ClusterLayoutTracker(clusterLayout);
-    return canAddServicesToCluster(tracker, sortedServices) ? tracker : null;
+    AddServicesSearch search = new AddServicesSearch(tracker, clusterConstraints.getServiceConstraints(),
+                                                     servicesToAdd);
+    return search.canAddServicesToCluster(ImmutableSet.copyOf(servicesToAdd)) ? tracker : null;
   }
 
-  private boolean canAddServicesToCluster(ClusterLayoutTracker tracker, Queue<String> servicesToAdd) {
-    if (servicesToAdd.isEmpty()) {
-      return true;
+  /**
+   * Backtracking search over the ways to add services to a cluster, which remembers the layouts that it could not add
+   * the remaining services to and stops once the time allowed has passed.
+   */
+  private final class AddServicesSearch {
+    private final ClusterLayoutTracker tracker;
+    private final Map<String, ServiceConstraint> serviceConstraints;
+    private final Set<String> servicesToAdd;
+    private final ServiceMaxComparator serviceComparator;
+    private final long deadline;
+    private final Set<SearchState> failedStates;
+    private List<ClusterLayoutChange> bestChanges;
+    private Set<String> bestAddedServices;
+
+    private AddServicesSearch(ClusterLayoutTracker tracker, Map<String, ServiceConstraint> serviceConstraints,
+                              Set<String> servicesToAdd) {
+      this.tracker = tracker;
+      this.serviceConstraints = serviceConstraints;
+      this.servicesToAdd = servicesToAdd;
+      // adding services does not change the number of nodes
+      this.serviceComparator = new ServiceMaxComparator(tracker.getCurrentLayout().getLayout().size());
+      this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+      this.failedStates = Sets.newHashSet();
+      this.bestChanges = Lists.newArrayList();
+      this.bestAddedServices = ImmutableSet.of();
     }
 
-    String service = servicesToAdd.remove();
-    ClusterLayout currentLayout = tracker.getCurrentLayout();
-    // find valid moves, where a move is adding some number of the first service in the queue to nodes in the cluster
-    Iterator<ClusterLayoutChange> changes = new AddServiceChangeIterator(currentLayout, service);
-
-    while (changes.hasNext()) {
-      // expand the cluster
-      ClusterLayoutChange change = changes.next();
-      if (tracker.addChangeIfValid(change)) {
-        // though the change was applied, the layout may not satisfy all constraints
-        ClusterLayout nextLayout = tracker.getCurrentLayout();
-        if (!nextLayout.isValid()) {
-          // if constraints were not all satisfied, remove the last change and keep searching
-          tracker.removeLastChange();
-          continue;
+    private boolean canAddServicesToCluster(Set<String> remainingServices) throws AddServicesTimeoutException {
+      if (remainingServices.isEmpty()) {
+        return true;
+      }
+      ClusterLayout currentLayout = tracker.getCurrentLayout();
+      if (remainingServices.size() < servicesToAdd.size() - bestAddedServices.size()) {
+        bestChanges = Lists.newArrayList(tracker.getChanges());
+        bestAddedServices = ImmutableSet.copyOf(Sets.difference(servicesToAdd, remainingServices));
+      }
+      SearchState state = new SearchState(currentLayout, remainingServices);
+      if (failedStates.contains(state)) {
+        return false;
+      }
+
+      // find valid moves for the most constrained service, where a move is adding the service to some number of nodes
+      // in the cluster. A service that can be added to fewer numbers of nodes has fewer moves, and one that can't be
+      // added at all fails the search right away.
+      String service = null;
+      AddServiceChangeIterator changes = null;
+      for (String candidate : remainingServices) {
+        AddServiceChangeIterator candidateChanges = new AddServiceChangeIterator(currentLayout, candidate);
+        if (changes == null || isMoreConstrained(candidate, candidateChanges, service, changes)) {
+          service = candidate;
+          changes = candidateChanges;
         }
+      }
+      Set<String> servicesAfterChange = ImmutableSet.copyOf(Sets.difference(remainingServices,
+                                                                            ImmutableSet.of(service)));
 
-        // successfully added the service. See if we can add the rest of the services.
-        if (canAddServicesToCluster(tracker, servicesToAdd)) {
-          return true;
-        } else {
-          // we were not able to add the rest of the services. Move on to the next change for this service.
-          tracker.removeLastChange();
+      while (changes.getNumNodeCountOptions() > 0 && changes.hasNext()) {
+        if (System.nanoTime() > deadline) {
+          throw new AddServicesTimeoutException(timeoutMs, bestChanges, bestAddedServices,
+                                                Sets.difference(servicesToAdd, bestAddedServices));
         }
+        // expand the cluster
+        ClusterLayoutChange change = changes.next();
+        if (tracker.addChangeIfValid(change)) {
+          // though the change was applied, the layout may not satisfy all constraints
+          ClusterLayout nextLayout = tracker.getCurrentLayout();
+          if (!nextLayout.isValid()) {
+            // if constraints were not all satisfied, remove the last change and keep searching
+            tracker.removeLastChange();
+            continue;
+          }
+
+          // successfully added the service. See if we can add the rest of the services.
+          if (canAddServicesToCluster(servicesAfterChange)) {
+            return true;
+          } else {
+            // we were not able to add the rest of the services. Move on to the next change for this service.
+            tracker.removeLastChange();
+          }
+        }
+      }
+      if (failedStates.size() < MAX_FAILED_STATES) {
+        failedStates.add(state);
       }
+      return false;
+    }
+
+    private boolean isMoreConstrained(String service1, AddServiceChangeIterator changes1,
+                                      String service2, AddServiceChangeIterator changes2) {
+      int compare = changes1.getNumNodeCountOptions() - changes2.getNumNodeCountOptions();
+      if (compare != 0) {
+        return compare < 0;
+      }
+      return serviceComparator.compare(Maps.immutableEntry(service1, serviceConstraints.get(service1)),
+                                       Maps.immutableEntry(service2, serviceConstraints.get(service2))) < 0;
+    }
+  }
+
+  /**
+   * Layout of the cluster along with the services that remain to be added to it.
+   */
+  private static final class SearchState {
+    private final ClusterLayout layout;
+    private final Set<String> services;
+
+    private SearchState(ClusterLayout layout, Set<String> services) {
+      this.layout = layout;
+      this.services = services;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SearchState)) {
+        return false;
+      }
+      SearchState other = (SearchState) o;
+      return Objects.equal(layout, other.layout) && Objects.equal(services, other.services);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(layout, services);
     }
-    return false;
   }
 
   /**
    * Comparator to sort services constraints so that services are sorted first by their max count (lower max count means
-   * the constraint is lower), sorted next by their min count (higher min count means the constraint is lower), and
-   * finally by the service name if all else is equal.
+   * the constraint is lower), sorted next by their min count in the cluster (higher min count means the constraint is
+   * lower), and finally by the service name if all else is equal. Used to order services that can be added to the same
+   * number of different node counts.
    */
   private static class ServiceMaxComparator implements Comparator<Map.Entry<String, ServiceConstraint>> {
+    private final int clusterSize;
+
+    private ServiceMaxComparator(int clusterSize) {
+      this.clusterSize = clusterSize;
+    }
 
     @Override
     public int compare(Map.Entry<String, ServiceConstraint> entry1, Map.Entry<String, ServiceConstraint> entry2) {
@@ -120,7 +237,7 @@ public class ClusterLayoutUpdater {
         if (compare != 0) {
           return compare;
         }
-        compare = 0 - ((Integer) constraint1.getMinCount()).compareTo(constraint2.getMinCount());
+        compare = 0 - ((Integer) constraint1.getMinCount(clusterSize)).compareTo(constraint2.getMinCount(clusterSize));
         if (compare != 0) {
           return compare;
         }
@@ -0,0 +1,286 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link LayoutSolver} that solves the node counts as an integer program: a count x[i] >= 0 per node layout, with
+ * the counts adding up to the cluster size, and every constrained service s on between min(s) and max(s) nodes,
+ * where the min includes the ratio of the cluster size. The program is solved exactly with a depth first search over
+ * the counts, which remembers the partial assignments it has proven to be infeasible. Two partial assignments that
+ * leave the same number of nodes and the same service counts for the remaining node layouts are the same subproblem,
+ * so each one is only searched once.
+ *
+ * Supports two objectives. {@link Objective#PREFERRED_LAYOUTS} uses exactly the requested number of nodes, with as
+ * many of the most preferred node layouts as possible, which is the same layout the {@link SearchLayoutSolver} finds
+ * whenever that one finds a layout. {@link Objective#FEWEST_NODES} treats the requested number of nodes as an upper
+ * bound, and uses the smallest cluster size allowed by the template that has a valid layout. The sizes are tried from
+ * small to large with the same program, which keeps the partial assignments it proved infeasible: the service mins
+ * can only grow with the cluster size, so a subproblem that failed for a smaller size also fails for every larger
+ * one, and each subproblem is searched once across all sizes instead of once per size.
+ */
+public class ExactLayoutSolver implements LayoutSolver {
+  public static final String NAME = "exact";
+  public static final String FEWEST_NODES_NAME = "exact-fewest-nodes";
+  // failed subproblems are no longer remembered past this, which only costs time
+  private static final int MAX_FAILED_STATES = 1000000;
+
+  /**
+   * What to optimize for among the valid layouts.
+   */
+  public enum Objective {
+    PREFERRED_LAYOUTS,
+    FEWEST_NODES
+  }
+
+  private final Objective objective;
+
+  public ExactLayoutSolver(Objective objective) {
+    this.objective = objective;
+  }
+
+  @Override
+  public String getName() {
+    return objective == Objective.FEWEST_NODES ? FEWEST_NODES_NAME : NAME;
+  }
+
+  @Override
+  public int[] solve(List<NodeLayout> nodeLayouts, ClusterTemplate template, Set<String> services, int numMachines) {
+    if (objective == Objective.PREFERRED_LAYOUTS) {
+      return new Program(nodeLayouts, template, services).solve(numMachines);
+    }
+    Program program = new Program(nodeLayouts, template, services);
+    // a service is on each node at most once, so the cluster has at least as many nodes as any service min
+    int minSize = Math.max(Math.max(1, template.getConstraints().getSizeConstraint().getMin()),
+                           program.getMaxMinCount());
+    for (int size = minSize; size <= numMachines; size++) {
+      int[] nodeCounts = program.solve(size);
+      if (nodeCounts != null) {
+        return nodeCounts;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The integer program, which can be solved for increasing cluster sizes. Only services with constraints are
+   * tracked, by index.
+   */
+  private static final class Program {
+    private final int numLayouts;
+    private final ServiceConstraint[] constraints;
+    private final int[] minCounts;
+    private final int[] maxCounts;
+    // constrained services of each node layout
+    private final int[][] layoutServices;
+    // services whose last node layout is the i'th one, which must have reached their min once it is assigned
+    private final int[][] lastLayoutServices;
+    // services of the i'th and later node layouts, which are the ones whose counts matter for the rest of the search
+    private final int[][] activeServices;
+    // services that no node layout has
+    private final int[] unplacedServices;
+    private final int[] counts;
+    private final int[] nodeCounts;
+    private final Set<State> failedStates;
+
+    // the cluster size of the last solve, which only grows so that the failed states stay failed
+    private int numMachines;
+
+    private Program(List<NodeLayout> nodeLayouts, ClusterTemplate template, Set<String> services) {
+      this.numLayouts = nodeLayouts.size();
+      Map<String, ServiceConstraint> allServiceConstraints = template.getConstraints().getServiceConstraints();
+      List<String> constrainedServices = Lists.newArrayList();
+      for (String service : services) {
+        if (allServiceConstraints.containsKey(service)) {
+          constrainedServices.add(service);
+        }
+      }
+      int numServices = constrainedServices.size();
+      this.constraints = new ServiceConstraint[numServices];
+      this.minCounts = new int[numServices];
+      this.maxCounts = new int[numServices];
+      for (int i = 0; i < numServices; i++) {
+        constraints[i] = allServiceConstraints.get(constrainedServices.get(i));
+        maxCounts[i] = constraints[i].getMaxCount();
+      }
+
+      this.layoutServices = new int[numLayouts][];
+      int[] lastLayouts = new int[numServices];
+      Arrays.fill(lastLayouts, -1);
+      for (int i = 0; i < numLayouts; i++) {
+        Set<String> serviceNames = nodeLayouts.get(i).getServiceNames();
+        List<Integer> indexes = Lists.newArrayList();
+        for (int service = 0; service < numServices; service++) {
+          if (serviceNames.contains(constrainedServices.get(service))) {
+            indexes.add(service);
+            lastLayouts[service] = i;
+          }
+        }
+        layoutServices[i] = Ints.toArray(indexes);
+      }
+      this.lastLayoutServices = new int[numLayouts][];
+      this.activeServices = new int[numLayouts][];
+      for (int i = 0; i < numLayouts; i++) {
+        List<Integer> last = Lists.newArrayList();
+        List<Integer> active = Lists.newArrayList();
+        for (int service = 0; service < numServices; service++) {
+          if (lastLayouts[service] == i) {
+            last.add(service);
+          }
+          if (lastLayouts[service] >= i) {
+            active.add(service);
+          }
+        }
+        lastLayoutServices[i] = Ints.toArray(last);
+        activeServices[i] = Ints.toArray(active);
+      }
+      List<Integer> unplaced = Lists.newArrayList();
+      for (int service = 0; service < numServices; service++) {
+        if (lastLayouts[service] < 0) {
+          unplaced.add(service);
+        }
+      }
+      this.unplacedServices = Ints.toArray(unplaced);
+      this.counts = new int[numServices];
+      this.nodeCounts = new int[numLayouts];
+      this.failedStates = Sets.newHashSet();
+    }
+
+    // the largest min count of a service, not counting ratios
+    private int getMaxMinCount() {
+      int maxMinCount = 0;
+      for (ServiceConstraint constraint : constraints) {
+        maxMinCount = Math.max(maxMinCount, constraint.getMinCount());
+      }
+      return maxMinCount;
+    }
+
+    // solve for the given cluster size, which must not be smaller than the one of the previous call
+    private int[] solve(int numMachines) {
+      Preconditions.checkArgument(numMachines >= this.numMachines, "cluster sizes must not decrease");
+      this.numMachines = numMachines;
+      if (numLayouts == 0) {
+        return null;
+      }
+      for (int service = 0; service < constraints.length; service++) {
+        minCounts[service] = constraints[service].getMinCount(numMachines);
+      }
+      for (int service : unplacedServices) {
+        if (minCounts[service] > 0) {
+          return null;
+        }
+      }
+      return solve(0, numMachines) ? nodeCounts : null;
+    }
+
+    // assign the counts of the i'th and later node layouts, from high to low so the first solution is the most
+    // preferred one
+    private boolean solve(int i, int remaining) {
+      if (i == numLayouts) {
+        return remaining == 0;
+      }
+      State state = new State(i, remaining, activeServices[i], counts);
+      if (failedStates.contains(state)) {
+        return false;
+      }
+      int maxCount = getCapacity(i, remaining);
+      // the later node layouts can take at most this many nodes, so this one has to take the rest
+      int laterCapacity = 0;
+      for (int j = i + 1; j < numLayouts && laterCapacity < remaining; j++) {
+        laterCapacity += getCapacity(j, remaining);
+      }
+      int minCount = Math.max(0, remaining - laterCapacity);
+      for (int nodeCount = maxCount; nodeCount >= minCount; nodeCount--) {
+        assign(i, nodeCount);
+        if (lastMinCountsReached(i) && solve(i + 1, remaining - nodeCount)) {
+          return true;
+        }
+      }
+      assign(i, 0);
+      if (failedStates.size() < MAX_FAILED_STATES) {
+        failedStates.add(state);
+      }
+      return false;
+    }
+
+    private void assign(int i, int nodeCount) {
+      int diff = nodeCount - nodeCounts[i];
+      nodeCounts[i] = nodeCount;
+      for (int service : layoutServices[i]) {
+        counts[service] += diff;
+      }
+    }
+
+    // how many nodes of the i'th node layout can be added without going over a service max
+    private int getCapacity(int i, int remaining) {
+      int capacity = remaining;
+      for (int service : layoutServices[i]) {
+        capacity = Math.min(capacity, maxCounts[service] - counts[service]);
+      }
+      return capacity;
+    }
+
+    // whether the services that no node layout after the i'th one has have reached their min
+    private boolean lastMinCountsReached(int i) {
+      for (int service : lastLayoutServices[i]) {
+        if (counts[service] < minCounts[service]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Subproblem of the search: the node layout to assign next, the number of nodes left, and the counts of the
+   * services that the remaining node layouts have.
+   */
+  private static final class State {
+    private final int[] values;
+    private final int hashCode;
+
+    private State(int layout, int remaining, int[] activeServices, int[] counts) {
+      this.values = new int[activeServices.length + 2];
+      values[0] = layout;
+      values[1] = remaining;
+      for (int i = 0; i < activeServices.length; i++) {
+        values[i + 2] = counts[activeServices[i]];
+      }
+      this.hashCode = Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return this == o || (o instanceof State && Arrays.equals(values, ((State) o).values));
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.spec.template.ClusterTemplate;
+
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Decides how many nodes of each possible {@link NodeLayout} to use in a cluster, such that the service constraints
+ * of the cluster template are satisfied. Solvers are selected by name, either for all clusters through the server
+ * configuration, or for the clusters of one template through its constraints.
+ */
+public interface LayoutSolver {
+
+  /**
+   * Get the name the solver is selected by.
+   *
+   * @return Name of the solver.
+   */
+  String getName();
+
+  /**
+   * Get how many nodes of each node layout to use in the cluster. The i'th value in the returned array is the number
+   * of nodes of the i'th node layout. For example, returning {5, 3, 0, 0, 1} means there should be 5 nodes of the
+   * first node layout, 3 of the second, and 1 of the fifth.
+   *
+   * @param nodeLayouts Node layouts that can be used in the cluster, ordered by preference.
+   * @param template Cluster template with the constraints to satisfy.
+   * @param services Services to place on the cluster.
+   * @param numMachines Number of nodes requested for the cluster.
+   * @return How many nodes of each node layout to use, or null if no layout satisfies the constraints.
+   */
+  @Nullable
+  int[] solve(List<NodeLayout> nodeLayouts, ClusterTemplate template, Set<String> services, int numMachines);
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@link LayoutSolver}s a server can use, by name. Clusters are solved with the solver named in the constraints of
+ * their template, or with the default solver of the server if the template does not name one.
+ */
+public class LayoutSolvers {
+  private final Map<String, LayoutSolver> solvers;
+  private final LayoutSolver defaultSolver;
+
+  @Inject
+  private LayoutSolvers(Set<LayoutSolver> solvers, Configuration conf) {
+    this(solvers, conf.get(Constants.LAYOUT_SOLVER));
+  }
+
+  // for unit tests
+  LayoutSolvers(Set<LayoutSolver> solvers, String defaultSolverName) {
+    ImmutableMap.Builder<String, LayoutSolver> builder = ImmutableMap.builder();
+    for (LayoutSolver solver : solvers) {
+      builder.put(solver.getName(), solver);
+    }
+    this.solvers = builder.build();
+    this.defaultSolver = this.solvers.get(defaultSolverName);
+    Preconditions.checkArgument(defaultSolver != null, "Unknown layout solver %s", defaultSolverName);
+  }
+
+  /**
+   * Get the solver to use for clusters of a template.
+   *
+   * @param template Template of the cluster to solve.
+   * @return Solver to use for clusters of the template.
+   * @throws IllegalArgumentException if the template names a solver that does not exist.
+   */
+  public LayoutSolver getSolver(ClusterTemplate template) {
+    String name = template.getConstraints().getLayoutSolver();
+    if (name == null || name.isEmpty()) {
+      return defaultSolver;
+    }
+    LayoutSolver solver = solvers.get(name);
+    if (solver == null) {
+      throw new IllegalArgumentException("layout solver " + name + " of template " + template.getName()
+                                           + " does not exist");
+    }
+    return solver;
+  }
+}
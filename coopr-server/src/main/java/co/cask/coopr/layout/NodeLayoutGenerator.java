@@ -21,6 +21,7 @@ import co.cask.coopr.spec.template.ServiceConstraint;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -148,9 +149,91 @@ public class NodeLayoutGenerator {
     return unconstrained;
   }
 
-  // search through all possible service combinations, keeping track of valid service combinations.
+  // build valid service sets one group of services at a time. Services that must coexist are contracted into one group,
+  // as a valid service set has all or none of them. A partial set is dropped as soon as it has all services of a cant
+  // coexist constraint, since adding services to it can never make it valid again.
   Set<Set<String>> findValidServiceSets(Set<String> services) {
     Set<Set<String>> validServiceSets = Sets.newHashSet();
+    if (services.isEmpty()) {
+      return validServiceSets;
+    }
+    LayoutConstraint layoutConstraint = clusterTemplate.getConstraints().getLayoutConstraint();
+    List<Set<String>> groups = groupMustCoexistServices(services, layoutConstraint);
+    Map<String, Integer> groupIndexes = Maps.newHashMap();
+    for (int i = 0; i < groups.size(); i++) {
+      for (String service : groups.get(i)) {
+        groupIndexes.put(service, i);
+      }
+    }
+
+    // cant coexist constraints as the groups they have services of, skipping constraints that can never be met
+    List<Set<Integer>> cantCoexistGroups = Lists.newArrayList();
+    for (Set<String> cantCoexist : layoutConstraint.getServicesThatMustNotCoexist()) {
+      Set<Integer> constraintGroups = Sets.newHashSet();
+      for (String service : cantCoexist) {
+        Integer index = groupIndexes.get(service);
+        if (index == null) {
+          constraintGroups = null;
+          break;
+        }
+        constraintGroups.add(index);
+      }
+      if (constraintGroups != null) {
+        if (constraintGroups.isEmpty()) {
+          // every service set contains the empty set
+          return validServiceSets;
+        }
+        cantCoexistGroups.add(constraintGroups);
+      }
+    }
+
+    new ServiceSetSearch(groups, cantCoexistGroups, validServiceSets).search(0);
+    return validServiceSets;
+  }
+
+  // contract services that must coexist into groups. A must coexist constraint forces all its services that are on the
+  // cluster into a set that has one of them, so constraints that share services are merged into one group. Groups
+  // with a service that must coexist with a cluster service outside the given services are left out, as no valid
+  // service set can have them.
+  private List<Set<String>> groupMustCoexistServices(Set<String> services, LayoutConstraint layoutConstraint) {
+    Map<String, Set<String>> serviceGroups = Maps.newHashMap();
+    for (String service : services) {
+      serviceGroups.put(service, Sets.newHashSet(service));
+    }
+    Set<String> excluded = Sets.newHashSet();
+    for (Set<String> mustCoexist : layoutConstraint.getServicesThatMustCoexist()) {
+      Set<String> trueMustCoexist = Sets.intersection(mustCoexist, clusterServices);
+      Set<String> group = null;
+      for (String service : trueMustCoexist) {
+        Set<String> serviceGroup = serviceGroups.get(service);
+        if (serviceGroup == null) {
+          excluded.addAll(Sets.intersection(trueMustCoexist, services));
+        } else if (group == null) {
+          group = serviceGroup;
+        } else if (group != serviceGroup) {
+          group.addAll(serviceGroup);
+          for (String member : serviceGroup) {
+            serviceGroups.put(member, group);
+          }
+        }
+      }
+    }
+
+    List<Set<String>> groups = Lists.newArrayList();
+    Set<Set<String>> seen = Sets.newIdentityHashSet();
+    for (String service : services) {
+      Set<String> group = serviceGroups.get(service);
+      if (seen.add(group) && Collections.disjoint(group, excluded)) {
+        groups.add(group);
+      }
+    }
+    return groups;
+  }
+
+  // for unit testing only. Search through all possible service combinations, keeping track of valid service
+  // combinations.
+  Set<Set<String>> findValidServiceSetsByEnumeration(Set<String> services) {
+    Set<Set<String>> validServiceSets = Sets.newHashSet();
 
     if (!services.isEmpty()) {
       LayoutConstraint layoutConstraint = clusterTemplate.getConstraints().getLayoutConstraint();
@@ -236,6 +319,76 @@ public class NodeLayoutGenerator {
     return output;
   }
 
+  /**
+   * Depth first search through service sets, deciding for one group of services per level whether it is in the set.
+   * Keeps count of how many groups of each cant coexist constraint are in the current set.
+   */
+  private static final class ServiceSetSearch {
+    private final List<Set<String>> groups;
+    // indexes of the cant coexist constraints each group has services of
+    private final int[][] groupConstraints;
+    // number of groups each cant coexist constraint has services of
+    private final int[] constraintSizes;
+    private final int[] constraintCounts;
+    private final boolean[] included;
+    private final Set<Set<String>> validServiceSets;
+
+    private ServiceSetSearch(List<Set<String>> groups, List<Set<Integer>> cantCoexistGroups,
+                             Set<Set<String>> validServiceSets) {
+      this.groups = groups;
+      this.constraintSizes = new int[cantCoexistGroups.size()];
+      List<List<Integer>> constraintsByGroup = Lists.newArrayList();
+      for (int i = 0; i < groups.size(); i++) {
+        constraintsByGroup.add(Lists.<Integer>newArrayList());
+      }
+      for (int i = 0; i < constraintSizes.length; i++) {
+        Set<Integer> constraintGroups = cantCoexistGroups.get(i);
+        constraintSizes[i] = constraintGroups.size();
+        for (int group : constraintGroups) {
+          constraintsByGroup.get(group).add(i);
+        }
+      }
+      this.groupConstraints = new int[groups.size()][];
+      for (int i = 0; i < groups.size(); i++) {
+        groupConstraints[i] = Ints.toArray(constraintsByGroup.get(i));
+      }
+      this.constraintCounts = new int[constraintSizes.length];
+      this.included = new boolean[groups.size()];
+      this.validServiceSets = validServiceSets;
+    }
+
+    private void search(int group) {
+      if (group == groups.size()) {
+        Set<String> serviceSet = Sets.newHashSet();
+        for (int i = 0; i < included.length; i++) {
+          if (included[i]) {
+            serviceSet.addAll(groups.get(i));
+          }
+        }
+        if (!serviceSet.isEmpty()) {
+          validServiceSets.add(serviceSet);
+        }
+        return;
+      }
+
+      search(group + 1);
+      for (int constraint : groupConstraints[group]) {
+        if (constraintCounts[constraint] + 1 == constraintSizes[constraint]) {
+          return;
+        }
+      }
+      for (int constraint : groupConstraints[group]) {
+        constraintCounts[constraint]++;
+      }
+      included[group] = true;
+      search(group + 1);
+      included[group] = false;
+      for (int constraint : groupConstraints[group]) {
+        constraintCounts[constraint]--;
+      }
+    }
+  }
+
   static boolean inSetOfSets(String element, Set<Set<String>> setOfSets) {
     for (Set<String> set : setOfSets) {
       if (set.contains(element)) {
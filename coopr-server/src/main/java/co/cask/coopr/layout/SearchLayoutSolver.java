@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.spec.template.ClusterTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The default {@link LayoutSolver}, which searches for a layout with the {@link ClusterLayoutFinder}. Uses exactly the
+ * requested number of nodes, with as many of the most preferred node layouts as possible.
+ */
+public class SearchLayoutSolver implements LayoutSolver {
+  public static final String NAME = "search";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public int[] solve(List<NodeLayout> nodeLayouts, ClusterTemplate template, Set<String> services, int numMachines) {
+    return new ClusterLayoutFinder(nodeLayouts, template, services, numMachines).findValidNodeCounts();
+  }
+}
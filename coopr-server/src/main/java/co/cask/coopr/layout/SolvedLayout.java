@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.scheduler.task.NodeService;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A solved cluster layout, which is the number of nodes of each node layout, along with the hardware types, image
+ * types and services it was solved with. Does not depend on the cluster it was solved for, so the same layout can be
+ * used to create the nodes of any cluster with the same template, size, services and types.
+ */
+final class SolvedLayout {
+  private final List<NodeLayout> nodeLayouts;
+  private final int[] nodeCounts;
+  private final Map<String, String> hardwareTypeMap;
+  private final Map<String, Map<String, String>> imageTypeMap;
+  private final Map<String, Service> serviceMap;
+
+  SolvedLayout(List<NodeLayout> nodeLayouts, int[] nodeCounts, Map<String, String> hardwareTypeMap,
+               Map<String, Map<String, String>> imageTypeMap, Map<String, Service> serviceMap) {
+    this.nodeLayouts = nodeLayouts;
+    this.nodeCounts = nodeCounts;
+    this.hardwareTypeMap = hardwareTypeMap;
+    this.imageTypeMap = imageTypeMap;
+    this.serviceMap = serviceMap;
+  }
+
+  /**
+   * Create new nodes for a cluster according to the layout. Every call creates nodes with new ids.
+   *
+   * @param clusterId Id of the cluster to create nodes for.
+   * @param clusterName Name of the cluster to create nodes for.
+   * @param dnsSuffix DNS suffix to use in the hostnames of the nodes.
+   * @return Mapping of node id to node for all nodes in the cluster.
+   */
+  Map<String, Node> createNodes(String clusterId, String clusterName, String dnsSuffix) {
+    Map<String, Node> clusterNodes = Maps.newHashMap();
+    int nodeNum = 1000;
+    for (int i = 0; i < nodeCounts.length; i++) {
+      NodeLayout nodeLayout = nodeLayouts.get(i);
+      for (int j = 0; j < nodeCounts[i]; j++) {
+        String nodeId = UUID.randomUUID().toString();
+        Set<Service> nodeServices = Sets.newHashSet();
+        for (String serviceName : nodeLayout.getServiceNames()) {
+          nodeServices.add(serviceMap.get(serviceName));
+        }
+        String hardwaretype = nodeLayout.getHardwareTypeName();
+        String imagetype = nodeLayout.getImageTypeName();
+        String imageId = imageTypeMap.get(imagetype).get("image");
+        // TODO: temporary workaround, need to refactor the task json
+        String sshUser = imageTypeMap.get(imagetype).get("sshuser");
+        String hostname = NodeService.createHostname(clusterName, clusterId, nodeNum, dnsSuffix);
+        String flavor = hardwareTypeMap.get(hardwaretype);
+        // TODO: these should be proper fields and logic for populating node properties should not be in the solver.
+        NodeProperties nodeProperties = NodeProperties.builder()
+          .setHostname(hostname)
+          .setNodenum(nodeNum)
+          .setHardwaretype(hardwaretype)
+          .setImagetype(imagetype)
+          .setFlavor(flavor)
+          .setImage(imageId)
+          .setSSHUser(sshUser)
+          .setServices(nodeServices)
+          .build();
+        nodeNum++;
+        clusterNodes.put(nodeId, new Node(nodeId, clusterId, nodeServices, nodeProperties));
+      }
+    }
+    return clusterNodes;
+  }
+}
@@ -17,11 +17,9 @@ package co.cask.coopr.layout;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
-import co.cask.coopr.cluster.NodeProperties;
 import co.cask.coopr.http.request.ClusterCreateRequest;
 import co.cask.coopr.layout.change.ClusterLayoutChange;
 import co.cask.coopr.layout.change.ClusterLayoutTracker;
-import co.cask.coopr.scheduler.task.NodeService;
 import co.cask.coopr.spec.HardwareType;
 import co.cask.coopr.spec.ImageType;
 import co.cask.coopr.spec.Provider;
@@ -42,7 +40,6 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
 
 /**
  * The solver takes a cluster template, a number of machines, and figures out what services to put on what hardware
@@ -56,11 +53,16 @@ public class Solver {
   private static final Logger LOG  = LoggerFactory.getLogger(Solver.class);
   private final EntityStoreService entityStoreService;
   private final ClusterLayoutUpdater updater;
+  private final SolverCache solverCache;
+  private final LayoutSolvers layoutSolvers;
 
   @Inject
-  private Solver(EntityStoreService entityStoreService, ClusterLayoutUpdater updater) {
+  private Solver(EntityStoreService entityStoreService, ClusterLayoutUpdater updater, SolverCache solverCache,
+                 LayoutSolvers layoutSolvers) {
     this.entityStoreService = entityStoreService;
     this.updater = updater;
+    this.solverCache = solverCache;
+    this.layoutSolvers = layoutSolvers;
   }
 
   /**
@@ -71,6 +73,7 @@ public class Solver {
    * @param clusterNodes Nodes in the cluster.
    * @param servicesToAdd Services to add to the cluster.
    * @return Nodes that need to have services added to them.
+   * @throws AddServicesTimeoutException if no way to add the services was found within the time allowed.
    * @throws Exception
    */
   public Set<Node> addServicesToCluster(Cluster cluster, Set<Node> clusterNodes,
@@ -114,7 +117,8 @@ public class Solver {
   /**
    * Given a {@link Cluster} and {@link ClusterCreateRequest}, return a mapping of node id to {@link Node} describing
    * how the cluster should be laid out. If multiple possible cluster layouts are possible, one will be chosen
-   * deterministically.
+   * deterministically. Layouts are cached, so that clusters created with the same template, size, services and
+   * types only need new nodes.
    *
    * @param cluster Cluster to solve a layout for.
    * @param request Request to create a cluster containing cluster settings to use.
@@ -122,12 +126,10 @@ public class Solver {
    * @throws Exception
    */
   public Map<String, Node> solveClusterNodes(Cluster cluster, ClusterCreateRequest request) throws Exception {
-    EntityStoreView entityStore = entityStoreService.getView(cluster.getAccount());
     ClusterTemplate template = cluster.getClusterTemplate();
     Provider provider = cluster.getProvider();
     String providerName = provider.getName();
 
-    // make sure there are hardware types that can be used
     String requiredHardwareType = request.getHardwareType();
     if (requiredHardwareType == null || requiredHardwareType.isEmpty()) {
       // this can be null too, which means no cluster wide required type
@@ -136,15 +138,6 @@ public class Solver {
     if (requiredHardwareType != null && requiredHardwareType.isEmpty()) {
       requiredHardwareType = null;
     }
-    Map<String, String> hardwareTypeFlavors =
-      getHardwareTypeMap(providerName, template, requiredHardwareType, entityStore);
-    if (hardwareTypeFlavors.isEmpty()) {
-      throw new IllegalArgumentException("no hardware types are available to use with template "
-                                           + template.getName() + " and provider " + providerName);
-    }
-
-    // TODO: horribly ugly... just get the ImageType object instead of treating flavor/image specially
-    // make sure there are image types that can be used
     String requiredImageType = request.getImageType();
     if (requiredImageType == null || requiredImageType.isEmpty()) {
       // this can be null too, which means no cluster wide required type
@@ -153,22 +146,23 @@ public class Solver {
     if (requiredImageType != null && requiredImageType.isEmpty()) {
       requiredImageType = null;
     }
-    Map<String, Map<String, String>> imageTypeMap =
-      getImageTypeMap(providerName, template, requiredImageType, entityStore);
-    if (imageTypeMap.isEmpty()) {
-      throw new IllegalArgumentException("no image types are available to use with template "
-                                           + template.getName() + " and provider " + providerName);
-    }
-
-    // make sure the services to place on the cluster are all valid
     Set<String> serviceNames = request.getServices();
     if (serviceNames == null || serviceNames.isEmpty()) {
       serviceNames = template.getClusterDefaults().getServices();
     }
-    validateServiceCompatibilities(template.getCompatibilities(), serviceNames);
 
-    Map<String, Service> serviceMap = getServiceMap(serviceNames, entityStore);
-    validateServiceDependencies(serviceMap);
+    SolverCache.Key key = new SolverCache.Key(cluster.getAccount().getTenantId(), template, providerName,
+                                              request.getNumMachines(), serviceNames,
+                                              requiredHardwareType, requiredImageType);
+    SolvedLayout layout = solverCache.get(key);
+    if (layout == null) {
+      long numInvalidations = solverCache.getNumInvalidations();
+      layout = solveLayout(entityStoreService.getView(cluster.getAccount()), template, providerName,
+                           request.getNumMachines(), serviceNames, requiredHardwareType, requiredImageType);
+      if (layout != null) {
+        solverCache.put(key, layout, numInvalidations);
+      }
+    }
     cluster.setServices(serviceNames);
 
     // TODO: move building of node properties to NodeService or Node or some place more sensible
@@ -177,9 +171,7 @@ public class Solver {
       dnsSuffix = template.getClusterDefaults().getDnsSuffix();
     }
 
-    Map<String, Node> nodes =
-      solveConstraints(cluster.getId(), template, request.getName(), request.getNumMachines(), hardwareTypeFlavors,
-                       imageTypeMap, serviceNames, serviceMap, dnsSuffix);
+    Map<String, Node> nodes = layout == null ? null : layout.createNodes(cluster.getId(), request.getName(), dnsSuffix);
 
     // Update cluster object
     // TODO: this should happen outside Solver.
@@ -188,6 +180,36 @@ public class Solver {
     return nodes;
   }
 
+  // validates the types and services to use and solves a layout with them, returning null if there is no valid layout.
+  private SolvedLayout solveLayout(EntityStoreView entityStore, ClusterTemplate template, String providerName,
+                                   int numMachines, Set<String> serviceNames,
+                                   String requiredHardwareType, String requiredImageType) throws Exception {
+    // make sure there are hardware types that can be used
+    Map<String, String> hardwareTypeFlavors =
+      getHardwareTypeMap(providerName, template, requiredHardwareType, entityStore);
+    if (hardwareTypeFlavors.isEmpty()) {
+      throw new IllegalArgumentException("no hardware types are available to use with template "
+                                           + template.getName() + " and provider " + providerName);
+    }
+
+    // TODO: horribly ugly... just get the ImageType object instead of treating flavor/image specially
+    // make sure there are image types that can be used
+    Map<String, Map<String, String>> imageTypeMap =
+      getImageTypeMap(providerName, template, requiredImageType, entityStore);
+    if (imageTypeMap.isEmpty()) {
+      throw new IllegalArgumentException("no image types are available to use with template "
+                                           + template.getName() + " and provider " + providerName);
+    }
+
+    // make sure the services to place on the cluster are all valid
+    validateServiceCompatibilities(template.getCompatibilities(), serviceNames);
+    Map<String, Service> serviceMap = getServiceMap(serviceNames, entityStore);
+    validateServiceDependencies(serviceMap);
+
+    return solveLayout(layoutSolvers.getSolver(template), template, numMachines,
+                       hardwareTypeFlavors, imageTypeMap, serviceNames, serviceMap);
+  }
+
   // get a mapping of service name to service object for fast lookup later. Also check that each service actually
   // exists.
   private Map<String, Service> getServiceMap(Set<String> serviceNames, EntityStoreView entityStore) throws IOException {
@@ -197,7 +219,7 @@ public class Solver {
       if (service == null) {
         throw new IllegalArgumentException("service " + serviceName + " does not exist");
       }
-      map.put(serviceName, entityStore.getService(serviceName));
+      map.put(serviceName, service);
     }
     return map;
   }
@@ -341,9 +363,7 @@ public class Solver {
     }
   }
 
-  // solves for a valid cluster layout based on the constraints. First finds all possible node layouts that can be
-  // used in the cluster based on the services that need to be on the cluster and constraints. Then searches for a
-  // valid number of each node layout based on the constraints.
+  // solves for a valid cluster layout based on the constraints with the default layout solver and creates its nodes.
   static Map<String, Node> solveConstraints(String clusterId, ClusterTemplate clusterTemplate, String clusterName,
                                             int numMachines,
                                             Map<String, String> hardwareTypeMap,
@@ -351,6 +371,31 @@ public class Solver {
                                             Set<String> serviceNames,
                                             Map<String, Service> serviceMap,
                                             String dnsSuffix) {
+    return solveConstraints(new SearchLayoutSolver(), clusterId, clusterTemplate, clusterName, numMachines,
+                            hardwareTypeMap, imageTypeMap, serviceNames, serviceMap, dnsSuffix);
+  }
+
+  // solves for a valid cluster layout based on the constraints with the given layout solver and creates its nodes.
+  static Map<String, Node> solveConstraints(LayoutSolver layoutSolver, String clusterId,
+                                            ClusterTemplate clusterTemplate, String clusterName, int numMachines,
+                                            Map<String, String> hardwareTypeMap,
+                                            Map<String, Map<String, String>> imageTypeMap,
+                                            Set<String> serviceNames,
+                                            Map<String, Service> serviceMap,
+                                            String dnsSuffix) {
+    SolvedLayout layout = solveLayout(layoutSolver, clusterTemplate, numMachines, hardwareTypeMap, imageTypeMap,
+                                      serviceNames, serviceMap);
+    return layout == null ? null : layout.createNodes(clusterId, clusterName, dnsSuffix);
+  }
+
+  // solves for a valid cluster layout based on the constraints. First finds all possible node layouts that can be
+  // used in the cluster based on the services that need to be on the cluster and constraints. Then searches for a
+  // valid number of each node layout based on the constraints.
+  private static SolvedLayout solveLayout(LayoutSolver layoutSolver, ClusterTemplate clusterTemplate, int numMachines,
+                                          Map<String, String> hardwareTypeMap,
+                                          Map<String, Map<String, String>> imageTypeMap,
+                                          Set<String> serviceNames,
+                                          Map<String, Service> serviceMap) {
     NodeLayoutGenerator nodeLayoutGenerator =
       new NodeLayoutGenerator(clusterTemplate, serviceNames, hardwareTypeMap.keySet(), imageTypeMap.keySet());
 
@@ -359,48 +404,13 @@ public class Solver {
     List<NodeLayout> traversalOrder = nodeLayoutGenerator.generateNodeLayoutPreferences();
 
     long start = System.nanoTime();
-    ClusterLayoutFinder layoutFinder =
-      new ClusterLayoutFinder(traversalOrder, clusterTemplate, serviceNames, numMachines);
-    int[] clusterlayout = layoutFinder.findValidNodeCounts();
+    int[] clusterlayout = layoutSolver.solve(traversalOrder, clusterTemplate, serviceNames, numMachines);
     long dur = (System.nanoTime() - start) / 1000000;
-    LOG.debug("took {} ms to find cluster layout", dur);
+    LOG.debug("took {} ms to find cluster layout with the {} solver", dur, layoutSolver.getName());
 
     if (clusterlayout == null) {
       return null;
     }
-
-    Map<String, Node> clusterNodes = Maps.newHashMap();
-    int nodeNum = 1000;
-    for (int i = 0; i < clusterlayout.length; i++) {
-      NodeLayout nodeLayout = traversalOrder.get(i);
-      for (int j = 0; j < clusterlayout[i]; j++) {
-        String nodeId = UUID.randomUUID().toString();
-        Set<Service> nodeServices = Sets.newHashSet();
-        for (String serviceName : nodeLayout.getServiceNames()) {
-          nodeServices.add(serviceMap.get(serviceName));
-        }
-        String hardwaretype = nodeLayout.getHardwareTypeName();
-        String imagetype = nodeLayout.getImageTypeName();
-        String imageId = imageTypeMap.get(imagetype).get("image");
-        // TODO: temporary workaround, need to refactor the task json
-        String sshUser = imageTypeMap.get(imagetype).get("sshuser");
-        String hostname = NodeService.createHostname(clusterName, clusterId, nodeNum, dnsSuffix);
-        String flavor = hardwareTypeMap.get(hardwaretype);
-        // TODO: these should be proper fields and logic for populating node properties should not be in the solver.
-        NodeProperties nodeProperties = NodeProperties.builder()
-          .setHostname(hostname)
-          .setNodenum(nodeNum)
-          .setHardwaretype(hardwaretype)
-          .setImagetype(imagetype)
-          .setFlavor(flavor)
-          .setImage(imageId)
-          .setSSHUser(sshUser)
-          .setServices(nodeServices)
-          .build();
-        nodeNum++;
-        clusterNodes.put(nodeId, new Node(nodeId, clusterId, nodeServices, nodeProperties));
-      }
-    }
-    return clusterNodes;
+    return new SolvedLayout(traversalOrder, clusterlayout, hardwareTypeMap, imageTypeMap, serviceMap);
   }
 }
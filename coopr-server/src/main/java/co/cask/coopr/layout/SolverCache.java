@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.Compatibilities;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.store.entity.BaseEntityStoreView;
+import co.cask.coopr.store.entity.EntityChangeListener;
+import co.cask.coopr.store.entity.EntityStoreService;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+
+import java.util.Iterator;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Cache of solved cluster layouts, keyed by everything that goes into solving a layout. Layouts are evicted when a
+ * hardware type, image type or service they may have been solved with changes, or when the entities of their tenant
+ * were changed by another server. Templates are part of the key, so layouts of changed templates are never used again
+ * and are left to be evicted.
+ */
+public class SolverCache implements EntityChangeListener {
+  private final Cache<Key, SolvedLayout> layouts;
+  // incremented on every eviction, so that layouts solved during an eviction are not cached
+  private long numInvalidations;
+
+  @Inject
+  private SolverCache(EntityStoreService entityStoreService, Configuration conf) {
+    this(entityStoreService, conf.getInt(Constants.SOLVER_CACHE_MAX_SIZE));
+  }
+
+  // for unit tests
+  SolverCache(EntityStoreService entityStoreService, int maxSize) {
+    this.layouts = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    entityStoreService.addChangeListener(this);
+  }
+
+  /**
+   * Get a cached layout.
+   *
+   * @param key Key of the layout.
+   * @return Cached layout, or null if it is not cached.
+   */
+  @Nullable
+  SolvedLayout get(Key key) {
+    return layouts.getIfPresent(key);
+  }
+
+  /**
+   * Get a number that changes whenever layouts are evicted. Must be called before reading the entities a layout is
+   * solved with.
+   *
+   * @return Number that changes whenever layouts are evicted.
+   */
+  synchronized long getNumInvalidations() {
+    return numInvalidations;
+  }
+
+  /**
+   * Cache a layout, unless layouts were evicted since the given number of invalidations was read.
+   *
+   * @param key Key of the layout.
+   * @param layout Layout to cache.
+   * @param numInvalidations Number of invalidations from before the entities of the layout were read.
+   */
+  synchronized void put(Key key, SolvedLayout layout, long numInvalidations) {
+    if (numInvalidations == this.numInvalidations) {
+      layouts.put(key, layout);
+    }
+  }
+
+  @Override
+  public synchronized void entityChanged(String tenantId, BaseEntityStoreView.EntityType entityType,
+                                         String entityName) {
+    if (entityType != BaseEntityStoreView.EntityType.HARDWARE_TYPE &&
+      entityType != BaseEntityStoreView.EntityType.IMAGE_TYPE &&
+      entityType != BaseEntityStoreView.EntityType.SERVICE) {
+      return;
+    }
+    numInvalidations++;
+    Iterator<Key> iter = layouts.asMap().keySet().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().dependsOn(tenantId, entityType, entityName)) {
+        iter.remove();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void entitiesChanged(String tenantId) {
+    numInvalidations++;
+    Iterator<Key> iter = layouts.asMap().keySet().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().tenantId.equals(tenantId)) {
+        iter.remove();
+      }
+    }
+  }
+
+  // for unit tests
+  long size() {
+    return layouts.size();
+  }
+
+  /**
+   * Key of a solved layout. Contains the parts of the template that the layout depends on, so that templates changed
+   * by their parents or partial templates get different keys.
+   */
+  static final class Key {
+    private final String tenantId;
+    private final String templateName;
+    private final int templateVersion;
+    private final Constraints constraints;
+    private final Compatibilities compatibilities;
+    private final String providerName;
+    private final int numMachines;
+    private final Set<String> services;
+    private final String hardwareType;
+    private final String imageType;
+
+    /**
+     * Create a key of a solved layout.
+     *
+     * @param tenantId Id of the tenant the layout is solved for.
+     * @param template Cluster template to solve the layout with.
+     * @param providerName Name of the provider of the cluster.
+     * @param numMachines Number of nodes in the cluster.
+     * @param services Services to place on the cluster.
+     * @param hardwareType Hardware type that all nodes must use, or null if any hardware type can be used.
+     * @param imageType Image type that all nodes must use, or null if any image type can be used.
+     */
+    Key(String tenantId, ClusterTemplate template, String providerName, int numMachines, Set<String> services,
+        @Nullable String hardwareType, @Nullable String imageType) {
+      this.tenantId = tenantId;
+      this.templateName = template.getName();
+      this.templateVersion = template.getVersion();
+      this.constraints = template.getConstraints();
+      this.compatibilities = template.getCompatibilities();
+      this.providerName = providerName;
+      this.numMachines = numMachines;
+      this.services = ImmutableSet.copyOf(services);
+      this.hardwareType = hardwareType;
+      this.imageType = imageType;
+    }
+
+    // layouts without a required hardware or image type are solved with all of them, so any change can affect them
+    private boolean dependsOn(String tenantId, BaseEntityStoreView.EntityType entityType, String entityName) {
+      if (!this.tenantId.equals(tenantId)) {
+        return false;
+      }
+      switch (entityType) {
+        case HARDWARE_TYPE:
+          return hardwareType == null || hardwareType.equals(entityName);
+        case IMAGE_TYPE:
+          return imageType == null || imageType.equals(entityName);
+        case SERVICE:
+          return services.contains(entityName);
+        default:
+          return false;
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return templateVersion == other.templateVersion &&
+        numMachines == other.numMachines &&
+        Objects.equal(tenantId, other.tenantId) &&
+        Objects.equal(templateName, other.templateName) &&
+        Objects.equal(constraints, other.constraints) &&
+        Objects.equal(compatibilities, other.compatibilities) &&
+        Objects.equal(providerName, other.providerName) &&
+        Objects.equal(services, other.services) &&
+        Objects.equal(hardwareType, other.hardwareType) &&
+        Objects.equal(imageType, other.imageType);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(tenantId, templateName, templateVersion, constraints, compatibilities, providerName,
+                              numMachines, services, hardwareType, imageType);
+    }
+  }
+}
@@ -26,6 +26,7 @@ import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -42,6 +43,7 @@ public class AddServiceChangeIterator implements Iterator<ClusterLayoutChange> {
   private int[] nodeLayoutMaxCounts;
   private int nodesToAddTo;
   private int minNodesToAddTo;
+  private final int numNodeCountOptions;
 
   public AddServiceChangeIterator(ClusterLayout clusterLayout, String service) {
     this.service = service;
@@ -61,8 +63,9 @@ public class AddServiceChangeIterator implements Iterator<ClusterLayoutChange> {
         expandedCounts.add(originalNodeLayout, clusterLayout.getLayout().count(originalNodeLayout));
       }
     }
-    // sort expandable node layouts by preference order
-    Collections.sort(this.expandableNodeLayouts, new NodeLayoutComparator(null, null));
+    // sort expandable node layouts by preference order, with node layouts that have more nodes to add the service to
+    // first among node layouts with the same number of services
+    Collections.sort(this.expandableNodeLayouts, new SpareCapacityComparator(expandedCounts));
     // need to pass this to the slotted iterator so we don't try and add the service to a node layout more times
     // than there are nodes for the node layout.
     this.nodeLayoutMaxCounts = new int[expandableNodeLayouts.size()];
@@ -78,12 +81,24 @@ public class AddServiceChangeIterator implements Iterator<ClusterLayoutChange> {
     // there instead. Similarly, if there is a min constraint on this service higher than 1, use that instead.
     if (serviceConstraint != null) {
       this.nodesToAddTo = Math.min(serviceConstraint.getMaxCount(), this.nodesToAddTo);
-      this.minNodesToAddTo = Math.max(serviceConstraint.getMinCount(), this.minNodesToAddTo);
+      this.minNodesToAddTo =
+        Math.max(serviceConstraint.getMinCount(clusterLayout.getLayout().size()), this.minNodesToAddTo);
     }
+    this.numNodeCountOptions = Math.max(0, this.nodesToAddTo - this.minNodesToAddTo + 1);
     this.nodeLayoutCountIterator = (this.nodesToAddTo < 1) ? null :
       new SlottedCombinationIterator(expandableNodeLayouts.size(), nodesToAddTo, nodeLayoutMaxCounts);
   }
 
+  /**
+   * Get the number of different numbers of nodes the service can be added to, which is 0 if the service cannot be
+   * added to enough nodes to satisfy its constraints. A service with fewer options is more constrained.
+   *
+   * @return Number of different numbers of nodes the service can be added to.
+   */
+  public int getNumNodeCountOptions() {
+    return numNodeCountOptions;
+  }
+
   @Override
   public boolean hasNext() {
     if (nodeLayoutCountIterator == null) {
@@ -121,4 +136,31 @@ public class AddServiceChangeIterator implements Iterator<ClusterLayoutChange> {
   public void remove() {
     throw new UnsupportedOperationException();
   }
+
+  /**
+   * Compares node layouts by their number of services first, like the {@link NodeLayoutComparator}, then puts node
+   * layouts with more nodes first, since they have more spare capacity for the services that are added later.
+   */
+  private static class SpareCapacityComparator implements Comparator<NodeLayout> {
+    private final Multiset<NodeLayout> counts;
+    private final NodeLayoutComparator preferenceComparator;
+
+    private SpareCapacityComparator(Multiset<NodeLayout> counts) {
+      this.counts = counts;
+      this.preferenceComparator = new NodeLayoutComparator(null, null);
+    }
+
+    @Override
+    public int compare(NodeLayout n1, NodeLayout n2) {
+      int compare = n2.getServiceNames().size() - n1.getServiceNames().size();
+      if (compare != 0) {
+        return compare;
+      }
+      compare = counts.count(n2) - counts.count(n1);
+      if (compare != 0) {
+        return compare;
+      }
+      return preferenceComparator.compare(n1, n2);
+    }
+  }
 }
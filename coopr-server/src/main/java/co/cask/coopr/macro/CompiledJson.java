@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.eval.ClusterServiceIndex;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * A JSON tree whose macros have been parsed, created through {@link Expander#compile(JsonElement)}. Expanding a
+ * compiled tree walks only the parts of the tree that contain macros, without scanning or parsing any strings.
+ * Compiled trees are shared between JSON trees with the same content, so the macro tree is walked in parallel with
+ * the JSON tree it was created for, and parts without macros are taken from that JSON tree as they are.
+ */
+public final class CompiledJson {
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final JsonElement json;
+  // null if the json does not contain any macros
+  private final MacroTree macroTree;
+
+  CompiledJson(JsonElement json, @Nullable MacroTree macroTree) {
+    this.json = json;
+    this.macroTree = macroTree;
+  }
+
+  /**
+   * Expand all macros in the context of the given cluster nodes and node, as described in
+   * {@link Expander#expand(JsonElement, java.util.List, Cluster, Set, Node)}.
+   *
+   * @param cluster the cluster to use for expanding macros.
+   * @param nodes the cluster nodes to use for expanding macros.
+   * @param node the cluster node to use for expanding macros.
+   * @return a new JSON tree if any expansion took place, and the original JSON tree otherwise.
+   * @throws IncompleteClusterException if the cluster does not have the meta data to expand all macros.
+   */
+  public JsonElement expand(Cluster cluster, Set<Node> nodes, Node node) throws IncompleteClusterException {
+    return macroTree == null ? json : macroTree.expand(json, cluster, ClusterServiceIndex.of(nodes), node);
+  }
+
+  /**
+   * Expand all macros in the context of the given index of cluster nodes and node. Useful when expanding for many
+   * nodes of a cluster, so that the cluster nodes are indexed only once.
+   *
+   * @param cluster the cluster to use for expanding macros.
+   * @param serviceIndex the index of cluster nodes to use for expanding macros.
+   * @param node the cluster node to use for expanding macros.
+   * @return a new JSON tree if any expansion took place, and the original JSON tree otherwise.
+   * @throws IncompleteClusterException if the cluster does not have the meta data to expand all macros.
+   */
+  public JsonElement expand(Cluster cluster, ClusterServiceIndex serviceIndex, Node node)
+    throws IncompleteClusterException {
+    return macroTree == null ? json : macroTree.expand(json, cluster, serviceIndex, node);
+  }
+
+  /**
+   * Compute a hash of the content of a JSON tree, which compiled trees are cached by.
+   */
+  static HashCode hash(JsonElement json) {
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    hash(json, hasher);
+    return hasher.hash();
+  }
+
+  private static void hash(JsonElement json, Hasher hasher) {
+    if (json.isJsonPrimitive()) {
+      JsonPrimitive primitive = json.getAsJsonPrimitive();
+      hasher.putByte(primitive.isString() ? (byte) 1 : (byte) 2);
+      putString(primitive.getAsString(), hasher);
+    } else if (json.isJsonArray()) {
+      JsonArray array = json.getAsJsonArray();
+      hasher.putByte((byte) 3).putInt(array.size());
+      for (JsonElement element : array) {
+        hash(element, hasher);
+      }
+    } else if (json.isJsonObject()) {
+      Set<Map.Entry<String, JsonElement>> entries = json.getAsJsonObject().entrySet();
+      hasher.putByte((byte) 4).putInt(entries.size());
+      for (Map.Entry<String, JsonElement> entry : entries) {
+        putString(entry.getKey(), hasher);
+        hash(entry.getValue(), hasher);
+      }
+    } else {
+      hasher.putByte((byte) 0);
+    }
+  }
+
+  private static void putString(String string, Hasher hasher) {
+    hasher.putInt(string.length()).putString(string, Charsets.UTF_8);
+  }
+
+  /**
+   * Parse all macros in a JSON tree.
+   *
+   * @param json the JSON tree to compile.
+   * @return the tree of macros in the JSON tree, or null if it does not contain any macros.
+   * @throws SyntaxException if a macro expression is ill-formed.
+   */
+  @Nullable
+  static MacroTree compileTree(JsonElement json) throws SyntaxException {
+    if (json.isJsonPrimitive()) {
+      JsonPrimitive primitive = json.getAsJsonPrimitive();
+      if (primitive.isString()) {
+        CompiledString compiled = CompiledString.compile(primitive.getAsString());
+        return compiled.hasMacros() ? new StringTree(compiled) : null;
+      }
+    } else if (json.isJsonArray()) {
+      JsonArray array = json.getAsJsonArray();
+      MacroTree[] children = new MacroTree[array.size()];
+      boolean hasMacros = false;
+      for (int i = 0; i < children.length; i++) {
+        children[i] = compileTree(array.get(i));
+        hasMacros = hasMacros || children[i] != null;
+      }
+      return hasMacros ? new ArrayTree(children) : null;
+    } else if (json.isJsonObject()) {
+      Set<Map.Entry<String, JsonElement>> entries = json.getAsJsonObject().entrySet();
+      MacroTree[] children = new MacroTree[entries.size()];
+      boolean hasMacros = false;
+      int i = 0;
+      for (Map.Entry<String, JsonElement> entry : entries) {
+        children[i] = compileTree(entry.getValue());
+        hasMacros = hasMacros || children[i] != null;
+        i++;
+      }
+      return hasMacros ? new ObjectTree(children) : null;
+    }
+    return null;
+  }
+
+  /**
+   * Macros of a JSON element, for expanding JSON elements with the content it was compiled from.
+   */
+  abstract static class MacroTree {
+
+    /**
+     * Expand the macros of a JSON element.
+     *
+     * @return a new JSON element if any expansion took place, and the given element otherwise.
+     */
+    abstract JsonElement expand(JsonElement json, Cluster cluster, ClusterServiceIndex serviceIndex, Node node)
+      throws IncompleteClusterException;
+  }
+
+  /**
+   * Macros of a string.
+   */
+  private static final class StringTree extends MacroTree {
+    private final CompiledString compiled;
+
+    private StringTree(CompiledString compiled) {
+      this.compiled = compiled;
+    }
+
+    @Override
+    JsonElement expand(JsonElement json, Cluster cluster, ClusterServiceIndex serviceIndex, Node node)
+      throws IncompleteClusterException {
+      String value = json.getAsString();
+      String expanded = compiled.expand(cluster, serviceIndex, node);
+      // only return a new json element if actual expansion happened
+      return expanded.equals(value) ? json : new JsonPrimitive(expanded);
+    }
+  }
+
+  /**
+   * Macros of an array, with a null child for elements without macros.
+   */
+  private static final class ArrayTree extends MacroTree {
+    private final MacroTree[] children;
+
+    private ArrayTree(MacroTree[] children) {
+      this.children = children;
+    }
+
+    @Override
+    JsonElement expand(JsonElement json, Cluster cluster, ClusterServiceIndex serviceIndex, Node node)
+      throws IncompleteClusterException {
+      JsonArray array = json.getAsJsonArray();
+      JsonArray array1 = new JsonArray();
+      boolean expansionHappened = false;
+      for (int i = 0; i < children.length; i++) {
+        JsonElement element = array.get(i);
+        JsonElement expanded = children[i] == null ? element : children[i].expand(element, cluster, serviceIndex, node);
+        expansionHappened = expansionHappened || expanded != element;
+        array1.add(expanded);
+      }
+      // only return a new json array if actual expansion happened
+      return expansionHappened ? array1 : json;
+    }
+  }
+
+  /**
+   * Macros of an object, with children in the order of the object's entries and a null child for values without
+   * macros.
+   */
+  private static final class ObjectTree extends MacroTree {
+    private final MacroTree[] children;
+
+    private ObjectTree(MacroTree[] children) {
+      this.children = children;
+    }
+
+    @Override
+    JsonElement expand(JsonElement json, Cluster cluster, ClusterServiceIndex serviceIndex, Node node)
+      throws IncompleteClusterException {
+      JsonObject object = json.getAsJsonObject();
+      JsonObject object1 = new JsonObject();
+      boolean expansionHappened = false;
+      Iterator<Map.Entry<String, JsonElement>> entries = object.entrySet().iterator();
+      for (MacroTree child : children) {
+        Map.Entry<String, JsonElement> entry = entries.next();
+        JsonElement value = entry.getValue();
+        JsonElement expanded = child == null ? value : child.expand(value, cluster, serviceIndex, node);
+        expansionHappened = expansionHappened || expanded != value;
+        object1.add(entry.getKey(), expanded);
+      }
+      // only return a new json object if actual expansion happened
+      return expansionHappened ? object1 : json;
+    }
+  }
+}
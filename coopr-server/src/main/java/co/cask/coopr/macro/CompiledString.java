@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.eval.ClusterServiceIndex;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * A text whose macros have been parsed. The text is split into literal segments and macro expressions, so that it
+ * can be expanded any number of times without scanning or parsing it again.
+ */
+final class CompiledString {
+  private final String text;
+  // literal segments and expressions in the order they appear in the text
+  private final List<Object> segments;
+  private final boolean hasMacros;
+
+  private CompiledString(String text, List<Object> segments, boolean hasMacros) {
+    this.text = text;
+    this.segments = segments;
+    this.hasMacros = hasMacros;
+  }
+
+  /**
+   * Split a text into literal segments and macros, and parse all macros.
+   *
+   * @param text text that may contain macros.
+   * @return the compiled text.
+   * @throws SyntaxException if a macro is not wellformed.
+   */
+  static CompiledString compile(String text) throws SyntaxException {
+    ImmutableList.Builder<Object> segments = ImmutableList.builder();
+    boolean hasMacros = false;
+    int pos = 0;
+    while (pos < text.length()) {
+      int pos1 = Expander.findNextPercent(text, pos);
+      if (pos1 < 0) {
+        break;
+      }
+      int pos2 = Expander.findNextPercent(text, pos1 + 1);
+      if (pos2 < 0) {
+        break;
+      }
+      if (pos1 > pos) {
+        segments.add(text.substring(pos, pos1));
+      }
+      segments.add(new Parser(text.substring(pos1 + 1, pos2)).parse());
+      hasMacros = true;
+      pos = pos2 + 1;
+    }
+    if (pos < text.length()) {
+      segments.add(text.substring(pos));
+    }
+    return new CompiledString(text, segments.build(), hasMacros);
+  }
+
+  /**
+   * Whether the text contains any macros.
+   */
+  boolean hasMacros() {
+    return hasMacros;
+  }
+
+  /**
+   * Expand all macros in the context of the given cluster nodes and node. Macros that cannot be evaluated for the
+   * cluster are dropped, unless no macro could be evaluated, in which case the text is returned unchanged.
+   *
+   * @param cluster cluster to evaluate macros for.
+   * @param serviceIndex index of the cluster nodes to evaluate macros for.
+   * @param node cluster node to evaluate macros for.
+   * @return text with any relevant macros expanded, or the original text if no expansion happened.
+   * @throws IncompleteClusterException if a macro cannot be expanded because the cluster lacks the information.
+   */
+  String expand(Cluster cluster, ClusterServiceIndex serviceIndex, Node node) throws IncompleteClusterException {
+    if (!hasMacros) {
+      return text;
+    }
+    StringBuilder builder = new StringBuilder(text.length());
+    boolean expansionHappened = false;
+    for (Object segment : segments) {
+      if (segment instanceof String) {
+        builder.append((String) segment);
+      } else {
+        String expansion = ((Expression) segment).evaluate(cluster, serviceIndex, node);
+        if (expansion != null) {
+          builder.append(expansion);
+          expansionHappened = true;
+        }
+      }
+    }
+    return expansionHappened ? builder.toString() : text;
+  }
+}
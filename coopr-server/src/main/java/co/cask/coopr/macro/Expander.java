@@ -17,13 +17,20 @@ package co.cask.coopr.macro;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
-import com.google.gson.JsonArray;
+import co.cask.coopr.macro.eval.ClusterServiceIndex;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 
 /**
@@ -48,17 +55,17 @@ import javax.annotation.Nullable;
  * string "$:2181" with each hostname, and the join function then joins them all with a comma.
  */
 public final class Expander {
+  private static final int MAX_CACHED_MACRO_TREES = 1000;
+  // compiled macros of JSON trees, by the hash of their content
+  private static final Cache<HashCode, Optional<CompiledJson.MacroTree>> MACRO_TREES =
+    CacheBuilder.newBuilder().maximumSize(MAX_CACHED_MACRO_TREES).build();
 
   /**
    * Given a text that may contain macros, validate the syntax of all macros.
    * @throws SyntaxException if a macro is not wellformed.
    */
   public static void validate(String textWithMacros) throws SyntaxException {
-    try {
-      expand(textWithMacros, null, null, null);
-    } catch (IncompleteClusterException e) {
-      // can never happen because expansion is skipped
-    }
+    CompiledString.compile(textWithMacros);
   }
 
   /**
@@ -74,44 +81,28 @@ public final class Expander {
    */
   public static String expand(String textWithMacros, Cluster cluster, Set<Node> nodes, Node node)
     throws SyntaxException, IncompleteClusterException {
-    int pos = 0;
-    StringBuilder builder = nodes == null ? null : new StringBuilder();
-    boolean expansionHappened = false;
-    while (pos < textWithMacros.length()) {
-      // find the first macro
-      int pos1 = findNextPercent(textWithMacros, pos);
-      if (pos1 >= 0) {
-        int pos2 = findNextPercent(textWithMacros, pos1 + 1);
-        if (pos2 >= 0) {
-          // copy text up to macro
-          if (builder != null) {
-            builder.append(textWithMacros, pos, pos1);
-          }
-          // macro found
-          String macro = textWithMacros.substring(pos1 + 1, pos2);
-          // parse the macro
-          Expression expression = new Parser(macro).parse();
-          // if cluster is given, expand macro
-          if (builder != null) {
-            String expansion = expression.evaluate(cluster, nodes, node);
-            if (expansion != null) {
-              builder.append(expansion);
-              expansionHappened = true;
-            }
-          }
-          // move position past macro
-          pos = pos2 + 1;
-          continue;
-        }
-      }
-      // no macro found, copy remaining text and quit
-      if (builder != null && expansionHappened) {
-        builder.append(textWithMacros, pos, textWithMacros.length());
-      }
-      break;
+    CompiledString compiled = CompiledString.compile(textWithMacros);
+    // if cluster is given, expand macros
+    if (nodes == null || !compiled.hasMacros()) {
+      return textWithMacros;
     }
-    // only return a new string if actual expansion happened
-    return expansionHappened ? builder.toString() : textWithMacros;
+    return compiled.expand(cluster, ClusterServiceIndex.of(nodes), node);
+  }
+
+  /**
+   * Given a text that may contain macros, validate and expand all macros in the context of the given index of cluster
+   * nodes, and on the specified node.
+   * @param textWithMacros text that may contain macros.
+   * @param cluster cluster to evaluate macros for.
+   * @param serviceIndex index of the cluster nodes to evaluate macros for.
+   * @param node cluster node to evaluate macros for.
+   * @return text with any relevant macros expanded.
+   * @throws SyntaxException if a macro is not wellformed.
+   * @throws IncompleteClusterException if a macro cannot be expanded because the cluster lacks the information.
+   */
+  public static String expand(String textWithMacros, Cluster cluster, ClusterServiceIndex serviceIndex, Node node)
+    throws SyntaxException, IncompleteClusterException {
+    return CompiledString.compile(textWithMacros).expand(cluster, serviceIndex, node);
   }
 
   /**
@@ -173,52 +164,35 @@ public final class Expander {
       return json;
     }
 
-    if (json.isJsonPrimitive()) {
-      JsonPrimitive primitive = json.getAsJsonPrimitive();
-      if (primitive.isString()) {
-        String value = primitive.getAsString();
-        String expanded = expand(value, cluster, nodes, node);
-        if (!expanded.equals(value)) {
-          // only return a new json element if actual expansion happened
-          return new JsonPrimitive(expanded);
-        }
-      }
-    }
-
-    if (json.isJsonArray()) {
-      JsonArray array = json.getAsJsonArray();
-      JsonArray array1 = new JsonArray();
-      boolean expansionHappened = false;
-      for (JsonElement element : array) {
-        JsonElement expanded = expand(element, path, cluster, nodes, node);
-        if (expanded != element) {
-          expansionHappened = true;
-        }
-        array1.add(expanded);
-      }
-      // only return a new json array if actual expansion happened
-      if (expansionHappened) {
-        return array1;
-      }
-    }
+    CompiledJson compiled = compile(json);
+    // if cluster is given, expand macros
+    return nodes == null ? json : compiled.expand(cluster, nodes, node);
+  }
 
-    if (json.isJsonObject()) {
-      JsonObject object = json.getAsJsonObject();
-      JsonObject object1 = new JsonObject();
-      boolean expansionHappened = false;
-      for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
-        JsonElement expanded = expand(entry.getValue(), path, cluster, nodes, node);
-        if (expanded != entry.getValue()) {
-          expansionHappened = true;
-        }
-        object1.add(entry.getKey(), expand(entry.getValue(), path, cluster, nodes, node));
-      }
-      if (expansionHappened) {
-        return object1;
+  /**
+   * Parse all macros in a JSON tree, so that it can be expanded many times without parsing its macros again.
+   * Compiled macros are cached by the content of the JSON tree, so compiling an equal tree again does not parse
+   * its macros again.
+   *
+   * @param json A JSON tree
+   * @return the compiled JSON tree.
+   * @throws SyntaxException if a macro expression is ill-formed.
+   */
+  public static CompiledJson compile(final JsonElement json) throws SyntaxException {
+    Callable<Optional<CompiledJson.MacroTree>> compiler = new Callable<Optional<CompiledJson.MacroTree>>() {
+      @Override
+      public Optional<CompiledJson.MacroTree> call() throws SyntaxException {
+        return Optional.fromNullable(CompiledJson.compileTree(json));
       }
+    };
+    try {
+      return new CompiledJson(json, MACRO_TREES.get(CompiledJson.hash(json), compiler).orNull());
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), SyntaxException.class);
+      throw Throwables.propagate(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
     }
-
-    return json;
   }
 
 }
@@ -17,6 +17,7 @@ package co.cask.coopr.macro;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.eval.ClusterServiceIndex;
 import co.cask.coopr.macro.eval.Evaluator;
 import com.google.common.base.Objects;
 
@@ -64,9 +65,25 @@ public class Expression {
    * @throws IncompleteClusterException if a node is missing the property that is required for the lookup type.
    */
   public String evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
+    return evaluate(cluster, ClusterServiceIndex.of(clusterNodes), node);
+  }
+
+  /**
+   * Evaluate the expression for a given cluster, looking up the nodes that run the service in the given index of the
+   * cluster nodes, then formats and joins all results into a string.
+   *
+   * @param cluster the cluster to evaluate for.
+   * @param serviceIndex index of the nodes of the cluster to evaluate for.
+   * @param node the node of the cluster to evaluate the expression for.
+   * @return the replacement string for the expression, or null if the service required for replacement is not in
+   *         the cluster.
+   * @throws IncompleteClusterException if a node is missing the property that is required for the lookup type.
+   */
+  public String evaluate(Cluster cluster, ClusterServiceIndex serviceIndex, Node node)
+    throws IncompleteClusterException {
     StringBuilder builder = new StringBuilder();
 
-    List<String> parts = evaluator.evaluate(cluster, clusterNodes, node);
+    List<String> parts = evaluator.evaluate(cluster, serviceIndex, node);
     if (parts == null) {
       return null;
     }
@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro.eval;
+
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.macro.IncompleteClusterException;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index of the nodes of a cluster by the services on them, used to evaluate macros without scanning all
+ * nodes of the cluster. For each service it keeps the nodes with the service in the order of the cluster nodes, the
+ * same nodes sorted by node number, and their hostnames, ip addresses and service instance numbers. An index should
+ * be built once for a set of cluster nodes and then used for all macros expanded for those nodes.
+ */
+public final class ClusterServiceIndex {
+  private static final Comparator<Node> NODE_NUM_COMPARATOR = new Comparator<Node>() {
+    @Override
+    public int compare(Node node, Node node2) {
+      Integer nodenum1 = node.getProperties().getNodenum();
+      Integer nodenum2 = node2.getProperties().getNodenum();
+      return nodenum1.compareTo(nodenum2);
+    }
+  };
+  private static final ServiceNodes NO_NODES = new ServiceNodes(ImmutableList.<Node>of());
+
+  private final Set<Node> clusterNodes;
+  private final Map<String, ServiceNodes> serviceNodes;
+
+  private ClusterServiceIndex(Set<Node> clusterNodes, Map<String, ServiceNodes> serviceNodes) {
+    this.clusterNodes = clusterNodes;
+    this.serviceNodes = serviceNodes;
+  }
+
+  /**
+   * Build an index of the given cluster nodes.
+   *
+   * @param clusterNodes Nodes of the cluster.
+   * @return Index of the cluster nodes.
+   */
+  public static ClusterServiceIndex of(Set<Node> clusterNodes) {
+    Map<String, List<Node>> nodesByService = Maps.newHashMap();
+    for (Node node : clusterNodes) {
+      Set<String> serviceNames = Sets.newHashSet();
+      for (Service service : node.getServices()) {
+        if (!serviceNames.add(service.getName())) {
+          continue;
+        }
+        List<Node> nodes = nodesByService.get(service.getName());
+        if (nodes == null) {
+          nodes = Lists.newArrayList();
+          nodesByService.put(service.getName(), nodes);
+        }
+        nodes.add(node);
+      }
+    }
+    ImmutableMap.Builder<String, ServiceNodes> serviceNodes = ImmutableMap.builder();
+    for (Map.Entry<String, List<Node>> entry : nodesByService.entrySet()) {
+      serviceNodes.put(entry.getKey(), new ServiceNodes(entry.getValue()));
+    }
+    return new ClusterServiceIndex(ImmutableSet.copyOf(clusterNodes), serviceNodes.build());
+  }
+
+  /**
+   * Get the cluster nodes that were indexed.
+   *
+   * @return Nodes of the cluster.
+   */
+  public Set<Node> getClusterNodes() {
+    return clusterNodes;
+  }
+
+  /**
+   * Get the number of nodes with the given service.
+   *
+   * @param serviceName Name of the service.
+   * @return Number of nodes with the service.
+   */
+  public int getNumNodes(String serviceName) {
+    return getServiceNodes(serviceName).nodes.size();
+  }
+
+  /**
+   * Get the hostnames of all nodes with the given service, in the order of the cluster nodes.
+   *
+   * @param serviceName Name of the service.
+   * @return Hostnames of all nodes with the service, empty if no node has the service.
+   * @throws IncompleteClusterException if a node with the service has no hostname.
+   */
+  public List<String> getHostnames(String serviceName) throws IncompleteClusterException {
+    ServiceNodes nodes = getServiceNodes(serviceName);
+    if (nodes.hostnames == null) {
+      for (Node node : nodes.nodes) {
+        if (node.getProperties().getHostname() == null) {
+          throw new IncompleteClusterException("node " + node.getId() + " has no hostname for macro expansion.");
+        }
+      }
+    }
+    return nodes.hostnames;
+  }
+
+  /**
+   * Get the ip addresses of the given type of all nodes with the given service, in the order of the cluster nodes.
+   *
+   * @param serviceName Name of the service.
+   * @param ipType Type of ip address.
+   * @return Ip addresses of all nodes with the service, empty if no node has the service.
+   * @throws IncompleteClusterException if a node with the service has no ip address of the given type.
+   */
+  public List<String> getIPAddresses(String serviceName, String ipType) throws IncompleteClusterException {
+    ServiceNodes nodes = getServiceNodes(serviceName);
+    List<String> ips = nodes.ipAddresses.get(ipType);
+    if (ips != null) {
+      return ips;
+    }
+    for (Node node : nodes.nodes) {
+      if (node.getProperties().getIPAddress(ipType) == null) {
+        throw new IncompleteClusterException("node " + node.getId() + " has no ip for macro expansion.");
+      }
+    }
+    // no node has the service
+    return ImmutableList.of();
+  }
+
+  /**
+   * Get the n'th node with the given service, where nodes are sorted by node number.
+   *
+   * @param serviceName Name of the service.
+   * @param n number of the node with the service on it, starting at 0.
+   * @return N'th node with the given service.
+   * @throws IncompleteClusterException if there are not fewer than n + 1 nodes with the service
+   */
+  public Node getNthNode(String serviceName, int n) throws IncompleteClusterException {
+    List<Node> sortedNodes = getServiceNodes(serviceName).sortedNodes;
+    if (n >= sortedNodes.size()) {
+      throw new IncompleteClusterException("There are fewer than " + (n + 1) + " nodes with "
+                                             + serviceName + " on the cluster");
+    }
+    return sortedNodes.get(n);
+  }
+
+  /**
+   * Get the instance number of the node among the nodes with the given service. For example, suppose there are 3
+   * nodes with zookeeper with node numbers 3, 7, and 17. The instance num of the node with node number 3 is 1, the
+   * instance num of the node with node number 7 is 2, and the instance num of the node with node number 17 is 3.
+   *
+   * @param serviceName Name of the service.
+   * @param node Node to find the instance number for.
+   * @return Instance number of the node, or -1 if no node with the service has the node number of the node.
+   */
+  public int getInstanceNum(String serviceName, Node node) {
+    Integer instanceNum = getServiceNodes(serviceName).instanceNums.get(node.getProperties().getNodenum());
+    return instanceNum == null ? -1 : instanceNum;
+  }
+
+  private ServiceNodes getServiceNodes(String serviceName) {
+    ServiceNodes nodes = serviceNodes.get(serviceName);
+    return nodes == null ? NO_NODES : nodes;
+  }
+
+  /**
+   * Nodes with a specific service, and their properties needed for evaluating macros.
+   */
+  private static final class ServiceNodes {
+    private final List<Node> nodes;
+    private final List<Node> sortedNodes;
+    // null if some node has no hostname
+    private final List<String> hostnames;
+    // ip addresses by ip type, for ip types that all nodes have
+    private final Map<String, List<String>> ipAddresses;
+    private final Map<Integer, Integer> instanceNums;
+
+    private ServiceNodes(List<Node> nodes) {
+      this.nodes = ImmutableList.copyOf(nodes);
+      List<Node> sorted = Lists.newArrayList(nodes);
+      Collections.sort(sorted, NODE_NUM_COMPARATOR);
+      this.sortedNodes = ImmutableList.copyOf(sorted);
+
+      ImmutableList.Builder<String> hostnames = ImmutableList.builder();
+      boolean hasAllHostnames = true;
+      Set<String> ipTypes = Sets.newHashSet();
+      for (Node node : nodes) {
+        String hostname = node.getProperties().getHostname();
+        if (hostname == null) {
+          hasAllHostnames = false;
+        } else {
+          hostnames.add(hostname);
+        }
+        Map<String, String> nodeIPs = node.getProperties().getIPAddresses();
+        if (nodeIPs != null) {
+          ipTypes.addAll(nodeIPs.keySet());
+        }
+      }
+      this.hostnames = hasAllHostnames ? hostnames.build() : null;
+
+      ImmutableMap.Builder<String, List<String>> ipAddresses = ImmutableMap.builder();
+      for (String ipType : ipTypes) {
+        List<String> ips = Lists.newArrayListWithCapacity(nodes.size());
+        for (Node node : nodes) {
+          String ip = node.getProperties().getIPAddress(ipType);
+          if (ip == null) {
+            break;
+          }
+          ips.add(ip);
+        }
+        if (ips.size() == nodes.size()) {
+          ipAddresses.put(ipType, ImmutableList.copyOf(ips));
+        }
+      }
+      this.ipAddresses = ipAddresses.build();
+
+      Map<Integer, Integer> instanceNums = Maps.newHashMap();
+      for (int i = 0; i < sortedNodes.size(); i++) {
+        int nodenum = sortedNodes.get(i).getProperties().getNodenum();
+        if (!instanceNums.containsKey(nodenum)) {
+          instanceNums.put(nodenum, i + 1);
+        }
+      }
+      this.instanceNums = ImmutableMap.copyOf(instanceNums);
+    }
+  }
+}
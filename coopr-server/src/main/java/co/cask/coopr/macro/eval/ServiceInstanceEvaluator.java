@@ -21,7 +21,6 @@ import co.cask.coopr.macro.IncompleteClusterException;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * Evaluates a macro that expands to be the instance number of the given node that contains the given service. For
@@ -35,8 +34,9 @@ public class ServiceInstanceEvaluator extends ServiceEvaluator {
   }
 
   @Override
-  public List<String> evaluate(Cluster cluster, Set<Node> clusterNodes, Node node) throws IncompleteClusterException {
-    int instanceNum = getServiceInstanceNum(node, sortServiceNodes(clusterNodes));
+  public List<String> evaluate(Cluster cluster, ClusterServiceIndex serviceIndex, Node node)
+    throws IncompleteClusterException {
+    int instanceNum = serviceIndex.getInstanceNum(serviceName, node);
     if (instanceNum < 0) {
       return null;
     }
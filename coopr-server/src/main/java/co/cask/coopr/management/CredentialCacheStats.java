@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.management;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Credential cache stats for JMX. Evictions count entries that were dropped because the cache was full or because
+ * they expired, wipes count entries that were dropped because their credentials changed or were no longer needed.
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class CredentialCacheStats {
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private final AtomicLong evictions;
+  private final AtomicLong wipes;
+
+  public CredentialCacheStats() {
+    this.hits = new AtomicLong(0);
+    this.misses = new AtomicLong(0);
+    this.evictions = new AtomicLong(0);
+    this.wipes = new AtomicLong(0);
+  }
+
+  public void hit() {
+    hits.incrementAndGet();
+  }
+
+  public void miss() {
+    misses.incrementAndGet();
+  }
+
+  public void evicted() {
+    evictions.incrementAndGet();
+  }
+
+  public void wiped() {
+    wipes.incrementAndGet();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public long getWipes() {
+    return wipes.get();
+  }
+
+  public double getHitRate() {
+    long numHits = hits.get();
+    long requests = numHits + misses.get();
+    return requests == 0 ? 0 : (double) numHits / requests;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.management;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Job scheduler stats for JMX. Lag is the time between placing a job in the job queue and starting to schedule it,
+ * which includes waiting in the queue, waiting for a free job scheduler thread and waiting for the cluster's job lock.
+ */
+@SuppressWarnings("UnusedDeclaration")
+public class JobSchedulerStats {
+  private final AtomicLong jobsScheduled;
+  private final AtomicLong totalLagMillis;
+  private final AtomicLong maxLagMillis;
+  private final AtomicLong lastLagMillis;
+  private final AtomicLong totalScheduleMillis;
+  private final AtomicInteger jobsInProgress;
+
+  public JobSchedulerStats() {
+    this.jobsScheduled = new AtomicLong(0);
+    this.totalLagMillis = new AtomicLong(0);
+    this.maxLagMillis = new AtomicLong(0);
+    this.lastLagMillis = new AtomicLong(0);
+    this.totalScheduleMillis = new AtomicLong(0);
+    this.jobsInProgress = new AtomicInteger(0);
+  }
+
+  /**
+   * Record that scheduling of a job started.
+   *
+   * @param lagMillis Milliseconds between placing the job in the queue and starting to schedule it.
+   */
+  public void jobStarted(long lagMillis) {
+    jobsInProgress.incrementAndGet();
+    lastLagMillis.set(lagMillis);
+    totalLagMillis.addAndGet(lagMillis);
+    long max = maxLagMillis.get();
+    while (lagMillis > max && !maxLagMillis.compareAndSet(max, lagMillis)) {
+      max = maxLagMillis.get();
+    }
+  }
+
+  /**
+   * Record that scheduling of a job finished.
+   *
+   * @param scheduleMillis Milliseconds spent scheduling the job.
+   */
+  public void jobFinished(long scheduleMillis) {
+    jobsInProgress.decrementAndGet();
+    jobsScheduled.incrementAndGet();
+    totalScheduleMillis.addAndGet(scheduleMillis);
+  }
+
+  public long getJobsScheduled() {
+    return jobsScheduled.get();
+  }
+
+  public int getJobsInProgress() {
+    return jobsInProgress.get();
+  }
+
+  public long getLastLagMillis() {
+    return lastLagMillis.get();
+  }
+
+  public long getMaxLagMillis() {
+    return maxLagMillis.get();
+  }
+
+  public long getAverageLagMillis() {
+    long scheduled = jobsScheduled.get();
+    return scheduled == 0 ? 0 : totalLagMillis.get() / scheduled;
+  }
+
+  public long getAverageScheduleMillis() {
+    long scheduled = jobsScheduled.get();
+    return scheduled == 0 ? 0 : totalScheduleMillis.get() / scheduled;
+  }
+}
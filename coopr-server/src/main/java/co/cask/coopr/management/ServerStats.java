@@ -32,6 +32,9 @@ public class ServerStats implements ServerStatsMXBean {
   private final ClusterStats failedClusterStats;
   private final ClusterStats successfulClusterStats;
 
+  private final JobSchedulerStats jobSchedulerStats;
+  private final CredentialCacheStats credentialCacheStats;
+
   public ServerStats() {
     this.queueLength = new AtomicInteger(0);
 
@@ -43,6 +46,9 @@ public class ServerStats implements ServerStatsMXBean {
     this.clusterStats = new ClusterStats();
     this.failedClusterStats = new ClusterStats();
     this.successfulClusterStats = new ClusterStats();
+
+    this.jobSchedulerStats = new JobSchedulerStats();
+    this.credentialCacheStats = new CredentialCacheStats();
   }
 
   @Override
@@ -85,6 +91,16 @@ public class ServerStats implements ServerStatsMXBean {
     return successfulClusterStats;
   }
 
+  @Override
+  public JobSchedulerStats getJobSchedulerStats() {
+    return jobSchedulerStats;
+  }
+
+  @Override
+  public CredentialCacheStats getCredentialCacheStats() {
+    return credentialCacheStats;
+  }
+
   public void setQueueLength(int queueLength) {
     this.queueLength.set(queueLength);
   }
@@ -34,5 +34,9 @@ public interface ServerStatsMXBean {
   ClusterStats getFailedClusterStats();
 
   ClusterStats getSuccessfulClusterStats();
+
+  JobSchedulerStats getJobSchedulerStats();
+
+  CredentialCacheStats getCredentialCacheStats();
 }
 
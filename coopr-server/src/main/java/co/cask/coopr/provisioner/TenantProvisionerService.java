@@ -1,7 +1,7 @@
 package co.cask.coopr.provisioner;
 
 import co.cask.coopr.account.Account;
-import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.ClusterOverview;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.queue.Element;
@@ -197,7 +197,7 @@ public class TenantProvisionerService {
    */
   public boolean satisfiesTenantQuotas(Tenant tenant, int additionalClusters, int additionalNodes) throws IOException {
     ClusterStoreView view = clusterStoreService.getView(new Account(Constants.ADMIN_USER, tenant.getId()));
-    List<Cluster> nonTerminatedClusters = view.getNonTerminatedClusters();
+    List<ClusterOverview> nonTerminatedClusters = view.getNonTerminatedClusterOverviews();
 
     int numClusters = additionalClusters + nonTerminatedClusters.size();
     if (numClusters > tenant.getSpecification().getMaxClusters()) {
@@ -205,8 +205,8 @@ public class TenantProvisionerService {
     }
 
     int numNodes = additionalNodes;
-    for (Cluster cluster : nonTerminatedClusters) {
-      numNodes += cluster.getNodeIDs().size();
+    for (ClusterOverview cluster : nonTerminatedClusters) {
+      numNodes += cluster.getNumNodes();
     }
     if (numNodes > tenant.getSpecification().getMaxNodes()) {
       return false;
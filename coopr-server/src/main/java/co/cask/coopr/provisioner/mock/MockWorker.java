@@ -40,12 +40,15 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Mock worker that periodically takes a task and finishes it without performing any actual work.
+ * Mock worker that periodically takes a task and finishes it without performing any actual work. Take requests wait
+ * on the server for a while if there is no task, so idle workers pick up new tasks as soon as they are queued.
  */
 public class MockWorker extends AbstractScheduledService {
   private static final Gson GSON = new Gson();
   private static final Logger LOG = LoggerFactory.getLogger(MockWorker.class);
   private static final Random RANDOM = new Random();
+  // how long a take request waits on the server for a task, kept below the socket timeout of the http client
+  private static final long TAKE_WAIT_MS = 1000;
   private final String provisionerId;
   private final String workerId;
   private final String tenantId;
@@ -130,6 +133,7 @@ public class MockWorker extends AbstractScheduledService {
       body.addProperty("provisionerId", provisionerId);
       body.addProperty("workerId", provisionerId + "." + workerId);
       body.addProperty("tenantId", tenantId);
+      body.addProperty("waitMs", TAKE_WAIT_MS);
       takeRequest.setEntity(new StringEntity(body.toString()));
 
       Reader reader = null;
@@ -40,7 +40,9 @@ import co.cask.coopr.provisioner.guice.ProvisionerModule;
 import co.cask.coopr.provisioner.plugin.ResourceService;
 import co.cask.coopr.scheduler.Scheduler;
 import co.cask.coopr.scheduler.guice.SchedulerModule;
+import co.cask.coopr.scheduler.task.TaskQueueService;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import co.cask.coopr.store.credential.CredentialCache;
 import co.cask.coopr.store.credential.CredentialStore;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.guice.StoreModule;
@@ -83,7 +85,9 @@ public final class ServerMain extends DaemonMain {
   private Configuration conf;
   private CConfiguration cConf;
   private int solverNumThreads;
+  private int jobSchedulerNumThreads;
   private ListeningExecutorService solverExecutorService;
+  private ListeningExecutorService jobExecutorService;
   private ListeningExecutorService callbackExecutorService;
   private ClusterStoreService clusterStoreService;
   private EntityStoreService entityStoreService;
@@ -129,6 +133,7 @@ public final class ServerMain extends DaemonMain {
       }
 
       solverNumThreads = conf.getInt(Constants.SOLVER_NUM_THREADS);
+      jobSchedulerNumThreads = conf.getInt(Constants.JOB_SCHEDULER_NUM_THREADS);
     } catch (Exception e) {
       LOG.error("Exception initializing server", e);
     }
@@ -151,6 +156,13 @@ public final class ServerMain extends DaemonMain {
                                      .setDaemon(true)
                                      .build()));
 
+    jobExecutorService = MoreExecutors.listeningDecorator(
+      Executors.newFixedThreadPool(jobSchedulerNumThreads,
+                                   new ThreadFactoryBuilder()
+                                     .setNameFormat("job-scheduler-%d")
+                                     .setDaemon(true)
+                                     .build()));
+
     callbackExecutorService = MoreExecutors.listeningDecorator(
       Executors.newCachedThreadPool(new ThreadFactoryBuilder()
                                       .setNameFormat("callback-%d")
@@ -164,8 +176,8 @@ public final class ServerMain extends DaemonMain {
         new ConfigurationModule(conf),
         new ZookeeperModule(zkClientService),
         new StoreModule(conf),
-        new QueueModule(zkClientService),
-        new SchedulerModule(conf, callbackExecutorService, solverExecutorService),
+        new QueueModule(zkClientService, conf),
+        new SchedulerModule(conf, callbackExecutorService, solverExecutorService, jobExecutorService),
         new HttpModule(),
         new ManagementModule(),
         new ProvisionerModule(),
@@ -230,6 +242,9 @@ public final class ServerMain extends DaemonMain {
     if (scheduler != null) {
       scheduler.stopAndWait();
     }
+    if (injector != null) {
+      injector.getInstance(TaskQueueService.class).shutdown();
+    }
     if (solverExecutorService != null) {
       solverExecutorService.shutdown();
       try {
@@ -238,6 +253,14 @@ public final class ServerMain extends DaemonMain {
         LOG.error("Got Exception: ", e);
       }
     }
+    if (jobExecutorService != null) {
+      jobExecutorService.shutdown();
+      try {
+        jobExecutorService.awaitTermination(100, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        LOG.error("Got Exception: ", e);
+      }
+    }
     if (callbackExecutorService != null) {
       callbackExecutorService.shutdown();
       try {
@@ -249,8 +272,11 @@ public final class ServerMain extends DaemonMain {
 
     stopAll(internalHandlerServer, externalHandlerServer, queueService,
             userStore, resourceService, provisionerStore, tenantStore,
-            clusterStoreService, entityStoreService, idService, zkClientService, inMemoryZKServer,
+            clusterStoreService, entityStoreService, credentialStore, idService, zkClientService, inMemoryZKServer,
             externalAuthenticationServer);
+    if (injector != null) {
+      injector.getInstance(CredentialCache.class).stop();
+    }
   }
 
   private void stopAll(Service... services) {
@@ -36,8 +36,10 @@ import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -138,14 +140,19 @@ public class ClusterCleanup implements Runnable {
         if (provisionerQueues.remove(queueName, task.getTaskId())) {
           LOG.debug("Timing out task {} whose queue time is {}", task.getTaskId(), queuedElement.getStatusTime());
 
-          // Fail the task
-          String statusMessage = String.format("Timed out by after %d secs", taskTimeout);
+          // Fail the task and update node status together
+          final String statusMessage = String.format("Timed out by after %d secs", taskTimeout);
           task.setStatusMessage(statusMessage);
-          taskService.failTask(task, -1);
-
-          // Update node status
-          Node node = clusterStore.getNode(task.getNodeId());
-          nodeService.failAction(node, "", statusMessage);
+          final ClusterTask failedTask = task;
+          clusterStore.inTransaction(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              taskService.failTask(failedTask, -1);
+              Node node = clusterStore.getNode(failedTask.getNodeId());
+              nodeService.failAction(node, "", statusMessage);
+              return null;
+            }
+          });
 
           // Schedule the job
           jobQueues.add(queueName, new Element(task.getJobId()));
@@ -160,6 +160,7 @@ public class ClusterScheduler implements Runnable {
                                             Map<String, Node> nodeMap)
     throws Exception {
     List<Set<ClusterTask>> runnableTasks = Lists.newArrayListWithExpectedSize(tasks.size());
+    List<ClusterTask> allTasks = Lists.newArrayList();
     for (Set<TaskNode> taskNodes : tasks) {
       // Create tasks for a stage
       Set<ClusterTask> stageTasks = Sets.newHashSet();
@@ -178,13 +179,15 @@ public class ClusterScheduler implements Runnable {
         TaskId taskId = idService.getNewTaskId(JobId.fromString(job.getJobId()));
         ClusterTask task = new ClusterTask(action, taskId, taskNode.getHostId(), taskNode.getService(), clusterAction,
                                            cluster.getClusterTemplate().getName(), cluster.getAccount());
-        clusterStore.writeClusterTask(task);
         stageTasks.add(task);
+        allTasks.add(task);
       }
       if (!stageTasks.isEmpty()) {
         runnableTasks.add(stageTasks);
       }
     }
+    // write all tasks of the job at once, so that a failure does not leave some of them behind
+    clusterStore.writeClusterTasks(allTasks);
     return runnableTasks;
   }
 
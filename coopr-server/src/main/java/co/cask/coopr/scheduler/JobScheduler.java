@@ -26,7 +26,11 @@ import co.cask.coopr.common.queue.QueueService;
 import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.common.zookeeper.LockService;
+import co.cask.coopr.macro.CompiledJson;
 import co.cask.coopr.macro.Expander;
+import co.cask.coopr.macro.eval.ClusterServiceIndex;
+import co.cask.coopr.management.JobSchedulerStats;
+import co.cask.coopr.management.ServerStats;
 import co.cask.coopr.scheduler.task.ClusterJob;
 import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
@@ -40,11 +44,16 @@ import co.cask.coopr.store.cluster.ClusterStoreService;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +71,9 @@ import java.util.concurrent.locks.Lock;
  * If some task was failed, the appropriate retry and rollback actions are taken for the task. If the job itself fails,
  * unneeded tasks are dropped and cluster and job state is managed. If all tasks for the job have completed, status
  * is updated across the job and cluster.
+ * <p/>
+ * Jobs of different clusters are scheduled in parallel using the job executor service. Jobs of the same cluster are
+ * scheduled one at a time, and the cluster's job lock keeps other servers from scheduling them at the same time.
  */
 public class JobScheduler implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(JobScheduler.class);
@@ -74,14 +86,18 @@ public class JobScheduler implements Runnable {
   private final Gson gson;
   private final QueueGroup jobQueues;
   private final QueueGroup provisionerQueues;
+  private final ListeningExecutorService executorService;
+  private final JobSchedulerStats stats;
 
   @Inject
-  private JobScheduler(ClusterStoreService clusterStoreService,
+  JobScheduler(ClusterStoreService clusterStoreService,
                        QueueService queueService,
                        LockService lockService,
                        TaskService taskService,
                        Configuration conf,
-                       Gson gson) {
+                       Gson gson,
+                       @Named("job.executor.service") ListeningExecutorService executorService,
+                       ServerStats serverStats) {
     this.clusterStore = clusterStoreService.getSystemView();
     this.lockService = lockService;
     this.taskService = taskService;
@@ -89,130 +105,203 @@ public class JobScheduler implements Runnable {
     this.gson = gson;
     this.jobQueues = queueService.getQueueGroup(QueueType.JOB);
     this.provisionerQueues = queueService.getQueueGroup(QueueType.PROVISIONER);
+    this.executorService = executorService;
+    this.stats = serverStats.getJobSchedulerStats();
   }
 
   @Override
   public void run() {
     try {
+      // jobs of the same cluster have to be scheduled one at a time, so each cluster gets one job scheduler thread.
+      // a job is usually queued once for each of its tasks that finishes, so all elements taken for the same job are
+      // handled by a single scheduling of the job.
+      Map<String, Map<String, List<JobElement>>> clusterJobElements = Maps.newLinkedHashMap();
       Iterator<GroupElement> jobIter = jobQueues.takeIterator(consumerId);
       while (jobIter.hasNext()) {
-        GroupElement gElement = jobIter.next();
-        String queueName = gElement.getQueueName();
-        Element element = gElement.getElement();
-        String jobIdStr = element.getValue();
-
-        LOG.debug("Got job {} to schedule", jobIdStr);
-        JobId jobId = JobId.fromString(jobIdStr);
-        Lock lock = lockService.getJobLock(queueName, jobId.getClusterId());
-        lock.lock();
-        try {
-          ClusterJob job = clusterStore.getClusterJob(jobId);
-          Cluster cluster = clusterStore.getCluster(job.getClusterId());
-          // this can happen if 2 tasks complete around the same time and the first one places the job in the queue,
-          // sees 0 in progress tasks, and sets the cluster status. The job is still in the queue as another element
-          // from the 2nd task and gets here.  In that case, no need to go further.
-          if (cluster.getStatus() != Cluster.Status.PENDING) {
-            continue;
-          }
-          if (job.getJobStatus() == ClusterJob.Status.PAUSED) {
-            continue;
-          }
-          LOG.trace("Scheduling job {}", job);
-          Set<String> currentStage = job.getCurrentStage();
+        JobElement jobElement = new JobElement(jobIter.next());
+        String clusterKey = jobElement.queueName + "/" + jobElement.jobId.getClusterId();
+        Map<String, List<JobElement>> jobElements = clusterJobElements.get(clusterKey);
+        if (jobElements == null) {
+          jobElements = Maps.newLinkedHashMap();
+          clusterJobElements.put(clusterKey, jobElements);
+        }
+        List<JobElement> sameJobElements = jobElements.get(jobElement.jobId.getId());
+        if (sameJobElements == null) {
+          sameJobElements = Lists.newArrayList();
+          jobElements.put(jobElement.jobId.getId(), sameJobElements);
+        }
+        sameJobElements.add(jobElement);
+      }
 
-          // Check how many tasks are completed/not-submitted
-          boolean jobFailed = job.getJobStatus() == ClusterJob.Status.FAILED;
-          int completedTasks = 0;
-          int inProgressTasks = 0;
-          Set<ClusterTask> notSubmittedTasks = Sets.newHashSet();
-          Set<ClusterTask> retryTasks = Sets.newHashSet();
-          // TODO: avoid looking up every single task every time, or at least do a batch lookup
-          LOG.debug("Verifying task statuses for stage {} for job {}", job.getCurrentStageNumber(), jobIdStr);
-          for (String taskId : currentStage) {
-            ClusterTask task = clusterStore.getClusterTask(TaskId.fromString(taskId));
-            job.setTaskStatus(task.getTaskId(), task.getStatus());
-            LOG.debug("Status of task {} is {}", taskId, task.getStatus());
-            if (task.getStatus() == ClusterTask.Status.COMPLETE) {
-              ++completedTasks;
-            } else if (task.getStatus() == ClusterTask.Status.NOT_SUBMITTED) {
-              notSubmittedTasks.add(task);
-            } else if (task.getStatus() == ClusterTask.Status.FAILED) {
-              // If max retries has not reached, retry task. Else, fail job.
-              if (task.getNumAttempts() < maxTaskRetries) {
-                retryTasks.add(task);
-              } else {
-                jobFailed = true;
+      List<ListenableFuture<?>> futures = Lists.newArrayListWithCapacity(clusterJobElements.size());
+      for (final Map<String, List<JobElement>> jobElements : clusterJobElements.values()) {
+        futures.add(executorService.submit(new Runnable() {
+          @Override
+          public void run() {
+            for (List<JobElement> sameJobElements : jobElements.values()) {
+              try {
+                scheduleJob(sameJobElements);
+              } catch (Throwable e) {
+                LOG.error("Got exception while scheduling job {}: ", sameJobElements.get(0).jobId, e);
               }
-            } else if (task.getStatus() == ClusterTask.Status.IN_PROGRESS) {
-              ++inProgressTasks;
             }
           }
+        }));
+      }
+      Futures.successfulAsList(futures).get();
+    } catch (Throwable e) {
+      LOG.error("Got exception: ", e);
+    }
+  }
 
-          // If the job has not failed continue with scheduling other tasks.
-          if (!jobFailed) {
+  /**
+   * Schedules a job, given all the elements that were taken from the job queue for it.
+   */
+  private void scheduleJob(List<JobElement> jobElements) throws Exception {
+    JobElement firstElement = jobElements.get(0);
+    String queueName = firstElement.queueName;
+    JobId jobId = firstElement.jobId;
+    String jobIdStr = jobId.getId();
+    long queuedTs = firstElement.queuedTs;
+    for (JobElement jobElement : jobElements) {
+      queuedTs = Math.min(queuedTs, jobElement.queuedTs);
+    }
 
-            Set<Node> clusterNodes = clusterStore.getClusterNodes(job.getClusterId());
-            Map<String, Node> nodeMap = Maps.newHashMap();
-            for (Node node : clusterNodes) {
-              nodeMap.put(node.getId(), node);
-            }
+    LOG.debug("Got job {} to schedule", jobIdStr);
+    Lock lock = lockService.getJobLock(queueName, jobId.getClusterId());
+    lock.lock();
+    long startTs = System.currentTimeMillis();
+    stats.jobStarted(Math.max(0, startTs - queuedTs));
+    try {
+      ClusterJob job = clusterStore.getClusterJob(jobId);
+      Cluster cluster = clusterStore.getCluster(job.getClusterId());
+      // this can happen if 2 tasks complete around the same time and the first one places the job in the queue,
+      // sees 0 in progress tasks, and sets the cluster status. The job is still in the queue as another element
+      // from the 2nd task and gets here.  In that case, no need to go further.
+      if (cluster.getStatus() != Cluster.Status.PENDING) {
+        return;
+      }
+      if (job.getJobStatus() == ClusterJob.Status.PAUSED) {
+        return;
+      }
+      // finished tasks are counted as they finish, so while the current stage is only waiting for tasks that are in
+      // progress, there is no need to look at the tasks of the stage.
+      if (job.getJobStatus() != ClusterJob.Status.FAILED && job.isWaitingForTasksInProgress()) {
+        LOG.debug("Job {} is waiting for tasks in progress", jobIdStr);
+        return;
+      }
+      LOG.trace("Scheduling job {}", job);
+      Set<String> currentStage = job.getCurrentStage();
 
-            // Handle retry tasks if any
-            if (!retryTasks.isEmpty()) {
-              for (ClusterTask task : retryTasks) {
-                notSubmittedTasks.add(scheduleRetry(job, task));
-              }
-            }
+      // Check how many tasks are completed/not-submitted
+      boolean jobFailed = job.getJobStatus() == ClusterJob.Status.FAILED;
+      int completedTasks = 0;
+      int inProgressTasks = 0;
+      Set<ClusterTask> notSubmittedTasks = Sets.newHashSet();
+      Set<ClusterTask> retryTasks = Sets.newHashSet();
+      LOG.debug("Verifying task statuses for stage {} for job {}", job.getCurrentStageNumber(), jobIdStr);
+      List<TaskId> stageTaskIds = Lists.newArrayListWithCapacity(currentStage.size());
+      for (String taskId : currentStage) {
+        stageTaskIds.add(TaskId.fromString(taskId));
+      }
+      // only tasks that need to be submitted or retried are read in full, the status is enough for the others
+      Map<String, ClusterTask.Status> taskStatuses = clusterStore.getClusterTaskStatuses(stageTaskIds);
+      List<TaskId> taskIdsToRead = Lists.newArrayList();
+      for (TaskId taskId : stageTaskIds) {
+        ClusterTask.Status taskStatus = taskStatuses.get(taskId.getId());
+        if (taskStatus == null) {
+          throw new IllegalStateException("Task " + taskId + " of job " + jobIdStr + " does not exist.");
+        }
+        job.setTaskStatus(taskId.getId(), taskStatus);
+        LOG.debug("Status of task {} is {}", taskId, taskStatus);
+        if (taskStatus == ClusterTask.Status.COMPLETE) {
+          ++completedTasks;
+        } else if (taskStatus == ClusterTask.Status.IN_PROGRESS) {
+          ++inProgressTasks;
+        } else if (taskStatus == ClusterTask.Status.NOT_SUBMITTED || taskStatus == ClusterTask.Status.FAILED) {
+          taskIdsToRead.add(taskId);
+        }
+      }
+      // statuses of all tasks in the stage were just looked up, and are kept counted as they are set from here on
+      job.countCurrentStageTasks();
+      for (ClusterTask task : clusterStore.getClusterTasks(taskIdsToRead)) {
+        if (task.getStatus() == ClusterTask.Status.NOT_SUBMITTED) {
+          notSubmittedTasks.add(task);
+        } else if (task.getStatus() == ClusterTask.Status.FAILED) {
+          // If max retries has not reached, retry task. Else, fail job.
+          if (task.getNumAttempts() < maxTaskRetries) {
+            retryTasks.add(task);
+          } else {
+            jobFailed = true;
+          }
+        }
+      }
 
-            // Submit any tasks not yet submitted
-            if (!notSubmittedTasks.isEmpty()) {
-              submitTasks(notSubmittedTasks, cluster, nodeMap, clusterNodes, job, queueName);
-            }
+      // If the job has not failed continue with scheduling other tasks.
+      if (!jobFailed) {
 
-            // Note: before moving cluster out of pending state, make sure that all in progress tasks are done.
-            // If all tasks are completed then move to next stage
-            if (completedTasks == currentStage.size()) {
-              if (job.hasNextStage()) {
-                LOG.debug("Advancing to next stage {} for job {}", job.getCurrentStageNumber(), job.getJobId());
-                job.advanceStage();
-                jobQueues.add(queueName, new Element(jobIdStr));
-              } else {
-                taskService.completeJob(job, cluster);
-              }
-            }
-            clusterStore.writeClusterJob(job);
-          } else if (inProgressTasks == 0) {
-            // special case: if all tasks were create tasks and all of them failed before they created anything,
-            // set the cluster state to 'terminated' instead of letting it go to 'incomplete'.
-            if (job.getClusterAction() == ClusterAction.CLUSTER_CREATE && allCreateTasksFailed(job)) {
-              String message = job.getStatusMessage();
-              // job could have been aborted before any tasks were taken. Keep abort message if that was the case.
-              if (message == null || message.isEmpty()) {
-                message = "Unable to create nodes, please check your provider settings";
-              }
-              taskService.failJobAndTerminateCluster(job, cluster, message);
-            } else {
-              // Job failed and no in progress tasks remaining, update cluster status
-              taskService.failJobAndSetClusterStatus(job, cluster);
-            }
+        Set<Node> clusterNodes = clusterStore.getClusterNodes(job.getClusterId());
+        Map<String, Node> nodeMap = Maps.newHashMap();
+        for (Node node : clusterNodes) {
+          nodeMap.put(node.getId(), node);
+        }
+
+        // Handle retry tasks if any
+        if (!retryTasks.isEmpty()) {
+          for (ClusterTask task : retryTasks) {
+            notSubmittedTasks.add(scheduleRetry(job, task));
+          }
+        }
+
+        // Submit any tasks not yet submitted
+        if (!notSubmittedTasks.isEmpty()) {
+          submitTasks(notSubmittedTasks, cluster, nodeMap, clusterNodes, job, queueName);
+        }
+
+        // Note: before moving cluster out of pending state, make sure that all in progress tasks are done.
+        // If all tasks are completed then move to next stage
+        if (completedTasks == currentStage.size()) {
+          if (job.hasNextStage()) {
+            LOG.debug("Advancing to next stage {} for job {}", job.getCurrentStageNumber(), job.getJobId());
+            job.advanceStage();
+            jobQueues.add(queueName, new Element(jobIdStr));
           } else {
-            // Job failed but tasks are still in progress, wait for them to finish before setting cluster status
-            taskService.failJob(job);
+            taskService.completeJob(job, cluster);
+          }
+        }
+        clusterStore.writeClusterJob(job);
+      } else if (inProgressTasks == 0) {
+        // special case: if all tasks were create tasks and all of them failed before they created anything,
+        // set the cluster state to 'terminated' instead of letting it go to 'incomplete'.
+        if (job.getClusterAction() == ClusterAction.CLUSTER_CREATE && allCreateTasksFailed(job)) {
+          String message = job.getStatusMessage();
+          // job could have been aborted before any tasks were taken. Keep abort message if that was the case.
+          if (message == null || message.isEmpty()) {
+            message = "Unable to create nodes, please check your provider settings";
           }
-        } finally {
-          lock.unlock();
-          jobQueues.recordProgress(consumerId, queueName, element.getId(),
-                                  TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, "");
+          taskService.failJobAndTerminateCluster(job, cluster, message);
+        } else {
+          // Job failed and no in progress tasks remaining, update cluster status
+          taskService.failJobAndSetClusterStatus(job, cluster);
         }
+      } else {
+        // Job failed but tasks are still in progress, wait for them to finish before setting cluster status
+        taskService.failJob(job);
+      }
+    } finally {
+      stats.jobFinished(System.currentTimeMillis() - startTs);
+      lock.unlock();
+      for (JobElement jobElement : jobElements) {
+        jobQueues.recordProgress(consumerId, queueName, jobElement.element.getId(),
+                                 TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, "");
       }
-    } catch (Throwable e) {
-      LOG.error("Got exception: ", e);
     }
   }
 
   // check that every task that ran failed, and that every failure was a cluster create, and that every failure
   // failed in a way where no resources were actually created (for ex, if provider settings are wrong).
   private boolean allCreateTasksFailed(ClusterJob job) throws IOException {
+    List<TaskId> failedTaskIds = Lists.newArrayList();
     for (Map.Entry<String, ClusterTask.Status> entry : job.getTaskStatus().entrySet()) {
       String taskId = entry.getKey();
       ClusterTask.Status taskStatus = entry.getValue();
@@ -221,12 +310,14 @@ public class JobScheduler implements Runnable {
         return false;
       }
       if (taskStatus == ClusterTask.Status.FAILED) {
-        // looks up every failed task... not so great.  But it should be roughly equal to the # of nodes in the cluster.
-        ClusterTask task = clusterStore.getClusterTask(TaskId.fromString(taskId));
-        // check it is a create task
-        if (!task.failedBeforeCreate()) {
-          return false;
-        }
+        failedTaskIds.add(TaskId.fromString(taskId));
+      }
+    }
+    // reads every failed task, which should be roughly equal to the # of nodes in the cluster.
+    for (ClusterTask task : clusterStore.getClusterTasks(failedTaskIds)) {
+      // check it is a create task
+      if (!task.failedBeforeCreate()) {
+        return false;
       }
     }
     // if we get here, we only have failed, dropped, or not submitted tasks, and all the failed tasks failed before
@@ -237,16 +328,22 @@ public class JobScheduler implements Runnable {
   private void submitTasks(Set<ClusterTask> notSubmittedTasks, Cluster cluster, Map<String, Node> nodeMap,
                            Set<Node> clusterNodes, ClusterJob job, String queueName) throws Exception {
     JsonObject unexpandedClusterConfig = cluster.getConfig();
+    // macros are parsed and cluster nodes are indexed once for all tasks
+    CompiledJson compiledClusterConfig = null;
+    ClusterServiceIndex serviceIndex = null;
 
     for (final ClusterTask task : notSubmittedTasks) {
       Node taskNode = nodeMap.get(task.getNodeId());
       JsonObject clusterConfig = unexpandedClusterConfig;
 
-      // TODO: do this only once and save it
       if (!task.getTaskName().isHardwareAction()) {
         try {
+          if (compiledClusterConfig == null) {
+            compiledClusterConfig = Expander.compile(unexpandedClusterConfig);
+            serviceIndex = ClusterServiceIndex.of(clusterNodes);
+          }
           // expansion does not modify the original input, but creates a new object
-          clusterConfig = Expander.expand(clusterConfig, null, cluster, clusterNodes, taskNode).getAsJsonObject();
+          clusterConfig = compiledClusterConfig.expand(cluster, serviceIndex, taskNode).getAsJsonObject();
         } catch (Throwable e) {
           LOG.error("Exception while expanding macros for task {}", task.getTaskId(), e);
           taskService.failTask(task, -1);
@@ -291,14 +388,10 @@ public class JobScheduler implements Runnable {
     }
 
     // store all retry tasks
-    for (ClusterTask t : retryTasks) {
-      clusterStore.writeClusterTask(t);
-    }
+    clusterStore.writeClusterTasks(retryTasks);
 
-    // Remove self from current stage
-    job.getCurrentStage().remove(task.getTaskId());
-    // Add first retry task to current stage
-    job.getCurrentStage().add(retryTasks.get(0).getTaskId());
+    // Replace self with first retry task in current stage
+    job.replaceCurrentStageTask(task.getTaskId(), retryTasks.get(0).getTaskId());
     // Add the rest of retry tasks after current stage. TODO: this needs to be revisited.
     job.insertTasksAfterCurrentStage(ImmutableList.copyOf(Iterables.transform(Iterables.skip(retryTasks, 1),
                                                                               CLUSTER_TASK_STRING_FUNCTION)));
@@ -314,4 +407,22 @@ public class JobScheduler implements Runnable {
         return clusterTask.getTaskId();
       }
     };
+
+  /**
+   * An element taken from the job queue, along with when it was queued.
+   */
+  private static final class JobElement {
+    private final String queueName;
+    private final Element element;
+    private final JobId jobId;
+    private final long queuedTs;
+
+    private JobElement(GroupElement gElement) {
+      this.queueName = gElement.getQueueName();
+      this.element = gElement.getElement();
+      this.jobId = JobId.fromString(element.getValue());
+      // elements queued by older servers carry no timestamp, in which case the time they were taken is used
+      this.queuedTs = element.getCreateTs() > 0 ? element.getCreateTs() : System.currentTimeMillis();
+    }
+  }
 }
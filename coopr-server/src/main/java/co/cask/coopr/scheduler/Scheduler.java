@@ -17,28 +17,39 @@ package co.cask.coopr.scheduler;
 
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.queue.QueueService;
+import co.cask.coopr.common.queue.QueueType;
 import co.cask.coopr.common.zookeeper.ElectionHandler;
 import co.cask.coopr.common.zookeeper.LeaderElection;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.common.Threads;
 import org.apache.twill.zookeeper.ZKClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Runs the different schedulers for solving cluster layouts and planning and coordinating cluster jobs. Leader election
  * is run so that only a single server in a server cluster will be running these schedulers at any given time,
  * where a server cluster is defined as all servers using the same zookeeper quorum.
+ * <p/>
+ * Schedulers that work off a queue group are run as soon as elements are added to any queue in their group, so that
+ * work moves from one scheduler to the next without waiting for the next run interval. They are still run every
+ * interval as well, in case a notification was missed.
  */
 public class Scheduler extends AbstractIdleService {
   private static final Logger LOG = LoggerFactory.getLogger(Scheduler.class);
@@ -47,14 +58,16 @@ public class Scheduler extends AbstractIdleService {
   private final int schedulerRunInterval;
   private final int clusterCleanupRunInterval;
   private final int provisionerCleanupRunInterval;
-  private final JobScheduler jobScheduler;
-  private final ClusterScheduler clusterScheduler;
-  private final SolverScheduler solverScheduler;
-  private final CallbackScheduler callbackScheduler;
+  private final ExclusiveRunnable jobScheduler;
+  private final ExclusiveRunnable clusterScheduler;
+  private final ExclusiveRunnable solverScheduler;
+  private final ExclusiveRunnable callbackScheduler;
   private final ClusterCleanup clusterCleanup;
   private final WorkerBalanceScheduler workerBalanceScheduler;
   private final TenantProvisionerCleanup tenantProvisionerCleanup;
   private final Set<ScheduledFuture<?>> scheduledFutures;
+  private final Set<Cancellable> queueListeners;
+  private final QueueService queueService;
   private final LeaderElection leaderElection;
 
   @Inject
@@ -66,6 +79,7 @@ public class Scheduler extends AbstractIdleService {
                     WorkerBalanceScheduler workerBalanceScheduler,
                     TenantProvisionerCleanup tenantProvisionerCleanup,
                     ClusterCleanup clusterCleanup,
+                    QueueService queueService,
                     ZKClient zkClient) {
     this.schedulerRunInterval = conf.getInt(Constants.SCHEDULER_INTERVAL_SECS);
     this.clusterCleanupRunInterval = conf.getInt(Constants.CLUSTER_CLEANUP_SECS);
@@ -74,13 +88,15 @@ public class Scheduler extends AbstractIdleService {
                                                             new ThreadFactoryBuilder()
                                                               .setNameFormat("scheduler-%d")
                                                               .build());
-    this.jobScheduler = jobScheduler;
-    this.clusterScheduler = clusterScheduler;
-    this.solverScheduler = solverScheduler;
-    this.callbackScheduler = callbackScheduler;
+    this.jobScheduler = new ExclusiveRunnable(jobScheduler, executorService);
+    this.clusterScheduler = new ExclusiveRunnable(clusterScheduler, executorService);
+    this.solverScheduler = new ExclusiveRunnable(solverScheduler, executorService);
+    this.callbackScheduler = new ExclusiveRunnable(callbackScheduler, executorService);
     this.workerBalanceScheduler = workerBalanceScheduler;
     this.clusterCleanup = clusterCleanup;
     this.scheduledFutures = Sets.newHashSet();
+    this.queueListeners = Sets.newHashSet();
+    this.queueService = queueService;
     this.tenantProvisionerCleanup = tenantProvisionerCleanup;
 
     this.leaderElection = new LeaderElection(zkClient, "/server-election", new ElectionHandler() {
@@ -120,11 +136,22 @@ public class Scheduler extends AbstractIdleService {
   protected void shutDown() throws Exception {
     LOG.info("Stopping scheduler...");
     leaderElection.cancel();
+    // stop queue listeners from triggering runs on the executor once it is shut down
+    unschedule();
     executorService.shutdown();
     executorService.awaitTermination(100, TimeUnit.SECONDS);
   }
 
-  private void schedule() {
+  private synchronized void schedule() {
+    if (executorService.isShutdown()) {
+      return;
+    }
+
+    LOG.info("Running cluster, job, solver and callback schedulers whenever their queues get new elements...");
+    listenToQueue(QueueType.CLUSTER, clusterScheduler);
+    listenToQueue(QueueType.JOB, jobScheduler);
+    listenToQueue(QueueType.SOLVER, solverScheduler);
+    listenToQueue(QueueType.CALLBACK, callbackScheduler);
 
     LOG.info("Scheduling cluster scheduler every {} secs...", schedulerRunInterval);
     scheduledFutures.add(
@@ -165,7 +192,21 @@ public class Scheduler extends AbstractIdleService {
     );
   }
 
-  private void unschedule() {
+  private void listenToQueue(QueueType queueType, final ExclusiveRunnable scheduler) {
+    queueListeners.add(queueService.getQueueGroup(queueType).addElementsListener(new Runnable() {
+      @Override
+      public void run() {
+        scheduler.trigger();
+      }
+    }, MoreExecutors.sameThreadExecutor()));
+  }
+
+  private synchronized void unschedule() {
+    for (Cancellable queueListener : queueListeners) {
+      queueListener.cancel();
+    }
+    queueListeners.clear();
+
     for (ScheduledFuture<?> future : scheduledFutures) {
       try {
         future.cancel(false);
@@ -175,4 +216,57 @@ public class Scheduler extends AbstractIdleService {
     }
     scheduledFutures.clear();
   }
+
+  /**
+   * Makes sure only one run of a scheduler happens at a time, and merges runs triggered while another is pending.
+   * A run that starts while another is in progress returns right away instead of blocking its thread, and the run in
+   * progress schedules a single follow-up run once it is done.
+   */
+  private static final class ExclusiveRunnable implements Runnable {
+    private final Runnable scheduler;
+    private final Executor executor;
+    private final AtomicBoolean triggered;
+    private final AtomicBoolean running;
+
+    private ExclusiveRunnable(Runnable scheduler, Executor executor) {
+      this.scheduler = scheduler;
+      this.executor = executor;
+      this.triggered = new AtomicBoolean(false);
+      this.running = new AtomicBoolean(false);
+    }
+
+    private void trigger() {
+      if (triggered.compareAndSet(false, true)) {
+        execute();
+      }
+    }
+
+    @Override
+    public void run() {
+      if (!running.compareAndSet(false, true)) {
+        // the run in progress may have missed whatever this run was for, so make sure it is followed by another
+        triggered.set(true);
+        return;
+      }
+      try {
+        // anything triggered from here on may not be seen by this run, so it gets a run of its own
+        triggered.set(false);
+        scheduler.run();
+      } finally {
+        running.set(false);
+      }
+      if (triggered.get()) {
+        execute();
+      }
+    }
+
+    // runs are triggered from queue listener threads, which must not fail because the scheduler is shutting down
+    private void execute() {
+      try {
+        executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        LOG.debug("Not running {} because the scheduler is shutting down.", scheduler.getClass().getSimpleName());
+      }
+    }
+  }
 }
@@ -26,6 +26,7 @@ import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.common.zookeeper.IdService;
 import co.cask.coopr.http.request.AddServicesRequest;
 import co.cask.coopr.http.request.ClusterCreateRequest;
+import co.cask.coopr.layout.AddServicesTimeoutException;
 import co.cask.coopr.layout.Solver;
 import co.cask.coopr.management.ServerStats;
 import co.cask.coopr.scheduler.task.ClusterJob;
@@ -194,6 +195,9 @@ public class SolverScheduler implements Runnable {
       } catch (IllegalArgumentException e) {
         LOG.debug("Could not add services {} to cluster {}.", servicesStr, cluster.getId(), e);
         return "Unable to solve layout: " + e.getMessage();
+      } catch (AddServicesTimeoutException e) {
+        LOG.debug("Timed out adding services {} to cluster {}.", servicesStr, cluster.getId(), e);
+        return "Unable to solve layout: " + e.getMessage();
       }
 
       if (changedNodes == null) {
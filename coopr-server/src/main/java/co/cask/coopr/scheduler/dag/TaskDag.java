@@ -16,10 +16,9 @@
 package co.cask.coopr.scheduler.dag;
 
 import com.google.common.base.Objects;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.TreeMultimap;
@@ -28,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -75,51 +75,49 @@ public class TaskDag {
    *
    * @return a list of set of actions that can be performed in order satisfying the dependencies.
    * The actions in each set can be run in parallel.
+   * @throws IllegalStateException if the DAG is empty or contains a cycle.
    */
   public List<Set<TaskNode>> linearize() {
     LOG.trace("Initial graph - {}", edges);
 
-    List<Set<TaskNode>> linearizedNodes = Lists.newArrayList();
-    ArrayListMultimap<TaskNode, TaskNode> copyEdges = ArrayListMultimap.create(edges);
-
-    // nodes that have no edges are sources.  The initial set is actual nodes - edges.values(), but removal of
-    // edges.values() happens right away in the loop so just setting it to nodes right here.
-    Set<TaskNode> sources = Sets.newHashSet(nodes);
-    Set<TaskNode> sinkNodes = Sets.newHashSet();
-    do {
-      sources.addAll(copyEdges.keySet());
-      sources.removeAll(copyEdges.values());
-
-      LOG.trace("SinkNodes - {}", sinkNodes);
-      LOG.trace("Sources - {}", sources);
-      if (sources.isEmpty()) {
-        throw new IllegalStateException("No source nodes found, DAG not serializable");
+    // number of dependencies of each node that are not yet in a stage
+    Map<TaskNode, int[]> inDegrees = Maps.newHashMapWithExpectedSize(nodes.size());
+    for (TaskNode node : nodes) {
+      inDegrees.put(node, new int[1]);
+    }
+    for (TaskNode toNode : edges.values()) {
+      inDegrees.get(toNode)[0]++;
+    }
+
+    Set<TaskNode> stageNodes = Sets.newHashSet();
+    for (Map.Entry<TaskNode, int[]> entry : inDegrees.entrySet()) {
+      if (entry.getValue()[0] == 0) {
+        stageNodes.add(entry.getKey());
       }
+    }
 
-      Set<TaskNode> stageNodes = Sets.newHashSet(Iterables.concat(sinkNodes, sources));
+    // each stage contains the nodes whose last dependency is in the previous stage
+    List<Set<TaskNode>> linearizedNodes = Lists.newArrayList();
+    int numLinearized = 0;
+    while (!stageNodes.isEmpty()) {
       LOG.trace("Stage Nodes - {}", stageNodes);
       linearizedNodes.add(stageNodes);
-
-      // Determine sink nodes if any
-      sinkNodes.clear();
-      Set<TaskNode> toNodes = Sets.newHashSet();
-      for (TaskNode fromNode : sources) {
-        toNodes.addAll(copyEdges.removeAll(fromNode));
+      numLinearized += stageNodes.size();
+
+      Set<TaskNode> nextStageNodes = Sets.newHashSet();
+      for (TaskNode fromNode : stageNodes) {
+        for (TaskNode toNode : edges.get(fromNode)) {
+          if (--inDegrees.get(toNode)[0] == 0) {
+            nextStageNodes.add(toNode);
+          }
+        }
       }
+      stageNodes = nextStageNodes;
+    }
 
-      // If the node is not a source, or a destination of any other source then they are sink nodes.
-      toNodes.removeAll(copyEdges.keySet());
-      toNodes.removeAll(copyEdges.values());
-      if (!toNodes.isEmpty()) {
-        sinkNodes.addAll(toNodes);
-      }
-      sources.clear();
-    } while (!copyEdges.isEmpty());
-
-    // Add final nodes
-    LOG.trace("Final nodes - {}", sinkNodes);
-    if (!sinkNodes.isEmpty()) {
-      linearizedNodes.add(sinkNodes);
+    // nodes that never got into a stage are on or behind a cycle
+    if (linearizedNodes.isEmpty() || numLinearized < nodes.size()) {
+      throw new IllegalStateException("No source nodes found, DAG not serializable");
     }
 
     return linearizedNodes;
@@ -1,7 +1,13 @@
 package co.cask.coopr.scheduler.guice;
 
+import co.cask.coopr.cluster.TemplateResolver;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.layout.ExactLayoutSolver;
+import co.cask.coopr.layout.LayoutSolver;
+import co.cask.coopr.layout.LayoutSolvers;
+import co.cask.coopr.layout.SearchLayoutSolver;
+import co.cask.coopr.layout.SolverCache;
 import co.cask.coopr.scheduler.ClusterCleanup;
 import co.cask.coopr.scheduler.ClusterScheduler;
 import co.cask.coopr.scheduler.JobScheduler;
@@ -10,9 +16,11 @@ import co.cask.coopr.scheduler.Scheduler;
 import co.cask.coopr.scheduler.SolverScheduler;
 import co.cask.coopr.scheduler.WorkerBalanceScheduler;
 import co.cask.coopr.scheduler.callback.ClusterCallback;
+import co.cask.coopr.scheduler.task.TaskQueueService;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.AbstractModule;
 import com.google.inject.Scopes;
+import com.google.inject.multibindings.Multibinder;
 import com.google.inject.name.Names;
 
 /**
@@ -21,14 +29,17 @@ import com.google.inject.name.Names;
 public class SchedulerModule extends AbstractModule {
   private final ListeningExecutorService callbackExecutorService;
   private final ListeningExecutorService solverExecutorService;
+  private final ListeningExecutorService jobExecutorService;
   private final String schedulerId;
   private final Class callbackClass;
 
   public SchedulerModule(Configuration conf,
                          ListeningExecutorService callbackExecutorService,
-                         ListeningExecutorService solverExecutorService) throws ClassNotFoundException {
+                         ListeningExecutorService solverExecutorService,
+                         ListeningExecutorService jobExecutorService) throws ClassNotFoundException {
     this.callbackExecutorService = callbackExecutorService;
     this.solverExecutorService = solverExecutorService;
+    this.jobExecutorService = jobExecutorService;
     this.schedulerId = "scheduler-" + conf.get(Constants.HOST);
     this.callbackClass = Class.forName(conf.get(Constants.CALLBACK_CLASS));
   }
@@ -44,6 +55,9 @@ public class SchedulerModule extends AbstractModule {
     bind(ListeningExecutorService.class)
       .annotatedWith(Names.named("callback.executor.service"))
       .toInstance(callbackExecutorService);
+    bind(ListeningExecutorService.class)
+      .annotatedWith(Names.named("job.executor.service"))
+      .toInstance(jobExecutorService);
 
     bind(JobScheduler.class).in(Scopes.SINGLETON);
     bind(ClusterScheduler.class).in(Scopes.SINGLETON);
@@ -52,5 +66,14 @@ public class SchedulerModule extends AbstractModule {
     bind(WorkerBalanceScheduler.class).in(Scopes.SINGLETON);
     bind(ClusterCleanup.class).in(Scopes.SINGLETON);
     bind(TenantProvisionerCleanup.class).in(Scopes.SINGLETON);
+    bind(TemplateResolver.class).in(Scopes.SINGLETON);
+    bind(SolverCache.class).in(Scopes.SINGLETON);
+    bind(TaskQueueService.class).in(Scopes.SINGLETON);
+
+    Multibinder<LayoutSolver> layoutSolverBinder = Multibinder.newSetBinder(binder(), LayoutSolver.class);
+    layoutSolverBinder.addBinding().to(SearchLayoutSolver.class);
+    layoutSolverBinder.addBinding().toInstance(new ExactLayoutSolver(ExactLayoutSolver.Objective.PREFERRED_LAYOUTS));
+    layoutSolverBinder.addBinding().toInstance(new ExactLayoutSolver(ExactLayoutSolver.Objective.FEWEST_NODES));
+    bind(LayoutSolvers.class).in(Scopes.SINGLETON);
   }
 }
@@ -17,6 +17,7 @@ package co.cask.coopr.scheduler.task;
 
 import co.cask.coopr.scheduler.ClusterAction;
 import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -49,6 +50,15 @@ public class ClusterJob {
   private final Set<String> plannedNodes;
   private int currentStageNumber;
   private final Map<String, ClusterTask.Status> taskStatus;
+  // number of tasks in the current stage by status, or null if they have not been counted since the stage changed
+  private Map<ClusterTask.Status, Integer> currentStageTaskCounts;
+  // number of tasks of the job that had completed and failed when the tasks of the current stage were counted
+  private Long countedCompletedTasks;
+  private Long countedFailedTasks;
+  // number of tasks of the job that have completed and failed, as counted by the store when the job was read.
+  // Not part of the job itself, and null if the store does not count the finished tasks of the job.
+  private transient Long completedTasks;
+  private transient Long failedTasks;
   private Status jobStatus;
   private String statusMessage;
 
@@ -150,6 +160,9 @@ public class ClusterJob {
    * @param tasks Set of tasks that can be run in parallel in a single stage.
    */
   public void addStage(Set<String> tasks) {
+    if (currentStageNumber == stagedTasks.size()) {
+      currentStageTaskCounts = null;
+    }
     stagedTasks.add(tasks);
     for (String task : tasks) {
       taskStatus.put(task, ClusterTask.Status.NOT_SUBMITTED);
@@ -171,6 +184,23 @@ public class ClusterJob {
   public void clearTasks() {
     stagedTasks.clear();
     taskStatus.clear();
+    currentStageTaskCounts = null;
+  }
+
+  /**
+   * Replace a task in the current stage with another task. Used when a failed task is retried.
+   *
+   * @param taskId Id of the task to replace.
+   * @param newTaskId Id of the task to replace it with.
+   */
+  public void replaceCurrentStageTask(String taskId, String newTaskId) {
+    Set<String> currentStage = getCurrentStage();
+    if (currentStage.remove(taskId) && currentStageTaskCounts != null) {
+      addToCurrentStageTaskCount(taskStatus.get(taskId), -1);
+    }
+    if (currentStage.add(newTaskId) && currentStageTaskCounts != null) {
+      addToCurrentStageTaskCount(taskStatus.get(newTaskId), 1);
+    }
   }
 
   /**
@@ -198,6 +228,7 @@ public class ClusterJob {
    */
   public void advanceStage() {
     ++currentStageNumber;
+    currentStageTaskCounts = null;
   }
 
   /**
@@ -216,7 +247,117 @@ public class ClusterJob {
    * @param status Status to set the task status to.
    */
   public void setTaskStatus(String taskId, ClusterTask.Status status) {
-    this.taskStatus.put(taskId, status);
+    ClusterTask.Status oldStatus = this.taskStatus.put(taskId, status);
+    if (currentStageTaskCounts != null && oldStatus != status && getCurrentStage().contains(taskId)) {
+      addToCurrentStageTaskCount(oldStatus, -1);
+      addToCurrentStageTaskCount(status, 1);
+    }
+  }
+
+  /**
+   * Count the tasks in the current stage by their status. After this, the counts are kept up to date as task statuses
+   * are set, until the stage changes or the counts are reset. The status of every task in the current stage should
+   * be set to its actual status before counting, and must not be older than the finished task counts of the job.
+   */
+  public void countCurrentStageTasks() {
+    currentStageTaskCounts = Maps.newHashMap();
+    for (String taskId : getCurrentStage()) {
+      addToCurrentStageTaskCount(taskStatus.get(taskId), 1);
+    }
+    countedCompletedTasks = completedTasks;
+    countedFailedTasks = failedTasks;
+  }
+
+  /**
+   * Set the number of tasks of the job that have completed and failed so far. These counts are kept by the store,
+   * which increases them atomically as tasks finish, and are set when the job is read.
+   *
+   * @param completedTasks Number of tasks of the job that have completed, or null if they are not counted.
+   * @param failedTasks Number of tasks of the job that have failed, or null if they are not counted.
+   */
+  public void setFinishedTaskCounts(Long completedTasks, Long failedTasks) {
+    this.completedTasks = completedTasks;
+    this.failedTasks = failedTasks;
+  }
+
+  /**
+   * Get the number of tasks of the job that have completed. The scheduler does not look at the tasks of the current
+   * stage while it is only waiting for tasks in progress, so the tasks that completed since the stage was counted
+   * are added from the finished task counts.
+   *
+   * @return Number of tasks of the job that have completed.
+   */
+  public int getCompletedTaskCount() {
+    int count = 0;
+    for (ClusterTask.Status status : taskStatus.values()) {
+      if (status == ClusterTask.Status.COMPLETE) {
+        count++;
+      }
+    }
+    if (currentStageTaskCounts != null && completedTasks != null && countedCompletedTasks != null) {
+      // only tasks that were in progress can have completed, even if a task was counted twice
+      long completedSinceCounted = Math.max(0, completedTasks - countedCompletedTasks);
+      count += (int) Math.min(completedSinceCounted, getCurrentStageTaskCount(ClusterTask.Status.IN_PROGRESS));
+    }
+    return count;
+  }
+
+  /**
+   * Return whether the current stage is only waiting for tasks that are in progress, based on the counts of tasks
+   * that finished since the tasks of the stage were counted. Returns false if it can not be known without looking
+   * at the tasks, which is always safe.
+   *
+   * @return true if the current stage is only waiting for tasks in progress, false otherwise.
+   */
+  public boolean isWaitingForTasksInProgress() {
+    if (currentStageTaskCounts == null || completedTasks == null || failedTasks == null ||
+      countedCompletedTasks == null || countedFailedTasks == null ||
+      getCurrentStageTaskCount(ClusterTask.Status.NOT_SUBMITTED) != 0 ||
+      getCurrentStageTaskCount(ClusterTask.Status.FAILED) != 0) {
+      return false;
+    }
+    // a failed task has to be retried or fail the job. A task that completed after the job was read, but before the
+    // stage was counted, is counted twice, which only makes the stage look closer to done than it is.
+    return failedTasks.equals(countedFailedTasks) &&
+      completedTasks - countedCompletedTasks < getCurrentStageTaskCount(ClusterTask.Status.IN_PROGRESS);
+  }
+
+  /**
+   * Forget the counts of tasks in the current stage, so that the tasks have to be looked at again before they can
+   * be relied on. Should be used if task statuses may have been changed without being set in this job.
+   */
+  public void resetCurrentStageTaskCounts() {
+    currentStageTaskCounts = null;
+  }
+
+  /**
+   * Return whether or not the tasks in the current stage have been counted by status.
+   *
+   * @return true if the tasks in the current stage have been counted, false otherwise.
+   */
+  public boolean hasCurrentStageTaskCounts() {
+    return currentStageTaskCounts != null;
+  }
+
+  /**
+   * Get the number of tasks in the current stage that have the given status. Only valid if
+   * {@link #hasCurrentStageTaskCounts()} is true.
+   *
+   * @param status Status of the tasks to count.
+   * @return Number of tasks in the current stage that have the given status.
+   */
+  public int getCurrentStageTaskCount(ClusterTask.Status status) {
+    Preconditions.checkState(currentStageTaskCounts != null, "Tasks of the current stage have not been counted.");
+    Integer count = currentStageTaskCounts.get(status);
+    return count == null ? 0 : count;
+  }
+
+  private void addToCurrentStageTaskCount(ClusterTask.Status status, int delta) {
+    if (status == null) {
+      return;
+    }
+    Integer count = currentStageTaskCounts.get(status);
+    currentStageTaskCounts.put(status, (count == null ? 0 : count) + delta);
   }
 
   /**
@@ -273,6 +414,9 @@ public class ClusterJob {
       .add("stagedTasks", stagedTasks)
       .add("currentStageNumber", currentStageNumber)
       .add("taskStatus", taskStatus)
+      .add("currentStageTaskCounts", currentStageTaskCounts)
+      .add("countedCompletedTasks", countedCompletedTasks)
+      .add("countedFailedTasks", countedFailedTasks)
       .add("jobStatus", jobStatus)
       .add("statusMessage", statusMessage)
       .toString();
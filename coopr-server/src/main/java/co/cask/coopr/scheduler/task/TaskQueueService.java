@@ -36,16 +36,33 @@ import co.cask.coopr.store.tenant.TenantStore;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages handing out tasks from task queue, and recording status after the task is done.
@@ -64,6 +81,9 @@ public class TaskQueueService {
   private final QueueGroup jobQueues;
   private final Gson gson;
   private final LoadingCache<String, QueueMetrics> queueMetricsCache;
+  private final long maxTakeWaitMs;
+  private final ScheduledExecutorService takeWaitExecutor;
+  private final ConcurrentMap<String, TaskWaiters> taskWaiters;
 
   @Inject
   private TaskQueueService(QueueService queueService,
@@ -86,6 +106,10 @@ public class TaskQueueService {
     this.jobQueues = queueService.getQueueGroup(QueueType.JOB);
     this.tenantStore = tenantStore;
     this.gson = gson;
+    this.maxTakeWaitMs = conf.getLong(Constants.TASK_TAKE_MAX_WAIT_MS);
+    this.takeWaitExecutor = Executors.newScheduledThreadPool(conf.getInt(Constants.TASK_TAKE_WAIT_NUM_THREADS),
+                                                             Threads.createDaemonThreadFactory("task-take-wait-%d"));
+    this.taskWaiters = Maps.newConcurrentMap();
     final int queueCacheSeconds = conf.getInt(Constants.Metrics.QUEUE_CACHE_SECONDS);
     // queue metrics can be expensive to fetch
     this.queueMetricsCache = CacheBuilder.newBuilder()
@@ -137,6 +161,24 @@ public class TaskQueueService {
    * @throws IOException if there was an error persisting task information.
    */
   public String takeNextClusterTask(TakeTaskRequest takeRequest) throws IOException, MissingEntityException {
+    List<SchedulableTask> tasks = takeNextClusterTasks(takeRequest, 1);
+    return tasks.isEmpty() ? null : gson.toJson(tasks.get(0));
+  }
+
+  /**
+   * Returns up to the given number of tasks from the task queue that can be handed out for provisioning. Tasks are
+   * leased from the queue in batches, so taking many tasks costs far fewer queue operations than taking them one at
+   * a time. Tasks whose job is already marked as FAILED are dropped and skipped, as in
+   * {@link #takeNextClusterTask(TakeTaskRequest)}.
+   *
+   * @param takeRequest Request to take tasks.
+   * @param maxTasks Maximum number of tasks to take.
+   * @return Tasks to be handed over to the provisioner, or an empty list if there are none.
+   * @throws MissingEntityException if there is no provisioner for the provisioner id in the request.
+   * @throws IOException if there was an error persisting task information.
+   */
+  public List<SchedulableTask> takeNextClusterTasks(TakeTaskRequest takeRequest, int maxTasks)
+    throws IOException, MissingEntityException {
     String tenantId = takeRequest.getTenantId();
     String provisionerId = takeRequest.getProvisionerId();
     String workerId = takeRequest.getWorkerId();
@@ -146,53 +188,308 @@ public class TaskQueueService {
       throw new MissingEntityException("provisioner " + provisionerId + " not found.");
     }
 
-    ClusterTask clusterTask = null;
-    String taskJson = null;
-
-    while (clusterTask == null) {
-      Element task = taskQueues.take(tenantId, consumerId);
-      if (task == null) {
+    List<SchedulableTask> tasks = Lists.newArrayList();
+    IOException failure = null;
+    while (failure == null && tasks.size() < maxTasks) {
+      List<Element> elements = taskQueues.take(tenantId, consumerId, maxTasks - tasks.size());
+      if (elements.isEmpty()) {
         break;
       }
-
-      clusterTask = clusterStore.getClusterTask(TaskId.fromString(task.getId()));
-      if (clusterTask != null) {
-        String jobId = clusterTask.getJobId();
-        ClusterJob clusterJob = clusterStore.getClusterJob(JobId.fromString(jobId));
-
-        if (clusterJob == null || clusterJob.getJobStatus() == ClusterJob.Status.FAILED) {
-          // we don't want to give out tasks for failed jobs.  Remove from the queue and move on.
-          taskQueues.recordProgress(consumerId, tenantId, clusterTask.getTaskId(),
-                                    TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
-                                    "Skipped due to job failure.");
-          taskService.dropTask(clusterTask);
-          jobQueues.add(tenantId, new Element(clusterTask.getJobId()));
-          clusterTask = null;
-        } else {
-          SchedulableTask taskObject = gson.fromJson(task.getValue(), SchedulableTask.class);
-          TaskConfig taskConfig = taskObject.getConfig();
-          // fetch any sensitive fields and add them to the provider
-          String clusterId = clusterJob.getClusterId();
-          Map<String, Object> sensitiveFields = credentialStore.get(tenantId, clusterId);
-          taskConfig.getProvider().addFields(sensitiveFields);
-          taskJson = gson.toJson(taskObject);
-          startNodeAction(clusterTask);
+      for (int i = 0; i < elements.size(); i++) {
+        SchedulableTask taskObject;
+        try {
+          taskObject = startClusterTask(tenantId, consumerId, elements.get(i));
+        } catch (IOException e) {
+          // put the rest of the batch back in the queue instead of leaving it leased until it times out
+          releaseTasks(tenantId, consumerId, elements.subList(i, elements.size()));
+          failure = e;
+          break;
         }
-      } else {
-        LOG.error("Got empty task JSON for {}, skipping it.", task.getId());
-        taskQueues.recordProgress(consumerId, tenantId, task.getId(),
-                                  TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
-                                  "Skipped due to empty task JSON.");
+        if (taskObject != null) {
+          LOG.trace("task {} given to worker {}", taskObject.getTaskId(), workerId);
+          tasks.add(taskObject);
+        }
+      }
+    }
+
+    if (failure != null) {
+      if (tasks.isEmpty()) {
+        throw failure;
       }
+      // the tasks already started cannot be put back, so hand them out and leave the error for the next take
+      LOG.error("Exception starting tasks for worker {}, handing out the {} tasks already started.",
+                workerId, tasks.size(), failure);
     }
 
-    LOG.trace("task {} given to worker {}", clusterTask, workerId);
-    if (clusterTask != null) {
+    if (!tasks.isEmpty()) {
       // no point in updating stats if no task was taken
       serverStats.setQueueLength(getTotalQueueSize());
     }
 
-    return taskJson;
+    return tasks;
+  }
+
+  /**
+   * Returns up to the given number of tasks from the task queue, waiting up to the time given in the request for a
+   * task to be queued if none are available right away. Waiting does not block the calling thread. Instead, the
+   * returned future is completed as soon as a task is queued for the tenant, or with an empty list once the wait
+   * time has passed. The wait time is capped by the server.
+   *
+   * @param takeRequest Request to take tasks.
+   * @param maxTasks Maximum number of tasks to take.
+   * @return Future of the tasks to be handed over to the provisioner, or an empty list if there are none.
+   * @throws MissingEntityException if there is no provisioner for the provisioner id in the request.
+   * @throws IOException if there was an error persisting task information.
+   */
+  public ListenableFuture<List<SchedulableTask>> waitForClusterTasks(TakeTaskRequest takeRequest, int maxTasks)
+    throws IOException, MissingEntityException {
+    List<SchedulableTask> tasks = takeNextClusterTasks(takeRequest, maxTasks);
+    long waitMs = Math.min(takeRequest.getWaitMs(), maxTakeWaitMs);
+    if (!tasks.isEmpty() || waitMs <= 0) {
+      return Futures.immediateFuture(tasks);
+    }
+    TaskWait taskWait = new TaskWait(takeRequest, maxTasks, waitMs);
+    getTaskWaiters(takeRequest.getTenantId()).add(taskWait);
+    return taskWait.result;
+  }
+
+  /**
+   * Stops waiting for tasks. Take requests that are still waiting are completed with no tasks.
+   */
+  public void shutdown() {
+    takeWaitExecutor.shutdownNow();
+    for (TaskWaiters waiters : taskWaiters.values()) {
+      waiters.expireAll();
+    }
+  }
+
+  private TaskWaiters getTaskWaiters(String tenantId) {
+    TaskWaiters waiters = taskWaiters.get(tenantId);
+    if (waiters == null) {
+      waiters = new TaskWaiters(tenantId);
+      TaskWaiters existing = taskWaiters.putIfAbsent(tenantId, waiters);
+      if (existing != null) {
+        waiters = existing;
+      }
+    }
+    return waiters;
+  }
+
+  /**
+   * Take requests waiting for tasks of a tenant. They share a single watch on the tenant's queue. Each time the watch
+   * fires, waiters try to take tasks one at a time in the order they started waiting, stopping at the first one that
+   * finds none, so that a queued task wakes up one waiter instead of all of them.
+   */
+  private final class TaskWaiters {
+    private final String tenantId;
+    private final Deque<TaskWait> waiters;
+    private boolean watching;
+
+    private TaskWaiters(String tenantId) {
+      this.tenantId = tenantId;
+      this.waiters = new ArrayDeque<TaskWait>();
+    }
+
+    private synchronized void add(TaskWait waiter) {
+      waiters.add(waiter);
+      if (!watching) {
+        watching = true;
+        watch();
+      }
+    }
+
+    private synchronized void remove(TaskWait waiter) {
+      waiters.remove(waiter);
+    }
+
+    private synchronized TaskWait poll() {
+      return waiters.poll();
+    }
+
+    private synchronized void putBack(TaskWait waiter) {
+      waiters.addFirst(waiter);
+    }
+
+    private void expireAll() {
+      TaskWait waiter;
+      while ((waiter = poll()) != null) {
+        waiter.expire();
+      }
+    }
+
+    /**
+     * Sets a watch on the queue, and wakes up waiters once it is in place, as tasks may have been queued before.
+     */
+    private void watch() {
+      Futures.addCallback(taskQueues.watchForElements(tenantId), new FutureCallback<ListenableFuture<String>>() {
+        @Override
+        public void onSuccess(ListenableFuture<String> changed) {
+          changed.addListener(new Runnable() {
+            @Override
+            public void run() {
+              rewatch();
+            }
+          }, takeWaitExecutor);
+          wakeUp();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          // the queue is watched again when the next request starts waiting
+          LOG.warn("Unable to watch for tasks of tenant {}, waiting take requests will time out.", tenantId, t);
+          synchronized (TaskWaiters.this) {
+            watching = false;
+          }
+        }
+      }, takeWaitExecutor);
+    }
+
+    private void rewatch() {
+      synchronized (this) {
+        if (waiters.isEmpty()) {
+          watching = false;
+          return;
+        }
+      }
+      watch();
+    }
+
+    private void wakeUp() {
+      TaskWait waiter;
+      while ((waiter = poll()) != null) {
+        if (waiter.startTaking() && !waiter.take()) {
+          putBack(waiter);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Take request waiting for tasks. Once tasks are taken for the request they are always handed out, even if the
+   * request timed out while they were being taken, since they have already been started.
+   */
+  private final class TaskWait {
+    private static final int WAITING = 0;
+    private static final int TAKING = 1;
+    private static final int DONE = 2;
+
+    private final TakeTaskRequest takeRequest;
+    private final int maxTasks;
+    private final SettableFuture<List<SchedulableTask>> result;
+    private final AtomicInteger state;
+    private volatile boolean timedOut;
+
+    private TaskWait(TakeTaskRequest takeRequest, int maxTasks, long waitMs) {
+      this.takeRequest = takeRequest;
+      this.maxTasks = maxTasks;
+      this.result = SettableFuture.create();
+      this.state = new AtomicInteger(WAITING);
+      final ScheduledFuture<?> timeout = takeWaitExecutor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          if (expire()) {
+            getTaskWaiters(TaskWait.this.takeRequest.getTenantId()).remove(TaskWait.this);
+          }
+        }
+      }, waitMs, TimeUnit.MILLISECONDS);
+      result.addListener(new Runnable() {
+        @Override
+        public void run() {
+          timeout.cancel(false);
+        }
+      }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Completes the request with no tasks, unless tasks are being taken for it, in which case the take completes it.
+     *
+     * @return Whether the request was completed.
+     */
+    private boolean expire() {
+      timedOut = true;
+      if (state.compareAndSet(WAITING, DONE)) {
+        result.set(ImmutableList.<SchedulableTask>of());
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * @return Whether tasks can be taken for the request, which is not the case once it is completed.
+     */
+    private boolean startTaking() {
+      return state.compareAndSet(WAITING, TAKING);
+    }
+
+    /**
+     * Tries to take tasks for the request, completing it if any were taken or if it timed out.
+     *
+     * @return Whether the request was completed.
+     */
+    private boolean take() {
+      try {
+        List<SchedulableTask> tasks = takeNextClusterTasks(takeRequest, maxTasks);
+        if (!tasks.isEmpty()) {
+          state.set(DONE);
+          result.set(tasks);
+          return true;
+        }
+      } catch (Exception e) {
+        state.set(DONE);
+        result.setException(e);
+        return true;
+      }
+      state.set(WAITING);
+      return timedOut && expire();
+    }
+  }
+
+  /**
+   * Prepares a task taken from the queue to be handed out, or drops it if it should not be handed out.
+   *
+   * @return Task to hand out, or null if the task was skipped.
+   */
+  private SchedulableTask startClusterTask(String tenantId, String consumerId, Element task) throws IOException {
+    ClusterTask clusterTask = clusterStore.getClusterTask(TaskId.fromString(task.getId()));
+    if (clusterTask == null) {
+      LOG.error("Got empty task JSON for {}, skipping it.", task.getId());
+      taskQueues.recordProgress(consumerId, tenantId, task.getId(),
+                                TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                "Skipped due to empty task JSON.");
+      return null;
+    }
+
+    String jobId = clusterTask.getJobId();
+    ClusterJob clusterJob = clusterStore.getClusterJob(JobId.fromString(jobId));
+    if (clusterJob == null || clusterJob.getJobStatus() == ClusterJob.Status.FAILED) {
+      // we don't want to give out tasks for failed jobs.  Remove from the queue and move on.
+      taskQueues.recordProgress(consumerId, tenantId, clusterTask.getTaskId(),
+                                TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                "Skipped due to job failure.");
+      taskService.dropTask(clusterTask);
+      jobQueues.add(tenantId, new Element(clusterTask.getJobId()));
+      return null;
+    }
+
+    SchedulableTask taskObject = gson.fromJson(task.getValue(), SchedulableTask.class);
+    TaskConfig taskConfig = taskObject.getConfig();
+    // fetch any sensitive fields and add them to the provider
+    String clusterId = clusterJob.getClusterId();
+    Map<String, Object> sensitiveFields = credentialStore.get(tenantId, clusterId);
+    taskConfig.getProvider().addFields(sensitiveFields);
+    startNodeAction(clusterTask);
+    return taskObject;
+  }
+
+  /**
+   * Places tasks that were taken from the queue, but not started, back in the queue.
+   */
+  private void releaseTasks(String tenantId, String consumerId, List<Element> tasks) {
+    for (Element task : tasks) {
+      taskQueues.recordProgress(consumerId, tenantId, task.getId(), TrackingQueue.ConsumingStatus.FAILED,
+                                "Unable to start the task.");
+    }
   }
 
   /**
@@ -203,7 +500,7 @@ public class TaskQueueService {
    * @throws MissingEntityException if there is no provisioner for the provisioner id in the request.
    * @throws IOException if there was an error persisting task information.
    */
-  public void finishClusterTask(FinishTaskRequest finishRequest) throws MissingEntityException, IOException {
+  public void finishClusterTask(final FinishTaskRequest finishRequest) throws MissingEntityException, IOException {
     String workerId = finishRequest.getWorkerId();
     String queueName = finishRequest.getTenantId();
     String taskId = finishRequest.getTaskId();
@@ -223,18 +520,29 @@ public class TaskQueueService {
     }
 
     // Queue update was successful, now update the task object
-    ClusterTask clusterTask = clusterStore.getClusterTask(TaskId.fromString(taskId));
+    final ClusterTask clusterTask = clusterStore.getClusterTask(TaskId.fromString(taskId));
 
-    int status = finishRequest.getStatus();
+    final int status = finishRequest.getStatus();
     if (status == 0) {
       LOG.debug("Successful finish of the task reported. Task {} by worker {}", taskId, workerId);
-      taskService.completeTask(clusterTask, status);
     } else {
       LOG.debug("Failure to finish task reported. Task {} by worker {}", taskId, workerId);
-      taskService.failTask(clusterTask, status);
     }
+    // the task and its node are updated together, and before the job sees the task as finished, so that later tasks
+    // of the job always see the results of the task on the node
+    clusterStore.inTransaction(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        if (status == 0) {
+          taskService.completeTask(clusterTask, status);
+        } else {
+          taskService.failTask(clusterTask, status);
+        }
+        finishNodeAction(clusterTask, finishRequest);
+        return null;
+      }
+    });
 
-    finishNodeAction(clusterTask, finishRequest);
     serverStats.setQueueLength(getTotalQueueSize());
 
     // Schedule the job for processing
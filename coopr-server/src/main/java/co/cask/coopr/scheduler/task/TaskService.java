@@ -28,7 +28,9 @@ import co.cask.coopr.scheduler.callback.CallbackData;
 import co.cask.coopr.spec.ProvisionerAction;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.ClusterStoreService;
+import co.cask.coopr.store.credential.CredentialCache;
 import co.cask.coopr.store.credential.CredentialStore;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.gson.Gson;
@@ -38,6 +40,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Service for performing operations on {@link ClusterTask}s.
@@ -47,6 +50,7 @@ public class TaskService {
 
   private final ClusterStore clusterStore;
   private final CredentialStore credentialStore;
+  private final CredentialCache credentialCache;
   private final Actions actions = Actions.getInstance();
   private final ServerStats serverStats;
   private final IdService idService;
@@ -56,12 +60,14 @@ public class TaskService {
   @Inject
   private TaskService(ClusterStoreService clusterStoreService,
                       CredentialStore credentialStore,
+                      CredentialCache credentialCache,
                       ServerStats serverStats,
                       QueueService queueService,
                       IdService idService,
                       Gson gson) {
     this.clusterStore = clusterStoreService.getSystemView();
     this.credentialStore = credentialStore;
+    this.credentialCache = credentialCache;
     this.serverStats = serverStats;
     this.idService = idService;
     this.gson = gson;
@@ -143,13 +149,13 @@ public class TaskService {
   public void failJobAndSetClusterStatus(ClusterJob job, Cluster cluster, Cluster.Status status, String message)
     throws IOException, IllegalAccessException {
     cluster.setStatus(status);
-    clusterStore.writeCluster(cluster);
-
     job.setJobStatus(ClusterJob.Status.FAILED);
     if (message != null) {
       job.setStatusMessage(message);
     }
-    clusterStore.writeClusterJob(job);
+    writeClusterAndJob(cluster, job);
+    // no more tasks of the job need the decrypted fields
+    credentialCache.wipe(cluster.getAccount().getTenantId(), cluster.getId());
 
     serverStats.getFailedClusterStats().incrementStat(job.getClusterAction());
     callbackQueues.add(cluster.getAccount().getTenantId(),
@@ -221,8 +227,6 @@ public class TaskService {
    */
   public void completeJob(ClusterJob job, Cluster cluster) throws IOException, IllegalAccessException {
     job.setJobStatus(ClusterJob.Status.COMPLETE);
-    clusterStore.writeClusterJob(job);
-    LOG.debug("Job {} is complete", job.getJobId());
 
     // Update cluster status
     if (job.getClusterAction() == ClusterAction.CLUSTER_DELETE) {
@@ -230,7 +234,9 @@ public class TaskService {
     } else {
       cluster.setStatus(Cluster.Status.ACTIVE);
     }
-    clusterStore.writeCluster(cluster);
+    writeClusterAndJob(cluster, job);
+    LOG.debug("Job {} is complete", job.getJobId());
+    credentialCache.wipe(cluster.getAccount().getTenantId(), cluster.getId());
 
     serverStats.getSuccessfulClusterStats().incrementStat(job.getClusterAction());
     if (job.getClusterAction() == ClusterAction.CLUSTER_DELETE) {
@@ -276,7 +282,7 @@ public class TaskService {
 
   /**
    * Fail a task by setting the status of the task to {@link ClusterTask.Status#FAILED} and the status time to the
-   * current timestamp and the status code to the given code.
+   * current timestamp and the status code to the given code, and count it as a failed task of its job.
    *
    * @param clusterTask Task to fail.
    * @param status Status code of the failed task.
@@ -287,6 +293,7 @@ public class TaskService {
     clusterTask.setStatusCode(status);
     clusterTask.setStatusTime(System.currentTimeMillis());
     clusterStore.writeClusterTask(clusterTask);
+    clusterStore.countFinishedClusterTask(clusterTask);
 
     // Update stats
     serverStats.getFailedProvisionerStats().incrementStat(clusterTask.getTaskName());
@@ -294,7 +301,7 @@ public class TaskService {
 
   /**
    * Complete a task by setting the status of the task to {@link ClusterTask.Status#COMPLETE} and the status time to
-   * the current timestamp and the status code to the given code.
+   * the current timestamp and the status code to the given code, and count it as a completed task of its job.
    *
    * @param clusterTask Task to complete.
    * @param status Status code of the completed task.
@@ -305,11 +312,31 @@ public class TaskService {
     clusterTask.setStatusCode(status);
     clusterTask.setStatusTime(System.currentTimeMillis());
     clusterStore.writeClusterTask(clusterTask);
+    clusterStore.countFinishedClusterTask(clusterTask);
 
     // update stats
     serverStats.getSuccessfulProvisionerStats().incrementStat(clusterTask.getTaskName());
   }
 
+  // the status of a cluster and its job are written together, so that they never disagree about the job's outcome
+  private void writeClusterAndJob(final Cluster cluster, final ClusterJob job)
+    throws IOException, IllegalAccessException {
+    try {
+      clusterStore.inTransaction(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          clusterStore.writeCluster(cluster);
+          clusterStore.writeClusterJob(job);
+          return null;
+        }
+      });
+    } catch (IOException e) {
+      // writing a cluster may be denied, which the store has to wrap because it is not an IOException
+      Throwables.propagateIfInstanceOf(e.getCause(), IllegalAccessException.class);
+      throw e;
+    }
+  }
+
   private void wipeSensitiveFields(Cluster cluster) throws IOException {
     String tenantId = cluster.getAccount().getTenantId();
     String clusterId = cluster.getId();
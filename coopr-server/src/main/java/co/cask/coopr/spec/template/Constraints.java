@@ -22,20 +22,35 @@ import java.util.Map;
 
 /**
  * Constraints for how a cluster can be laid out.  This includes a mapping of service name to {@link ServiceConstraint},
- * and a {@link LayoutConstraint} for the cluster.
+ * and a {@link LayoutConstraint} for the cluster. Can also name the layout solver to use for the cluster.
  */
 public final class Constraints {
   public static final Constraints EMPTY_CONSTRAINTS = new Constraints(null, null, null);
   final Map<String, ServiceConstraint> serviceConstraints;
   final LayoutConstraint layoutConstraint;
   final SizeConstraint sizeConstraint;
+  final String layoutSolver;
 
   public Constraints(Map<String, ServiceConstraint> serviceConstraints, LayoutConstraint layoutConstraint,
                      SizeConstraint sizeConstraint) {
+    this(serviceConstraints, layoutConstraint, sizeConstraint, null);
+  }
+
+  public Constraints(Map<String, ServiceConstraint> serviceConstraints, LayoutConstraint layoutConstraint,
+                     SizeConstraint sizeConstraint, String layoutSolver) {
     this.serviceConstraints = serviceConstraints == null ?
       ImmutableMap.<String, ServiceConstraint>of() : serviceConstraints;
     this.layoutConstraint = layoutConstraint == null ? LayoutConstraint.EMPTY_LAYOUT_CONSTRAINT : layoutConstraint;
     this.sizeConstraint = sizeConstraint == null ? SizeConstraint.EMPTY : sizeConstraint;
+    for (Map.Entry<String, ServiceConstraint> entry : this.serviceConstraints.entrySet()) {
+      ServiceConstraint constraint = entry.getValue();
+      if (constraint.getRatio() != null &&
+        constraint.getMinCount(this.sizeConstraint.getMin()) > constraint.getMaxCount()) {
+        throw new IllegalArgumentException("Ratio of service " + entry.getKey() + " requires more than its maximum of "
+                                             + constraint.getMaxCount() + " nodes in the smallest cluster.");
+      }
+    }
+    this.layoutSolver = layoutSolver;
   }
 
   /**
@@ -65,6 +80,15 @@ public final class Constraints {
     return sizeConstraint;
   }
 
+  /**
+   * Get the name of the layout solver to use for the cluster, or null if the server default should be used.
+   *
+   * @return Name of the layout solver to use for the cluster.
+   */
+  public String getLayoutSolver() {
+    return layoutSolver;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof Constraints)) {
@@ -73,12 +97,13 @@ public final class Constraints {
     Constraints other = (Constraints) o;
     return Objects.equal(serviceConstraints, other.serviceConstraints) &&
       Objects.equal(layoutConstraint, other.layoutConstraint) &&
-      Objects.equal(sizeConstraint, other.sizeConstraint);
+      Objects.equal(sizeConstraint, other.sizeConstraint) &&
+      Objects.equal(layoutSolver, other.layoutSolver);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(serviceConstraints, layoutConstraint, sizeConstraint);
+    return Objects.hashCode(serviceConstraints, layoutConstraint, sizeConstraint, layoutSolver);
   }
 
   @Override
@@ -87,6 +112,7 @@ public final class Constraints {
       .add("serviceConstraints", serviceConstraints)
       .add("layoutConstraint", layoutConstraint)
       .add("sizeContraint", sizeConstraint)
+      .add("layoutSolver", layoutSolver)
       .toString();
   }
 }
@@ -18,6 +18,8 @@ package co.cask.coopr.spec.template;
 import com.google.common.base.Objects;
 import com.google.common.collect.Sets;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.Set;
 
 /**
@@ -31,13 +33,28 @@ public final class ServiceConstraint {
   private final Set<String> requiredImageTypes;
   private final Integer minCount;
   private final Integer maxCount;
+  private final Double ratio;
 
   public ServiceConstraint(Set<String> requiredHardwareTypes, Set<String> requiredImageTypes,
                            Integer minCount, Integer maxCount) {
+    this(requiredHardwareTypes, requiredImageTypes, minCount, maxCount, null);
+  }
+
+  public ServiceConstraint(Set<String> requiredHardwareTypes, Set<String> requiredImageTypes,
+                           Integer minCount, Integer maxCount, Double ratio) {
     this.requiredHardwareTypes = requiredHardwareTypes == null ? Sets.<String>newHashSet() : requiredHardwareTypes;
     this.requiredImageTypes = requiredImageTypes == null ? Sets.<String>newHashSet() : requiredImageTypes;
     this.minCount = minCount == null ? 0 : minCount;
     this.maxCount = maxCount == null ? Integer.MAX_VALUE : maxCount;
+    if (ratio != null) {
+      if (ratio.isNaN() || ratio < 0 || ratio > 1) {
+        throw new IllegalArgumentException("Ratio must be between 0 and 1.");
+      }
+      if (ratio > 0 && this.maxCount < 1) {
+        throw new IllegalArgumentException("Maximum must be at least 1 if the ratio is greater than 0.");
+      }
+    }
+    this.ratio = ratio;
   }
 
   /**
@@ -67,6 +84,32 @@ public final class ServiceConstraint {
     return minCount;
   }
 
+  /**
+   * Get the minimum count of the service in a cluster of the given size, which is the larger of the minimum count
+   * and the ratio of the cluster size.
+   *
+   * @param clusterSize Number of nodes in the cluster.
+   * @return Minimum count of the service in a cluster of the given size.
+   */
+  public int getMinCount(int clusterSize) {
+    if (ratio == null) {
+      return minCount;
+    }
+    // the ratio is multiplied as the decimal it was written as, so that a ratio of 0.07 of 100 nodes is 7 and not 8
+    int ratioCount = BigDecimal.valueOf(ratio).multiply(BigDecimal.valueOf(clusterSize))
+      .setScale(0, RoundingMode.CEILING).intValue();
+    return Math.max(minCount, ratioCount);
+  }
+
+  /**
+   * Get the minimum fraction of the nodes in the cluster that must have the service, or null if there is none.
+   *
+   * @return Minimum fraction of the nodes in the cluster that must have the service.
+   */
+  public Double getRatio() {
+    return ratio;
+  }
+
   /**
    * Get the maximum count of the service in the cluster.
    *
@@ -84,13 +127,14 @@ public final class ServiceConstraint {
     ServiceConstraint other = (ServiceConstraint) o;
     return Objects.equal(minCount, other.minCount) &&
       Objects.equal(maxCount, other.maxCount) &&
+      Objects.equal(ratio, other.ratio) &&
       Objects.equal(requiredHardwareTypes, other.requiredHardwareTypes) &&
       Objects.equal(requiredImageTypes, other.requiredImageTypes);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(minCount, maxCount, requiredHardwareTypes, requiredImageTypes);
+    return Objects.hashCode(minCount, maxCount, ratio, requiredHardwareTypes, requiredImageTypes);
   }
 
   @Override
@@ -100,6 +144,7 @@ public final class ServiceConstraint {
       .add("requiredImageTypes", requiredImageTypes)
       .add("minCount", minCount)
       .add("maxCount", maxCount)
+      .add("ratio", ratio)
       .toString();
   }
 }
@@ -127,7 +127,8 @@ public class TemplateMerger {
 
       to.constraints = new Constraints(serviceConstraint,
                                        new LayoutConstraint(servicesThatMustCoexist, servicesThatMustNotCoexist),
-                                       from.constraints.sizeConstraint);
+                                       from.constraints.sizeConstraint,
+                                       mergeString(to.constraints.layoutSolver, from.constraints.layoutSolver));
     }
 
     //merge admin lease duration
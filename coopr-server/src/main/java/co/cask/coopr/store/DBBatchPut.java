@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import com.google.common.collect.Lists;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Used to put many objects into a database like {@link DBPut}, but with a single batch of updates, followed by a
+ * single batch of inserts for the objects that the updates did not affect.
+ *
+ * @param <T> Type of object to put.
+ */
+public abstract class DBBatchPut<T> {
+  private final String updateQuery;
+  private final String insertQuery;
+
+  /**
+   * Create a batch put that uses the given parameterized queries.
+   *
+   * @param updateQuery Query to update an object.
+   * @param insertQuery Query to insert an object.
+   */
+  protected DBBatchPut(String updateQuery, String insertQuery) {
+    this.updateQuery = updateQuery;
+    this.insertQuery = insertQuery;
+  }
+
+  /**
+   * Execute the put of all given objects using the given connection. The puts are only atomic if the connection does
+   * not auto commit.
+   *
+   * @param conn Connection to use to execute the put
+   * @param objects Objects to put.
+   * @throws SQLException
+   */
+  public void executePut(Connection conn, Collection<? extends T> objects) throws SQLException {
+    if (objects.isEmpty()) {
+      return;
+    }
+    List<T> inserts = Lists.newArrayList();
+    PreparedStatement updateStatement = conn.prepareStatement(updateQuery);
+    try {
+      for (T object : objects) {
+        setUpdateParameters(updateStatement, object);
+        updateStatement.addBatch();
+      }
+      int[] rowsUpdated = updateStatement.executeBatch();
+      int i = 0;
+      // if no rows are updated for an object, it must be inserted
+      for (T object : objects) {
+        int updated = rowsUpdated[i++];
+        if (updated == Statement.SUCCESS_NO_INFO) {
+          // the driver does not say whether a row was updated, so update the object again on its own to find out
+          setUpdateParameters(updateStatement, object);
+          updated = updateStatement.executeUpdate();
+        } else if (updated == Statement.EXECUTE_FAILED) {
+          throw new SQLException("Failed to update object " + object);
+        }
+        if (updated == 0) {
+          inserts.add(object);
+        }
+      }
+    } finally {
+      updateStatement.close();
+    }
+
+    if (inserts.isEmpty()) {
+      return;
+    }
+    PreparedStatement insertStatement = conn.prepareStatement(insertQuery);
+    try {
+      for (T object : inserts) {
+        setInsertParameters(insertStatement, object);
+        insertStatement.addBatch();
+      }
+      insertStatement.executeBatch();
+    } finally {
+      insertStatement.close();
+    }
+  }
+
+  protected abstract void setUpdateParameters(PreparedStatement statement, T object) throws SQLException;
+
+  protected abstract void setInsertParameters(PreparedStatement statement, T object) throws SQLException;
+}
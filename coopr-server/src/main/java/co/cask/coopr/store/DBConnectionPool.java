@@ -23,9 +23,14 @@ import org.apache.tomcat.jdbc.pool.PoolProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 
 /**
  * Connection pool for databases using JDBC.
@@ -34,6 +39,8 @@ public class DBConnectionPool {
   private static final Logger LOG  = LoggerFactory.getLogger(DBConnectionPool.class);
   private final DataSource datasource;
   private final boolean isEmbeddedDerbyDB;
+  // connection of the transaction the current thread is running, if any
+  private final ThreadLocal<Connection> transactionConnection = new ThreadLocal<Connection>();
 
   @Inject
   private DBConnectionPool(Configuration conf) throws SQLException {
@@ -43,6 +50,7 @@ public class DBConnectionPool {
     String dbPassword = conf.get(Constants.DB_PASSWORD);
     String validationQuery = conf.get(Constants.DB_VALIDATION_QUERY);
     int maxConnections = conf.getInt(Constants.DB_MAX_ACTIVE_CONNECTIONS);
+    int statementCacheSize = conf.getInt(Constants.DB_STATEMENT_CACHE_SIZE);
 
     if (driverClass == null || connectionString == null) {
       String localDataDir = conf.get(Constants.LOCAL_DATA_DIR);
@@ -90,8 +98,15 @@ public class DBConnectionPool {
     poolProperties.setMinIdle(10);
     poolProperties.setLogAbandoned(false);
     poolProperties.setRemoveAbandoned(true);
-    poolProperties.setJdbcInterceptors("org.apache.tomcat.jdbc.pool.interceptor.ConnectionState;" +
-                                         "org.apache.tomcat.jdbc.pool.interceptor.StatementFinalizer");
+    String interceptors = "org.apache.tomcat.jdbc.pool.interceptor.ConnectionState;" +
+      "org.apache.tomcat.jdbc.pool.interceptor.StatementFinalizer";
+    if (statementCacheSize > 0) {
+      // stores prepare the same sql strings over and over, so closed prepared statements are kept open on their
+      // connection and handed out again when the connection prepares the same sql
+      interceptors += ";org.apache.tomcat.jdbc.pool.interceptor.StatementCache(prepared=true,callable=false,max=" +
+        statementCacheSize + ")";
+    }
+    poolProperties.setJdbcInterceptors(interceptors);
     poolProperties.setDbProperties(properties);
 
     this.datasource = new DataSource();
@@ -119,15 +134,98 @@ public class DBConnectionPool {
   }
 
   /**
-   * Get a {@link Connection} from the pool with auto commit set to the given value.
+   * Get a {@link Connection} from the pool with auto commit set to the given value. If the current thread is running
+   * a transaction through {@link #runInTransaction(Callable)}, the connection of the transaction is returned instead,
+   * and closing it has no effect.
    *
    * @param autoCommit Whether or not autoCommit should be set.
    * @return Connection from the pool.
    * @throws SQLException
    */
   public Connection getConnection(boolean autoCommit) throws SQLException {
-    Connection conn = datasource.getConnection();
+    Connection conn = transactionConnection.get();
+    if (conn != null) {
+      return conn;
+    }
+    conn = datasource.getConnection();
     conn.setAutoCommit(autoCommit);
     return conn;
   }
+
+  /**
+   * Run the given callable in a single transaction. All connections the current thread gets from the pool while the
+   * callable runs share the connection of the transaction, which is committed once if the callable returns, and rolled
+   * back if it throws. If the current thread is already running a transaction, the callable becomes part of it.
+   *
+   * @param callable Callable to run in a transaction.
+   * @param <T> Type of the result of the callable.
+   * @return Result of the callable.
+   * @throws Exception if the callable threw an exception, or if the transaction could not be committed.
+   */
+  public <T> T runInTransaction(Callable<T> callable) throws Exception {
+    if (transactionConnection.get() != null) {
+      return callable.call();
+    }
+    Connection conn = datasource.getConnection();
+    TransactionConnectionHandler transaction = new TransactionConnectionHandler(conn);
+    boolean committed = false;
+    try {
+      conn.setAutoCommit(false);
+      transactionConnection.set((Connection) Proxy.newProxyInstance(
+        Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, transaction));
+      T result = callable.call();
+      if (transaction.rollbackOnly) {
+        throw new SQLException("Transaction was rolled back by a user of its connection.");
+      }
+      conn.commit();
+      committed = true;
+      return result;
+    } finally {
+      transactionConnection.remove();
+      try {
+        if (!committed) {
+          conn.rollback();
+        }
+      } catch (SQLException e) {
+        LOG.error("Exception rolling back transaction.", e);
+      } finally {
+        conn.close();
+      }
+    }
+  }
+
+  /**
+   * Handles calls to the connection of a transaction. Only the transaction itself can end it, so users of the
+   * connection cannot close it, commit it, or change its auto commit mode. A user that rolls back the connection
+   * makes the whole transaction roll back once it is done.
+   */
+  private static final class TransactionConnectionHandler implements InvocationHandler {
+    private final Connection conn;
+    private volatile boolean rollbackOnly;
+
+    private TransactionConnectionHandler(Connection conn) {
+      this.conn = conn;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      int numParams = method.getParameterTypes().length;
+      if (numParams == 0 && (name.equals("close") || name.equals("commit"))) {
+        return null;
+      }
+      if (numParams == 1 && name.equals("setAutoCommit")) {
+        return null;
+      }
+      if (numParams == 0 && name.equals("rollback")) {
+        rollbackOnly = true;
+        return null;
+      }
+      try {
+        return method.invoke(conn, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
 }
@@ -20,6 +20,7 @@ import com.google.common.base.Throwables;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
@@ -60,6 +61,23 @@ public final class DBHelper {
     }
   }
 
+  /**
+   * Try and add a column to an embedded derby table if it doesn't already exist. Returns whether or not the column
+   * was added.
+   *
+   * @param connectionPool Connection pool to use to add the column.
+   * @param table Name of the table to add the column to.
+   * @param column Name of the column to add.
+   * @param type Type of the column to add.
+   * @return Whether or not the column was added.
+   * @throws SQLException
+   */
+  public static boolean addDerbyColumnIfNotExists(DBConnectionPool connectionPool,
+                                                  String table, String column, String type) throws SQLException {
+    return createDerbyTableIfNotExists("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type,
+                                       connectionPool);
+  }
+
   /**
    * Create an index on given columns in a table for an embedded derby table.
    *
@@ -110,6 +128,19 @@ public final class DBHelper {
     return ts > 0 ? new Timestamp(ts) : null;
   }
 
+  /**
+   * Get the value of a column as a long, or null if the value is null.
+   *
+   * @param rs result set positioned at the row to read
+   * @param column index of the column to read
+   * @return Value of the column, or null if the value is null.
+   * @throws SQLException if the column could not be read
+   */
+  public static Long getNullableLong(ResultSet rs, int column) throws SQLException {
+    long value = rs.getLong(column);
+    return rs.wasNull() ? null : value;
+  }
+
   /**
    * Create a string for an IN clause in a sql query given the number of arguments that will be in the list.
    *
@@ -128,4 +159,23 @@ public final class DBHelper {
     builder.append("?)");
     return builder.toString();
   }
+
+  /**
+   * Get the number of arguments to use in an IN clause for the given number of values. The number is rounded up to a
+   * power of two, so that lists of different lengths share a few sql strings instead of each length taking its own
+   * slot in the statement cache. The extra arguments should repeat one of the values.
+   *
+   * @param numValues number of values in the IN clause
+   * @return Number of arguments to use in the IN clause.
+   */
+  public static int getPaddedInSize(int numValues) {
+    if (numValues < 1) {
+      return numValues;
+    }
+    int size = 1;
+    while (size < numValues) {
+      size <<= 1;
+    }
+    return size;
+  }
 }
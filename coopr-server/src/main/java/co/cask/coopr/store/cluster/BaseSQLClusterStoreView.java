@@ -16,6 +16,7 @@
 package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.ClusterOverview;
 import co.cask.coopr.cluster.ClusterSummary;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.scheduler.task.ClusterJob;
@@ -24,7 +25,9 @@ import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.DBHelper;
 import co.cask.coopr.store.DBPut;
 import co.cask.coopr.store.DBQueryExecutor;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
 import java.io.IOException;
@@ -32,6 +35,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 
@@ -72,6 +77,9 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
 
   abstract PreparedStatement getSelectClusterNodesStatement(Connection conn, long id) throws SQLException;
 
+  abstract PreparedStatement getSelectClusterOverviewsStatement(
+    Connection conn, Set<Cluster.Status> states) throws SQLException;
+
   @Override
   public List<Cluster> getAllClusters() throws IOException {
     try {
@@ -151,6 +159,33 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
     }
   }
 
+  @Override
+  public List<ClusterOverview> getClusterOverviews(Set<Cluster.Status> states) throws IOException {
+    if (states == null) {
+      states = ImmutableSet.of();
+    }
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = getSelectClusterOverviewsStatement(conn, states);
+        try {
+          return getOverviews(statement);
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      throw new IOException("Exception getting cluster overviews", e);
+    }
+  }
+
+  @Override
+  public List<ClusterOverview> getNonTerminatedClusterOverviews() throws IOException {
+    return getClusterOverviews(EnumSet.complementOf(EnumSet.of(Cluster.Status.TERMINATED)));
+  }
+
   @Override
   public Cluster getCluster(String clusterId) throws IOException {
     long clusterNum = Long.parseLong(clusterId);
@@ -276,7 +311,7 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
     Connection conn, long id, Cluster cluster, byte[] clusterBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
       "INSERT INTO  clusters (cluster, owner_id, tenant_id, status, expire_time," +
-        " create_time, name, id, latest_job_num) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        " create_time, name, id, latest_job_num, num_nodes) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
     statement.setBytes(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
@@ -288,9 +323,52 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
     String latestJobStr = cluster.getLatestJobId();
     long latestJobNum = latestJobStr == null ? 0 : JobId.fromString(latestJobStr).getJobNum();
     statement.setLong(9, latestJobNum);
+    statement.setInt(10, cluster.getNodeIDs().size());
     return statement;
   }
 
+  /**
+   * Create the query for cluster overviews, which only reads cluster columns and the status of the latest job.
+   *
+   * @param accountCondition Condition on the account columns of the cluster, or null if there is no condition.
+   * @param states States of the clusters to select. If empty, clusters in any state are selected.
+   * @return Query for cluster overviews, with parameters for the account condition followed by the states.
+   */
+  protected String createSelectClusterOverviewsQuery(String accountCondition, Set<Cluster.Status> states) {
+    List<String> conditions = Lists.newArrayList();
+    if (accountCondition != null) {
+      conditions.add(accountCondition);
+    }
+    if (!states.isEmpty()) {
+      conditions.add("C.status IN " + DBHelper.createInString(states.size()));
+    }
+    String where = conditions.isEmpty() ? "" : " WHERE " + Joiner.on(" AND ").join(conditions);
+    return "SELECT C.id, C.name, C.owner_id, C.create_time, C.expire_time, C.num_nodes, C.status, J.status " +
+      "FROM clusters C LEFT JOIN jobs J ON C.id=J.cluster_id AND C.latest_job_num=J.job_num" + where +
+      " ORDER BY C.create_time DESC";
+  }
+
+  private List<ClusterOverview> getOverviews(PreparedStatement statement) throws SQLException {
+    ResultSet rs = statement.executeQuery();
+    try {
+      List<ClusterOverview> overviews = Lists.newArrayList();
+      while (rs.next()) {
+        String jobStatus = rs.getString(8);
+        overviews.add(new ClusterOverview(String.valueOf(rs.getLong(1)), rs.getString(2), rs.getString(3),
+                                          getTime(rs.getTimestamp(4)), getTime(rs.getTimestamp(5)), rs.getInt(6),
+                                          Cluster.Status.valueOf(rs.getString(7)),
+                                          jobStatus == null ? null : ClusterJob.Status.valueOf(jobStatus)));
+      }
+      return ImmutableList.copyOf(overviews);
+    } finally {
+      rs.close();
+    }
+  }
+
+  private static long getTime(Timestamp timestamp) {
+    return timestamp == null ? 0 : timestamp.getTime();
+  }
+
   private List<ClusterSummary> getSummaries(PreparedStatement statement) throws SQLException {
     ResultSet rs = statement.executeQuery();
     try {
@@ -298,6 +376,7 @@ public abstract class BaseSQLClusterStoreView implements ClusterStoreView {
       while (rs.next()) {
         Cluster cluster = dbQueryExecutor.deserializeBlob(rs.getBlob(1), Cluster.class);
         ClusterJob clusterJob = dbQueryExecutor.deserializeBlob(rs.getBlob(2), ClusterJob.class);
+        clusterJob.setFinishedTaskCounts(DBHelper.getNullableLong(rs, 3), DBHelper.getNullableLong(rs, 4));
         summaries.add(new ClusterSummary(cluster, clusterJob));
       }
       return ImmutableList.copyOf(summaries);
@@ -8,8 +8,11 @@ import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * A full view of the cluster store for management purposes. Used within the system for managing jobs and tasks
@@ -17,7 +20,7 @@ import java.util.Set;
  */
 public interface ClusterStore extends ClusterStoreView {
   /**
-   * Get a cluster job by its id.
+   * Get a cluster job by its id, with the counts of its finished tasks set.
    * @param jobId Id of the cluster job to get.
    * @return The cluster job with the given id, or null if none exists.
    * @throws java.io.IOException if there was a problem getting the cluster job.
@@ -38,6 +41,14 @@ public interface ClusterStore extends ClusterStoreView {
    */
   void deleteClusterJob(JobId jobId) throws IOException;
 
+  /**
+   * Atomically add a finished task to the count of completed or failed tasks of its job, depending on the status of
+   * the task. Should be called after the finished task is written, in the same transaction.
+   * @param clusterTask The task that completed or failed.
+   * @throws IOException if there was a problem counting the task.
+   */
+  void countFinishedClusterTask(ClusterTask clusterTask) throws IOException;
+
   /**
    * Get a cluster task by its id.
    * @param taskId Id of the cluster task to get.
@@ -55,6 +66,25 @@ public interface ClusterStore extends ClusterStoreView {
    */
   List<ClusterTask> getClusterTasks(ClusterTaskFilter filter) throws IOException;
 
+  /**
+   * Get the cluster tasks with the given ids in a single lookup. Ids of tasks that do not exist are ignored.
+   *
+   * @param taskIds Ids of the cluster tasks to get.
+   * @return List of the cluster tasks that exist, in no particular order.
+   * @throws IOException if there was a problem getting the cluster tasks.
+   */
+  List<ClusterTask> getClusterTasks(Collection<TaskId> taskIds) throws IOException;
+
+  /**
+   * Get the status of the cluster tasks with the given ids in a single lookup, without reading the tasks themselves.
+   * Ids of tasks that do not exist are not in the result.
+   *
+   * @param taskIds Ids of the cluster tasks to get the status of.
+   * @return Map of task id, as given by {@link TaskId#getId()}, to the status of the task.
+   * @throws IOException if there was a problem getting the cluster task statuses.
+   */
+  Map<String, ClusterTask.Status> getClusterTaskStatuses(Collection<TaskId> taskIds) throws IOException;
+
   /**
    * Write a cluster task to the store using its id.
    * @param clusterTask The cluster task to write.
@@ -62,6 +92,13 @@ public interface ClusterStore extends ClusterStoreView {
    */
   void writeClusterTask(ClusterTask clusterTask) throws IOException;
 
+  /**
+   * Write cluster tasks to the store using their ids, so that either all or none of them are written.
+   * @param clusterTasks The cluster tasks to write.
+   * @throws IOException if there was a problem writing the cluster tasks.
+   */
+  void writeClusterTasks(Collection<ClusterTask> clusterTasks) throws IOException;
+
   /**
    * Deletes the cluster task that has the given id.
    * @param taskId Id of the cluster task to delete.
@@ -84,6 +121,13 @@ public interface ClusterStore extends ClusterStoreView {
    */
   void writeNode(Node node) throws IOException;
 
+  /**
+   * Write the given nodes to the store, so that either all or none of them are written.
+   * @param nodes The nodes to write.
+   * @throws IOException if there was a problem writing the nodes.
+   */
+  void writeNodes(Collection<Node> nodes) throws IOException;
+
   /**
    * Delete the node with the given id.
    * @param nodeId Id of the node to delete.
@@ -106,4 +150,15 @@ public interface ClusterStore extends ClusterStoreView {
    * @throws IOException
    */
   Set<Cluster> getExpiringClusters(long timestamp) throws IOException;
+
+  /**
+   * Run the given callable in a transaction, so that either all or none of the writes it makes to the store are
+   * persisted. Calls made within a transaction become part of that transaction.
+   * @param callable The callable to run.
+   * @param <T> Type of the result of the callable.
+   * @return Result of the callable.
+   * @throws IOException if the callable threw an IOException, if there was a problem committing the transaction, or
+   *                     wrapping any other checked exception thrown by the callable.
+   */
+  <T> T inTransaction(Callable<T> callable) throws IOException;
 }
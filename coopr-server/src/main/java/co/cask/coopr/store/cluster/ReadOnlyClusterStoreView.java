@@ -17,6 +17,7 @@
 package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.ClusterOverview;
 import co.cask.coopr.cluster.ClusterSummary;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.scheduler.task.ClusterJob;
@@ -63,6 +64,25 @@ public interface ReadOnlyClusterStoreView {
    */
   List<Cluster> getNonTerminatedClusters() throws IOException;
 
+  /**
+   * Get an immutable list of overviews of all clusters in the store that are in one of the given cluster states.
+   * Overviews are read from indexed columns only, without deserializing the clusters or their jobs.
+   *
+   * @param states returned clusters must be in one of these states. If null or empty, clusters in any state are
+   *               returned.
+   * @return Immutable list of overviews of clusters in the store that are in one of the given cluster states.
+   * @throws IOException if there was a problem getting the cluster overviews.
+   */
+  List<ClusterOverview> getClusterOverviews(Set<Cluster.Status> states) throws IOException;
+
+  /**
+   * Get an immutable list of overviews of all clusters in the store that are not in the terminated state.
+   *
+   * @return Immutable list of overviews of all clusters in the store that are not terminated.
+   * @throws IOException if there was a problem getting the cluster overviews.
+   */
+  List<ClusterOverview> getNonTerminatedClusterOverviews() throws IOException;
+
   /**
    * Get a specific cluster by id.
    *
@@ -61,15 +61,17 @@ public class SQLAdminClusterStoreView extends BaseSQLClusterStoreView {
   protected PreparedStatement getSetClusterStatement(
     Connection conn, long id, Cluster cluster, byte[] clusterBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=? WHERE id=? AND tenant_id=?");
+      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, num_nodes=?" +
+        " WHERE id=? AND tenant_id=?");
     statement.setBytes(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
     statement.setString(4, cluster.getStatus().name());
     statement.setTimestamp(5, DBHelper.getTimestamp(cluster.getExpireTime()));
+    statement.setInt(6, cluster.getNodeIDs().size());
     // where clause
-    statement.setLong(6, id);
-    statement.setString(7, tenantId);
+    statement.setLong(7, id);
+    statement.setString(8, tenantId);
     return statement;
   }
 
@@ -103,7 +105,7 @@ public class SQLAdminClusterStoreView extends BaseSQLClusterStoreView {
   @Override
   PreparedStatement getSelectAllClusterJobsStatement(Connection conn) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE " +
+      "SELECT C.cluster, J.job, J.completed_tasks, J.failed_tasks FROM clusters C, jobs J WHERE " +
         "C.latest_job_num=J.job_num AND C.id=J.cluster_id AND C.tenant_id=? ORDER BY C.create_time DESC");
     statement.setString(1, tenantId);
     return statement;
@@ -112,7 +114,8 @@ public class SQLAdminClusterStoreView extends BaseSQLClusterStoreView {
   @Override
   PreparedStatement getSelectAllClusterJobsStatement(Connection conn, Set<Cluster.Status> states) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
+      "SELECT C.cluster, J.job, J.completed_tasks, J.failed_tasks FROM clusters C, jobs J " +
+        "WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
         "AND C.tenant_id=? AND C.status IN " + DBHelper.createInString(states.size()) + " ORDER BY C.create_time DESC");
     statement.setString(1, tenantId);
     setInClause(statement, states, 2);
@@ -127,4 +130,13 @@ public class SQLAdminClusterStoreView extends BaseSQLClusterStoreView {
     statement.setString(2, tenantId);
     return statement;
   }
+
+  @Override
+  PreparedStatement getSelectClusterOverviewsStatement(Connection conn, Set<Cluster.Status> states)
+    throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(createSelectClusterOverviewsQuery("C.tenant_id=?", states));
+    statement.setString(1, tenantId);
+    setInClause(statement, states, 2);
+    return statement;
+  }
 }
@@ -1,6 +1,7 @@
 package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.ClusterOverview;
 import co.cask.coopr.cluster.ClusterSummary;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.scheduler.task.ClusterJob;
@@ -8,19 +9,30 @@ import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.store.DBBatchPut;
 import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.DBHelper;
 import co.cask.coopr.store.DBPut;
 import co.cask.coopr.store.DBQueryExecutor;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * A full view of the cluster store backed by a sql database.
@@ -30,11 +42,15 @@ public class SQLClusterStore implements ClusterStore {
   private final DBQueryExecutor dbQueryExecutor;
   private final DBConnectionPool dbConnectionPool;
   private final ClusterStoreView systemView;
+  private final ClusterTaskBatchPut clusterTaskPut;
+  private final NodeBatchPut nodePut;
 
   SQLClusterStore(DBConnectionPool dbConnectionPool, DBQueryExecutor dbQueryExecutor) {
     this.dbConnectionPool = dbConnectionPool;
     this.dbQueryExecutor = dbQueryExecutor;
     this.systemView = new SQLSystemClusterStoreView(dbConnectionPool, dbQueryExecutor);
+    this.clusterTaskPut = new ClusterTaskBatchPut();
+    this.nodePut = new NodeBatchPut();
   }
 
   @Override
@@ -42,11 +58,22 @@ public class SQLClusterStore implements ClusterStore {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        PreparedStatement statement = conn.prepareStatement("SELECT job FROM jobs WHERE job_num=? AND cluster_id=?");
+        PreparedStatement statement = conn.prepareStatement(
+          "SELECT job, completed_tasks, failed_tasks FROM jobs WHERE job_num=? AND cluster_id=?");
         try {
           statement.setLong(1, jobId.getJobNum());
           statement.setLong(2, Long.parseLong(jobId.getClusterId()));
-          return dbQueryExecutor.getQueryItem(statement, ClusterJob.class);
+          ResultSet rs = statement.executeQuery();
+          try {
+            if (!rs.next()) {
+              return null;
+            }
+            ClusterJob clusterJob = dbQueryExecutor.deserializeBlob(rs.getBlob(1), ClusterJob.class);
+            clusterJob.setFinishedTaskCounts(DBHelper.getNullableLong(rs, 2), DBHelper.getNullableLong(rs, 3));
+            return clusterJob;
+          } finally {
+            rs.close();
+          }
         } finally {
           statement.close();
         }
@@ -98,6 +125,38 @@ public class SQLClusterStore implements ClusterStore {
     }
   }
 
+  @Override
+  public void countFinishedClusterTask(ClusterTask clusterTask) throws IOException {
+    String column;
+    if (clusterTask.getStatus() == ClusterTask.Status.COMPLETE) {
+      column = "completed_tasks";
+    } else if (clusterTask.getStatus() == ClusterTask.Status.FAILED) {
+      column = "failed_tasks";
+    } else {
+      throw new IllegalArgumentException("Task " + clusterTask.getTaskId() + " has not finished.");
+    }
+    TaskId taskId = TaskId.fromString(clusterTask.getTaskId());
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        // jobs written before the counts were kept have null counts, which stay null
+        PreparedStatement statement = conn.prepareStatement(
+          "UPDATE jobs SET " + column + "=" + column + "+1 WHERE job_num=? AND cluster_id=?");
+        try {
+          statement.setLong(1, taskId.getJobNum());
+          statement.setLong(2, Long.parseLong(taskId.getClusterId()));
+          statement.executeUpdate();
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
   @Override
   public ClusterTask getClusterTask(TaskId taskId) throws IOException {
     try {
@@ -157,6 +216,120 @@ public class SQLClusterStore implements ClusterStore {
     }
   }
 
+  @Override
+  public List<ClusterTask> getClusterTasks(Collection<TaskId> taskIds) throws IOException {
+    if (taskIds.isEmpty()) {
+      return ImmutableList.of();
+    }
+    Multimap<String, TaskId> jobTaskIds = groupByJob(taskIds);
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement =
+          conn.prepareStatement("SELECT task FROM tasks WHERE " + createTaskIdsCondition(jobTaskIds));
+        try {
+          setTaskIdsCondition(statement, jobTaskIds);
+          return dbQueryExecutor.getQueryList(statement, ClusterTask.class);
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting cluster tasks {}", taskIds, e);
+      throw new IOException("Exception getting cluster tasks " + taskIds, e);
+    }
+  }
+
+  @Override
+  public Map<String, ClusterTask.Status> getClusterTaskStatuses(Collection<TaskId> taskIds) throws IOException {
+    if (taskIds.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    Multimap<String, TaskId> jobTaskIds = groupByJob(taskIds);
+    // the cluster id column is numeric, so ids are looked up by their numbers instead of by their strings
+    Map<String, String> ids = Maps.newHashMap();
+    for (TaskId taskId : taskIds) {
+      ids.put(getTaskKey(Long.parseLong(taskId.getClusterId()), taskId.getJobNum(), taskId.getTaskNum()),
+              taskId.getId());
+    }
+    try {
+      Connection conn = dbConnectionPool.getConnection();
+      try {
+        PreparedStatement statement = conn.prepareStatement(
+          "SELECT cluster_id, job_num, task_num, status FROM tasks WHERE " + createTaskIdsCondition(jobTaskIds));
+        try {
+          setTaskIdsCondition(statement, jobTaskIds);
+          ResultSet rs = statement.executeQuery();
+          try {
+            Map<String, ClusterTask.Status> statuses = Maps.newHashMap();
+            while (rs.next()) {
+              String id = ids.get(getTaskKey(rs.getLong(1), rs.getLong(2), rs.getLong(3)));
+              statuses.put(id, ClusterTask.Status.valueOf(rs.getString(4)));
+            }
+            return statuses;
+          } finally {
+            rs.close();
+          }
+        } finally {
+          statement.close();
+        }
+      } finally {
+        conn.close();
+      }
+    } catch (SQLException e) {
+      LOG.error("Exception getting statuses of cluster tasks {}", taskIds, e);
+      throw new IOException("Exception getting statuses of cluster tasks " + taskIds, e);
+    }
+  }
+
+  private Multimap<String, TaskId> groupByJob(Collection<TaskId> taskIds) {
+    Multimap<String, TaskId> jobTaskIds = LinkedHashMultimap.create();
+    for (TaskId taskId : taskIds) {
+      jobTaskIds.put(taskId.getJobId().getId(), taskId);
+    }
+    return jobTaskIds;
+  }
+
+  // tasks of a job are looked up with one IN clause on the task number. The clause is padded to a power of two so
+  // that the number of distinct sql strings, and so of cached prepared statements, stays small.
+  private String createTaskIdsCondition(Multimap<String, TaskId> jobTaskIds) {
+    StringBuilder builder = new StringBuilder();
+    for (Collection<TaskId> taskIds : jobTaskIds.asMap().values()) {
+      if (builder.length() > 0) {
+        builder.append(" OR ");
+      }
+      builder.append("(cluster_id=? AND job_num=? AND task_num IN ")
+        .append(DBHelper.createInString(DBHelper.getPaddedInSize(taskIds.size())))
+        .append(")");
+    }
+    return builder.toString();
+  }
+
+  private void setTaskIdsCondition(PreparedStatement statement,
+                                   Multimap<String, TaskId> jobTaskIds) throws SQLException {
+    int index = 1;
+    for (Collection<TaskId> taskIds : jobTaskIds.asMap().values()) {
+      TaskId first = taskIds.iterator().next();
+      statement.setLong(index++, Long.parseLong(first.getClusterId()));
+      statement.setLong(index++, first.getJobNum());
+      long taskNum = 0;
+      for (TaskId taskId : taskIds) {
+        taskNum = taskId.getTaskNum();
+        statement.setLong(index++, taskNum);
+      }
+      // padding repeats the last task number, which matches no other rows
+      for (int i = taskIds.size(); i < DBHelper.getPaddedInSize(taskIds.size()); i++) {
+        statement.setLong(index++, taskNum);
+      }
+    }
+  }
+
+  private String getTaskKey(long clusterId, long jobNum, long taskNum) {
+    return clusterId + "-" + jobNum + "-" + taskNum;
+  }
+
   private String addFilter(String key, Object value) {
     if (value == null) {
       return "";
@@ -174,20 +347,12 @@ public class SQLClusterStore implements ClusterStore {
 
   @Override
   public void writeClusterTask(ClusterTask clusterTask) throws IOException {
-    TaskId taskId = TaskId.fromString(clusterTask.getTaskId());
-    long clusterId = Long.parseLong(taskId.getClusterId());
-    try {
-      Connection conn = dbConnectionPool.getConnection();
-      try {
-        byte[] taskBytes = dbQueryExecutor.toBytes(clusterTask, ClusterTask.class);
-        DBPut taskPut = new ClusterTaskDBPut(clusterTask, taskBytes, taskId, clusterId);
-        taskPut.executePut(conn);
-      } finally {
-        conn.close();
-      }
-    } catch (SQLException e) {
-      throw new IOException(e);
-    }
+    writeClusterTasks(ImmutableList.of(clusterTask));
+  }
+
+  @Override
+  public void writeClusterTasks(Collection<ClusterTask> clusterTasks) throws IOException {
+    executePut(clusterTaskPut, clusterTasks);
   }
 
   @Override
@@ -235,12 +400,44 @@ public class SQLClusterStore implements ClusterStore {
 
   @Override
   public void writeNode(Node node) throws IOException {
+    writeNodes(ImmutableList.of(node));
+  }
+
+  @Override
+  public void writeNodes(Collection<Node> nodes) throws IOException {
+    executePut(nodePut, nodes);
+  }
+
+  @Override
+  public <T> T inTransaction(Callable<T> callable) throws IOException {
+    try {
+      return dbConnectionPool.runInTransaction(callable);
+    } catch (Exception e) {
+      Throwables.propagateIfPossible(e, IOException.class);
+      throw new IOException(e);
+    }
+  }
+
+  // a put of more than one object runs in a transaction, so that either all or none of the objects are written
+  private <T> void executePut(final DBBatchPut<T> put, final Collection<T> objects) throws IOException {
+    if (objects.size() <= 1) {
+      executePutInConnection(put, objects);
+      return;
+    }
+    inTransaction(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        executePutInConnection(put, objects);
+        return null;
+      }
+    });
+  }
+
+  private <T> void executePutInConnection(DBBatchPut<T> put, Collection<T> objects) throws IOException {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
-        byte[] nodeBytes = dbQueryExecutor.toBytes(node, Node.class);
-        DBPut nodePut = new NodeDBPut(node, nodeBytes);
-        nodePut.executePut(conn);
+        put.executePut(conn, objects);
       } finally {
         conn.close();
       }
@@ -334,6 +531,16 @@ public class SQLClusterStore implements ClusterStore {
     return systemView.getNonTerminatedClusters();
   }
 
+  @Override
+  public List<ClusterOverview> getClusterOverviews(Set<Cluster.Status> states) throws IOException {
+    return systemView.getClusterOverviews(states);
+  }
+
+  @Override
+  public List<ClusterOverview> getNonTerminatedClusterOverviews() throws IOException {
+    return systemView.getNonTerminatedClusterOverviews();
+  }
+
   @Override
   public Cluster getCluster(String clusterId) throws IOException {
     return systemView.getCluster(clusterId);
@@ -391,7 +598,8 @@ public class SQLClusterStore implements ClusterStore {
     @Override
     public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
       PreparedStatement statement = conn.prepareStatement(
-        "INSERT INTO jobs (job_num, cluster_id, status, create_time, job) VALUES (?, ?, ?, ?, ?)");
+        "INSERT INTO jobs (job_num, cluster_id, status, create_time, job, completed_tasks, failed_tasks)" +
+          " VALUES (?, ?, ?, ?, ?, 0, 0)");
       statement.setLong(1, jobId.getJobNum());
       statement.setLong(2, clusterId);
       statement.setString(3, clusterJob.getJobStatus().name());
@@ -401,25 +609,20 @@ public class SQLClusterStore implements ClusterStore {
     }
   }
 
-  private class ClusterTaskDBPut extends DBPut {
-    private final ClusterTask clusterTask;
-    private final byte[] taskBytes;
-    private final TaskId taskId;
-    private final long clusterId;
+  private class ClusterTaskBatchPut extends DBBatchPut<ClusterTask> {
 
-    private ClusterTaskDBPut(ClusterTask clusterTask, byte[] taskBytes, TaskId taskId, long clusterId) {
-      this.clusterTask = clusterTask;
-      this.taskBytes = taskBytes;
-      this.taskId = taskId;
-      this.clusterId = clusterId;
+    private ClusterTaskBatchPut() {
+      super("UPDATE tasks SET task=?, status=?, submit_time=?, status_time=?, type=?, " +
+              "cluster_template_name=?, user_id=?, tenant_id=?" +
+              " WHERE task_num=? AND job_num=? AND cluster_id=?",
+            "INSERT INTO tasks (task_num, job_num, cluster_id, status, submit_time, task, type, " +
+              "cluster_template_name, user_id, tenant_id)" +
+              " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
     }
 
     @Override
-    public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
-      PreparedStatement statement = conn.prepareStatement(
-        "UPDATE tasks SET task=?, status=?, submit_time=?, status_time=?, type=?, " +
-          "cluster_template_name=?, user_id=?, tenant_id=?" +
-          " WHERE task_num=? AND job_num=? AND cluster_id=?");
+    protected void setUpdateParameters(PreparedStatement statement, ClusterTask clusterTask) throws SQLException {
+      TaskId taskId = TaskId.fromString(clusterTask.getTaskId());
       statement.setBytes(1, dbQueryExecutor.toBytes(clusterTask, ClusterTask.class));
       statement.setString(2, clusterTask.getStatus().name());
       statement.setTimestamp(3, DBHelper.getTimestamp(clusterTask.getSubmitTime()));
@@ -430,55 +633,43 @@ public class SQLClusterStore implements ClusterStore {
       statement.setString(8, clusterTask.getAccount().getTenantId());
       statement.setLong(9, taskId.getTaskNum());
       statement.setLong(10, taskId.getJobNum());
-      statement.setLong(11, clusterId);
-      return statement;
+      statement.setLong(11, Long.parseLong(taskId.getClusterId()));
     }
 
     @Override
-    public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
-      PreparedStatement statement = conn.prepareStatement(
-        "INSERT INTO tasks (task_num, job_num, cluster_id, status, submit_time, task, type, " +
-          "cluster_template_name, user_id, tenant_id)" +
-          " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    protected void setInsertParameters(PreparedStatement statement, ClusterTask clusterTask) throws SQLException {
+      TaskId taskId = TaskId.fromString(clusterTask.getTaskId());
       statement.setLong(1, taskId.getTaskNum());
       statement.setLong(2, taskId.getJobNum());
-      statement.setLong(3, clusterId);
+      statement.setLong(3, Long.parseLong(taskId.getClusterId()));
       statement.setString(4, clusterTask.getStatus().name());
       statement.setTimestamp(5, DBHelper.getTimestamp(clusterTask.getSubmitTime()));
-      statement.setBytes(6, taskBytes);
+      statement.setBytes(6, dbQueryExecutor.toBytes(clusterTask, ClusterTask.class));
       statement.setString(7, clusterTask.getTaskName().name());
       statement.setString(8, clusterTask.getClusterTemplateName());
       statement.setString(9, clusterTask.getAccount().getUserId());
       statement.setString(10, clusterTask.getAccount().getTenantId());
-      return statement;
     }
   }
 
-  private class NodeDBPut extends DBPut {
-    private final Node node;
-    private final byte[] nodeBytes;
+  private class NodeBatchPut extends DBBatchPut<Node> {
 
-    private NodeDBPut(Node node, byte[] nodeBytes) {
-      this.node = node;
-      this.nodeBytes = nodeBytes;
+    private NodeBatchPut() {
+      super("UPDATE nodes SET node=? WHERE id=?",
+            "INSERT INTO nodes (id, cluster_id, node) VALUES (?, ?, ?)");
     }
 
     @Override
-    public PreparedStatement createUpdateStatement(Connection conn) throws SQLException {
-      PreparedStatement statement = conn.prepareStatement("UPDATE nodes SET node=? WHERE id=?");
-      statement.setBytes(1, nodeBytes);
+    protected void setUpdateParameters(PreparedStatement statement, Node node) throws SQLException {
+      statement.setBytes(1, dbQueryExecutor.toBytes(node, Node.class));
       statement.setString(2, node.getId());
-      return statement;
     }
 
     @Override
-    public PreparedStatement createInsertStatement(Connection conn) throws SQLException {
-      PreparedStatement statement = conn.prepareStatement(
-        "INSERT INTO nodes (id, cluster_id, node) VALUES (?, ?, ?)");
+    protected void setInsertParameters(PreparedStatement statement, Node node) throws SQLException {
       statement.setString(1, node.getId());
       statement.setLong(2, Long.parseLong(node.getClusterId()));
-      statement.setBytes(3, nodeBytes);
-      return statement;
+      statement.setBytes(3, dbQueryExecutor.toBytes(node, Node.class));
     }
   }
 }
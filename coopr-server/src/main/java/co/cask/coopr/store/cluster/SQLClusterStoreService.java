@@ -64,6 +64,7 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
                                                                "expire_time TIMESTAMP, " +
                                                                "status VARCHAR(32), " +
                                                                "latest_job_num BIGINT, " +
+                                                               "num_nodes INTEGER, " +
                                                                "cluster BLOB, " +
                                                                "PRIMARY KEY (id) )",
                                                              dbConnectionPool);
@@ -72,6 +73,8 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
                                   "clusters_account_index", "clusters", "tenant_id", "owner_id", "id");
         DBHelper.createDerbyIndex(dbConnectionPool, "clusters_ctime_index", "clusters", "create_time");
         DBHelper.createDerbyIndex(dbConnectionPool, "clusters_status_index", "clusters", "status");
+      } else {
+        DBHelper.addDerbyColumnIfNotExists(dbConnectionPool, "clusters", "num_nodes", "INTEGER");
       }
 
       created = DBHelper.createDerbyTableIfNotExists("CREATE TABLE jobs ( " +
@@ -80,11 +83,16 @@ public class SQLClusterStoreService extends AbstractIdleService implements Clust
                                                        "status VARCHAR(32), " +
                                                        "create_time TIMESTAMP, " +
                                                        "job BLOB, " +
+                                                       "completed_tasks BIGINT, " +
+                                                       "failed_tasks BIGINT, " +
                                                        "PRIMARY KEY (job_num, cluster_id) )",
                                                      dbConnectionPool);
       if (created) {
         DBHelper.createDerbyIndex(dbConnectionPool, "jobs_ctime_index", "jobs", "create_time");
         DBHelper.createDerbyIndex(dbConnectionPool, "jobs_status_index", "jobs", "status");
+      } else {
+        DBHelper.addDerbyColumnIfNotExists(dbConnectionPool, "jobs", "completed_tasks", "BIGINT");
+        DBHelper.addDerbyColumnIfNotExists(dbConnectionPool, "jobs", "failed_tasks", "BIGINT");
       }
 
       created = DBHelper.createDerbyTableIfNotExists("CREATE TABLE tasks ( " +
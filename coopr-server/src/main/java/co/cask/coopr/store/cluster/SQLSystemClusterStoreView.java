@@ -52,15 +52,17 @@ public class SQLSystemClusterStoreView extends BaseSQLClusterStoreView {
   protected PreparedStatement getSetClusterStatement(
     Connection conn, long id, Cluster cluster, byte[] clusterBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, latest_job_num=? WHERE id=?");
+      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, latest_job_num=?, num_nodes=?" +
+        " WHERE id=?");
     statement.setBytes(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
     statement.setString(4, cluster.getStatus().name());
     statement.setTimestamp(5, DBHelper.getTimestamp(cluster.getExpireTime()));
     statement.setLong(6, JobId.fromString(cluster.getLatestJobId()).getJobNum());
+    statement.setInt(7, cluster.getNodeIDs().size());
     // where clause
-    statement.setLong(7, id);
+    statement.setLong(8, id);
     return statement;
   }
 
@@ -90,7 +92,7 @@ public class SQLSystemClusterStoreView extends BaseSQLClusterStoreView {
   @Override
   PreparedStatement getSelectAllClusterJobsStatement(Connection conn) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J " +
+      "SELECT C.cluster, J.job, J.completed_tasks, J.failed_tasks FROM clusters C, jobs J " +
         "WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id ORDER BY C.create_time DESC");
     return statement;
   }
@@ -98,7 +100,8 @@ public class SQLSystemClusterStoreView extends BaseSQLClusterStoreView {
   @Override
   PreparedStatement getSelectAllClusterJobsStatement(Connection conn, Set<Cluster.Status> states) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
+      "SELECT C.cluster, J.job, J.completed_tasks, J.failed_tasks FROM clusters C, jobs J " +
+        "WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
         "AND C.status IN " + DBHelper.createInString(states.size()) + " ORDER BY C.create_time DESC");
     setInClause(statement, states, 1);
     return statement;
@@ -110,4 +113,12 @@ public class SQLSystemClusterStoreView extends BaseSQLClusterStoreView {
     statement.setLong(1, id);
     return statement;
   }
+
+  @Override
+  PreparedStatement getSelectClusterOverviewsStatement(Connection conn, Set<Cluster.Status> states)
+    throws SQLException {
+    PreparedStatement statement = conn.prepareStatement(createSelectClusterOverviewsQuery(null, states));
+    setInClause(statement, states, 1);
+    return statement;
+  }
 }
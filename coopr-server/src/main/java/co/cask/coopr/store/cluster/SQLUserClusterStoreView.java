@@ -67,17 +67,18 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
   protected PreparedStatement getSetClusterStatement(
     Connection conn, long id, Cluster cluster, byte[] clusterBytes) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?" +
+      "UPDATE clusters SET cluster=?, owner_id=?, tenant_id=?, status=?, expire_time=?, num_nodes=?" +
         " WHERE id=? AND tenant_id=? AND owner_id=?");
     statement.setBytes(1, clusterBytes);
     statement.setString(2, cluster.getAccount().getUserId());
     statement.setString(3, cluster.getAccount().getTenantId());
     statement.setString(4, cluster.getStatus().name());
     statement.setTimestamp(5, DBHelper.getTimestamp(cluster.getExpireTime()));
+    statement.setInt(6, cluster.getNodeIDs().size());
     // where clause
-    statement.setLong(6, id);
-    statement.setString(7, tenantId);
-    statement.setString(8, userId);
+    statement.setLong(7, id);
+    statement.setString(8, tenantId);
+    statement.setString(9, userId);
     return statement;
   }
 
@@ -116,7 +117,8 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
   @Override
   PreparedStatement getSelectAllClusterJobsStatement(Connection conn) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
+      "SELECT C.cluster, J.job, J.completed_tasks, J.failed_tasks FROM clusters C, jobs J " +
+        "WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
         "AND C.tenant_id=? AND C.owner_id=? ORDER BY C.create_time DESC");
     statement.setString(1, tenantId);
     statement.setString(2, userId);
@@ -126,7 +128,8 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
   @Override
   PreparedStatement getSelectAllClusterJobsStatement(Connection conn, Set<Cluster.Status> states) throws SQLException {
     PreparedStatement statement = conn.prepareStatement(
-      "SELECT C.cluster, J.job FROM clusters C, jobs J WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
+      "SELECT C.cluster, J.job, J.completed_tasks, J.failed_tasks FROM clusters C, jobs J " +
+        "WHERE C.latest_job_num=J.job_num AND C.id=J.cluster_id " +
         "AND C.tenant_id=? AND C.owner_id=? AND C.status IN " + DBHelper.createInString(states.size()) +
         "ORDER BY C.create_time DESC");
     statement.setString(1, tenantId);
@@ -144,4 +147,15 @@ public class SQLUserClusterStoreView extends BaseSQLClusterStoreView {
     statement.setString(3, userId);
     return statement;
   }
+
+  @Override
+  PreparedStatement getSelectClusterOverviewsStatement(Connection conn, Set<Cluster.Status> states)
+    throws SQLException {
+    PreparedStatement statement =
+      conn.prepareStatement(createSelectClusterOverviewsQuery("C.tenant_id=? AND C.owner_id=?", states));
+    statement.setString(1, tenantId);
+    statement.setString(2, userId);
+    setInClause(statement, states, 3);
+    return statement;
+  }
 }
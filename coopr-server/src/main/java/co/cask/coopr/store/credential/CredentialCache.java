@@ -0,0 +1,253 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.credential;
+
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.management.CredentialCacheStats;
+import co.cask.coopr.management.ServerStats;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
+
+import java.io.CharArrayReader;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.Nullable;
+
+/**
+ * In memory cache of decrypted sensitive fields, so that handing out tasks of a cluster does not fetch and decrypt
+ * its fields for every task. Disabled by default. Fields are kept as characters of their json, which are zeroed as
+ * soon as an entry is removed. Entries are removed when they expire, when the fields of their cluster change, and
+ * when a job of their cluster completes or fails. Expired entries are removed in the background, so that decrypted
+ * fields never stay in memory for much longer than the configured lifetime.
+ *
+ * Fields read from the store may be put into the cache while they are being changed or wiped. To never cache such
+ * stale fields, readers get the version of a cluster before reading the store, and their fields are only kept if
+ * the fields of the cluster were not changed or wiped since. Versions are kept per stripe of clusters, so a change
+ * of a cluster may also keep the fields of another cluster from being cached once.
+ */
+public class CredentialCache {
+  private static final Gson GSON = new Gson();
+  private static final Type FIELDS_TYPE = new TypeToken<Map<String, Object>>() { }.getType();
+  private static final int NUM_VERSION_STRIPES = 1024;
+
+  private final boolean enabled;
+  private final CredentialCacheStats stats;
+  private final Cache<CredentialKey, CachedFields> cache;
+  private final AtomicLongArray versions;
+  private final ScheduledExecutorService cleanupExecutor;
+
+  @Inject
+  private CredentialCache(Configuration conf, ServerStats serverStats) {
+    this(conf.getBoolean(Constants.CredentialStore.CACHE_ENABLED),
+         conf.getInt(Constants.CredentialStore.CACHE_MAX_SIZE),
+         conf.getInt(Constants.CredentialStore.CACHE_TTL_SECS),
+         serverStats.getCredentialCacheStats());
+  }
+
+  CredentialCache(boolean enabled, int maxSize, int ttlSeconds, CredentialCacheStats stats) {
+    this.enabled = enabled;
+    this.stats = stats;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(enabled ? maxSize : 0)
+      .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+      .removalListener(new RemovalListener<CredentialKey, CachedFields>() {
+        @Override
+        public void onRemoval(RemovalNotification<CredentialKey, CachedFields> notification) {
+          notification.getValue().wipe();
+          if (notification.getCause() == RemovalCause.EXPLICIT) {
+            CredentialCache.this.stats.wiped();
+          } else if (notification.getCause() != RemovalCause.REPLACED) {
+            CredentialCache.this.stats.evicted();
+          }
+        }
+      })
+      .build();
+    this.versions = new AtomicLongArray(NUM_VERSION_STRIPES);
+    if (enabled) {
+      // expired entries are otherwise only removed when the cache is used
+      this.cleanupExecutor =
+        Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("credential-cache-cleanup"));
+      long cleanupSeconds = Math.max(1, ttlSeconds / 2);
+      cleanupExecutor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          cache.cleanUp();
+        }
+      }, cleanupSeconds, cleanupSeconds, TimeUnit.SECONDS);
+    } else {
+      this.cleanupExecutor = null;
+    }
+  }
+
+  /**
+   * Get the version of the fields of a cluster, which must be passed to {@link #put} when caching fields read from
+   * the store. Must be called before reading the store.
+   *
+   * @param tenantId Id of the tenant
+   * @param clusterId Id of the cluster
+   * @return Version of the fields of the cluster
+   */
+  long getVersion(String tenantId, String clusterId) {
+    return versions.get(getStripe(new CredentialKey(tenantId, clusterId)));
+  }
+
+  /**
+   * Get the cached fields of a cluster.
+   *
+   * @param tenantId Id of the tenant
+   * @param clusterId Id of the cluster
+   * @return New map with the fields of the cluster, or null if they are not cached.
+   */
+  @Nullable
+  Map<String, Object> get(String tenantId, String clusterId) {
+    if (!enabled) {
+      return null;
+    }
+    CachedFields cachedFields = cache.getIfPresent(new CredentialKey(tenantId, clusterId));
+    Map<String, Object> fields = cachedFields == null ? null : cachedFields.get();
+    if (fields == null) {
+      stats.miss();
+    } else {
+      stats.hit();
+    }
+    return fields;
+  }
+
+  /**
+   * Cache the fields of a cluster, unless they were changed or wiped since they were read.
+   *
+   * @param tenantId Id of the tenant
+   * @param clusterId Id of the cluster
+   * @param version Version of the fields of the cluster from before they were read
+   * @param fieldsJson Json of the fields of the cluster
+   */
+  void put(String tenantId, String clusterId, long version, String fieldsJson) {
+    if (!enabled) {
+      return;
+    }
+    CredentialKey key = new CredentialKey(tenantId, clusterId);
+    int stripe = getStripe(key);
+    if (versions.get(stripe) != version) {
+      return;
+    }
+    cache.put(key, new CachedFields(fieldsJson.toCharArray()));
+    // the fields may have been changed while they were put, in which case the change may have missed them
+    if (versions.get(stripe) != version) {
+      cache.invalidate(key);
+    }
+  }
+
+  /**
+   * Remove the fields of a cluster from the cache and zero them.
+   *
+   * @param tenantId Id of the tenant
+   * @param clusterId Id of the cluster
+   */
+  public void wipe(String tenantId, String clusterId) {
+    if (enabled) {
+      CredentialKey key = new CredentialKey(tenantId, clusterId);
+      versions.incrementAndGet(getStripe(key));
+      cache.invalidate(key);
+    }
+  }
+
+  /**
+   * Remove the fields of all clusters from the cache and zero them.
+   */
+  public void wipe() {
+    for (int i = 0; i < NUM_VERSION_STRIPES; i++) {
+      versions.incrementAndGet(i);
+    }
+    cache.invalidateAll();
+  }
+
+  /**
+   * Stop removing expired fields in the background, and remove the fields of all clusters from the cache.
+   */
+  public void stop() {
+    if (cleanupExecutor != null) {
+      cleanupExecutor.shutdownNow();
+    }
+    wipe();
+  }
+
+  private int getStripe(CredentialKey key) {
+    return (key.hashCode() & Integer.MAX_VALUE) % NUM_VERSION_STRIPES;
+  }
+
+  /**
+   * Decrypted json of the fields of a cluster, which readers may still use while it is being removed from the cache.
+   */
+  private static final class CachedFields {
+    private char[] json;
+
+    private CachedFields(char[] json) {
+      this.json = json;
+    }
+
+    private synchronized Map<String, Object> get() {
+      return json == null ? null : GSON.<Map<String, Object>>fromJson(new CharArrayReader(json), FIELDS_TYPE);
+    }
+
+    private synchronized void wipe() {
+      if (json != null) {
+        Arrays.fill(json, '\0');
+        json = null;
+      }
+    }
+  }
+
+  private static final class CredentialKey {
+    private final String tenantId;
+    private final String clusterId;
+
+    private CredentialKey(String tenantId, String clusterId) {
+      this.tenantId = tenantId;
+      this.clusterId = clusterId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CredentialKey)) {
+        return false;
+      }
+      CredentialKey other = (CredentialKey) o;
+      return Objects.equal(tenantId, other.tenantId) && Objects.equal(clusterId, other.clusterId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(tenantId, clusterId);
+    }
+  }
+}
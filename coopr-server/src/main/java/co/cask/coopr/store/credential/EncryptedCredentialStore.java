@@ -34,17 +34,19 @@ import java.util.Map;
 
 /**
  * Abstract base for implementations of {@link co.cask.coopr.store.credential.CredentialStore} that encrypt values
- * before storing in whatever the storage engine is.
+ * before storing in whatever the storage engine is. Decrypted values can be kept in a {@link CredentialCache}.
  */
 public abstract class EncryptedCredentialStore extends AbstractIdleService implements CredentialStore {
   private static final Logger LOG  = LoggerFactory.getLogger(EncryptedCredentialStore.class);
   private static final Gson GSON = new Gson();
   private final boolean encryptionEnabled;
   private final Encryptor encryptor;
+  private final CredentialCache credentialCache;
 
-  protected EncryptedCredentialStore(Configuration conf) throws IOException, GeneralSecurityException,
-    DecoderException {
+  protected EncryptedCredentialStore(Configuration conf, CredentialCache credentialCache)
+    throws IOException, GeneralSecurityException, DecoderException {
 
+    this.credentialCache = credentialCache;
     this.encryptionEnabled = conf.getBoolean(Constants.CredentialStore.ENCRYPT_ENABLED);
     if (encryptionEnabled) {
       CipherProvider cipherProvider = CipherProvider.builder()
@@ -72,7 +74,10 @@ public abstract class EncryptedCredentialStore extends AbstractIdleService imple
       String fieldsAsStr = GSON.toJson(fields);
       byte[] val = encryptionEnabled ?
         encryptor.encryptAndEncodeString(fieldsAsStr) : fieldsAsStr.getBytes(Charsets.UTF_8);
+      credentialCache.wipe(tenantId, clusterId);
       setValue(tenantId, clusterId, val);
+      // keeps fields that were read while they were being set from being cached
+      credentialCache.wipe(tenantId, clusterId);
     } catch (GeneralSecurityException e) {
       LOG.error("Exception encrypting sensitive fields for tenant {} and cluster {}", tenantId, clusterId, e);
       throw new IOException("Unable to encrypt sensitive fields", e);
@@ -81,16 +86,38 @@ public abstract class EncryptedCredentialStore extends AbstractIdleService imple
 
   @Override
   public Map<String, Object> get(String tenantId, String clusterId) throws IOException {
+    Map<String, Object> cachedFields = credentialCache.get(tenantId, clusterId);
+    if (cachedFields != null) {
+      return cachedFields;
+    }
+    long version = credentialCache.getVersion(tenantId, clusterId);
     try {
       byte[] val = getValue(tenantId, clusterId);
       if (val == null) {
         return Maps.newHashMap();
       }
       String resultStr = encryptionEnabled ? encryptor.decodeAndDecryptString(val) : new String(val, Charsets.UTF_8);
+      credentialCache.put(tenantId, clusterId, version, resultStr);
       return GSON.fromJson(resultStr, new TypeToken<Map<String, Object>>() { }.getType());
     } catch (GeneralSecurityException e) {
       LOG.error("Exception decrypting sensitive fields for tenant {} and cluster {}.", tenantId, clusterId, e);
       throw new IOException("Unable to decrypt sensitive fields", e);
     }
   }
+
+  abstract void wipeValue(String tenantId, String clusterId) throws IOException;
+
+  abstract void wipeValues() throws IOException;
+
+  @Override
+  public void wipe(String tenantId, String clusterId) throws IOException {
+    wipeValue(tenantId, clusterId);
+    credentialCache.wipe(tenantId, clusterId);
+  }
+
+  @Override
+  public void wipe() throws IOException {
+    wipeValues();
+    credentialCache.wipe();
+  }
 }
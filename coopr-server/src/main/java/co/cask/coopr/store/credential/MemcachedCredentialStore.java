@@ -42,9 +42,9 @@ public class MemcachedCredentialStore extends EncryptedCredentialStore {
   private final int timeoutSeconds;
 
   @Inject
-  private MemcachedCredentialStore(Configuration conf) throws IOException, GeneralSecurityException,
-    DecoderException {
-    super(conf);
+  private MemcachedCredentialStore(Configuration conf, CredentialCache credentialCache)
+    throws IOException, GeneralSecurityException, DecoderException {
+    super(conf, credentialCache);
     String addresses = conf.get(Constants.MemcachedCredentialStore.ADDRESSES);
     Preconditions.checkArgument(addresses != null && !addresses.isEmpty(),
                                 Constants.MemcachedCredentialStore.ADDRESSES + " must be specified.");
@@ -96,12 +96,12 @@ public class MemcachedCredentialStore extends EncryptedCredentialStore {
   }
 
   @Override
-  public void wipe(String tenantId, String clusterId) throws IOException {
+  void wipeValue(String tenantId, String clusterId) throws IOException {
     client.delete(getKey(tenantId, clusterId));
   }
 
   @Override
-  public void wipe() throws IOException {
+  void wipeValues() throws IOException {
     client.flush();
   }
 
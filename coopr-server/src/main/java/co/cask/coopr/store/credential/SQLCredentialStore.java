@@ -40,9 +40,9 @@ public class SQLCredentialStore extends EncryptedCredentialStore {
   private final DBConnectionPool dbConnectionPool;
 
   @Inject
-  private SQLCredentialStore(DBConnectionPool dbConnectionPool, Configuration conf)
+  private SQLCredentialStore(DBConnectionPool dbConnectionPool, Configuration conf, CredentialCache credentialCache)
     throws GeneralSecurityException, IOException, DecoderException {
-    super(conf);
+    super(conf, credentialCache);
     this.dbConnectionPool = dbConnectionPool;
   }
 
@@ -111,7 +111,7 @@ public class SQLCredentialStore extends EncryptedCredentialStore {
   }
 
   @Override
-  public void wipe(String tenantId, String clusterId) throws IOException {
+  void wipeValue(String tenantId, String clusterId) throws IOException {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
@@ -134,7 +134,7 @@ public class SQLCredentialStore extends EncryptedCredentialStore {
   }
 
   @Override
-  public void wipe() throws IOException {
+  void wipeValues() throws IOException {
     try {
       Connection conn = dbConnectionPool.getConnection();
       try {
@@ -106,7 +106,7 @@ public abstract class BaseEntityStoreView implements EntityStoreView {
   /**
    * Types of entities.
    */
-  protected enum EntityType {
+  public enum EntityType {
     PROVIDER("provider"),
     HARDWARE_TYPE("hardwareType"),
     IMAGE_TYPE("imageType"),
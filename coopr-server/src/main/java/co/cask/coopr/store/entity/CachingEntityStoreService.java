@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import org.apache.twill.zookeeper.ZKClient;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Implementation of {@link EntityStoreService} that caches entities of the {@link SQLEntityStoreService} in memory.
+ * Cached entities are invalidated per tenant through an entity generation in zookeeper, which every server changes
+ * after writing entities of a tenant, so that all servers stop using entities of the tenant they have cached.
+ */
+public class CachingEntityStoreService extends AbstractIdleService implements EntityStoreService {
+  private final SQLEntityStoreService delegate;
+  private final EntityCache cache;
+  private final Gson gson;
+
+  @Inject
+  private CachingEntityStoreService(SQLEntityStoreService delegate, ZKClient zkClient, Configuration conf, Gson gson) {
+    this.delegate = delegate;
+    this.cache = new EntityCache(zkClient, conf.getInt(Constants.ENTITY_CACHE_MAX_SIZE));
+    this.gson = gson;
+  }
+
+  // for unit tests only
+  public void clearData() throws SQLException {
+    delegate.clearData();
+    cache.invalidateAll();
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    delegate.startAndWait();
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    cache.stop();
+    delegate.stopAndWait();
+  }
+
+  @Override
+  public EntityStoreView getView(Account account) {
+    return new CachingEntityStoreView(delegate.getSQLView(account), account, cache, gson);
+  }
+
+  @Override
+  public void copyEntities(Account from, Account to) throws IOException, IllegalAccessException {
+    try {
+      delegate.copyEntities(from, to);
+    } finally {
+      // some entities may have been copied even if the copy failed
+      cache.nextGeneration(to.getTenantId());
+    }
+  }
+
+  @Override
+  public void addChangeListener(EntityChangeListener listener) {
+    // the store calls the listener for changes of this server, the cache for changes of other servers
+    delegate.addChangeListener(listener);
+    cache.addChangeListener(listener);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Constants;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link BaseEntityStoreView} that reads entities through an {@link EntityCache} and only goes to the view it
+ * decorates for entities that are not cached in the current generation of the tenant. Entities are cached as bytes,
+ * so every read returns new objects that callers are free to change. Writes and deletes go to the decorated view,
+ * followed by a new generation for the tenant.
+ */
+class CachingEntityStoreView extends BaseEntityStoreView {
+  private final BaseEntityStoreView delegate;
+  private final Account account;
+  private final EntityCache cache;
+
+  CachingEntityStoreView(BaseEntityStoreView delegate, Account account, EntityCache cache, Gson gson) {
+    super(gson);
+    this.delegate = delegate;
+    this.account = account;
+    this.cache = cache;
+  }
+
+  @Override
+  protected int getVersion(EntityType entityType, String entityName) throws IOException {
+    // only used for writes, which should see the latest version in the store
+    return delegate.getVersion(entityType, entityName);
+  }
+
+  @Override
+  protected void writeEntity(EntityType entityType, String entityName, int version, byte[] data)
+    throws IOException, IllegalAccessException {
+    delegate.writeEntity(entityType, entityName, version, data);
+    cache.nextGeneration(account.getTenantId());
+  }
+
+  @Override
+  protected byte[] getEntity(EntityType entityType, String entityName, int entityVersion) throws IOException {
+    String tenantId = getReadTenantId(entityType);
+    EntityCache.Key key = new EntityCache.Key(tenantId, cache.getGeneration(tenantId),
+                                              entityType, entityName, entityVersion);
+    Optional<byte[]> cached = cache.getEntity(key);
+    if (cached != null) {
+      return cached.orNull();
+    }
+    byte[] entity = delegate.getEntity(entityType, entityName, entityVersion);
+    cache.putEntity(key, entity);
+    return entity;
+  }
+
+  @Override
+  protected <T> Collection<T> getAllLatestEntities(EntityType entityType,
+                                                   Function<byte[], T> transform) throws IOException {
+    String tenantId = getReadTenantId(entityType);
+    EntityCache.Key key = new EntityCache.Key(tenantId, cache.getGeneration(tenantId), entityType, null, 0);
+    List<byte[]> cached = cache.getAllLatestEntities(key);
+    if (cached == null) {
+      cached = ImmutableList.copyOf(delegate.getAllLatestEntities(entityType, Functions.<byte[]>identity()));
+      cache.putAllLatestEntities(key, cached);
+    }
+    List<T> entities = Lists.newArrayListWithCapacity(cached.size());
+    for (byte[] entity : cached) {
+      entities.add(transform.apply(entity));
+    }
+    return entities;
+  }
+
+  @Override
+  protected void deleteEntity(EntityType entityType, String entityName) throws IOException, IllegalAccessException {
+    delegate.deleteEntity(entityType, entityName);
+    cache.nextGeneration(account.getTenantId());
+  }
+
+  @Override
+  protected void deleteEntity(EntityType entityType, String entityName, int entityVersion)
+    throws IOException, IllegalAccessException {
+    delegate.deleteEntity(entityType, entityName, entityVersion);
+    cache.nextGeneration(account.getTenantId());
+  }
+
+  // automator and provider types are constant across tenants and defined only in the superadmin tenant.
+  private String getReadTenantId(EntityType entityType) {
+    return (entityType == EntityType.AUTOMATOR_TYPE || entityType == EntityType.PROVIDER_TYPE) ?
+      Constants.SUPERADMIN_TENANT : account.getTenantId();
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.common.zookeeper.ZKClientExt;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.zookeeper.NodeData;
+import org.apache.twill.zookeeper.ZKClient;
+import org.apache.twill.zookeeper.ZKOperations;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * In memory cache of serialized entities, shared by all views of a server. Each tenant has an entity generation,
+ * which is the modification id of a tenant node in zookeeper. Writes of a server change the node after they are
+ * done, and every server watches the nodes of the tenants it has read entities for. Cached entities are keyed by the
+ * generation they were read in, so entities of an old generation are never returned again and are left to be evicted.
+ * Servers write their id into the node, so that a server can tell changes of other servers from its own.
+ */
+final class EntityCache {
+  private static final Logger LOG = LoggerFactory.getLogger(EntityCache.class);
+  private static final String GENERATIONS_BASEPATH = "/entitygenerations";
+
+  private final ZKClient zkClient;
+  private final byte[] serverId;
+  private final ConcurrentMap<String, AtomicLong> generations;
+  // node versions last seen by the watches, only changed by the zookeeper event thread
+  private final ConcurrentMap<String, Integer> watchedVersions;
+  private final ConcurrentMap<String, Cancellable> watches;
+  private final List<EntityChangeListener> changeListeners;
+  // absent if the entity does not exist
+  private final Cache<Key, Optional<byte[]>> entities;
+  private final Cache<Key, List<byte[]>> allLatestEntities;
+
+  EntityCache(ZKClient zkClient, int maxSize) {
+    this.zkClient = zkClient;
+    this.serverId = UUID.randomUUID().toString().getBytes(Charsets.UTF_8);
+    this.generations = Maps.newConcurrentMap();
+    this.watchedVersions = Maps.newConcurrentMap();
+    this.watches = Maps.newConcurrentMap();
+    this.changeListeners = new CopyOnWriteArrayList<EntityChangeListener>();
+    this.entities = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    this.allLatestEntities = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  /**
+   * Get the current entity generation of a tenant. The first call for a tenant reads the generation from zookeeper
+   * and starts watching it for changes.
+   *
+   * @param tenantId Id of the tenant.
+   * @return Current entity generation of the tenant.
+   */
+  long getGeneration(String tenantId) {
+    AtomicLong generation = generations.get(tenantId);
+    if (generation == null) {
+      generation = watchGeneration(tenantId);
+    }
+    return generation.get();
+  }
+
+  /**
+   * Start a new entity generation of a tenant, so that entities of the tenant cached on any server are no longer used.
+   * Must be called after the entities of the tenant have been changed.
+   *
+   * @param tenantId Id of the tenant whose entities were changed.
+   */
+  void nextGeneration(String tenantId) {
+    Stat stat;
+    try {
+      // makes sure the node exists and is watched
+      getGeneration(tenantId);
+      stat = Futures.getUnchecked(zkClient.setData(getPath(tenantId), serverId));
+    } catch (Exception e) {
+      // the write itself is already done, so it should not fail. Other servers may keep using their cached entities
+      // until the next change of the tenant, but this server at least reads its own writes.
+      LOG.error("Unable to start a new entity generation for tenant {}, invalidating the local entity cache.",
+                tenantId, e);
+      invalidateAll();
+      return;
+    }
+    // don't wait for the watch, so that the server reads its own writes
+    updateGeneration(tenantId, stat.getMzxid());
+  }
+
+  /**
+   * Add a listener that is called when the entity generation of a tenant is changed by another server.
+   *
+   * @param listener Listener to call when another server changed entities.
+   */
+  void addChangeListener(EntityChangeListener listener) {
+    changeListeners.add(listener);
+  }
+
+  /**
+   * Get a cached entity.
+   *
+   * @return Cached entity, absent if the entity is cached as not existing, or null if it is not cached.
+   */
+  @Nullable
+  Optional<byte[]> getEntity(Key key) {
+    return entities.getIfPresent(key);
+  }
+
+  void putEntity(Key key, @Nullable byte[] entity) {
+    entities.put(key, Optional.fromNullable(entity));
+  }
+
+  /**
+   * Get the cached latest versions of all entities of a type.
+   *
+   * @return Cached entities, or null if they are not cached.
+   */
+  @Nullable
+  List<byte[]> getAllLatestEntities(Key key) {
+    return allLatestEntities.getIfPresent(key);
+  }
+
+  void putAllLatestEntities(Key key, List<byte[]> entityList) {
+    allLatestEntities.put(key, entityList);
+  }
+
+  /**
+   * Remove all entities from the local cache. Only needed if entities were changed without going through the cache.
+   */
+  void invalidateAll() {
+    entities.invalidateAll();
+    allLatestEntities.invalidateAll();
+  }
+
+  /**
+   * Stop watching the entity generations of all tenants.
+   */
+  void stop() {
+    for (Cancellable watch : watches.values()) {
+      watch.cancel();
+    }
+    watches.clear();
+    generations.clear();
+    watchedVersions.clear();
+  }
+
+  private synchronized AtomicLong watchGeneration(final String tenantId) {
+    AtomicLong generation = generations.get(tenantId);
+    if (generation != null) {
+      return generation;
+    }
+    String path = getPath(tenantId);
+    Futures.getUnchecked(ZKClientExt.ensureExists(zkClient, path));
+    NodeData nodeData = Futures.getUnchecked(zkClient.getData(path));
+    generation = new AtomicLong(nodeData.getStat().getMzxid());
+    generations.put(tenantId, generation);
+    watchedVersions.put(tenantId, nodeData.getStat().getVersion());
+    watches.put(tenantId, ZKOperations.watchData(zkClient, path, new ZKOperations.DataCallback() {
+      @Override
+      public void updated(NodeData nodeData) {
+        if (nodeData == null || nodeData.getStat() == null) {
+          return;
+        }
+        updateGeneration(tenantId, nodeData.getStat().getMzxid());
+        if (changedByOtherServer(tenantId, nodeData)) {
+          for (EntityChangeListener listener : changeListeners) {
+            listener.entitiesChanged(tenantId);
+          }
+        }
+      }
+    }));
+    return generation;
+  }
+
+  private void updateGeneration(String tenantId, long generation) {
+    AtomicLong current = generations.get(tenantId);
+    if (current == null) {
+      return;
+    }
+    // the watch and the writes of this server may see modifications out of order
+    long currentGeneration = current.get();
+    while (generation > currentGeneration && !current.compareAndSet(currentGeneration, generation)) {
+      currentGeneration = current.get();
+    }
+  }
+
+  // the watch may skip versions if the node changes quickly, so a new version written by this server only hides
+  // other changes if it directly follows the last seen version
+  private boolean changedByOtherServer(String tenantId, NodeData nodeData) {
+    Integer lastVersion = watchedVersions.get(tenantId);
+    int version = nodeData.getStat().getVersion();
+    if (lastVersion == null || version <= lastVersion) {
+      return false;
+    }
+    watchedVersions.put(tenantId, version);
+    return version != lastVersion + 1 || !Arrays.equals(serverId, nodeData.getData());
+  }
+
+  private String getPath(String tenantId) {
+    return GENERATIONS_BASEPATH + "/" + tenantId;
+  }
+
+  /**
+   * Key of cached entities. The name and version are null and 0 for all latest entities of a type.
+   */
+  static final class Key {
+    private final String tenantId;
+    private final long generation;
+    private final BaseEntityStoreView.EntityType entityType;
+    private final String entityName;
+    private final int entityVersion;
+
+    Key(String tenantId, long generation, BaseEntityStoreView.EntityType entityType,
+        @Nullable String entityName, int entityVersion) {
+      this.tenantId = tenantId;
+      this.generation = generation;
+      this.entityType = entityType;
+      this.entityName = entityName;
+      this.entityVersion = entityVersion;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return generation == other.generation &&
+        entityVersion == other.entityVersion &&
+        entityType == other.entityType &&
+        Objects.equal(tenantId, other.tenantId) &&
+        Objects.equal(entityName, other.entityName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(tenantId, generation, entityType, entityName, entityVersion);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+/**
+ * Listener for changes to entities, registered through {@link EntityStoreService#addChangeListener}. Used to keep
+ * state derived from entities up to date. Listeners are called synchronously by the thread that changed entities,
+ * so they should be quick and must not throw exceptions.
+ */
+public interface EntityChangeListener {
+
+  /**
+   * Called after some or all versions of an entity of a tenant have been written or deleted.
+   *
+   * @param tenantId Id of the tenant the entity belongs to.
+   * @param entityType Type of the entity.
+   * @param entityName Name of the entity.
+   */
+  void entityChanged(String tenantId, BaseEntityStoreView.EntityType entityType, String entityName);
+
+  /**
+   * Called after any entities of a tenant may have been changed, for example by another server.
+   *
+   * @param tenantId Id of the tenant whose entities may have changed.
+   */
+  void entitiesChanged(String tenantId);
+}
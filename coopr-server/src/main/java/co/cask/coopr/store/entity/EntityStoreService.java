@@ -28,4 +28,12 @@ public interface EntityStoreService extends Service {
    * @throws IOException if there was a problem copying the entities
    */
   void copyEntities(Account from, Account to) throws IOException, IllegalAccessException;
+
+  /**
+   * Add a listener that is called whenever entities change. Listeners can not be removed, and should live as long as
+   * the store does.
+   *
+   * @param listener Listener to call when entities change.
+   */
+  void addChangeListener(EntityChangeListener listener);
 }
@@ -30,10 +30,13 @@ import java.sql.SQLException;
  * Implementation of {@link BaseSQLEntityStoreView} from the view of a tenant admin.
  */
 public class SQLAdminEntityStoreView extends BaseSQLEntityStoreView {
+  private final EntityChangeListener changeListener;
 
-  SQLAdminEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson) {
+  SQLAdminEntityStoreView(Account account, DBConnectionPool dbConnectionPool, Gson gson,
+                          EntityChangeListener changeListener) {
     super(account, dbConnectionPool, gson);
     Preconditions.checkArgument(account.isAdmin(), "Entity store only writable by admins");
+    this.changeListener = changeListener;
   }
 
   @Override
@@ -50,6 +53,7 @@ public class SQLAdminEntityStoreView extends BaseSQLEntityStoreView {
       throw new IOException("Exception writing entity of type " + entityType.name().toLowerCase()
                               + " with name " + entityName + accountErrorSnippet);
     }
+    changeListener.entityChanged(account.getTenantId(), entityType, entityName);
   }
 
   @Override
@@ -70,6 +74,7 @@ public class SQLAdminEntityStoreView extends BaseSQLEntityStoreView {
       throw new IOException("Exception deleting all versions of type " + entityType.name().toLowerCase()
                               + " with name " + entityName + accountErrorSnippet);
     }
+    changeListener.entityChanged(account.getTenantId(), entityType, entityName);
   }
 
   @Override
@@ -91,6 +96,7 @@ public class SQLAdminEntityStoreView extends BaseSQLEntityStoreView {
       throw new IOException("Exception deleting entity of type " + entityType.name().toLowerCase()
                               + " with name " + entityName + " and version " + entityVersion + accountErrorSnippet);
     }
+    changeListener.entityChanged(account.getTenantId(), entityType, entityName);
   }
 
   private PreparedStatement getDeleteStatementWithoutVersion(Connection conn, EntityType entityType,
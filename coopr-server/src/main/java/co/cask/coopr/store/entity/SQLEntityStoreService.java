@@ -16,6 +16,8 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Implementation of {@link EntityStoreService} that provides views of the entity store backed by a SQL database.
@@ -23,11 +25,29 @@ import java.sql.Statement;
 public class SQLEntityStoreService extends AbstractIdleService implements EntityStoreService {
   private final DBConnectionPool dbConnectionPool;
   private final Gson gson;
+  private final List<EntityChangeListener> changeListeners;
+  private final EntityChangeListener changeNotifier;
 
   @Inject
   private SQLEntityStoreService(DBConnectionPool dbConnectionPool, Gson gson) {
     this.dbConnectionPool = dbConnectionPool;
     this.gson = gson;
+    this.changeListeners = new CopyOnWriteArrayList<EntityChangeListener>();
+    this.changeNotifier = new EntityChangeListener() {
+      @Override
+      public void entityChanged(String tenantId, BaseEntityStoreView.EntityType entityType, String entityName) {
+        for (EntityChangeListener listener : changeListeners) {
+          listener.entityChanged(tenantId, entityType, entityName);
+        }
+      }
+
+      @Override
+      public void entitiesChanged(String tenantId) {
+        for (EntityChangeListener listener : changeListeners) {
+          listener.entitiesChanged(tenantId);
+        }
+      }
+    };
   }
 
   // for unit tests only
@@ -68,8 +88,12 @@ public class SQLEntityStoreService extends AbstractIdleService implements Entity
 
   @Override
   public EntityStoreView getView(Account account) {
+    return getSQLView(account);
+  }
+
+  BaseSQLEntityStoreView getSQLView(Account account) {
     if (account.isAdmin()) {
-      return new SQLAdminEntityStoreView(account, dbConnectionPool, gson);
+      return new SQLAdminEntityStoreView(account, dbConnectionPool, gson, changeNotifier);
     } else {
       return new SQLUserEntityStoreView(account, dbConnectionPool, gson);
     }
@@ -95,4 +119,9 @@ public class SQLEntityStoreService extends AbstractIdleService implements Entity
       toView.writeProvider(provider);
     }
   }
+
+  @Override
+  public void addChangeListener(EntityChangeListener listener) {
+    changeListeners.add(listener);
+  }
 }
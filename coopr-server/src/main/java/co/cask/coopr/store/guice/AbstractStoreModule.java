@@ -3,6 +3,8 @@ package co.cask.coopr.store.guice;
 import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.cluster.ClusterStoreService;
 import co.cask.coopr.store.cluster.SQLClusterStoreService;
+import co.cask.coopr.store.credential.CredentialCache;
+import co.cask.coopr.store.entity.CachingEntityStoreService;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.entity.SQLEntityStoreService;
 import co.cask.coopr.store.node.NodeStoreService;
@@ -28,11 +30,16 @@ public abstract class AbstractStoreModule extends AbstractModule {
   @Override
   protected void configure() {
     bindCommon();
+    bindEntityStore();
     bindPluginStore();
   }
 
+  void bindEntityStore() {
+    bind(EntityStoreService.class).to(CachingEntityStoreService.class).in(Scopes.SINGLETON);
+    bind(CachingEntityStoreService.class).in(Scopes.SINGLETON);
+  }
+
   protected void bindCommon() {
-    bind(EntityStoreService.class).to(SQLEntityStoreService.class).in(Scopes.SINGLETON);
     bind(ClusterStoreService.class).to(SQLClusterStoreService.class).in(Scopes.SINGLETON);
     bind(NodeStoreService.class).to(SQLNodeStoreService.class).in(Scopes.SINGLETON);
     bind(TenantStore.class).to(SQLTenantStore.class).in(Scopes.SINGLETON);
@@ -40,6 +47,7 @@ public abstract class AbstractStoreModule extends AbstractModule {
     bind(PluginMetaStoreService.class).to(SQLPluginMetaStoreService.class).in(Scopes.SINGLETON);
     bind(UserStore.class).to(SQLUserStore.class).in(Scopes.SINGLETON);
     bind(DBConnectionPool.class).in(Scopes.SINGLETON);
+    bind(CredentialCache.class).in(Scopes.SINGLETON);
     bind(SQLClusterStoreService.class).in(Scopes.SINGLETON);
     bind(SQLEntityStoreService.class).in(Scopes.SINGLETON);
     bind(SQLTenantStore.class).in(Scopes.SINGLETON);
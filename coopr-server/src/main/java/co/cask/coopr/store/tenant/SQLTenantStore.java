@@ -15,6 +15,7 @@
  */
 package co.cask.coopr.store.tenant;
 
+import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.spec.Tenant;
 import co.cask.coopr.spec.TenantSpecification;
@@ -23,6 +24,11 @@ import co.cask.coopr.store.DBHelper;
 import co.cask.coopr.store.DBPut;
 import co.cask.coopr.store.DBQueryExecutor;
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.inject.Inject;
@@ -35,6 +41,8 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of {@link TenantStore} using a SQL database as the persistent store.
@@ -45,6 +53,8 @@ public class SQLTenantStore extends AbstractIdleService implements TenantStore {
   private final DBConnectionPool dbConnectionPool;
   private final DBQueryExecutor dbQueryExecutor;
   private final ConcurrentMap<String, String> idToNameMap;
+  // absent if the tenant does not exist
+  private final LoadingCache<String, Optional<Tenant>> nameToTenantCache;
 
   // for unit tests only.  Truncate is not supported in derby.
   public void clearData() throws SQLException {
@@ -60,14 +70,25 @@ public class SQLTenantStore extends AbstractIdleService implements TenantStore {
     } finally {
       conn.close();
     }
+    nameToTenantCache.invalidateAll();
   }
 
   @Inject
-  SQLTenantStore(DBConnectionPool dbConnectionPool, DBQueryExecutor dbQueryExecutor)
+  SQLTenantStore(DBConnectionPool dbConnectionPool, DBQueryExecutor dbQueryExecutor, Configuration conf)
     throws SQLException, ClassNotFoundException {
     this.dbConnectionPool = dbConnectionPool;
     this.dbQueryExecutor = dbQueryExecutor;
     this.idToNameMap = Maps.newConcurrentMap();
+    // every authenticated request looks up its tenant
+    this.nameToTenantCache = CacheBuilder.newBuilder()
+      .maximumSize(conf.getInt(Constants.TENANT_CACHE_MAX_SIZE))
+      .expireAfterWrite(conf.getInt(Constants.TENANT_CACHE_SECS), TimeUnit.SECONDS)
+      .build(new CacheLoader<String, Optional<Tenant>>() {
+        @Override
+        public Optional<Tenant> load(String name) throws IOException {
+          return Optional.fromNullable(getTenantByName(name));
+        }
+      });
   }
 
   @Override
@@ -139,6 +160,16 @@ public class SQLTenantStore extends AbstractIdleService implements TenantStore {
     }
   }
 
+  @Override
+  public Tenant getCachedTenantByName(String name) throws IOException {
+    try {
+      return nameToTenantCache.get(name).orNull();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
   @Override
   public List<Tenant> getAllTenants() throws IOException {
     try {
@@ -195,6 +226,7 @@ public class SQLTenantStore extends AbstractIdleService implements TenantStore {
       } finally {
         conn.close();
       }
+      nameToTenantCache.invalidate(tenant.getSpecification().getName());
     } catch (SQLException e) {
       LOG.error("Exception writing tenant {}", tenant);
       throw new IOException(e);
@@ -218,6 +250,7 @@ public class SQLTenantStore extends AbstractIdleService implements TenantStore {
       } finally {
         conn.close();
       }
+      nameToTenantCache.invalidate(name);
     } catch (SQLException e) {
       LOG.error("Exception deleting tenant {}", name);
       throw new IOException(e);
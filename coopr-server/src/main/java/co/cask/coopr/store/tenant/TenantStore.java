@@ -45,6 +45,18 @@ public interface TenantStore extends Service {
    */
   Tenant getTenantByName(String name) throws IOException;
 
+  /**
+   * Get the {@link co.cask.coopr.spec.Tenant} associated with the given name or null if none exists, from an in
+   * memory cache if possible. Changes made through this store are seen right away, but changes made by other servers
+   * may only be seen after the cached tenant expires. Meant for authenticating requests, which only need the id of
+   * the tenant.
+   *
+   * @param name Name of the tenant.
+   * @return Tenant for the given name or null if no such tenant exists.
+   * @throws IOException
+   */
+  Tenant getCachedTenantByName(String name) throws IOException;
+
   /**
    * Get an immutable list of all {@link co.cask.coopr.spec.Tenant tenants}.
    *
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.upgrade;
+
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.store.DBConnectionPool;
+import co.cask.coopr.store.DBQueryExecutor;
+import co.cask.coopr.store.cluster.SQLClusterStoreService;
+import co.cask.coopr.store.guice.StoreModule;
+import com.google.common.collect.Maps;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Upgrades database to work with Coopr 0.9.10.
+ */
+public class UpgradeTo0_9_10 {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UpgradeTo0_9_10.class);
+
+  private final DBConnectionPool dbConnectionPool;
+  private final DBQueryExecutor dbQueryExecutor;
+
+  @Inject
+  public UpgradeTo0_9_10(DBConnectionPool dbConnectionPool, DBQueryExecutor dbQueryExecutor) {
+    this.dbConnectionPool = dbConnectionPool;
+    this.dbQueryExecutor = dbQueryExecutor;
+  }
+
+  public void run() throws SQLException {
+    fillMissingNumNodes();
+  }
+
+  /**
+   * Fill in the node count column of clusters written before the column existed, so that cluster overviews do not
+   * need to deserialize clusters.
+   */
+  private void fillMissingNumNodes() throws SQLException {
+    LOG.info("Filling in num_nodes column of clusters table");
+
+    Map<Long, Integer> numNodes = Maps.newHashMap();
+    Connection conn = dbConnectionPool.getConnection();
+    try {
+      PreparedStatement statement = conn.prepareStatement("SELECT id, cluster FROM clusters WHERE num_nodes IS NULL");
+      try {
+        ResultSet rs = statement.executeQuery();
+        try {
+          while (rs.next()) {
+            Cluster cluster = dbQueryExecutor.deserializeBlob(rs.getBlob(2), Cluster.class);
+            numNodes.put(rs.getLong(1), cluster.getNodeIDs().size());
+          }
+        } finally {
+          rs.close();
+        }
+      } finally {
+        statement.close();
+      }
+
+      LOG.info("Filling in node counts of {} clusters", numNodes.size());
+      statement = conn.prepareStatement("UPDATE clusters SET num_nodes=? WHERE id=? AND num_nodes IS NULL");
+      try {
+        for (Map.Entry<Long, Integer> entry : numNodes.entrySet()) {
+          statement.setInt(1, entry.getValue());
+          statement.setLong(2, entry.getKey());
+          statement.addBatch();
+        }
+        statement.executeBatch();
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
+  public static void main(String[] args) throws ClassNotFoundException {
+    // the database is resolved like the server does, which is embedded derby if no jdbc connection is configured
+    final Configuration configuration = Configuration.create();
+
+    Injector injector = Guice.createInjector(
+      new AbstractModule() {
+        @Override
+        protected void configure() {
+          bind(Configuration.class).toInstance(configuration);
+        }
+      },
+      new StoreModule(configuration));
+
+    UpgradeTo0_9_10 upgrade = injector.getInstance(UpgradeTo0_9_10.class);
+    try {
+      // adds the num_nodes column to an embedded derby database, other databases are altered with the upgrade script
+      injector.getInstance(SQLClusterStoreService.class).startAndWait();
+      upgrade.run();
+    } catch (Exception e) {
+      LOG.error("Error running upgrade", e);
+      System.exit(1);
+    }
+  }
+}
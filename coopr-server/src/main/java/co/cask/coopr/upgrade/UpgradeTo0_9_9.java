@@ -17,7 +17,6 @@ package co.cask.coopr.upgrade;
 
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.common.conf.Configuration;
-import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.spec.ProvisionerAction;
 import co.cask.coopr.store.DBConnectionPool;
 import co.cask.coopr.store.cluster.ClusterStore;
@@ -161,12 +160,8 @@ public class UpgradeTo0_9_9 {
   }
 
   public static void main(String[] args) throws ClassNotFoundException {
+    // the database is resolved like the server does, which is embedded derby if no jdbc connection is configured
     final Configuration configuration = Configuration.create();
-    String jdbcConnectionString = configuration.get(Constants.JDBC_CONNECTION_STRING);
-    if (jdbcConnectionString == null) {
-      LOG.error("Missing property '{}' in coopr-site.xml", Constants.JDBC_CONNECTION_STRING);
-      System.exit(1);
-    }
 
     Injector injector = Guice.createInjector(
       new AbstractModule() {
@@ -182,6 +177,7 @@ public class UpgradeTo0_9_9 {
       upgrade.run();
     } catch (Exception e) {
       LOG.error("Error running upgrade", e);
+      System.exit(1);
     }
   }
 
@@ -39,6 +39,7 @@ import co.cask.coopr.store.DBHelper;
 import co.cask.coopr.store.cluster.ClusterStore;
 import co.cask.coopr.store.cluster.SQLClusterStoreService;
 import co.cask.coopr.store.credential.CredentialStore;
+import co.cask.coopr.store.entity.CachingEntityStoreService;
 import co.cask.coopr.store.entity.EntityStoreService;
 import co.cask.coopr.store.guice.TestStoreModule;
 import co.cask.coopr.store.provisioner.MemoryPluginStore;
@@ -151,9 +152,10 @@ public class BaseTest {
         new ConfigurationModule(conf),
         new ZookeeperModule(zkClientService),
         new TestStoreModule(),
-        new QueueModule(zkClientService),
+        new QueueModule(zkClientService, conf),
         new HttpModule(),
-        new SchedulerModule(conf, MoreExecutors.sameThreadExecutor(), MoreExecutors.sameThreadExecutor()),
+        new SchedulerModule(conf, MoreExecutors.sameThreadExecutor(), MoreExecutors.sameThreadExecutor(),
+                            MoreExecutors.sameThreadExecutor()),
         new CodecModules().getModule(),
         new IOModule(),
         new DiscoveryRuntimeModule().getStandaloneModules(),
@@ -164,6 +166,8 @@ public class BaseTest {
           @Override
           protected void configure() {
             bind(ClusterCallback.class).toInstance(mockClusterCallback);
+            bind(EntityStoreService.class).to(CachingEntityStoreService.class).in(Scopes.SINGLETON);
+            bind(CachingEntityStoreService.class).in(Scopes.SINGLETON);
             bind(ProvisionerRequestService.class).to(MockProvisionerRequestService.class).in(Scopes.SINGLETON);
             bind(MockProvisionerRequestService.class).in(Scopes.SINGLETON);
           }
@@ -0,0 +1,249 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.cluster;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.Entities;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.spec.template.ClusterDefaults;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.Include;
+import co.cask.coopr.spec.template.Parent;
+import co.cask.coopr.spec.template.PartialTemplate;
+import co.cask.coopr.spec.template.TemplateMerger;
+import co.cask.coopr.spec.template.TemplateNotFoundException;
+import co.cask.coopr.store.entity.EntityChangeListener;
+import co.cask.coopr.store.entity.EntityStoreService;
+import co.cask.coopr.store.entity.EntityStoreView;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Tests that the {@link TemplateResolver} caches resolved templates, and evicts them when templates they depend on
+ * change.
+ */
+public class TemplateResolverTest extends BaseTest {
+  private static final Account ADMIN = Entities.ADMIN_ACCOUNT;
+  private static final String TENANT = ADMIN.getTenantId();
+
+  private CountingEntityStoreService countingStore;
+  private TemplateResolver resolver;
+  private EntityStoreView view;
+
+  @Before
+  public void setupTemplateResolverTest() throws Exception {
+    countingStore = new CountingEntityStoreService(entityStoreService);
+    resolver = new TemplateResolver(countingStore, injector.getInstance(TemplateMerger.class), gson, 100);
+    view = entityStoreService.getView(ADMIN);
+    view.writePartialTemplate(partial("partial", "p", "1"));
+    view.writePartialTemplate(partial("other-partial", "o", "1"));
+    view.writeClusterTemplate(
+      ClusterTemplate.builder()
+        .setName("base")
+        .setClusterDefaults(ClusterDefaults.builder()
+                              .setServices("zookeeper")
+                              .setProvider("joyent")
+                              .setConfig(config("base", "1"))
+                              .build())
+        .setIncludes(ImmutableSet.of(new Include("partial")))
+        .build());
+    view.writeClusterTemplate(child("middle", "base", "middle", "1"));
+    view.writeClusterTemplate(child("top", "middle", "top", "1"));
+    view.writeClusterTemplate(child("other", "base", "other", "1"));
+  }
+
+  @Test
+  public void testResolvedTemplatesAreCached() throws Exception {
+    ClusterTemplate resolved = resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION);
+    assertConfig(resolved, "base", "1", "p", "1", "middle", "1", "top", "1");
+    Assert.assertEquals("top", resolved.getName());
+    Assert.assertEquals(new Parent("middle"), resolved.getParent());
+    // top, middle, base and the partial
+    Assert.assertEquals(4, countingStore.numReads);
+    Assert.assertTrue(resolver.isCached(TENANT, "top", Constants.FIND_MAX_VERSION));
+    Assert.assertTrue(resolver.isCached(TENANT, "middle", Constants.FIND_MAX_VERSION));
+    Assert.assertTrue(resolver.isCached(TENANT, "base", Constants.FIND_MAX_VERSION));
+
+    Assert.assertEquals(resolved, resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION));
+    Assert.assertEquals(resolved, resolver.resolveTemplate(ADMIN, "top", 1));
+    // only version 1 of top had to be read
+    Assert.assertEquals(5, countingStore.numReads);
+
+    // callers can change resolved templates without changing the cache
+    resolved.getClusterDefaults().getConfig().addProperty("top", "changed");
+    assertConfig(resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION),
+                 "base", "1", "p", "1", "middle", "1", "top", "1");
+  }
+
+  @Test
+  public void testPartialChangeEvictsDependents() throws Exception {
+    resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION);
+    view.writeClusterTemplate(child("unrelated", null, "unrelated", "1"));
+    resolver.resolveTemplate(ADMIN, "unrelated", Constants.FIND_MAX_VERSION);
+
+    view.writePartialTemplate(partial("other-partial", "o", "2"));
+    Assert.assertTrue(resolver.isCached(TENANT, "top", Constants.FIND_MAX_VERSION));
+
+    view.writePartialTemplate(partial("partial", "p", "2"));
+    Assert.assertFalse(resolver.isCached(TENANT, "base", Constants.FIND_MAX_VERSION));
+    Assert.assertFalse(resolver.isCached(TENANT, "middle", Constants.FIND_MAX_VERSION));
+    Assert.assertFalse(resolver.isCached(TENANT, "top", Constants.FIND_MAX_VERSION));
+    Assert.assertTrue(resolver.isCached(TENANT, "unrelated", Constants.FIND_MAX_VERSION));
+    assertConfig(resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION),
+                 "base", "1", "p", "2", "middle", "1", "top", "1");
+  }
+
+  @Test
+  public void testParentChangeEvictsChildren() throws Exception {
+    resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION);
+    resolver.resolveTemplate(ADMIN, "other", Constants.FIND_MAX_VERSION);
+
+    view.writeClusterTemplate(child("middle", "base", "middle", "2"));
+    Assert.assertTrue(resolver.isCached(TENANT, "base", Constants.FIND_MAX_VERSION));
+    Assert.assertTrue(resolver.isCached(TENANT, "other", Constants.FIND_MAX_VERSION));
+    Assert.assertFalse(resolver.isCached(TENANT, "middle", Constants.FIND_MAX_VERSION));
+    Assert.assertFalse(resolver.isCached(TENANT, "top", Constants.FIND_MAX_VERSION));
+    assertConfig(resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION),
+                 "base", "1", "p", "1", "middle", "2", "top", "1");
+
+    view.deleteClusterTemplate("base");
+    Assert.assertFalse(resolver.isCached(TENANT, "other", Constants.FIND_MAX_VERSION));
+    Assert.assertFalse(resolver.isCached(TENANT, "top", Constants.FIND_MAX_VERSION));
+    try {
+      resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION);
+      Assert.fail();
+    } catch (TemplateNotFoundException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testUnstoredTemplatesUseCachedParents() throws Exception {
+    resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION);
+    int numReads = countingStore.numReads;
+
+    ClusterTemplate template = child("unstored", "top", "unstored", "1");
+    ClusterTemplate resolved = resolver.resolveTemplate(ADMIN, template);
+    assertConfig(resolved, "base", "1", "p", "1", "middle", "1", "top", "1", "unstored", "1");
+    Assert.assertEquals(numReads, countingStore.numReads);
+    Assert.assertFalse(resolver.isCached(TENANT, "unstored", Constants.FIND_MAX_VERSION));
+  }
+
+  @Test
+  public void testChangesOfOtherServersEvictTenant() throws Exception {
+    resolver.resolveTemplate(ADMIN, "top", Constants.FIND_MAX_VERSION);
+    resolver.entitiesChanged("other-tenant");
+    Assert.assertTrue(resolver.isCached(TENANT, "top", Constants.FIND_MAX_VERSION));
+    resolver.entitiesChanged(TENANT);
+    Assert.assertFalse(resolver.isCached(TENANT, "top", Constants.FIND_MAX_VERSION));
+    Assert.assertFalse(resolver.isCached(TENANT, "base", Constants.FIND_MAX_VERSION));
+  }
+
+  private static PartialTemplate partial(String name, String key, String value) {
+    return PartialTemplate.builder()
+      .setName(name)
+      .setClusterDefaults(ClusterDefaults.builder().setConfig(config(key, value)).build())
+      .build();
+  }
+
+  private static ClusterTemplate child(String name, String parent, String key, String value) {
+    ClusterDefaults.Builder defaults = ClusterDefaults.builder().setConfig(config(key, value));
+    if (parent == null) {
+      defaults.setServices("zookeeper").setProvider("joyent");
+    }
+    return ClusterTemplate.builder()
+      .setName(name)
+      .setClusterDefaults(defaults.build())
+      .setParent(parent == null ? null : new Parent(parent))
+      .build();
+  }
+
+  private static JsonObject config(String key, String value) {
+    JsonObject config = new JsonObject();
+    config.addProperty(key, value);
+    return config;
+  }
+
+  private static void assertConfig(ClusterTemplate template, String... keysAndValues) {
+    JsonObject expected = new JsonObject();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      expected.addProperty(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    Assert.assertEquals(expected, template.getClusterDefaults().getConfig());
+  }
+
+  /**
+   * Entity store that counts how often templates are read.
+   */
+  private static final class CountingEntityStoreService extends AbstractIdleService implements EntityStoreService {
+    private final EntityStoreService delegate;
+    private int numReads;
+
+    private CountingEntityStoreService(EntityStoreService delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public EntityStoreView getView(Account account) {
+      final EntityStoreView view = delegate.getView(account);
+      return (EntityStoreView) Proxy.newProxyInstance(
+        EntityStoreView.class.getClassLoader(), new Class<?>[] { EntityStoreView.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("getClusterTemplate") || method.getName().equals("getPartialTemplate")) {
+              numReads++;
+            }
+            try {
+              return method.invoke(view, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          }
+        });
+    }
+
+    @Override
+    public void copyEntities(Account from, Account to) throws IOException, IllegalAccessException {
+      delegate.copyEntities(from, to);
+    }
+
+    @Override
+    public void addChangeListener(EntityChangeListener listener) {
+      delegate.addChangeListener(listener);
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+      // No-op
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+      // No-op
+    }
+  }
+}
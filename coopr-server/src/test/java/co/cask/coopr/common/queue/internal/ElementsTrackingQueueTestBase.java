@@ -25,6 +25,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -168,6 +169,46 @@ public abstract class ElementsTrackingQueueTestBase {
     Assert.assertNull(queue.take("worker6"));
   }
 
+  @Test
+  public void testBatchTake() throws Exception {
+    ElementsTrackingQueue queue = getQueue();
+    for (int i = 1; i <= 5; i++) {
+      queue.add(new Element("work" + i, "data" + i));
+      Thread.sleep(1);
+    }
+
+    // elements are taken in priority order
+    List<Element> taken = queue.take("worker1", 3);
+    Assert.assertEquals(3, taken.size());
+    Assert.assertEquals("work1", taken.get(0).getId());
+    Assert.assertEquals("work2", taken.get(1).getId());
+    Assert.assertEquals("work3", taken.get(2).getId());
+    Assert.assertEquals(2, getQueuedCount(queue));
+    Assert.assertEquals(3, Iterators.size(queue.getBeingConsumed()));
+
+    // asking for more than is available takes what is left
+    taken = queue.take("worker2", 5);
+    Assert.assertEquals(2, taken.size());
+    Assert.assertEquals("work4", taken.get(0).getId());
+    Assert.assertEquals("work5", taken.get(1).getId());
+    Assert.assertTrue(queue.take("worker3", 2).isEmpty());
+
+    // each element taken in a batch is tracked on its own
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue.recordProgress("worker1", "work2",
+                                             TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY, null));
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue.recordProgress("worker1", "work1", TrackingQueue.ConsumingStatus.FAILED, null));
+    Assert.assertEquals(TrackingQueue.PossessionState.NOT_POSSESSES,
+                        queue.recordProgress("worker2", "work3", TrackingQueue.ConsumingStatus.IN_PROGRESS, null));
+    Assert.assertEquals(1, getQueuedCount(queue));
+    Assert.assertEquals(3, Iterators.size(queue.getBeingConsumed()));
+
+    taken = queue.take("worker3", 2);
+    Assert.assertEquals(1, taken.size());
+    Assert.assertEquals("work1", taken.get(0).getId());
+  }
+
   @Test(timeout = 90000)
   public void testConcurrentAccess() throws Exception {
     final ElementsTrackingQueue queue = getQueue();
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.common.queue.internal;
+
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.common.queue.TrackingQueue;
+import com.google.common.collect.Iterators;
+import org.apache.twill.internal.zookeeper.InMemoryZKServer;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.apache.zookeeper.CreateMode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs the tracking queue tests against the indexed zookeeper mode, and tests that several queue instances and
+ * leftovers of crashed consumers are handled.
+ */
+public class ElementsTrackingQueueZkIndexedTest extends ElementsTrackingQueueTestBase {
+  private static final String QUEUE_NAME = "/tracking-queue";
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+  private InMemoryZKServer zkServer;
+  private ZKClientService zkClient;
+
+  @Before
+  public void before() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(tmpFolder.newFolder()).setTickTime(1000).build();
+    zkServer.startAndWait();
+
+    zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+  }
+
+  @After
+  public void after() {
+    zkClient.stopAndWait();
+    zkServer.stopAndWait();
+  }
+
+  @Override
+  protected ElementsTrackingQueue getQueue() throws Exception {
+    return new ElementsTrackingQueue(new ZKIndexedElementsTracking(zkClient, QUEUE_NAME));
+  }
+
+  @Test
+  public void testChangesSeenAcrossInstances() throws Exception {
+    ElementsTrackingQueue queue1 = getQueue();
+    ElementsTrackingQueue queue2 = getQueue();
+
+    queue1.add(new Element("work1", "data1"));
+    Thread.sleep(1);
+    queue1.add(new Element("work2", "data2"));
+    Thread.sleep(1);
+    queue2.add(new Element("work3", "data3"));
+    Thread.sleep(1);
+    Assert.assertEquals(3, queue1.size());
+    Assert.assertEquals(3, queue2.size());
+
+    // both instances take from the same index, in priority order
+    Assert.assertEquals("work1", queue2.take("worker1").getId());
+    Assert.assertEquals("work2", queue1.take("worker2").getId());
+
+    // promoting through one instance is seen by the other
+    queue2.add(new Element("work4", "data4"));
+    queue1.toHighestPriority("work4");
+    Assert.assertEquals("work4", queue2.take("worker3").getId());
+
+    // rescheduling through one instance is seen by the other
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue2.recordProgress("worker1", "work1", TrackingQueue.ConsumingStatus.FAILED, null));
+    Assert.assertEquals(2, Iterators.size(queue1.getQueued()));
+    Assert.assertEquals(2, Iterators.size(queue1.getBeingConsumed()));
+    // work1 was taken after work3 was added, so it goes back behind work3
+    Assert.assertEquals("work3", queue1.take("worker4").getId());
+    Assert.assertEquals("work1", queue2.take("worker5").getId());
+    Assert.assertNull(queue1.take("worker6"));
+    Assert.assertNull(queue2.take("worker6"));
+  }
+
+  @Test
+  public void testTakeOverLeftoverInProgressNode() throws Exception {
+    ElementsTrackingQueue queue = getQueue();
+    queue.add(new Element("work1", "data1"));
+    queue.add(new Element("work2", "data2"));
+    // a consumer crashed after creating the in-progress node of work1, but before updating the element
+    zkClient.create(QUEUE_NAME + "/indexed/inprogress/work1", null, CreateMode.PERSISTENT).get();
+
+    List<Element> taken = queue.take("worker1", 2);
+    Assert.assertEquals(2, taken.size());
+    Assert.assertEquals("work1", taken.get(0).getId());
+    Assert.assertEquals("work2", taken.get(1).getId());
+    Assert.assertEquals(2, Iterators.size(queue.getBeingConsumed()));
+    Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES,
+                        queue.recordProgress("worker1", "work1", TrackingQueue.ConsumingStatus.FINISHED_SUCCESSFULLY,
+                                             null));
+    Assert.assertEquals(1, queue.size());
+  }
+}
@@ -15,14 +15,25 @@
  */
 package co.cask.coopr.common.queue.internal;
 
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.common.queue.TrackingQueue;
+import co.cask.coopr.common.zookeeper.lib.ReentrantDistributedLock;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
 import org.apache.twill.zookeeper.ZKClientService;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
+import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 /**
  *
@@ -57,4 +68,34 @@ public class ElementsTrackingQueueZkTest extends ElementsTrackingQueueTestBase {
     queue = new ElementsTrackingQueue(new ZKElementsTracking(zkClient, queueName));
     return queue;
   }
+
+  @Test(timeout = 20000)
+  public void testSingleElementOperationsTakeQueueLock() throws Exception {
+    final ElementsTrackingQueue queue = getQueue();
+    queue.add(new Element("work1", "data1"));
+    Assert.assertEquals("work1", queue.take("worker1").getId());
+
+    Lock queueLock = new ReentrantDistributedLock(zkClient, "/tracking-queue");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      queueLock.lock();
+      Future<TrackingQueue.PossessionState> progress;
+      try {
+        progress = executor.submit(new Callable<TrackingQueue.PossessionState>() {
+          @Override
+          public TrackingQueue.PossessionState call() throws Exception {
+            return queue.recordProgress("worker1", "work1", TrackingQueue.ConsumingStatus.IN_PROGRESS, null);
+          }
+        });
+        // in map mode, recording progress waits for the queue lock
+        Thread.sleep(500);
+        Assert.assertFalse(progress.isDone());
+      } finally {
+        queueLock.unlock();
+      }
+      Assert.assertEquals(TrackingQueue.PossessionState.POSSESSES, progress.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
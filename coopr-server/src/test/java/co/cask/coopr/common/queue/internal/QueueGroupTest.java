@@ -8,11 +8,13 @@ import co.cask.coopr.common.queue.QueuedElement;
 import co.cask.coopr.common.queue.TrackingQueue;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -41,6 +43,30 @@ public abstract class QueueGroupTest {
     Assert.assertEquals("val", taken.getValue());
   }
 
+  @Test
+  public void testBatchTakeWithQueueName() {
+    QueueGroup queues = getQueueGroup(QueueType.PROVISIONER);
+    queues.add("tenant1", new Element("id1-1", "val"));
+    queues.add("tenant1", new Element("id1-2", "val"));
+    queues.add("tenant1", new Element("id1-3", "val"));
+    queues.add("tenant2", new Element("id2-1", "val"));
+
+    Set<String> takenIds = Sets.newHashSet();
+    List<Element> taken = queues.take("tenant1", "consumer", 2);
+    Assert.assertEquals(2, taken.size());
+    takenIds.add(taken.get(0).getId());
+    takenIds.add(taken.get(1).getId());
+
+    // only takes from the given queue
+    taken = queues.take("tenant1", "consumer", 2);
+    Assert.assertEquals(1, taken.size());
+    takenIds.add(taken.get(0).getId());
+    Assert.assertEquals(ImmutableSet.of("id1-1", "id1-2", "id1-3"), takenIds);
+    Assert.assertTrue(queues.take("tenant1", "consumer", 2).isEmpty());
+    Assert.assertEquals(3, Iterators.size(queues.getBeingConsumed("tenant1")));
+    Assert.assertEquals(1, Iterators.size(queues.getQueued("tenant2")));
+  }
+
   @Test
   public void testMultiQueueTakeWithQueueName() {
     QueueGroup queues = getQueueGroup(QueueType.PROVISIONER);
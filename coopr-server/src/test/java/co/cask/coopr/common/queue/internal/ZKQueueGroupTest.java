@@ -1,14 +1,20 @@
 package co.cask.coopr.common.queue.internal;
 
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
 import co.cask.coopr.common.queue.Element;
 import co.cask.coopr.common.queue.GroupElement;
 import co.cask.coopr.common.queue.QueueGroup;
 import co.cask.coopr.common.queue.QueueType;
+import co.cask.coopr.common.queue.TrackingQueue;
 import co.cask.coopr.common.queue.guice.QueueModule;
 import co.cask.coopr.common.zookeeper.guice.ZookeeperModule;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
 import org.apache.twill.zookeeper.ZKClientService;
 import org.junit.After;
@@ -21,6 +27,7 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -42,9 +49,11 @@ public class ZKQueueGroupTest extends QueueGroupTest {
     zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
     zkClient.startAndWait();
 
+    Configuration conf = Configuration.create();
     Injector injector = Guice.createInjector(
+      new ConfigurationModule(conf),
       new ZookeeperModule(zkClient),
-      new QueueModule(zkClient)
+      new QueueModule(zkClient, conf)
     );
     zkQueueGroupService = injector.getInstance(ZKQueueService.class);
     zkQueueGroupService.startAndWait();
@@ -107,6 +116,81 @@ public class ZKQueueGroupTest extends QueueGroupTest {
     instance2.stop();
   }
 
+  @Test(timeout = 10000)
+  public void testWatchForElementsAcrossInstances() throws Exception {
+    QueueGroup instance1 = new ZKQueueGroup(zkClient, QueueType.PROVISIONER);
+    QueueGroup instance2 = new ZKQueueGroup(zkClient, QueueType.PROVISIONER);
+    instance1.startAndWait();
+    instance2.startAndWait();
+
+    ListenableFuture<String> watch = instance1.watchForElements("tenant1").get(5, TimeUnit.SECONDS);
+    // waiters on the same queue share the watch
+    Assert.assertSame(watch, instance1.watchForElements("tenant1").get(5, TimeUnit.SECONDS));
+    ListenableFuture<String> otherQueueWatch = instance1.watchForElements("tenant2").get(5, TimeUnit.SECONDS);
+    TimeUnit.MILLISECONDS.sleep(100);
+    Assert.assertFalse(watch.isDone());
+
+    instance2.add("tenant1", new Element("id1", "val1"));
+    Assert.assertEquals("tenant1", watch.get(5, TimeUnit.SECONDS));
+    Assert.assertFalse(otherQueueWatch.isDone());
+    Assert.assertEquals("id1", instance1.take("tenant1", "consumer1").getId());
+
+    // an element placed back in the queue also sets the watch
+    watch = instance1.watchForElements("tenant1").get(5, TimeUnit.SECONDS);
+    Assert.assertFalse(watch.isDone());
+    instance2.recordProgress("consumer1", "tenant1", "id1", TrackingQueue.ConsumingStatus.FAILED, null);
+    Assert.assertEquals("tenant1", watch.get(5, TimeUnit.SECONDS));
+
+    instance1.stop();
+    instance2.stop();
+  }
+
+  @Test
+  public void testElementsListenerAcrossInstances() throws Exception {
+    ZKQueueGroup instance1 = new ZKQueueGroup(zkClient, QueueType.SOLVER);
+    QueueGroup instance2 = new ZKQueueGroup(zkClient, QueueType.SOLVER);
+    instance1.startAndWait();
+    instance2.startAndWait();
+
+    instance2.add("tenant1", new Element("id1", "val1"));
+    waitForQueueNames(Sets.newHashSet("tenant1"), instance1);
+
+    final Semaphore calls = new Semaphore(0);
+    Cancellable listener = instance1.addElementsListener(new Runnable() {
+      @Override
+      public void run() {
+        calls.release();
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    // listeners are called once when they start listening to a queue
+    Assert.assertTrue(calls.tryAcquire(5, TimeUnit.SECONDS));
+    calls.drainPermits();
+
+    // adds to an existing queue from another instance
+    instance2.add("tenant1", new Element("id2", "val2"));
+    Assert.assertTrue(calls.tryAcquire(5, TimeUnit.SECONDS));
+    calls.drainPermits();
+
+    // adds to a queue that did not exist when the listener was added
+    instance2.add("tenant2", new Element("id3", "val3"));
+    Assert.assertTrue(calls.tryAcquire(5, TimeUnit.SECONDS));
+    waitForQueueNames(Sets.newHashSet("tenant1", "tenant2"), instance1);
+    TimeUnit.MILLISECONDS.sleep(100);
+    calls.drainPermits();
+    instance2.add("tenant2", new Element("id4", "val4"));
+    Assert.assertTrue(calls.tryAcquire(5, TimeUnit.SECONDS));
+
+    // cancelled listeners are no longer called
+    listener.cancel();
+    TimeUnit.MILLISECONDS.sleep(100);
+    calls.drainPermits();
+    instance2.add("tenant1", new Element("id5", "val5"));
+    Assert.assertFalse(calls.tryAcquire(500, TimeUnit.MILLISECONDS));
+
+    instance1.stop();
+    instance2.stop();
+  }
+
   private void waitForQueueNames(Set<String> expectedQueueNames, QueueGroup queueGroup) throws InterruptedException {
     for (int i = 0; i < 20; i++) {
       Set<String> queueNames = queueGroup.getQueueNames();
@@ -15,7 +15,11 @@
  */
 package co.cask.coopr.common.zookeeper;
 
+import co.cask.coopr.scheduler.task.JobId;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
 import org.apache.twill.internal.zookeeper.InMemoryZKServer;
 import org.apache.twill.zookeeper.ZKClientService;
 import org.junit.AfterClass;
@@ -27,10 +31,13 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -58,7 +65,7 @@ public class IdServiceTest {
 
   @Test
   public void testIds() throws InterruptedException, SQLException, ClassNotFoundException {
-    final IdService idService = new IdService(zkClient, 3, 10);
+    final IdService idService = new IdService(zkClient, 3, 10, 1000);
     idService.startAndWait();
     final int incrementsPerThread = 100;
     final int numThreads = 20;
@@ -91,4 +98,66 @@ public class IdServiceTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testTaskIdsLeasedInBlocks() throws Exception {
+    final IdService idService1 = new IdService(zkClient, 3, 2, 10);
+    final IdService idService2 = new IdService(zkClient, 3, 2, 10);
+    idService1.startAndWait();
+    idService2.startAndWait();
+    final JobId jobId = new JobId("00000001", 1);
+    final int idsPerThread = 100;
+    final int numThreads = 8;
+    final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+    final List<List<Long>> threadIds = Lists.newArrayList();
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Future<?>> futures = Lists.newArrayList();
+    for (int i = 0; i < numThreads; i++) {
+      final IdService idService = i % 2 == 0 ? idService1 : idService2;
+      final List<Long> ids = Lists.newArrayList();
+      threadIds.add(ids);
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            barrier.await();
+          } catch (Exception e) {
+            throw Throwables.propagate(e);
+          }
+          for (int j = 0; j < idsPerThread; j++) {
+            ids.add(idService.getNewTaskId(jobId).getTaskNum());
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    // ids are unique across services, start at the start id and are spaced by the increment
+    Set<Long> allIds = Sets.newHashSet();
+    for (List<Long> ids : threadIds) {
+      // ids handed out to a thread always increase
+      Assert.assertTrue(Ordering.natural().isStrictlyOrdered(ids));
+      allIds.addAll(ids);
+    }
+    Assert.assertEquals(numThreads * idsPerThread, allIds.size());
+    for (long id : allIds) {
+      Assert.assertEquals(1, id % 2);
+      Assert.assertTrue(id >= 3);
+    }
+
+    // ids within a leased block are consecutive
+    long id = idService1.getNewTaskId(jobId).getTaskNum();
+    for (int i = 1; i < 5; i++) {
+      long nextId = idService1.getNewTaskId(jobId).getTaskNum();
+      if (nextId != id + 2) {
+        // crossed into a new block, which can only start at a block boundary
+        Assert.assertEquals(0, (nextId - 3) % 20);
+      }
+      id = nextId;
+    }
+  }
+
 }
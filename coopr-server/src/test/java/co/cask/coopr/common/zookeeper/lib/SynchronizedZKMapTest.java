@@ -16,6 +16,10 @@
 package co.cask.coopr.common.zookeeper.lib;
 
 import co.cask.coopr.common.zookeeper.BaseZKTest;
+import com.google.common.base.Function;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+import org.apache.zookeeper.CreateMode;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -32,10 +36,87 @@ public class SynchronizedZKMapTest extends BaseZKTest {
 
   @Test(timeout = 10000)
   public void testBasics() throws ExecutionException, InterruptedException {
+    testBasics(false);
+  }
+
+  @Test(timeout = 10000)
+  public void testBasicsIncremental() throws ExecutionException, InterruptedException {
+    testBasics(true);
+  }
+
+  @Test(timeout = 30000)
+  public void testIncrementalFallsBackToFullReload() throws Exception {
+    final String path = "/foo/map";
+
+    SynchronizedZKMap<String> map1 =
+      new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer(), true);
+    SynchronizedZKMap<String> map2 =
+      new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer(), true);
+    map1.put("key0", "value0");
+    Assert.assertEquals("value0", map2.get("key0"));
+
+    // make more changes than the change log keeps, so map2 cannot catch up incrementally
+    for (int i = 1; i < 150; i++) {
+      map1.put("key" + i, "value" + i);
+    }
+    map1.put("key0", "value0_m");
+    map1.remove("key1");
+    Assert.assertEquals(149, map2.size());
+    Assert.assertEquals("value0_m", map2.get("key0"));
+    Assert.assertNull(map2.get("key1"));
+    Assert.assertEquals("value149", map2.get("key149"));
+
+    // a few changes are caught up incrementally
+    map2.put("key150", "value150");
+    map2.remove("key149");
+    map2.put("key2", "value2_m");
+    Assert.assertEquals(map2.size(), map1.size());
+    Assert.assertEquals("value150", map1.get("key150"));
+    Assert.assertNull(map1.get("key149"));
+    Assert.assertEquals("value2_m", map1.get("key2"));
+    Assert.assertEquals(map2.entrySet(), map1.entrySet());
+  }
+
+  @Test(timeout = 30000)
+  public void testIncrementalCatchesChangesMissingFromLog() throws Exception {
+    final String path = "/foo/unloggedmap";
+    Serializer<String> serializer = Serializers.stringSerializer();
+    SynchronizedZKMap<String> map1 = new SynchronizedZKMap<String>(zkClient, path, serializer, true);
+    SynchronizedZKMap<String> map2 = new SynchronizedZKMap<String>(zkClient, path, serializer, true);
+    map1.put("key1", "value1");
+    map1.put("key2", "value2");
+    Assert.assertEquals("value1", map2.get("key1"));
+    Assert.assertEquals(2, map2.size());
+
+    // writes of a writer that died before adding them to the change log
+    String entriesPath = path + "/entries/";
+    zkClient.setData(entriesPath + "key1", serializer.serialize("value1_m")).get();
+    zkClient.create(entriesPath + "key3", serializer.serialize("value3"), CreateMode.PERSISTENT).get();
+    zkClient.delete(entriesPath + "key2").get();
+
+    // the changed entry is fetched again once its watch fired
+    while (!"value1_m".equals(map1.get("key1")) || !"value1_m".equals(map2.get("key1"))) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    Assert.assertEquals(ImmutableMap.of("key1", "value1_m", "key3", "value3"), ImmutableMap.copyOf(map2));
+    Assert.assertEquals(ImmutableMap.of("key1", "value1_m", "key3", "value3"), ImmutableMap.copyOf(map1));
+
+    // entries written by the map itself are watched as well
+    map2.put("key4", "value4");
+    Assert.assertEquals("value4", map2.get("key4"));
+    zkClient.setData(entriesPath + "key4", serializer.serialize("value4_m")).get();
+    while (!"value4_m".equals(map2.get("key4"))) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+
+  private void testBasics(boolean incremental) throws InterruptedException {
     final String path = "/foo/map";
 
-    SynchronizedZKMap<String> map1 = new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer());
-    SynchronizedZKMap<String> map2 = new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer());
+    SynchronizedZKMap<String> map1 =
+      new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer(), incremental);
+    SynchronizedZKMap<String> map2 =
+      new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer(), incremental);
     Assert.assertEquals(0, map1.size());
     Assert.assertEquals(0, map2.size());
 
@@ -95,18 +176,29 @@ public class SynchronizedZKMapTest extends BaseZKTest {
 
   @Test (timeout = 30000)
   public void testConcurrent() throws Exception {
+    testConcurrent(false);
+  }
+
+  @Test (timeout = 30000)
+  public void testConcurrentIncremental() throws Exception {
+    testConcurrent(true);
+  }
+
+  private void testConcurrent(boolean incremental) throws Exception {
     int workersCount = 6;
     Producer[] producers = new Producer[workersCount];
     Thread[] producerThreads = new Thread[workersCount];
     for (int i = 0; i < workersCount; i++) {
-      SynchronizedZKMap<String> map = new SynchronizedZKMap<String>(zkClient, "/map", Serializers.stringSerializer());
+      SynchronizedZKMap<String> map =
+        new SynchronizedZKMap<String>(zkClient, "/map", Serializers.stringSerializer(), incremental);
       producers[i] = new Producer(map);
       producerThreads[i] = new Thread(producers[i]);
     }
     Consumer[] consumers = new Consumer[workersCount];
     Thread[] consumerThreads = new Thread[workersCount];
     for (int i = 0; i < workersCount; i++) {
-      SynchronizedZKMap<String> map = new SynchronizedZKMap<String>(zkClient, "/map", Serializers.stringSerializer());
+      SynchronizedZKMap<String> map =
+        new SynchronizedZKMap<String>(zkClient, "/map", Serializers.stringSerializer(), incremental);
       consumers[i] = new Consumer(map);
       consumerThreads[i] = new Thread(consumers[i]);
     }
@@ -129,6 +221,111 @@ public class SynchronizedZKMapTest extends BaseZKTest {
     Assert.assertEquals(totalProduced, totalConsumed);
   }
 
+  @Test(timeout = 10000)
+  public void testUpdateAndRemoveIf() throws Exception {
+    testUpdateAndRemoveIf(false);
+  }
+
+  @Test(timeout = 10000)
+  public void testUpdateAndRemoveIfIncremental() throws Exception {
+    testUpdateAndRemoveIf(true);
+  }
+
+  private void testUpdateAndRemoveIf(boolean incremental) throws Exception {
+    final String path = "/foo/map";
+    SynchronizedZKMap<String> map1 =
+      new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer(), incremental);
+    SynchronizedZKMap<String> map2 =
+      new SynchronizedZKMap<String>(zkClient, path, Serializers.stringSerializer(), incremental);
+
+    // update does not create missing keys
+    Assert.assertNull(map1.update("key1", new Append("_m")));
+    Assert.assertNull(map2.get("key1"));
+
+    map1.put("key1", "value1");
+    Assert.assertEquals("value1_m", map1.update("key1", new Append("_m")));
+    Assert.assertEquals("value1_m", map2.get("key1"));
+    // map2 view is stale after this update, its own update must still be based on the latest value
+    Assert.assertEquals("value1_m_n", map1.update("key1", new Append("_n")));
+    Assert.assertEquals("value1_m_n_o", map2.update("key1", new Append("_o")));
+    Assert.assertEquals("value1_m_n_o", map1.get("key1"));
+
+    // updater returning null leaves the value as it is
+    Assert.assertNull(map1.update("key1", new Function<String, String>() {
+      @Override
+      public String apply(String input) {
+        return null;
+      }
+    }));
+    Assert.assertEquals("value1_m_n_o", map2.get("key1"));
+
+    Assert.assertNull(map2.removeIf("key1", Predicates.equalTo("value1")));
+    Assert.assertEquals("value1_m_n_o", map1.get("key1"));
+    Assert.assertEquals("value1_m_n_o", map2.removeIf("key1", Predicates.equalTo("value1_m_n_o")));
+    Assert.assertNull(map1.get("key1"));
+    Assert.assertNull(map1.removeIf("key1", Predicates.<String>alwaysTrue()));
+    Assert.assertNull(map1.update("key1", new Append("_m")));
+  }
+
+  @Test(timeout = 30000)
+  public void testConcurrentUpdates() throws Exception {
+    testConcurrentUpdates(false);
+  }
+
+  @Test(timeout = 30000)
+  public void testConcurrentUpdatesIncremental() throws Exception {
+    testConcurrentUpdates(true);
+  }
+
+  private void testConcurrentUpdates(boolean incremental) throws Exception {
+    new SynchronizedZKMap<String>(zkClient, "/map", Serializers.stringSerializer(), incremental).put("counter", "0");
+
+    int workersCount = 6;
+    final int updatesCount = 10;
+    Thread[] threads = new Thread[workersCount];
+    for (int i = 0; i < workersCount; i++) {
+      final SynchronizedZKMap<String> map =
+        new SynchronizedZKMap<String>(zkClient, "/map", Serializers.stringSerializer(), incremental);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < updatesCount; j++) {
+            map.update("counter", new Function<String, String>() {
+              @Override
+              public String apply(String input) {
+                return String.valueOf(Integer.parseInt(input) + 1);
+              }
+            });
+          }
+        }
+      };
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    SynchronizedZKMap<String> map =
+      new SynchronizedZKMap<String>(zkClient, "/map", Serializers.stringSerializer(), incremental);
+    // no update is lost
+    Assert.assertEquals(String.valueOf(workersCount * updatesCount), map.get("counter"));
+  }
+
+  private static final class Append implements Function<String, String> {
+    private final String suffix;
+
+    private Append(String suffix) {
+      this.suffix = suffix;
+    }
+
+    @Override
+    public String apply(String input) {
+      return input + suffix;
+    }
+  }
+
   private static class Producer implements Runnable {
     private final Map<String, String> dest;
     private int produced = 0;
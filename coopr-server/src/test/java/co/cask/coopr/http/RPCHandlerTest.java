@@ -26,7 +26,7 @@ import co.cask.coopr.spec.template.ClusterDefaults;
 import co.cask.coopr.spec.template.ClusterTemplate;
 import co.cask.coopr.spec.template.Compatibilities;
 import co.cask.coopr.spec.template.LeaseDuration;
-import co.cask.coopr.store.entity.SQLEntityStoreService;
+import co.cask.coopr.store.entity.CachingEntityStoreService;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableSet;
 import com.google.gson.JsonObject;
@@ -77,7 +77,7 @@ public class RPCHandlerTest extends ServiceTestBase {
     // cleanup
     solverQueues.removeAll();
     clusterQueues.removeAll();
-    ((SQLEntityStoreService) entityStoreService).clearData();
+    ((CachingEntityStoreService) entityStoreService).clearData();
   }
 
   @Test
@@ -35,7 +35,7 @@ import co.cask.coopr.spec.plugin.ProviderType;
 import co.cask.coopr.spec.service.Service;
 import co.cask.coopr.spec.template.ClusterTemplate;
 import co.cask.coopr.store.entity.EntityStoreView;
-import co.cask.coopr.store.entity.SQLEntityStoreService;
+import co.cask.coopr.store.entity.CachingEntityStoreService;
 import co.cask.coopr.store.provisioner.SQLProvisionerStore;
 import co.cask.coopr.store.tenant.SQLTenantStore;
 import com.google.common.base.Charsets;
@@ -79,7 +79,7 @@ public class SuperadminHandlerTest extends ServiceTestBase {
     // base tests will write some tenants that we don't want.
     ((SQLTenantStore) tenantStore).clearData();
     ((SQLProvisionerStore) provisionerStore).clearData();
-    ((SQLEntityStoreService) entityStoreService).clearData();
+    ((CachingEntityStoreService) entityStoreService).clearData();
     tenantProvisionerService.writeProvisioner(
       new Provisioner("p1", "host", 12345, 100, ImmutableMap.<String, Integer>of(), ImmutableMap.<String, Integer>of())
     );
@@ -36,8 +36,13 @@ import co.cask.coopr.spec.service.Service;
 import co.cask.coopr.spec.service.ServiceAction;
 import co.cask.coopr.spec.template.ClusterTemplate;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.apache.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
@@ -48,6 +53,13 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -86,6 +98,170 @@ public class TaskHandlerTest extends ServiceTestBase {
     Assert.assertEquals(clusterTask.getTaskId(), responseJson.get("taskId").getAsString());
   }
 
+  @Test
+  public void testTakeTaskBatch() throws Exception {
+    String tenantId = USER1_ACCOUNT.getTenantId();
+    ClusterJob clusterJob = new ClusterJob(JobId.fromString("1-1"), ClusterAction.CLUSTER_CREATE);
+    clusterStore.writeClusterJob(clusterJob);
+    TaskConfig taskConfig = new TaskConfig(
+      NodeProperties.builder().build(),
+      Entities.ProviderExample.JOYENT,
+      ImmutableMap.<String, NodeProperties>of(),
+      new TaskServiceAction("svcA", new ServiceAction("shell", ImmutableMap.<String, String>of())),
+      new JsonObject(),
+      new JsonObject()
+    );
+    Set<String> expectedTaskIds = Sets.newHashSet();
+    for (int i = 1; i <= 3; i++) {
+      ClusterTask clusterTask = new ClusterTask(
+        ProvisionerAction.CREATE, TaskId.fromString("1-1-" + i), "node_id", "service", ClusterAction.CLUSTER_CREATE,
+        "test", USER1_ACCOUNT);
+      clusterStore.writeClusterTask(clusterTask);
+      expectedTaskIds.add(clusterTask.getTaskId());
+      SchedulableTask schedulableTask = new SchedulableTask(clusterTask, taskConfig);
+      provisionerQueues.add(tenantId, new Element(clusterTask.getTaskId(), gson.toJson(schedulableTask)));
+    }
+
+    TakeTaskRequest takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, 2);
+    HttpResponse response = doPostInternalAPI("/tasks/take/batch", gson.toJson(takeRequest));
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    JsonArray tasks = getResponseJsonArray(response);
+    Assert.assertEquals(2, tasks.size());
+    Set<String> taskIds = Sets.newHashSet();
+    for (JsonElement task : tasks) {
+      taskIds.add(task.getAsJsonObject().get("taskId").getAsString());
+    }
+
+    // only what is left is returned
+    takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, 2);
+    response = doPostInternalAPI("/tasks/take/batch", gson.toJson(takeRequest));
+    assertResponseStatus(response, HttpResponseStatus.OK);
+    tasks = getResponseJsonArray(response);
+    Assert.assertEquals(1, tasks.size());
+    taskIds.add(tasks.get(0).getAsJsonObject().get("taskId").getAsString());
+    Assert.assertEquals(expectedTaskIds, taskIds);
+
+    response = doPostInternalAPI("/tasks/take/batch", gson.toJson(takeRequest));
+    assertResponseStatus(response, HttpResponseStatus.NO_CONTENT);
+  }
+
+  @Test(timeout = 20000)
+  public void testTakeTaskWaitsForTask() throws Exception {
+    String tenantId = USER1_ACCOUNT.getTenantId();
+    ClusterTask clusterTask = new ClusterTask(
+      ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node_id", "service", ClusterAction.CLUSTER_CREATE,
+      "test", USER1_ACCOUNT);
+    clusterStore.writeClusterTask(clusterTask);
+    ClusterJob clusterJob = new ClusterJob(JobId.fromString("1-1"), ClusterAction.CLUSTER_CREATE);
+    clusterStore.writeClusterJob(clusterJob);
+    TaskConfig taskConfig = new TaskConfig(
+      NodeProperties.builder().build(),
+      Entities.ProviderExample.JOYENT,
+      ImmutableMap.<String, NodeProperties>of(),
+      new TaskServiceAction("svcA", new ServiceAction("shell", ImmutableMap.<String, String>of())),
+      new JsonObject(),
+      new JsonObject()
+    );
+    SchedulableTask schedulableTask = new SchedulableTask(clusterTask, taskConfig);
+
+    // nothing is queued, so the request waits until it times out
+    long start = System.currentTimeMillis();
+    final TakeTaskRequest takeRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, null, 200L);
+    assertResponseStatus(doPostInternalAPI("/tasks/take", gson.toJson(takeRequest)), HttpResponseStatus.NO_CONTENT);
+    Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+
+    // the request returns as soon as a task is queued
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<HttpResponse> responseFuture = executor.submit(new Callable<HttpResponse>() {
+        @Override
+        public HttpResponse call() throws Exception {
+          TakeTaskRequest waitingRequest = new TakeTaskRequest("worker1", PROVISIONER_ID, TENANT_ID, null, 15000L);
+          return doPostInternalAPI("/tasks/take", gson.toJson(waitingRequest));
+        }
+      });
+      TimeUnit.MILLISECONDS.sleep(500);
+      Assert.assertFalse(responseFuture.isDone());
+      start = System.currentTimeMillis();
+      provisionerQueues.add(tenantId, new Element(clusterTask.getTaskId(), gson.toJson(schedulableTask)));
+
+      HttpResponse response = responseFuture.get(10, TimeUnit.SECONDS);
+      Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+      assertResponseStatus(response, HttpResponseStatus.OK);
+      Assert.assertEquals(clusterTask.getTaskId(), getResponseJson(response).get("taskId").getAsString());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testQueuedTaskWakesOneWaitingRequest() throws Exception {
+    String tenantId = USER1_ACCOUNT.getTenantId();
+    ClusterJob clusterJob = new ClusterJob(JobId.fromString("1-1"), ClusterAction.CLUSTER_CREATE);
+    clusterStore.writeClusterJob(clusterJob);
+    TaskConfig taskConfig = new TaskConfig(
+      NodeProperties.builder().build(),
+      Entities.ProviderExample.JOYENT,
+      ImmutableMap.<String, NodeProperties>of(),
+      new TaskServiceAction("svcA", new ServiceAction("shell", ImmutableMap.<String, String>of())),
+      new JsonObject(),
+      new JsonObject()
+    );
+    List<ClusterTask> clusterTasks = Lists.newArrayList();
+    for (String taskId : ImmutableList.of("1-1-1", "1-1-2")) {
+      ClusterTask clusterTask = new ClusterTask(
+        ProvisionerAction.CREATE, TaskId.fromString(taskId), "node_id", "service", ClusterAction.CLUSTER_CREATE,
+        "test", USER1_ACCOUNT);
+      clusterStore.writeClusterTask(clusterTask);
+      clusterTasks.add(clusterTask);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<HttpResponse>> responseFutures = Lists.newArrayList();
+      for (final String workerId : ImmutableList.of("worker1", "worker2")) {
+        responseFutures.add(executor.submit(new Callable<HttpResponse>() {
+          @Override
+          public HttpResponse call() throws Exception {
+            TakeTaskRequest waitingRequest = new TakeTaskRequest(workerId, PROVISIONER_ID, TENANT_ID, null, 15000L);
+            return doPostInternalAPI("/tasks/take", gson.toJson(waitingRequest));
+          }
+        }));
+      }
+      TimeUnit.MILLISECONDS.sleep(500);
+
+      // a single task is handed to one of the waiting requests, the other keeps waiting
+      ClusterTask firstTask = clusterTasks.get(0);
+      provisionerQueues.add(tenantId, new Element(firstTask.getTaskId(),
+                                                  gson.toJson(new SchedulableTask(firstTask, taskConfig))));
+      Future<HttpResponse> firstResponse = null;
+      while (firstResponse == null) {
+        for (Future<HttpResponse> responseFuture : responseFutures) {
+          if (responseFuture.isDone()) {
+            firstResponse = responseFuture;
+          }
+        }
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+      responseFutures.remove(firstResponse);
+      Future<HttpResponse> secondResponse = responseFutures.get(0);
+      assertResponseStatus(firstResponse.get(), HttpResponseStatus.OK);
+      Assert.assertEquals(firstTask.getTaskId(), getResponseJson(firstResponse.get()).get("taskId").getAsString());
+      TimeUnit.MILLISECONDS.sleep(500);
+      Assert.assertFalse(secondResponse.isDone());
+
+      // the next task goes to the request that is still waiting
+      ClusterTask secondTask = clusterTasks.get(1);
+      provisionerQueues.add(tenantId, new Element(secondTask.getTaskId(),
+                                                  gson.toJson(new SchedulableTask(secondTask, taskConfig))));
+      HttpResponse response = secondResponse.get(10, TimeUnit.SECONDS);
+      assertResponseStatus(response, HttpResponseStatus.OK);
+      Assert.assertEquals(secondTask.getTaskId(), getResponseJson(response).get("taskId").getAsString());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Test
   public void testTakeTaskForDeadProvisionerErrors() throws Exception {
     TakeTaskRequest takeRequest = new TakeTaskRequest("workerX", "nonexistant-provider", "tenantY");
@@ -208,4 +384,9 @@ public class TaskHandlerTest extends ServiceTestBase {
     Reader reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
     return gson.fromJson(reader, JsonObject.class);
   }
+
+  private JsonArray getResponseJsonArray(HttpResponse response) throws IOException {
+    Reader reader = new InputStreamReader(response.getEntity().getContent(), Charsets.UTF_8);
+    return gson.fromJson(reader, JsonArray.class);
+  }
 }
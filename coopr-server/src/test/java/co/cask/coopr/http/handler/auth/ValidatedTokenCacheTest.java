@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.http.handler.auth;
+
+import co.cask.cdap.security.auth.AccessTokenIdentifier;
+import co.cask.cdap.security.auth.AccessTokenTransformer;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test ValidatedTokenCache
+ */
+public class ValidatedTokenCacheTest {
+  private static final AccessTokenTransformer TRANSFORMER = new AccessTokenTransformer(null, null);
+
+  @Test
+  public void testValidatedTokensAreCached() {
+    ValidatedTokenCache cache = new ValidatedTokenCache(10, 60);
+    AccessTokenTransformer.AccessTokenIdentifierPair token1 = createToken("user1", TimeUnit.HOURS.toMillis(1));
+    AccessTokenTransformer.AccessTokenIdentifierPair token2 = createToken("user2", TimeUnit.HOURS.toMillis(1));
+
+    Assert.assertNull(cache.get(null));
+    Assert.assertNull(cache.get("token1"));
+    cache.put("token1", token1);
+    cache.put("token2", token2);
+    Assert.assertSame(token1, cache.get("token1"));
+    Assert.assertSame(token1, cache.get("token1"));
+    Assert.assertSame(token2, cache.get("token2"));
+    Assert.assertNull(cache.get("token3"));
+  }
+
+  @Test
+  public void testTokensAreNotUsedPastTheirExpiration() throws Exception {
+    ValidatedTokenCache cache = new ValidatedTokenCache(10, 60);
+    cache.put("expired", createToken("user1", -1));
+    Assert.assertNull(cache.get("expired"));
+
+    // the token expires long before the cache would drop it
+    AccessTokenTransformer.AccessTokenIdentifierPair token = createToken("user1", 500);
+    cache.put("token", token);
+    Assert.assertSame(token, cache.get("token"));
+    TimeUnit.MILLISECONDS.sleep(600);
+    Assert.assertNull(cache.get("token"));
+    Assert.assertNull(cache.get("token"));
+  }
+
+  @Test
+  public void testTokensAreDroppedAfterTimeToLive() {
+    FakeTicker ticker = new FakeTicker();
+    ValidatedTokenCache cache = new ValidatedTokenCache(10, 60, ticker);
+    AccessTokenTransformer.AccessTokenIdentifierPair token = createToken("user1", TimeUnit.HOURS.toMillis(1));
+    cache.put("token", token);
+
+    ticker.advance(59, TimeUnit.SECONDS);
+    Assert.assertSame(token, cache.get("token"));
+    ticker.advance(2, TimeUnit.SECONDS);
+    Assert.assertNull(cache.get("token"));
+  }
+
+  @Test
+  public void testInvalidate() {
+    ValidatedTokenCache cache = new ValidatedTokenCache(10, 60);
+    AccessTokenTransformer.AccessTokenIdentifierPair token1 = createToken("user1", TimeUnit.HOURS.toMillis(1));
+    AccessTokenTransformer.AccessTokenIdentifierPair token2 = createToken("user2", TimeUnit.HOURS.toMillis(1));
+    cache.put("token1", token1);
+    cache.put("token2", token2);
+
+    cache.invalidate("token1");
+    Assert.assertNull(cache.get("token1"));
+    Assert.assertSame(token2, cache.get("token2"));
+
+    // a token validated again is cached again
+    cache.put("token1", token1);
+    Assert.assertSame(token1, cache.get("token1"));
+  }
+
+  @Test
+  public void testMaxSize() {
+    ValidatedTokenCache cache = new ValidatedTokenCache(1, 60);
+    cache.put("token1", createToken("user1", TimeUnit.HOURS.toMillis(1)));
+    cache.put("token2", createToken("user2", TimeUnit.HOURS.toMillis(1)));
+    Assert.assertNull(cache.get("token1"));
+    Assert.assertNotNull(cache.get("token2"));
+  }
+
+  private AccessTokenTransformer.AccessTokenIdentifierPair createToken(String user, long expiresInMs) {
+    long now = System.currentTimeMillis();
+    AccessTokenIdentifier identifier =
+      new AccessTokenIdentifier(user, ImmutableList.<String>of(), now, now + expiresInMs);
+    return TRANSFORMER.new AccessTokenIdentifierPair(user, identifier);
+  }
+
+  private static final class FakeTicker extends Ticker {
+    private long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long time, TimeUnit unit) {
+      nanos += unit.toNanos(time);
+    }
+  }
+}
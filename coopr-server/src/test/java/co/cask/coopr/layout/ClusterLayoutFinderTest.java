@@ -25,11 +25,16 @@ import co.cask.coopr.spec.template.SizeConstraint;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -124,6 +129,94 @@ public class ClusterLayoutFinderTest extends BaseSolverTest {
     Assert.assertNull(finder.findValidNodeCounts());
   }
 
+  @Test
+  public void testSearchFindsSameLayoutAsEnumeration() {
+    Random random = new Random(0);
+    for (int i = 0; i < 2000; i++) {
+      int numServices = 1 + random.nextInt(5);
+      List<String> services = Lists.newArrayList();
+      Map<String, ServiceConstraint> constraints = Maps.newHashMap();
+      for (int j = 0; j < numServices; j++) {
+        String service = "svc" + j;
+        services.add(service);
+        if (random.nextInt(4) > 0) {
+          int min = random.nextInt(4);
+          Integer max = random.nextBoolean() ? null : min + random.nextInt(6);
+          constraints.put(service, new ServiceConstraint(null, null, min, max));
+        }
+      }
+      List<NodeLayout> nodePreferences = Lists.newArrayList();
+      int numLayouts = 1 + random.nextInt(7);
+      for (int j = 0; j < numLayouts; j++) {
+        Set<String> layoutServices = Sets.newHashSet();
+        for (String service : services) {
+          if (random.nextInt(3) == 0) {
+            layoutServices.add(service);
+          }
+        }
+        if (layoutServices.isEmpty()) {
+          layoutServices.add(services.get(random.nextInt(numServices)));
+        }
+        nodePreferences.add(new NodeLayout("hw" + j, "image", layoutServices));
+      }
+      ClusterTemplate template = createTemplate(ImmutableSet.copyOf(services), constraints);
+      int numMachines = 1 + random.nextInt(25);
+
+      ClusterLayoutFinder finder =
+        new ClusterLayoutFinder(nodePreferences, template, ImmutableSet.copyOf(services), numMachines);
+      int[] expected = finder.findValidNodeCountsByEnumeration();
+      int[] actual = finder.findValidNodeCounts();
+      Assert.assertTrue("case " + i + ": expected " + Arrays.toString(expected) + " but was " + Arrays.toString(actual),
+                        Arrays.equals(expected, actual));
+    }
+  }
+
+  // the timeout fails the test if the search has to go through the layouts one by one
+  @Test(timeout = 10000)
+  public void testSearchOnLargeCluster() {
+    // the min of the last service can only be reached by the least preferred node layout, so going through all
+    // layouts would have to move almost every node away from the more preferred layouts first
+    Set<String> services = ImmutableSet.of("master", "worker", "storage", "cache", "gateway");
+    Map<String, ServiceConstraint> constraints = ImmutableMap.of(
+      "master", new ServiceConstraint(null, null, 1, 1),
+      "worker", new ServiceConstraint(null, null, 1, 1800),
+      "storage", new ServiceConstraint(null, null, 3, 1000),
+      "cache", new ServiceConstraint(null, null, 0, 500),
+      "gateway", new ServiceConstraint(null, null, 150, 200)
+    );
+    List<NodeLayout> nodePreferences = ImmutableList.of(
+      new NodeLayout("large", "image", ImmutableSet.of("master")),
+      new NodeLayout("large", "image", ImmutableSet.of("worker", "storage")),
+      new NodeLayout("medium", "image", ImmutableSet.of("worker", "cache")),
+      new NodeLayout("medium", "image", ImmutableSet.of("worker")),
+      new NodeLayout("small", "image", ImmutableSet.of("storage")),
+      new NodeLayout("small", "image", ImmutableSet.of("cache")),
+      new NodeLayout("small", "image", ImmutableSet.of("gateway"))
+    );
+    ClusterLayoutFinder finder =
+      new ClusterLayoutFinder(nodePreferences, createTemplate(services, constraints), services, 2000);
+    int[] nodeCounts = finder.findValidNodeCounts();
+    Assert.assertTrue(Arrays.equals(new int[] { 1, 1000, 500, 300, 0, 0, 199 }, nodeCounts));
+
+    // no valid layout, as the gateway min cannot be reached after the workers
+    constraints = ImmutableMap.of(
+      "master", new ServiceConstraint(null, null, 1, 1),
+      "worker", new ServiceConstraint(null, null, 1800, 1800),
+      "gateway", new ServiceConstraint(null, null, 300, 300)
+    );
+    finder = new ClusterLayoutFinder(nodePreferences, createTemplate(services, constraints), services, 2000);
+    Assert.assertNull(finder.findValidNodeCounts());
+  }
+
+  private static ClusterTemplate createTemplate(Set<String> services, Map<String, ServiceConstraint> constraints) {
+    return ClusterTemplate.builder()
+      .setName("generated")
+      .setClusterDefaults(ClusterDefaults.builder().setServices(services).setProvider("joyent").build())
+      .setCompatibilities(Compatibilities.builder().setServices(services).build())
+      .setConstraints(new Constraints(constraints, LayoutConstraint.EMPTY_LAYOUT_CONSTRAINT, SizeConstraint.EMPTY))
+      .build();
+  }
+
   private void assertClusterLayout(List<NodeLayout> nodeLayouts, ClusterTemplate template,
                                    int[] nodeCounts, int numMachines, boolean expected) {
     ClusterLayoutFinder clusterLayoutFinder =
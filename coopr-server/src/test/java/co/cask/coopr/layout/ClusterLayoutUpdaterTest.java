@@ -20,7 +20,15 @@ import co.cask.coopr.account.Account;
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.spec.template.ClusterDefaults;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.Compatibilities;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import co.cask.coopr.spec.template.SizeConstraint;
 import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
@@ -89,6 +97,111 @@ public class ClusterLayoutUpdaterTest extends BaseSolverTest {
       resourcemanager.getName(), nodemanager.getName(), zookeeper.getName())));
   }
 
+  @Test(timeout = 10000)
+  public void testAddServicesToLargeCluster() throws Exception {
+    Cluster largeCluster = createLargeCluster();
+    Set<Node> largeClusterNodes = createLargeClusterNodes(largeCluster.getId());
+
+    ClusterLayout layout = updater.addServicesToCluster(
+      largeCluster, largeClusterNodes, ImmutableSet.of(resourcemanager.getName(), nodemanager.getName(),
+                                                       hbasemaster.getName(), regionserver.getName(), "cache"))
+      .getCurrentLayout();
+
+    Assert.assertTrue(layout.isValid());
+    Multiset<String> serviceCounts = HashMultiset.create();
+    for (Multiset.Entry<NodeLayout> entry : layout.getLayout().entrySet()) {
+      for (String service : entry.getElement().getServiceNames()) {
+        serviceCounts.add(service, entry.getCount());
+      }
+    }
+    Assert.assertEquals(1, serviceCounts.count(resourcemanager.getName()));
+    Assert.assertEquals(1, serviceCounts.count(hbasemaster.getName()));
+    Assert.assertEquals(499, serviceCounts.count(nodemanager.getName()));
+    Assert.assertEquals(499, serviceCounts.count(regionserver.getName()));
+    Assert.assertEquals(100, serviceCounts.count("cache"));
+  }
+
+  @Test(timeout = 10000)
+  public void testNoSolutionOnLargeClusterReturnsNull() throws Exception {
+    Cluster largeCluster = createLargeCluster();
+    Set<Node> largeClusterNodes = createLargeClusterNodes(largeCluster.getId());
+
+    // monitor can't go on any node. It is added first since it is the most constrained service, instead of
+    // searching through all the ways to add the cache first.
+    Assert.assertNull(updater.addServicesToCluster(largeCluster, largeClusterNodes,
+                                                   ImmutableSet.of("cache", "monitor")));
+  }
+
+  @Test(timeout = 10000)
+  public void testTimeoutReturnsBestPartialPlan() throws Exception {
+    Cluster largeCluster = createLargeCluster();
+    Set<Node> largeClusterNodes = createLargeClusterNodes(largeCluster.getId());
+    ClusterLayoutUpdater timedUpdater = new ClusterLayoutUpdater(1000);
+
+    // logger must be on every datanode, but can only be on 100 nodes. Every way to add it to up to 100 of the 499
+    // datanodes is invalid, which takes far longer than the timeout to find out.
+    try {
+      timedUpdater.addServicesToCluster(largeCluster, largeClusterNodes, ImmutableSet.of(
+        resourcemanager.getName(), hbasemaster.getName(), "logger"));
+      Assert.fail();
+    } catch (AddServicesTimeoutException e) {
+      Assert.assertEquals(ImmutableSet.of(resourcemanager.getName(), hbasemaster.getName()), e.getAddedServices());
+      Assert.assertEquals(ImmutableSet.of("logger"), e.getMissingServices());
+      Assert.assertEquals(2, e.getPartialChanges().size());
+    }
+  }
+
+  // 500 node cluster, 1 hadoop master node, 499 hadoop slave nodes spread over 5 hardware types
+  private Cluster createLargeCluster() {
+    Set<String> services = ImmutableSet.of("namenode", "datanode", "resourcemanager", "nodemanager",
+                                           "hbasemaster", "regionserver", "cache", "logger", "monitor");
+    ClusterTemplate template = ClusterTemplate.builder()
+      .setName("large-hadoop")
+      .setClusterDefaults(ClusterDefaults.builder().setServices(services).setProvider("joyent").build())
+      .setCompatibilities(Compatibilities.builder().setServices(services).build())
+      .setConstraints(new Constraints(
+        ImmutableMap.<String, ServiceConstraint>of(
+          "namenode", new ServiceConstraint(null, null, 1, 1),
+          "cache", new ServiceConstraint(null, null, 1, 100),
+          "logger", new ServiceConstraint(null, null, 1, 100)
+        ),
+        new LayoutConstraint(
+          ImmutableSet.<Set<String>>of(
+            ImmutableSet.of("datanode", "nodemanager", "regionserver"),
+            ImmutableSet.of("namenode", "resourcemanager", "hbasemaster"),
+            ImmutableSet.of("datanode", "logger")
+          ),
+          ImmutableSet.<Set<String>>of(
+            ImmutableSet.of("datanode", "namenode"),
+            ImmutableSet.of("datanode", "monitor"),
+            ImmutableSet.of("namenode", "monitor")
+          )
+        ),
+        SizeConstraint.EMPTY
+      )).build();
+    return Cluster.builder()
+      .setID("456")
+      .setAccount(new Account("user1", "tenant1"))
+      .setName("large-hadoop")
+      .setProvider(Entities.ProviderExample.RACKSPACE)
+      .setClusterTemplate(template)
+      .setServices(ImmutableSet.of(namenode.getName(), datanode.getName()))
+      .build();
+  }
+
+  private Set<Node> createLargeClusterNodes(String clusterId) {
+    Set<Node> largeClusterNodes = Sets.newHashSet();
+    largeClusterNodes.add(new Node(UUID.randomUUID().toString(), clusterId, ImmutableSet.of(namenode),
+                                   NodeProperties.builder().setHardwaretype("large-mem")
+                                     .setImagetype("centos6").build()));
+    for (int i = 0; i < 499; i++) {
+      largeClusterNodes.add(new Node(UUID.randomUUID().toString(), clusterId, ImmutableSet.of(datanode),
+                                     NodeProperties.builder().setHardwaretype("hw" + (i % 5))
+                                       .setImagetype("centos6").build()));
+    }
+    return largeClusterNodes;
+  }
+
   @Before
   public void beforeLayoutUpdater() throws Exception {
     updater = injector.getInstance(ClusterLayoutUpdater.class);
@@ -0,0 +1,316 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.Entities;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.spec.service.Service;
+import co.cask.coopr.spec.template.ClusterDefaults;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.Compatibilities;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import co.cask.coopr.spec.template.SizeConstraint;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests that the {@link LayoutSolver}s find the layouts of the existing solver fixtures, and that the exact solver
+ * supports ratio constraints and the fewest nodes objective.
+ */
+public class LayoutSolverTest extends BaseSolverTest {
+  private static final List<LayoutSolver> SOLVERS = ImmutableList.of(
+    new SearchLayoutSolver(), new ExactLayoutSolver(ExactLayoutSolver.Objective.PREFERRED_LAYOUTS));
+  private static final List<NodeLayout> REACTOR_LAYOUTS = ImmutableList.of(
+    new NodeLayout("large-mem", "centos6", ImmutableSet.of("namenode", "resourcemanager", "hbasemaster")),
+    new NodeLayout("large-cpu", "centos6", ImmutableSet.of("datanode", "nodemanager", "regionserver")),
+    new NodeLayout("medium", "centos6", ImmutableSet.of("reactor", "zookeeper")),
+    new NodeLayout("medium", "centos6", ImmutableSet.of("zookeeper")),
+    new NodeLayout("large", "centos6", ImmutableSet.of("reactor"))
+  );
+  private static final Set<String> REACTOR_SERVICES = ImmutableSet.of(
+    "namenode", "resourcemanager", "hbasemaster", "datanode", "nodemanager", "regionserver", "reactor", "zookeeper");
+
+  @Test
+  public void testGetClusterNodes() {
+    for (LayoutSolver solver : SOLVERS) {
+      assertNodeCounts(new int[] { 1, 3, 1, 0, 0 },
+                       solver.solve(REACTOR_LAYOUTS, reactorTemplate, REACTOR_SERVICES, 5));
+      assertNodeCounts(new int[] { 1, 8, 1, 0, 0 },
+                       solver.solve(REACTOR_LAYOUTS, reactorTemplate, REACTOR_SERVICES, 10));
+      assertNodeCounts(new int[] { 1, 50, 3, 0, 0 },
+                       solver.solve(REACTOR_LAYOUTS, reactorTemplate, REACTOR_SERVICES, 54));
+    }
+  }
+
+  @Test
+  public void testNoSolutionReturnsNull() {
+    Set<String> services = ImmutableSet.of("svc1", "svc2", "svc3");
+    ClusterTemplate template = createTemplate(
+      services, ImmutableMap.<String, ServiceConstraint>of("svc1", new ServiceConstraint(null, null, 1, 1)),
+      new LayoutConstraint(ImmutableSet.<Set<String>>of(services), ImmutableSet.<Set<String>>of()), null);
+    List<NodeLayout> nodeLayouts = ImmutableList.of(new NodeLayout("small", "centos6", services));
+    for (LayoutSolver solver : SOLVERS) {
+      Assert.assertNull(solver.solve(nodeLayouts, template, services, 2));
+    }
+  }
+
+  @Test
+  public void testSolveReactor() throws Exception {
+    Map<String, String> hwmap = ImmutableMap.of("small", "flavor1", "medium", "flavor2", "large", "flavor3");
+    Map<String, Map<String, String>> imgmap = ImmutableMap.<String, Map<String, String>>of(
+      "centos6", ImmutableMap.<String, String>of("image", "img1"),
+      "ubuntu12", ImmutableMap.<String, String>of("image", "img2")
+    );
+    Set<String> services = reactorTemplate2.getClusterDefaults().getServices();
+    Map<String, Service> serviceMap = Maps.newHashMap();
+    for (String serviceName : services) {
+      serviceMap.put(serviceName, Service.builder().setName(serviceName).build());
+    }
+    for (LayoutSolver solver : SOLVERS) {
+      Map<String, Node> nodes = Solver.solveConstraints(solver, "1", reactorTemplate2, "name", 200,
+                                                        hwmap, imgmap, services, serviceMap, null);
+      Multiset<Set<String>> serviceSetCounts = getServiceSetCounts(nodes);
+      Assert.assertEquals(200, nodes.size());
+      Assert.assertEquals(198, serviceSetCounts.count(
+        ImmutableSet.of("hosts", "firewall", "hadoop-hdfs-datanode", "hadoop-yarn-nodemanager",
+                        "hbase-regionserver")));
+      Assert.assertEquals(1, serviceSetCounts.count(
+        ImmutableSet.of("hosts", "firewall", "hadoop-hdfs-datanode", "hadoop-yarn-nodemanager", "hbase-regionserver",
+                        "zookeeper-server", "reactor")));
+      Assert.assertEquals(1, serviceSetCounts.count(
+        ImmutableSet.of("hosts", "firewall", "hbase-master", "hadoop-hdfs-namenode", "hadoop-yarn-resourcemanager")));
+    }
+  }
+
+  @Test
+  public void testServiceConstraintsDontApplyWhenServiceNotOnCluster() throws Exception {
+    ClusterTemplate template = Entities.ClusterTemplateExample.HADOOP_DISTRIBUTED;
+    Map<String, String> hwTypeMap = ImmutableMap.of("medium", "medium-flavor");
+    Map<String, Map<String, String>> imgTypeMap =
+      ImmutableMap.<String, Map<String, String>>of("ubuntu12", ImmutableMap.of("image", "ubunut12-image"));
+    Set<String> services =
+      ImmutableSet.of("firewall", "hosts", "namenode", "datanode", "nodemanager", "resourcemanager");
+    Map<String, Service> serviceMap = Maps.newHashMap();
+    for (String service : services) {
+      serviceMap.put(service, Service.builder().setName(service).build());
+    }
+    for (LayoutSolver solver : SOLVERS) {
+      Map<String, Node> nodes = Solver.solveConstraints(solver, "1", template, "name", 3,
+                                                        hwTypeMap, imgTypeMap, services, serviceMap, null);
+      Multiset<Set<String>> serviceSetCounts = getServiceSetCounts(nodes);
+      Assert.assertEquals(1, serviceSetCounts.count(
+        ImmutableSet.of("hosts", "firewall", "namenode", "resourcemanager")));
+      Assert.assertEquals(2, serviceSetCounts.count(ImmutableSet.of("hosts", "firewall", "datanode", "nodemanager")));
+      Assert.assertEquals(3, nodes.size());
+    }
+  }
+
+  @Test
+  public void testExactSolverFindsSearchedLayouts() {
+    LayoutSolver search = new SearchLayoutSolver();
+    LayoutSolver exact = new ExactLayoutSolver(ExactLayoutSolver.Objective.PREFERRED_LAYOUTS);
+    Random random = new Random(0);
+    int numSearched = 0;
+    for (int i = 0; i < 2000; i++) {
+      int numServices = 1 + random.nextInt(5);
+      List<String> services = Lists.newArrayList();
+      Map<String, ServiceConstraint> constraints = Maps.newHashMap();
+      for (int j = 0; j < numServices; j++) {
+        String service = "svc" + j;
+        services.add(service);
+        if (random.nextInt(4) > 0) {
+          int min = random.nextInt(4);
+          Integer max = random.nextBoolean() ? null : min + random.nextInt(6);
+          constraints.put(service, new ServiceConstraint(null, null, min, max));
+        }
+      }
+      List<NodeLayout> nodeLayouts = Lists.newArrayList();
+      int numLayouts = 1 + random.nextInt(7);
+      for (int j = 0; j < numLayouts; j++) {
+        Set<String> layoutServices = Sets.newHashSet();
+        for (String service : services) {
+          if (random.nextInt(3) == 0) {
+            layoutServices.add(service);
+          }
+        }
+        if (layoutServices.isEmpty()) {
+          layoutServices.add(services.get(random.nextInt(numServices)));
+        }
+        nodeLayouts.add(new NodeLayout("hw" + j, "image", layoutServices));
+      }
+      Set<String> serviceSet = ImmutableSet.copyOf(services);
+      ClusterTemplate template = createTemplate(serviceSet, constraints, null, null);
+      int numMachines = 1 + random.nextInt(25);
+
+      int[] searched = search.solve(nodeLayouts, template, serviceSet, numMachines);
+      int[] solved = exact.solve(nodeLayouts, template, serviceSet, numMachines);
+      if (searched != null) {
+        numSearched++;
+        Assert.assertTrue("case " + i, Arrays.equals(searched, solved));
+      } else if (solved != null) {
+        // the search gives up early if the most preferred node layouts cannot hold all nodes
+        ClusterLayoutFinder finder = new ClusterLayoutFinder(nodeLayouts, template, serviceSet, numMachines);
+        Assert.assertTrue("case " + i, finder.isValidCluster(solved));
+      }
+    }
+    Assert.assertTrue(numSearched > 100);
+  }
+
+  @Test
+  public void testRatioConstraint() {
+    Set<String> services = ImmutableSet.of("master", "worker", "cache");
+    Map<String, ServiceConstraint> constraints = ImmutableMap.of(
+      "master", new ServiceConstraint(null, null, 1, 1),
+      "cache", new ServiceConstraint(null, null, 1, null, 0.25)
+    );
+    ClusterTemplate template = createTemplate(services, constraints, null, null);
+    List<NodeLayout> nodeLayouts = ImmutableList.of(
+      new NodeLayout("large", "centos6", ImmutableSet.of("master")),
+      new NodeLayout("medium", "centos6", ImmutableSet.of("worker")),
+      new NodeLayout("medium", "centos6", ImmutableSet.of("worker", "cache"))
+    );
+    for (LayoutSolver solver : SOLVERS) {
+      // the cache grows with the cluster
+      assertNodeCounts(new int[] { 1, 2, 1 }, solver.solve(nodeLayouts, template, services, 4));
+      assertNodeCounts(new int[] { 1, 6, 3 }, solver.solve(nodeLayouts, template, services, 10));
+      assertNodeCounts(new int[] { 1, 74, 25 }, solver.solve(nodeLayouts, template, services, 100));
+    }
+
+    // more than the max is needed for the ratio
+    constraints = ImmutableMap.of(
+      "master", new ServiceConstraint(null, null, 1, 1),
+      "cache", new ServiceConstraint(null, null, 1, 20, 0.25)
+    );
+    template = createTemplate(services, constraints, null, null);
+    for (LayoutSolver solver : SOLVERS) {
+      assertNodeCounts(new int[] { 1, 59, 20 }, solver.solve(nodeLayouts, template, services, 80));
+      Assert.assertNull(solver.solve(nodeLayouts, template, services, 100));
+    }
+  }
+
+  @Test
+  public void testFewestNodesObjective() {
+    LayoutSolver solver = new ExactLayoutSolver(ExactLayoutSolver.Objective.FEWEST_NODES);
+    assertNodeCounts(new int[] { 1, 1, 1, 0, 0 }, solver.solve(REACTOR_LAYOUTS, reactorTemplate, REACTOR_SERVICES, 10));
+
+    // the template size min is respected, and the most preferred layout of that size is used
+    Constraints constraints = reactorTemplate.getConstraints();
+    ClusterTemplate template = createTemplate(REACTOR_SERVICES, constraints.getServiceConstraints(),
+                                              constraints.getLayoutConstraint(), new SizeConstraint(5, null));
+    assertNodeCounts(new int[] { 1, 3, 1, 0, 0 }, solver.solve(REACTOR_LAYOUTS, template, REACTOR_SERVICES, 10));
+    Assert.assertNull(solver.solve(REACTOR_LAYOUTS, template, REACTOR_SERVICES, 4));
+  }
+
+  @Test(timeout = 30000)
+  public void testFewestNodesObjectiveWithManyMachines() {
+    // every size below 4000 fails, after trying every split of the nodes that the min of the first service leaves
+    Set<String> services = ImmutableSet.of("first", "middle", "last");
+    Map<String, ServiceConstraint> constraints = ImmutableMap.of(
+      "first", new ServiceConstraint(null, null, 2000, null),
+      "last", new ServiceConstraint(null, null, 2000, null)
+    );
+    ClusterTemplate template = createTemplate(services, constraints, null, null);
+    List<NodeLayout> nodeLayouts = ImmutableList.of(
+      new NodeLayout("large", "centos6", ImmutableSet.of("first")),
+      new NodeLayout("medium", "centos6", ImmutableSet.of("middle")),
+      new NodeLayout("medium", "centos6", ImmutableSet.of("last"))
+    );
+    LayoutSolver solver = new ExactLayoutSolver(ExactLayoutSolver.Objective.FEWEST_NODES);
+    assertNodeCounts(new int[] { 2000, 0, 2000 }, solver.solve(nodeLayouts, template, services, 100000));
+    Assert.assertNull(solver.solve(nodeLayouts, template, services, 3999));
+  }
+
+  @Test
+  public void testTemplatesSelectSolvers() {
+    LayoutSolver search = new SearchLayoutSolver();
+    LayoutSolver exact = new ExactLayoutSolver(ExactLayoutSolver.Objective.PREFERRED_LAYOUTS);
+    LayoutSolvers layoutSolvers = new LayoutSolvers(ImmutableSet.of(search, exact), SearchLayoutSolver.NAME);
+    Assert.assertSame(search, layoutSolvers.getSolver(reactorTemplate));
+    Assert.assertSame(exact, layoutSolvers.getSolver(withSolver(reactorTemplate, ExactLayoutSolver.NAME)));
+    try {
+      layoutSolvers.getSolver(withSolver(reactorTemplate, "unknown"));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    layoutSolvers = new LayoutSolvers(ImmutableSet.of(search, exact), ExactLayoutSolver.NAME);
+    Assert.assertSame(exact, layoutSolvers.getSolver(reactorTemplate));
+
+    // the solver and ratios are kept in the json of templates
+    ClusterTemplate template = withSolver(reactorTemplate, ExactLayoutSolver.FEWEST_NODES_NAME);
+    Map<String, ServiceConstraint> constraints = Maps.newHashMap(template.getConstraints().getServiceConstraints());
+    constraints.put("datanode", new ServiceConstraint(null, null, 1, 50, 0.5));
+    template = createTemplate(REACTOR_SERVICES, constraints, template.getConstraints().getLayoutConstraint(), null,
+                              ExactLayoutSolver.FEWEST_NODES_NAME);
+    Assert.assertEquals(template.getConstraints(),
+                        gson.fromJson(gson.toJson(template), ClusterTemplate.class).getConstraints());
+  }
+
+  private static ClusterTemplate withSolver(ClusterTemplate template, String solver) {
+    Constraints constraints = template.getConstraints();
+    return createTemplate(template.getClusterDefaults().getServices(), constraints.getServiceConstraints(),
+                          constraints.getLayoutConstraint(), constraints.getSizeConstraint(), solver);
+  }
+
+  private static ClusterTemplate createTemplate(Set<String> services, Map<String, ServiceConstraint> constraints,
+                                                LayoutConstraint layoutConstraint, SizeConstraint sizeConstraint) {
+    return createTemplate(services, constraints, layoutConstraint, sizeConstraint, null);
+  }
+
+  private static ClusterTemplate createTemplate(Set<String> services, Map<String, ServiceConstraint> constraints,
+                                                LayoutConstraint layoutConstraint, SizeConstraint sizeConstraint,
+                                                String solver) {
+    return ClusterTemplate.builder()
+      .setName("generated")
+      .setClusterDefaults(ClusterDefaults.builder().setServices(services).setProvider("joyent").build())
+      .setCompatibilities(Compatibilities.builder().setServices(services).build())
+      .setConstraints(new Constraints(constraints, layoutConstraint, sizeConstraint, solver))
+      .build();
+  }
+
+  private static Multiset<Set<String>> getServiceSetCounts(Map<String, Node> nodes) {
+    Multiset<Set<String>> serviceSetCounts = HashMultiset.create();
+    for (Node node : nodes.values()) {
+      Set<String> serviceNames = Sets.newHashSet();
+      for (Service service : node.getServices()) {
+        serviceNames.add(service.getName());
+      }
+      serviceSetCounts.add(serviceNames);
+    }
+    return serviceSetCounts;
+  }
+
+  private static void assertNodeCounts(int[] expected, int[] actual) {
+    Assert.assertTrue("expected " + Arrays.toString(expected) + " but was " + Arrays.toString(actual),
+                      Arrays.equals(expected, actual));
+  }
+}
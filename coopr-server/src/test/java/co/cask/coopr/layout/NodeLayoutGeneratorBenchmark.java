@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.layout;
+
+import co.cask.coopr.spec.template.ClusterDefaults;
+import co.cask.coopr.spec.template.ClusterTemplate;
+import co.cask.coopr.spec.template.Compatibilities;
+import co.cask.coopr.spec.template.Constraints;
+import co.cask.coopr.spec.template.LayoutConstraint;
+import co.cask.coopr.spec.template.ServiceConstraint;
+import co.cask.coopr.spec.template.SizeConstraint;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of finding valid service sets for templates with many services, by enumerating all subsets of services
+ * and by the pruned search. Not run as part of the tests, run its main method to print the time each one takes.
+ */
+public class NodeLayoutGeneratorBenchmark {
+  private static final int[] NUM_MASTERS = { 5, 7, 10 };
+  private static final int NUM_SLAVE_GROUPS = 5;
+
+  public static void main(String[] args) {
+    // run twice, so that both methods run with a warm jvm
+    for (int i = 0; i < 2; i++) {
+      for (int numMasters : NUM_MASTERS) {
+        run(numMasters);
+      }
+    }
+  }
+
+  private static void run(int numMasters) {
+    Set<String> services = Sets.newHashSet();
+    Set<Set<String>> mustCoexist = Sets.newHashSet();
+    Set<Set<String>> cantCoexist = Sets.newHashSet();
+    // master services that must be on separate nodes, and must not be on the same node as slaves
+    for (int i = 0; i < numMasters; i++) {
+      String master = "master" + i;
+      services.add(master);
+      for (int j = 0; j < i; j++) {
+        cantCoexist.add(ImmutableSet.of(master, "master" + j));
+      }
+    }
+    // groups of slave services that must be together, like datanode and nodemanager
+    for (int i = 0; i < NUM_SLAVE_GROUPS; i++) {
+      String slave = "slave" + i;
+      String slaveHelper = "slavehelper" + i;
+      services.add(slave);
+      services.add(slaveHelper);
+      mustCoexist.add(ImmutableSet.of(slave, slaveHelper));
+      for (int j = 0; j < numMasters; j++) {
+        cantCoexist.add(ImmutableSet.of(slave, "master" + j));
+      }
+    }
+    // services that can go anywhere, except all of them on one node
+    for (int i = 0; i < 5; i++) {
+      services.add("util" + i);
+    }
+    cantCoexist.add(ImmutableSet.of("util0", "util1", "util2", "util3", "util4"));
+
+    ClusterTemplate template = ClusterTemplate.builder()
+      .setName("benchmark")
+      .setClusterDefaults(ClusterDefaults.builder().setServices(services).setProvider("joyent").build())
+      .setCompatibilities(Compatibilities.builder().setServices(services).build())
+      .setConstraints(new Constraints(ImmutableMap.<String, ServiceConstraint>of(),
+                                      new LayoutConstraint(mustCoexist, cantCoexist), SizeConstraint.EMPTY))
+      .build();
+    NodeLayoutGenerator generator =
+      new NodeLayoutGenerator(template, services, ImmutableSet.<String>of(), ImmutableSet.<String>of());
+
+    long start = System.nanoTime();
+    int numEnumerated = generator.findValidServiceSetsByEnumeration(services).size();
+    long enumerationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    start = System.nanoTime();
+    int numSearched = generator.findValidServiceSets(services).size();
+    long searchMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    System.out.println(String.format("%d services, %d valid service sets: enumeration %d ms, search %d ms",
+                                     services.size(), numSearched, enumerationMs, searchMs));
+    if (numEnumerated != numSearched) {
+      throw new IllegalStateException("Found " + numEnumerated + " and " + numSearched + " service sets.");
+    }
+  }
+}
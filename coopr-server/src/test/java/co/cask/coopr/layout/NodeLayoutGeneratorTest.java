@@ -25,11 +25,14 @@ import co.cask.coopr.spec.template.SizeConstraint;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -237,6 +240,54 @@ public class NodeLayoutGeneratorTest extends BaseSolverTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testSearchFindsSameServiceSetsAsEnumeration() {
+    Random random = new Random(0);
+    for (int i = 0; i < 500; i++) {
+      int numServices = 1 + random.nextInt(10);
+      List<String> clusterServices = Lists.newArrayList();
+      for (int j = 0; j < numServices; j++) {
+        clusterServices.add("svc" + j);
+      }
+      // constraints may name services that are not on the cluster, or not among the services to place
+      List<String> constraintServices = Lists.newArrayList(clusterServices);
+      constraintServices.add("other");
+      Set<Set<String>> mustCoexist = randomServiceSets(random, constraintServices, random.nextInt(4));
+      Set<Set<String>> cantCoexist = randomServiceSets(random, constraintServices, random.nextInt(6));
+      ClusterTemplate template = ClusterTemplate.builder()
+        .setName("generated")
+        .setClusterDefaults(
+          ClusterDefaults.builder().setServices(ImmutableSet.copyOf(clusterServices)).setProvider("joyent").build())
+        .setCompatibilities(Compatibilities.builder().setServices(ImmutableSet.copyOf(clusterServices)).build())
+        .setConstraints(new Constraints(ImmutableMap.<String, ServiceConstraint>of(),
+                                        new LayoutConstraint(mustCoexist, cantCoexist), SizeConstraint.EMPTY))
+        .build();
+      Set<String> services = Sets.newHashSet(clusterServices);
+      if (random.nextBoolean()) {
+        services.remove(clusterServices.get(random.nextInt(numServices)));
+      }
+
+      NodeLayoutGenerator generator = new NodeLayoutGenerator(template, ImmutableSet.copyOf(clusterServices),
+                                                              ImmutableSet.<String>of(), ImmutableSet.<String>of());
+      Assert.assertEquals("case " + i + ": " + template.getConstraints().getLayoutConstraint(),
+                          generator.findValidServiceSetsByEnumeration(services),
+                          generator.findValidServiceSets(services));
+    }
+  }
+
+  private static Set<Set<String>> randomServiceSets(Random random, List<String> services, int numSets) {
+    Set<Set<String>> serviceSets = Sets.newHashSet();
+    for (int i = 0; i < numSets; i++) {
+      Set<String> serviceSet = Sets.newHashSet();
+      int size = 1 + random.nextInt(3);
+      for (int j = 0; j < size; j++) {
+        serviceSet.add(services.get(random.nextInt(services.size())));
+      }
+      serviceSets.add(serviceSet);
+    }
+    return serviceSets;
+  }
+
   private void assertSatisfiesServiceConstraints(String hardwareType, String imageType, Set<String> services,
                                            Map<String, ServiceConstraint> serviceConstraints) {
     NodeLayout nodeLayout = new NodeLayout(hardwareType, imageType, services);
@@ -25,6 +25,7 @@ import co.cask.coopr.spec.service.ServiceStageDependencies;
 import co.cask.coopr.spec.template.ClusterDefaults;
 import co.cask.coopr.spec.template.ClusterTemplate;
 import co.cask.coopr.spec.template.Compatibilities;
+import co.cask.coopr.store.entity.EntityStoreView;
 import com.google.common.base.Function;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableMap;
@@ -156,6 +157,58 @@ public class SolverTest extends BaseSolverTest {
     Assert.assertEquals(1, serviceSetCounts.count(ImmutableSet.of("reactor", "zookeeper")));
   }
 
+  @Test
+  public void testRepeatSolvesUseCachedLayout() throws Exception {
+    SolverCache solverCache = injector.getInstance(SolverCache.class);
+    solverCache.entitiesChanged(account.getTenantId());
+    ClusterCreateRequest request = ClusterCreateRequest.builder()
+      .setName("mycluster")
+      .setClusterTemplateName(reactorTemplate.getName())
+      .setNumMachines(5)
+      .setInitialLeaseDuration(0L)
+      .build();
+    Map<String, Node> nodes = solver.solveClusterNodes(
+      getBaseBuilder().setClusterTemplate(reactorTemplate).setProvider(provider).build(), request);
+    Assert.assertEquals(1, solverCache.size());
+
+    // the same layout is used, with new nodes for the other cluster
+    Cluster otherCluster =
+      getBaseBuilder().setID("456").setClusterTemplate(reactorTemplate).setProvider(provider).build();
+    Map<String, Node> otherNodes = solver.solveClusterNodes(otherCluster, request);
+    Assert.assertEquals(1, solverCache.size());
+    Assert.assertEquals(getServiceSetCounts(nodes), getServiceSetCounts(otherNodes));
+    Assert.assertTrue(Sets.intersection(nodes.keySet(), otherNodes.keySet()).isEmpty());
+    Assert.assertEquals(otherNodes.keySet(), otherCluster.getNodeIDs());
+    for (Node node : otherNodes.values()) {
+      Assert.assertEquals("456", node.getClusterId());
+      Assert.assertTrue(node.getProperties().getHostname().contains("456"));
+    }
+
+    // a different size is solved again
+    request = ClusterCreateRequest.builder()
+      .setName("mycluster")
+      .setClusterTemplateName(reactorTemplate.getName())
+      .setNumMachines(6)
+      .setInitialLeaseDuration(0L)
+      .build();
+    Assert.assertEquals(6, solver.solveClusterNodes(
+      getBaseBuilder().setClusterTemplate(reactorTemplate).setProvider(provider).build(), request).size());
+    Assert.assertEquals(2, solverCache.size());
+
+    // changes of services that are not on the cluster don't evict layouts
+    EntityStoreView view = entityStoreService.getView(account);
+    view.writeService(mysql);
+    Assert.assertEquals(2, solverCache.size());
+    // changes of services on the cluster, or types that could be used, do
+    view.writeService(namenode);
+    Assert.assertEquals(0, solverCache.size());
+    solver.solveClusterNodes(getBaseBuilder().setClusterTemplate(reactorTemplate).setProvider(provider).build(),
+                             request);
+    Assert.assertEquals(1, solverCache.size());
+    view.writeHardwareType(view.getHardwareType("small"));
+    Assert.assertEquals(0, solverCache.size());
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testDisallowedServicesThrowsException() throws Exception {
     ClusterCreateRequest request = ClusterCreateRequest.builder()
@@ -365,6 +418,18 @@ public class SolverTest extends BaseSolverTest {
                       "hadoop-yarn-resourcemanager")));
   }
 
+  private static Multiset<Set<String>> getServiceSetCounts(Map<String, Node> nodes) {
+    Multiset<Set<String>> serviceSetCounts = HashMultiset.create();
+    for (Node node : nodes.values()) {
+      Set<String> serviceNames = Sets.newHashSet();
+      for (Service service : node.getServices()) {
+        serviceNames.add(service.getName());
+      }
+      serviceSetCounts.add(serviceNames);
+    }
+    return serviceSetCounts;
+  }
+
   private Cluster getExampleCluster() {
     return getBaseBuilder()
       .setClusterTemplate(reactorTemplate)
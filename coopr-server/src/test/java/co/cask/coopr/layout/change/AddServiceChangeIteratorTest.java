@@ -98,60 +98,60 @@ public class AddServiceChangeIteratorTest {
     ClusterLayout layout = new ClusterLayout(constraints, counts);
     Iterator<ClusterLayoutChange> iter = new AddServiceChangeIterator(layout, "base");
 
-    // slave, master, app
+    // slave, app, master. app comes before master since it has more nodes to add the service to.
     List<ClusterLayoutChange> expected = Lists.newArrayList();
     // add base to 6 nodes:
-    // 3, 1, 2
-    addExpected(expected, "base", slaveLayout, 3, masterNodeLayout, 1, appLayout, 2);
+    // 3, 2, 1
+    addExpected(expected, "base", slaveLayout, 3, appLayout, 2, masterNodeLayout, 1);
     // add base to 5 nodes:
+    // 3, 2, 0
     // 3, 1, 1
-    // 3, 0, 2
-    // 2, 1, 2
-    addExpected(expected, "base", slaveLayout, 3, masterNodeLayout, 1, appLayout, 1);
-    addExpected(expected, "base", slaveLayout, 3, masterNodeLayout, 0, appLayout, 2);
-    addExpected(expected, "base", slaveLayout, 2, masterNodeLayout, 1, appLayout, 2);
+    // 2, 2, 1
+    addExpected(expected, "base", slaveLayout, 3, appLayout, 2, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 3, appLayout, 1, masterNodeLayout, 1);
+    addExpected(expected, "base", slaveLayout, 2, appLayout, 2, masterNodeLayout, 1);
     // add base to 4 nodes:
     // 3, 1, 0
     // 3, 0, 1
+    // 2, 2, 0
     // 2, 1, 1
-    // 2, 0, 2
-    // 1, 1, 2
-    addExpected(expected, "base", slaveLayout, 3, masterNodeLayout, 1, appLayout, 0);
-    addExpected(expected, "base", slaveLayout, 3, masterNodeLayout, 0, appLayout, 1);
-    addExpected(expected, "base", slaveLayout, 2, masterNodeLayout, 1, appLayout, 1);
-    addExpected(expected, "base", slaveLayout, 2, masterNodeLayout, 0, appLayout, 2);
-    addExpected(expected, "base", slaveLayout, 1, masterNodeLayout, 1, appLayout, 2);
+    // 1, 2, 1
+    addExpected(expected, "base", slaveLayout, 3, appLayout, 1, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 3, appLayout, 0, masterNodeLayout, 1);
+    addExpected(expected, "base", slaveLayout, 2, appLayout, 2, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 2, appLayout, 1, masterNodeLayout, 1);
+    addExpected(expected, "base", slaveLayout, 1, appLayout, 2, masterNodeLayout, 1);
     // add base to 3 nodes:
     // 3, 0, 0
     // 2, 1, 0
     // 2, 0, 1
+    // 1, 2, 0
     // 1, 1, 1
-    // 1, 0, 2
-    // 0, 1, 2
-    addExpected(expected, "base", slaveLayout, 3, masterNodeLayout, 0, appLayout, 0);
-    addExpected(expected, "base", slaveLayout, 2, masterNodeLayout, 1, appLayout, 0);
-    addExpected(expected, "base", slaveLayout, 2, masterNodeLayout, 0, appLayout, 1);
-    addExpected(expected, "base", slaveLayout, 1, masterNodeLayout, 1, appLayout, 1);
-    addExpected(expected, "base", slaveLayout, 1, masterNodeLayout, 0, appLayout, 2);
-    addExpected(expected, "base", slaveLayout, 0, masterNodeLayout, 1, appLayout, 2);
+    // 0, 2, 1
+    addExpected(expected, "base", slaveLayout, 3, appLayout, 0, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 2, appLayout, 1, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 2, appLayout, 0, masterNodeLayout, 1);
+    addExpected(expected, "base", slaveLayout, 1, appLayout, 2, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 1, appLayout, 1, masterNodeLayout, 1);
+    addExpected(expected, "base", slaveLayout, 0, appLayout, 2, masterNodeLayout, 1);
     // add base to 2 nodes:
     // 2, 0, 0
     // 1, 1, 0
     // 1, 0, 1
+    // 0, 2, 0
     // 0, 1, 1
-    // 0, 0, 2
-    addExpected(expected, "base", slaveLayout, 2, masterNodeLayout, 0, appLayout, 0);
-    addExpected(expected, "base", slaveLayout, 1, masterNodeLayout, 1, appLayout, 0);
-    addExpected(expected, "base", slaveLayout, 1, masterNodeLayout, 0, appLayout, 1);
-    addExpected(expected, "base", slaveLayout, 0, masterNodeLayout, 1, appLayout, 1);
-    addExpected(expected, "base", slaveLayout, 0, masterNodeLayout, 0, appLayout, 2);
+    addExpected(expected, "base", slaveLayout, 2, appLayout, 0, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 1, appLayout, 1, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 1, appLayout, 0, masterNodeLayout, 1);
+    addExpected(expected, "base", slaveLayout, 0, appLayout, 2, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 0, appLayout, 1, masterNodeLayout, 1);
     // add base to 1 node:
     // 1, 0, 0
     // 0, 1, 0
     // 0, 0, 1
-    addExpected(expected, "base", slaveLayout, 1, masterNodeLayout, 0, appLayout, 0);
-    addExpected(expected, "base", slaveLayout, 0, masterNodeLayout, 1, appLayout, 0);
-    addExpected(expected, "base", slaveLayout, 0, masterNodeLayout, 0, appLayout, 1);
+    addExpected(expected, "base", slaveLayout, 1, appLayout, 0, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 0, appLayout, 1, masterNodeLayout, 0);
+    addExpected(expected, "base", slaveLayout, 0, appLayout, 0, masterNodeLayout, 1);
 
     assertIterator(expected, iter);
   }
@@ -18,12 +18,18 @@ package co.cask.coopr.macro;
 import co.cask.coopr.cluster.Cluster;
 import co.cask.coopr.cluster.Node;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -83,6 +89,116 @@ public class ExpanderTest {
     Assert.assertEquals("%host.service.svc4%", expanded.getAsJsonObject().get("invalid-cluster-macro").getAsString());
   }
 
+  @Test
+  public void testStringExpansionMatchesInterpreter() throws Exception {
+    String[] texts = {
+      "", "no macros", "100%", "%%", "%%host.service.svc1%%", "50%% of %num.service.svc1%",
+      "%host.service.svc1%", "%ip.service.svc1%", "%num.service.svc2%", "%cluster.owner%@company.net",
+      "%instance.self.service.svc1%", "%host.self%", "%ip.self%", "%host.service.svc1[2]%:2888:3888",
+      "%join(host.service.svc1,'-')%", "%join(map(host.service.svc2,'$:2181'),',')%/namespace",
+      "%map(ip.service.svc1,\"$:$$\")%", "%host.service.svc4%", "%host.service.svc4%,%host.service.svc1%",
+      "%host.service.svc1% %host.service.svc2% and %ip.service.svc4% then 1% left",
+      "%host.service.svc3%", "%ip.service.svc2%", "%host.service.svc1[3]%", "%instance.self.service.svc3%"
+    };
+    for (Node node : clusterNodes) {
+      for (String text : texts) {
+        String expected;
+        try {
+          expected = InterpretingExpander.expand(text, cluster, clusterNodes, node);
+        } catch (IncompleteClusterException e) {
+          expected = null;
+        }
+        try {
+          String actual = Expander.expand(text, cluster, clusterNodes, node);
+          Assert.assertEquals("expanding " + text + " on " + node.getId(), expected, actual);
+          if (expected == text) {
+            Assert.assertSame(text, actual);
+          }
+        } catch (IncompleteClusterException e) {
+          Assert.assertNull("expanding " + text + " on " + node.getId(), expected);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testJsonExpansionMatchesInterpreter() throws Exception {
+    JsonObject json = new Gson().fromJson(jsonIn, JsonObject.class);
+    json.addProperty("invalid-cluster-macro", "%host.service.svc4%");
+    json.addProperty("number", 5);
+    json.add("nothing", JsonNull.INSTANCE);
+    JsonArray array = new JsonArray();
+    array.add(new JsonPrimitive("%host.self%"));
+    array.add(new JsonPrimitive("plain"));
+    array.add(new JsonPrimitive(true));
+    JsonArray nested = new JsonArray();
+    nested.add(new JsonPrimitive("%ip.service.svc1[0]%"));
+    array.add(nested);
+    json.add("array", array);
+    JsonArray plainArray = new JsonArray();
+    plainArray.add(new JsonPrimitive("%%"));
+    json.add("plain-array", plainArray);
+
+    List<List<String>> paths = Lists.newArrayList();
+    paths.add(null);
+    paths.add(ImmutableList.of("defaults", "config"));
+    paths.add(ImmutableList.of("defaults", "config", "hbase"));
+    paths.add(ImmutableList.of("array"));
+    paths.add(ImmutableList.of("plain-array"));
+    paths.add(ImmutableList.of("missing"));
+    for (Node node : clusterNodes) {
+      for (List<String> path : paths) {
+        JsonElement expected = InterpretingExpander.expand(json, path, cluster, clusterNodes, node);
+        // compile from an equal copy first, so that the expansion of the original uses the cached macros
+        Expander.expand(new Gson().fromJson(json.toString(), JsonObject.class), path, cluster, clusterNodes, node);
+        JsonElement actual = Expander.expand(json, path, cluster, clusterNodes, node);
+        Assert.assertEquals(expected, actual);
+        assertSameElements(expected, actual, json);
+      }
+    }
+  }
+
+  @Test
+  public void testCompiledJsonExpansion() throws Exception {
+    JsonElement json = new Gson().fromJson(jsonIn, JsonElement.class);
+    CompiledJson compiled = Expander.compile(json);
+    for (Node node : clusterNodes) {
+      Assert.assertEquals(InterpretingExpander.expand(json, null, cluster, clusterNodes, node),
+                          compiled.expand(cluster, clusterNodes, node));
+    }
+    JsonElement plain = new Gson().fromJson("{\"a\":[\"b\",\"%%\"],\"c\":1}", JsonElement.class);
+    Assert.assertSame(plain, Expander.compile(plain).expand(cluster, clusterNodes, node1));
+  }
+
+  @Test(expected = SyntaxException.class)
+  public void testCompileInvalidJson() throws Exception {
+    JsonObject json = new Gson().fromJson(jsonIn, JsonObject.class);
+    json.addProperty("invalid", "%join(host.service.svc1)%");
+    Expander.compile(json);
+  }
+
+  /**
+   * Check that the parts of the expanded JSON tree that the interpreter took from the original tree are also taken
+   * from the original tree by the compiled expansion.
+   */
+  private void assertSameElements(JsonElement expected, JsonElement actual, JsonElement original) {
+    if (expected == original) {
+      Assert.assertSame(original, actual);
+      return;
+    }
+    if (expected.isJsonObject()) {
+      for (Map.Entry<String, JsonElement> entry : expected.getAsJsonObject().entrySet()) {
+        assertSameElements(entry.getValue(), actual.getAsJsonObject().get(entry.getKey()),
+                           original.getAsJsonObject().get(entry.getKey()));
+      }
+    } else if (expected.isJsonArray()) {
+      for (int i = 0; i < expected.getAsJsonArray().size(); i++) {
+        assertSameElements(expected.getAsJsonArray().get(i), actual.getAsJsonArray().get(i),
+                           original.getAsJsonArray().get(i));
+      }
+    }
+  }
+
   static String jsonIn = "{\n" +
     "  \"name\": \"hadoop\",\n" +
     "  \"description\": \"Hadoop cluster without high-availability\",\n" +
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro;
+
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.Node;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * The macro expander as it was before macros were compiled, which scans and parses macros on every expansion. Used
+ * as a reference for the results of {@link Expander}.
+ */
+final class InterpretingExpander {
+
+  /**
+   * Given a text that may contain macros, validate and expand all macros in the context of the given cluster nodes,
+   * and on the specified node.
+   * @param textWithMacros text that may contain macros.
+   * @param cluster cluster to evaluate macros for.
+   * @param nodes cluster nodes to evaluate macros for.
+   * @param node cluster node to evaluate macros for.
+   * @return text with any relevant macros expanded.
+   * @throws SyntaxException if a macro is not wellformed.
+   * @throws IncompleteClusterException if a macro cannot be expanded because the cluster lacks the information.
+   */
+  static String expand(String textWithMacros, Cluster cluster, Set<Node> nodes, Node node)
+    throws SyntaxException, IncompleteClusterException {
+    int pos = 0;
+    StringBuilder builder = nodes == null ? null : new StringBuilder();
+    boolean expansionHappened = false;
+    while (pos < textWithMacros.length()) {
+      // find the first macro
+      int pos1 = Expander.findNextPercent(textWithMacros, pos);
+      if (pos1 >= 0) {
+        int pos2 = Expander.findNextPercent(textWithMacros, pos1 + 1);
+        if (pos2 >= 0) {
+          // copy text up to macro
+          if (builder != null) {
+            builder.append(textWithMacros, pos, pos1);
+          }
+          // macro found
+          String macro = textWithMacros.substring(pos1 + 1, pos2);
+          // parse the macro
+          Expression expression = new Parser(macro).parse();
+          // if cluster is given, expand macro
+          if (builder != null) {
+            String expansion = expression.evaluate(cluster, nodes, node);
+            if (expansion != null) {
+              builder.append(expansion);
+              expansionHappened = true;
+            }
+          }
+          // move position past macro
+          pos = pos2 + 1;
+          continue;
+        }
+      }
+      // no macro found, copy remaining text and quit
+      if (builder != null && expansionHappened) {
+        builder.append(textWithMacros, pos, textWithMacros.length());
+      }
+      break;
+    }
+    // only return a new string if actual expansion happened
+    return expansionHappened ? builder.toString() : textWithMacros;
+  }
+
+  /**
+   * Given a JSON tree, find the element specified by the path (or the root if path is null). In that subtree,
+   * recursively traverse all elements, and expand all String typed right hand side values.  If a macro cannot be
+   * expanded due to the cluster object missing certain data, that macro will be left unexpanded.
+   *
+   * @param json A JSON tree
+   * @param path the path to expand under
+   * @param cluster the cluster to use for expanding macros.
+   * @param nodes the cluster nodes to use for expanding macros.
+   * @param node the cluster node to use for expanding macros.
+   * @return a new JSON tree if any expansion took place, and the original JSON tree otherwise.
+   * @throws SyntaxException if a macro expression is ill-formed.
+   * @throws IncompleteClusterException if the cluster does not have the meta data to expand all macros.
+   */
+  static JsonElement expand(JsonElement json, @Nullable java.util.List<String> path, Cluster cluster,
+                                   Set<Node> nodes, Node node) throws SyntaxException, IncompleteClusterException {
+
+    // if path is given,
+    if (path != null && !path.isEmpty()) {
+      String first = path.get(0);
+      if (json.isJsonObject()) {
+        JsonObject object = json.getAsJsonObject();
+        JsonElement json1 = object.get(first);
+        if (json1 != null) {
+          JsonElement expanded = expand(json1, path.subList(1, path.size()), cluster, nodes, node);
+          if (expanded != json1) {
+            // only construct new json object if actual expansion happened
+            JsonObject object1 = new JsonObject();
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+              object1.add(entry.getKey(), entry.getKey().equals(first) ? expanded : entry.getValue());
+            }
+            return object1;
+          }
+        }
+      }
+      // path was given, but either no corresponding subtree was found or no expansion happened...
+      return json;
+    }
+
+    if (json.isJsonPrimitive()) {
+      JsonPrimitive primitive = json.getAsJsonPrimitive();
+      if (primitive.isString()) {
+        String value = primitive.getAsString();
+        String expanded = expand(value, cluster, nodes, node);
+        if (!expanded.equals(value)) {
+          // only return a new json element if actual expansion happened
+          return new JsonPrimitive(expanded);
+        }
+      }
+    }
+
+    if (json.isJsonArray()) {
+      JsonArray array = json.getAsJsonArray();
+      JsonArray array1 = new JsonArray();
+      boolean expansionHappened = false;
+      for (JsonElement element : array) {
+        JsonElement expanded = expand(element, path, cluster, nodes, node);
+        if (expanded != element) {
+          expansionHappened = true;
+        }
+        array1.add(expanded);
+      }
+      // only return a new json array if actual expansion happened
+      if (expansionHappened) {
+        return array1;
+      }
+    }
+
+    if (json.isJsonObject()) {
+      JsonObject object = json.getAsJsonObject();
+      JsonObject object1 = new JsonObject();
+      boolean expansionHappened = false;
+      for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+        JsonElement expanded = expand(entry.getValue(), path, cluster, nodes, node);
+        if (expanded != entry.getValue()) {
+          expansionHappened = true;
+        }
+        object1.add(entry.getKey(), expand(entry.getValue(), path, cluster, nodes, node));
+      }
+      if (expansionHappened) {
+        return object1;
+      }
+    }
+
+    return json;
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.macro.eval;
+
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
+import co.cask.coopr.macro.IncompleteClusterException;
+import co.cask.coopr.spec.service.Service;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+/**
+ * Tests for looking up nodes by service in the {@link ClusterServiceIndex}.
+ */
+public class ClusterServiceIndexTest {
+  private static final Service ZK = Service.builder().setName("zk").build();
+  private static final Service HDFS = Service.builder().setName("hdfs").build();
+
+  private static final Node NODE_A = new Node("a", "1", ImmutableSet.of(ZK, HDFS),
+                                              NodeProperties.builder()
+                                                .setHostname("host-a")
+                                                .addIPAddress("access_v4", "1.1.1.1")
+                                                .addIPAddress("bind_v4", "10.1.1.1")
+                                                .setNodenum(7).build());
+  private static final Node NODE_B = new Node("b", "1", ImmutableSet.of(ZK),
+                                              NodeProperties.builder()
+                                                .setHostname("host-b")
+                                                .addIPAddress("access_v4", "2.2.2.2")
+                                                .setNodenum(3).build());
+  private static final Node NODE_C = new Node("c", "1", ImmutableSet.of(ZK, HDFS),
+                                              NodeProperties.builder()
+                                                .addIPAddress("access_v4", "3.3.3.3")
+                                                .addIPAddress("bind_v4", "10.3.3.3")
+                                                .setNodenum(17).build());
+  // a set that keeps nodes in insertion order, which is not the node number order
+  private static final Set<Node> NODES = Sets.newLinkedHashSet(ImmutableList.of(NODE_A, NODE_B, NODE_C));
+
+  @Test
+  public void testServiceLists() throws Exception {
+    ClusterServiceIndex index = ClusterServiceIndex.of(NODES);
+    Assert.assertEquals(3, index.getNumNodes("zk"));
+    Assert.assertEquals(2, index.getNumNodes("hdfs"));
+    Assert.assertEquals(0, index.getNumNodes("missing"));
+
+    // lists are in the order of the cluster nodes
+    Assert.assertEquals(ImmutableList.of("1.1.1.1", "2.2.2.2", "3.3.3.3"), index.getIPAddresses("zk", "access_v4"));
+    Assert.assertEquals(ImmutableList.of("10.1.1.1", "10.3.3.3"), index.getIPAddresses("hdfs", "bind_v4"));
+    Assert.assertTrue(index.getIPAddresses("missing", "access_v4").isEmpty());
+    Assert.assertTrue(index.getHostnames("missing").isEmpty());
+  }
+
+  @Test
+  public void testMissingNodeProperties() throws Exception {
+    ClusterServiceIndex index = ClusterServiceIndex.of(NODES);
+    try {
+      index.getHostnames("zk");
+      Assert.fail();
+    } catch (IncompleteClusterException e) {
+      Assert.assertTrue(e.getMessage().contains("node c"));
+    }
+    try {
+      index.getIPAddresses("zk", "bind_v4");
+      Assert.fail();
+    } catch (IncompleteClusterException e) {
+      Assert.assertTrue(e.getMessage().contains("node b"));
+    }
+    try {
+      index.getIPAddresses("zk", "other_v4");
+      Assert.fail();
+    } catch (IncompleteClusterException e) {
+      Assert.assertTrue(e.getMessage().contains("node a"));
+    }
+  }
+
+  @Test
+  public void testInstances() throws Exception {
+    ClusterServiceIndex index = ClusterServiceIndex.of(NODES);
+    // instances are sorted by node number
+    Assert.assertEquals(NODE_B, index.getNthNode("zk", 0));
+    Assert.assertEquals(NODE_A, index.getNthNode("zk", 1));
+    Assert.assertEquals(NODE_C, index.getNthNode("zk", 2));
+    Assert.assertEquals(NODE_A, index.getNthNode("hdfs", 0));
+    Assert.assertEquals(NODE_C, index.getNthNode("hdfs", 1));
+    Assert.assertEquals(2, index.getInstanceNum("zk", NODE_A));
+    Assert.assertEquals(1, index.getInstanceNum("zk", NODE_B));
+    Assert.assertEquals(3, index.getInstanceNum("zk", NODE_C));
+    Assert.assertEquals(2, index.getInstanceNum("hdfs", NODE_C));
+    Assert.assertEquals(-1, index.getInstanceNum("hdfs", NODE_B));
+    Assert.assertEquals(-1, index.getInstanceNum("missing", NODE_B));
+
+    try {
+      index.getNthNode("hdfs", 2);
+      Assert.fail();
+    } catch (IncompleteClusterException e) {
+      // expected
+    }
+    try {
+      index.getNthNode("missing", 0);
+      Assert.fail();
+    } catch (IncompleteClusterException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testEvaluators() throws Exception {
+    ClusterServiceIndex index = ClusterServiceIndex.of(NODES);
+    Assert.assertEquals(ImmutableList.of("3"), new ServiceCardinalityEvaluator("zk").evaluate(null, index, NODE_A));
+    Assert.assertEquals(ImmutableList.of("0"), new ServiceCardinalityEvaluator("x").evaluate(null, index, NODE_A));
+    Assert.assertEquals(ImmutableList.of("3"), new ServiceInstanceEvaluator("zk").evaluate(null, index, NODE_C));
+    Assert.assertNull(new ServiceInstanceEvaluator("hdfs").evaluate(null, index, NODE_B));
+    Assert.assertEquals(ImmutableList.of("host-b"), new HostServiceEvaluator("zk", 0).evaluate(null, index, NODE_A));
+    Assert.assertNull(new HostServiceEvaluator("missing", null).evaluate(null, index, NODE_A));
+    Assert.assertEquals(ImmutableList.of("1.1.1.1", "2.2.2.2", "3.3.3.3"),
+                        new IPServiceEvaluator("zk", "access_v4", null).evaluate(null, index, NODE_A));
+    Assert.assertEquals(ImmutableList.of("10.3.3.3"),
+                        new IPServiceEvaluator("hdfs", "bind_v4", 1).evaluate(null, index, NODE_A));
+    Assert.assertNull(new IPServiceEvaluator("missing", "bind_v4", null).evaluate(null, index, NODE_A));
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.management;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test JobSchedulerStats
+ */
+public class JobSchedulerStatsTest {
+
+  @Test
+  public void testNoJobs() {
+    JobSchedulerStats stats = new JobSchedulerStats();
+    Assert.assertEquals(0, stats.getJobsScheduled());
+    Assert.assertEquals(0, stats.getJobsInProgress());
+    Assert.assertEquals(0, stats.getLastLagMillis());
+    Assert.assertEquals(0, stats.getMaxLagMillis());
+    Assert.assertEquals(0, stats.getAverageLagMillis());
+    Assert.assertEquals(0, stats.getAverageScheduleMillis());
+  }
+
+  @Test
+  public void testJobs() {
+    JobSchedulerStats stats = new JobSchedulerStats();
+    stats.jobStarted(300);
+    stats.jobStarted(100);
+    Assert.assertEquals(2, stats.getJobsInProgress());
+    Assert.assertEquals(0, stats.getJobsScheduled());
+    Assert.assertEquals(100, stats.getLastLagMillis());
+    Assert.assertEquals(300, stats.getMaxLagMillis());
+
+    stats.jobFinished(20);
+    Assert.assertEquals(1, stats.getJobsInProgress());
+    Assert.assertEquals(1, stats.getJobsScheduled());
+    Assert.assertEquals(20, stats.getAverageScheduleMillis());
+
+    stats.jobFinished(40);
+    stats.jobStarted(200);
+    stats.jobFinished(60);
+    Assert.assertEquals(0, stats.getJobsInProgress());
+    Assert.assertEquals(3, stats.getJobsScheduled());
+    Assert.assertEquals(200, stats.getLastLagMillis());
+    Assert.assertEquals(300, stats.getMaxLagMillis());
+    Assert.assertEquals(200, stats.getAverageLagMillis());
+    Assert.assertEquals(40, stats.getAverageScheduleMillis());
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler;
+
+import co.cask.coopr.Entities;
+import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.common.queue.Element;
+import co.cask.coopr.common.zookeeper.LockService;
+import co.cask.coopr.http.ServiceTestBase;
+import co.cask.coopr.management.JobSchedulerStats;
+import co.cask.coopr.management.ServerStats;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.TaskService;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Test JobScheduler
+ */
+public class JobSchedulerTest extends ServiceTestBase {
+
+  @After
+  public void cleanupTest() throws Exception {
+    jobQueues.removeAll();
+  }
+
+  @Test(timeout = 20000)
+  public void testJobsOfDifferentClustersScheduledInParallel() throws Exception {
+    for (String clusterId : new String[] { "101", "102" }) {
+      ClusterJob job = writeActiveClusterJob(clusterId);
+      jobQueues.add(TENANT_ID, new Element(job.getJobId()));
+    }
+
+    ListeningExecutorService jobExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+    ExecutorService runExecutor = Executors.newSingleThreadExecutor();
+    LockService lockService = injector.getInstance(LockService.class);
+    ServerStats serverStats = new ServerStats();
+    JobSchedulerStats stats = serverStats.getJobSchedulerStats();
+    JobScheduler jobScheduler = new JobScheduler(clusterStoreService, queueService, lockService,
+                                                 injector.getInstance(TaskService.class), conf, gson, jobExecutor,
+                                                 serverStats);
+    Lock lock = lockService.getJobLock(TENANT_ID, "101");
+    lock.lock();
+    boolean locked = true;
+    try {
+      Future<?> run = runExecutor.submit(jobScheduler);
+
+      // the job of the other cluster is scheduled while the job of the locked cluster waits for the lock
+      while (stats.getJobsScheduled() < 1) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+      TimeUnit.MILLISECONDS.sleep(500);
+      Assert.assertEquals(1, stats.getJobsScheduled());
+      Assert.assertFalse(run.isDone());
+
+      lock.unlock();
+      locked = false;
+      run.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(2, stats.getJobsScheduled());
+      Assert.assertEquals(0, jobQueues.size(TENANT_ID));
+      // lag is measured from when the job was queued, so it includes the time spent waiting for the lock
+      Assert.assertTrue(stats.getLastLagMillis() >= 500);
+    } finally {
+      if (locked) {
+        lock.unlock();
+      }
+      jobExecutor.shutdownNow();
+      runExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testJobQueuedSeveralTimesScheduledOnce() throws Exception {
+    ClusterJob job = writeActiveClusterJob("103");
+    for (int i = 0; i < 3; i++) {
+      jobQueues.add(TENANT_ID, new Element(job.getJobId()));
+    }
+
+    ServerStats serverStats = new ServerStats();
+    JobScheduler jobScheduler = new JobScheduler(clusterStoreService, queueService,
+                                                 injector.getInstance(LockService.class),
+                                                 injector.getInstance(TaskService.class), conf, gson,
+                                                 MoreExecutors.sameThreadExecutor(), serverStats);
+    jobScheduler.run();
+    Assert.assertEquals(1, serverStats.getJobSchedulerStats().getJobsScheduled());
+    Assert.assertEquals(0, jobQueues.size(TENANT_ID));
+  }
+
+  private ClusterJob writeActiveClusterJob(String clusterId) throws Exception {
+    // jobs of clusters that are not pending are only looked at, which is enough to see when they are scheduled
+    Cluster cluster = Cluster.builder()
+      .setID(clusterId)
+      .setAccount(USER1_ACCOUNT)
+      .setName("cluster" + clusterId)
+      .setProvider(Entities.ProviderExample.JOYENT)
+      .setClusterTemplate(Entities.ClusterTemplateExample.HDFS)
+      .setStatus(Cluster.Status.ACTIVE)
+      .build();
+    clusterStoreService.getView(USER1_ACCOUNT).writeCluster(cluster);
+    ClusterJob job = new ClusterJob(new JobId(clusterId, 0), ClusterAction.CLUSTER_CREATE);
+    clusterStore.writeClusterJob(job);
+    return job;
+  }
+}
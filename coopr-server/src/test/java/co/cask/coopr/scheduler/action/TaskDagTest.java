@@ -17,12 +17,19 @@ package co.cask.coopr.scheduler.action;
 
 import co.cask.coopr.scheduler.dag.TaskDag;
 import co.cask.coopr.scheduler.dag.TaskNode;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -147,4 +154,159 @@ public class TaskDagTest {
     //noinspection AssertEqualsBetweenInconvertibleTypes
     Assert.assertEquals(expected, actual);
   }
+
+  @Test
+  public void testRandomDagsMatchReference() {
+    Random random = new Random(0);
+    for (int i = 0; i < 500; i++) {
+      int numNodes = 1 + random.nextInt(60);
+      double edgeProbability = random.nextDouble() * 0.3;
+      RandomDag dag = new RandomDag(random, numNodes, edgeProbability, false);
+      //noinspection AssertEqualsBetweenInconvertibleTypes
+      Assert.assertEquals("dag " + i, referenceLinearize(dag.nodes, dag.edges), dag.taskDag.linearize());
+    }
+  }
+
+  @Test
+  public void testRandomCyclicGraphsFail() {
+    Random random = new Random(0);
+    for (int i = 0; i < 200; i++) {
+      int numNodes = 2 + random.nextInt(30);
+      RandomDag dag = new RandomDag(random, numNodes, random.nextDouble() * 0.2, true);
+      try {
+        referenceLinearize(dag.nodes, dag.edges);
+        Assert.fail("reference linearized cyclic graph " + i);
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      try {
+        dag.taskDag.linearize();
+        Assert.fail("linearized cyclic graph " + i);
+      } catch (IllegalStateException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEmptyDag() {
+    new TaskDag().linearize();
+  }
+
+  @Test
+  public void testLargeClusterDag() {
+    // a plan of 5 tasks for each of 10 services on 1000 hosts, with each service depending on the previous one
+    String[] tasks = { "install", "configure", "initialize", "start", "confirm" };
+    int numHosts = 1000;
+    int numServices = 10;
+    TaskDag taskDag = new TaskDag();
+    for (int host = 0; host < numHosts; host++) {
+      String hostId = String.valueOf(host);
+      taskDag.addDependency(new TaskNode(hostId, "create", ""), new TaskNode(hostId, "bootstrap", ""));
+      for (int service = 0; service < numServices; service++) {
+        String serviceName = "service" + service;
+        TaskNode previous = new TaskNode(hostId, "bootstrap", "");
+        for (String task : tasks) {
+          TaskNode current = new TaskNode(hostId, task, serviceName);
+          taskDag.addDependency(previous, current);
+          previous = current;
+        }
+        if (service > 0) {
+          // start of a service on any host requires the previous service to be started on the first host
+          taskDag.addDependency(new TaskNode("0", "start", "service" + (service - 1)),
+                                new TaskNode(hostId, "start", serviceName));
+        }
+      }
+    }
+
+    List<Set<TaskNode>> stages = taskDag.linearize();
+    int numTasks = 0;
+    for (Set<TaskNode> stage : stages) {
+      numTasks += stage.size();
+    }
+    Assert.assertEquals(numHosts * (2 + numServices * tasks.length), numTasks);
+    // every service start waits for the previous service on the first host, so all hosts confirm the last service last
+    Set<TaskNode> lastStage = stages.get(stages.size() - 1);
+    Assert.assertEquals(numHosts, lastStage.size());
+    Assert.assertTrue(lastStage.contains(new TaskNode("999", "confirm", "service9")));
+  }
+
+  /**
+   * A random graph, both as a {@link TaskDag} and as plain nodes and edges for the reference linearization.
+   */
+  private static final class RandomDag {
+    private final TaskDag taskDag = new TaskDag();
+    private final Set<TaskNode> nodes = Sets.newHashSet();
+    private final SetMultimap<TaskNode, TaskNode> edges = HashMultimap.create();
+
+    private RandomDag(Random random, int numNodes, double edgeProbability, boolean withCycle) {
+      List<TaskNode> taskNodes = Lists.newArrayList();
+      for (int i = 0; i < numNodes; i++) {
+        taskNodes.add(new TaskNode(String.valueOf(i % 4), "task" + i, i % 3 == 0 ? "" : "service" + (i % 5)));
+      }
+      // edges only go from lower to higher positions, which keeps the graph acyclic
+      for (int from = 0; from < numNodes; from++) {
+        for (int to = from + 1; to < numNodes; to++) {
+          if (random.nextDouble() < edgeProbability) {
+            addDependency(taskNodes.get(from), taskNodes.get(to));
+          }
+        }
+      }
+      if (withCycle) {
+        int from = 1 + random.nextInt(numNodes - 1);
+        int to = random.nextInt(from + 1);
+        for (int i = to; i < from; i++) {
+          addDependency(taskNodes.get(i), taskNodes.get(i + 1));
+        }
+        addDependency(taskNodes.get(from), taskNodes.get(to));
+      }
+      for (TaskNode taskNode : taskNodes) {
+        if (random.nextInt(4) > 0 || edges.isEmpty()) {
+          nodes.add(taskNode);
+          taskDag.addTaskNode(taskNode);
+        }
+      }
+    }
+
+    private void addDependency(TaskNode from, TaskNode to) {
+      nodes.add(from);
+      nodes.add(to);
+      edges.put(from, to);
+      taskDag.addDependency(from, to);
+    }
+  }
+
+  /**
+   * The original linearization, which repeatedly removes the edges of source nodes from a copy of the graph.
+   */
+  private static List<Set<TaskNode>> referenceLinearize(Set<TaskNode> nodes, SetMultimap<TaskNode, TaskNode> edges) {
+    List<Set<TaskNode>> linearizedNodes = Lists.newArrayList();
+    ArrayListMultimap<TaskNode, TaskNode> copyEdges = ArrayListMultimap.create(edges);
+
+    Set<TaskNode> sources = Sets.newHashSet(nodes);
+    Set<TaskNode> sinkNodes = Sets.newHashSet();
+    do {
+      sources.addAll(copyEdges.keySet());
+      sources.removeAll(copyEdges.values());
+      if (sources.isEmpty()) {
+        throw new IllegalStateException("No source nodes found, DAG not serializable");
+      }
+      linearizedNodes.add(Sets.newHashSet(Iterables.concat(sinkNodes, sources)));
+
+      sinkNodes.clear();
+      Set<TaskNode> toNodes = Sets.newHashSet();
+      for (TaskNode fromNode : sources) {
+        toNodes.addAll(copyEdges.removeAll(fromNode));
+      }
+      toNodes.removeAll(copyEdges.keySet());
+      toNodes.removeAll(copyEdges.values());
+      sinkNodes.addAll(toNodes);
+      sources.clear();
+    } while (!copyEdges.isEmpty());
+
+    if (!sinkNodes.isEmpty()) {
+      linearizedNodes.add(sinkNodes);
+    }
+    return linearizedNodes;
+  }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.scheduler.task;
+
+import co.cask.coopr.scheduler.ClusterAction;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for keeping track of task counts in a {@link ClusterJob}.
+ */
+public class ClusterJobTest {
+
+  @Test
+  public void testCurrentStageTaskCounts() {
+    ClusterJob job = new ClusterJob(new JobId("1", 1), ClusterAction.CLUSTER_CREATE);
+    job.addStage(Sets.newHashSet("1-001-001", "1-001-002", "1-001-003"));
+    job.addStage(Sets.newHashSet("1-001-004"));
+    Assert.assertFalse(job.hasCurrentStageTaskCounts());
+
+    job.countCurrentStageTasks();
+    Assert.assertEquals(3, job.getCurrentStageTaskCount(ClusterTask.Status.NOT_SUBMITTED));
+    job.setTaskStatus("1-001-001", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-001-002", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-001-003", ClusterTask.Status.IN_PROGRESS);
+    // setting the same status again or setting the status of a task in another stage does not change counts
+    job.setTaskStatus("1-001-003", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-001-004", ClusterTask.Status.FAILED);
+    Assert.assertEquals(0, job.getCurrentStageTaskCount(ClusterTask.Status.NOT_SUBMITTED));
+    Assert.assertEquals(3, job.getCurrentStageTaskCount(ClusterTask.Status.IN_PROGRESS));
+    Assert.assertEquals(0, job.getCurrentStageTaskCount(ClusterTask.Status.FAILED));
+
+    job.setTaskStatus("1-001-001", ClusterTask.Status.COMPLETE);
+    job.setTaskStatus("1-001-002", ClusterTask.Status.FAILED);
+    Assert.assertEquals(1, job.getCurrentStageTaskCount(ClusterTask.Status.IN_PROGRESS));
+    Assert.assertEquals(1, job.getCurrentStageTaskCount(ClusterTask.Status.COMPLETE));
+    Assert.assertEquals(1, job.getCurrentStageTaskCount(ClusterTask.Status.FAILED));
+
+    // a retry task replaces the failed task
+    job.setTaskStatus("1-001-005", ClusterTask.Status.NOT_SUBMITTED);
+    job.replaceCurrentStageTask("1-001-002", "1-001-005");
+    Assert.assertEquals(0, job.getCurrentStageTaskCount(ClusterTask.Status.FAILED));
+    Assert.assertEquals(1, job.getCurrentStageTaskCount(ClusterTask.Status.NOT_SUBMITTED));
+    Assert.assertEquals(Sets.newHashSet("1-001-001", "1-001-003", "1-001-005"), job.getCurrentStage());
+
+    // counts are kept when the job is written and read back
+    Gson gson = new Gson();
+    ClusterJob copy = gson.fromJson(gson.toJson(job), ClusterJob.class);
+    Assert.assertTrue(copy.hasCurrentStageTaskCounts());
+    Assert.assertEquals(1, copy.getCurrentStageTaskCount(ClusterTask.Status.IN_PROGRESS));
+    Assert.assertEquals(1, copy.getCurrentStageTaskCount(ClusterTask.Status.COMPLETE));
+    Assert.assertEquals(1, copy.getCurrentStageTaskCount(ClusterTask.Status.NOT_SUBMITTED));
+
+    // counts have to be redone for a new stage
+    job.advanceStage();
+    Assert.assertFalse(job.hasCurrentStageTaskCounts());
+    job.countCurrentStageTasks();
+    Assert.assertEquals(1, job.getCurrentStageTaskCount(ClusterTask.Status.FAILED));
+
+    job.resetCurrentStageTaskCounts();
+    Assert.assertFalse(job.hasCurrentStageTaskCounts());
+  }
+
+  @Test
+  public void testWaitingForTasksInProgress() {
+    ClusterJob job = new ClusterJob(new JobId("1", 1), ClusterAction.CLUSTER_CREATE);
+    job.addStage(Sets.newHashSet("1-001-001", "1-001-002", "1-001-003"));
+    job.setTaskStatus("1-001-001", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-001-002", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-001-003", ClusterTask.Status.COMPLETE);
+
+    // jobs whose finished tasks are not counted always have their tasks looked at
+    job.countCurrentStageTasks();
+    Assert.assertFalse(job.isWaitingForTasksInProgress());
+
+    job.setFinishedTaskCounts(5L, 1L);
+    Assert.assertFalse(job.isWaitingForTasksInProgress());
+    job.countCurrentStageTasks();
+    Assert.assertTrue(job.isWaitingForTasksInProgress());
+
+    // the counts of the stage are kept when the job is written and read back, the finished task counts are not
+    Gson gson = new Gson();
+    ClusterJob copy = gson.fromJson(gson.toJson(job), ClusterJob.class);
+    Assert.assertFalse(copy.isWaitingForTasksInProgress());
+    copy.setFinishedTaskCounts(6L, 1L);
+    Assert.assertTrue(copy.isWaitingForTasksInProgress());
+    copy.setFinishedTaskCounts(7L, 1L);
+    Assert.assertFalse(copy.isWaitingForTasksInProgress());
+    copy.setFinishedTaskCounts(5L, 2L);
+    Assert.assertFalse(copy.isWaitingForTasksInProgress());
+
+    // a stage with tasks to submit is not only waiting
+    job.setTaskStatus("1-001-002", ClusterTask.Status.NOT_SUBMITTED);
+    Assert.assertFalse(job.isWaitingForTasksInProgress());
+    job.setTaskStatus("1-001-002", ClusterTask.Status.IN_PROGRESS);
+    Assert.assertTrue(job.isWaitingForTasksInProgress());
+    job.advanceStage();
+    Assert.assertFalse(job.isWaitingForTasksInProgress());
+  }
+
+  @Test
+  public void testCompletedTaskCount() {
+    ClusterJob job = new ClusterJob(new JobId("1", 1), ClusterAction.CLUSTER_CREATE);
+    job.addStage(Sets.newHashSet("1-001-001", "1-001-002", "1-001-003"));
+    job.setTaskStatus("1-001-001", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-001-002", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-001-003", ClusterTask.Status.COMPLETE);
+    Assert.assertEquals(1, job.getCompletedTaskCount());
+
+    // tasks that completed since the stage was counted are included, up to the tasks that were in progress
+    job.setFinishedTaskCounts(5L, 1L);
+    job.countCurrentStageTasks();
+    Assert.assertEquals(1, job.getCompletedTaskCount());
+    job.setFinishedTaskCounts(6L, 1L);
+    Assert.assertEquals(2, job.getCompletedTaskCount());
+    job.setFinishedTaskCounts(9L, 1L);
+    Assert.assertEquals(3, job.getCompletedTaskCount());
+
+    // jobs whose finished tasks are not counted only count the task statuses
+    job.setFinishedTaskCounts(null, null);
+    Assert.assertEquals(1, job.getCompletedTaskCount());
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.spec.template;
+
+import co.cask.coopr.codec.json.guice.CodecModules;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.inject.Guice;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test ServiceConstraint
+ */
+public class ServiceConstraintTest {
+
+  private static final Gson GSON = Guice.createInjector(new CodecModules().getModule()).getInstance(Gson.class);
+
+  @Test
+  public void testMinCountWithRatio() {
+    Assert.assertEquals(7, new ServiceConstraint(null, null, 1, null, 0.07).getMinCount(100));
+    Assert.assertEquals(7, new ServiceConstraint(null, null, 1, null, 0.14).getMinCount(50));
+    Assert.assertEquals(29, new ServiceConstraint(null, null, 1, null, 0.29).getMinCount(100));
+    Assert.assertEquals(3, new ServiceConstraint(null, null, 1, null, 0.25).getMinCount(9));
+    Assert.assertEquals(3, new ServiceConstraint(null, null, 3, null, 0.25).getMinCount(4));
+    Assert.assertEquals(0, new ServiceConstraint(null, null, 0, null, 0.0).getMinCount(100));
+    Assert.assertEquals(100, new ServiceConstraint(null, null, 0, null, 1.0).getMinCount(100));
+    Assert.assertEquals(2, new ServiceConstraint(null, null, 2, null).getMinCount(100));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeRatio() {
+    new ServiceConstraint(null, null, 1, null, -0.5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNaNRatio() {
+    new ServiceConstraint(null, null, 1, null, Double.NaN);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRatioAboveOne() {
+    new ServiceConstraint(null, null, 1, null, 1.5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRatioWithZeroMax() {
+    new ServiceConstraint(null, null, 0, 0, 0.5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRatioAboveMaxInSmallestCluster() {
+    new Constraints(ImmutableMap.of("svc", new ServiceConstraint(null, null, 1, 5, 0.5)), null,
+                    new SizeConstraint(20, null));
+  }
+
+  @Test
+  public void testRatioWithinMaxInSmallestCluster() {
+    new Constraints(ImmutableMap.of("svc", new ServiceConstraint(null, null, 1, 5, 0.5)), null,
+                    new SizeConstraint(10, null));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidRatioJson() {
+    GSON.fromJson("{\"quantities\":{\"min\":1,\"ratio\":2}}", ServiceConstraint.class);
+  }
+
+  @Test
+  public void testRatioJson() {
+    ServiceConstraint constraint = new ServiceConstraint(null, null, 1, 10, 0.5);
+    Assert.assertEquals(constraint, GSON.fromJson(GSON.toJson(constraint), ServiceConstraint.class));
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import com.google.inject.Guice;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+
+/**
+ * Tests for the {@link DBConnectionPool}.
+ */
+public class DBConnectionPoolTest {
+
+  @Test
+  public void testPreparedStatementsAreReused() throws Exception {
+    DBConnectionPool pool = createPool(10);
+    Object first = prepareAndClose(pool, "VALUES 1");
+    Assert.assertSame(first, prepareAndClose(pool, "VALUES 1"));
+    Assert.assertNotSame(first, prepareAndClose(pool, "VALUES 2"));
+  }
+
+  @Test
+  public void testStatementReuseCanBeDisabled() throws Exception {
+    DBConnectionPool pool = createPool(0);
+    Object first = prepareAndClose(pool, "VALUES 1");
+    Assert.assertNotSame(first, prepareAndClose(pool, "VALUES 1"));
+  }
+
+  @Test
+  public void testTransactionUsersCannotEndTransaction() throws Exception {
+    final DBConnectionPool pool = createPool(10);
+    execute(pool, "CREATE TABLE tx_test ( id INTEGER )");
+    try {
+      // a user committing the connection does not commit the transaction, so it is still rolled back on failure
+      try {
+        pool.runInTransaction(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            Connection conn = pool.getConnection();
+            try {
+              conn.setAutoCommit(true);
+              insert(conn, 1);
+              conn.commit();
+            } finally {
+              conn.close();
+            }
+            throw new IllegalStateException("fail the transaction");
+          }
+        });
+        Assert.fail();
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      Assert.assertEquals(0, count(pool));
+
+      // a user rolling back the connection rolls back the whole transaction
+      try {
+        pool.runInTransaction(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            Connection conn = pool.getConnection();
+            try {
+              insert(conn, 1);
+              conn.rollback();
+              insert(conn, 2);
+            } finally {
+              conn.close();
+            }
+            return null;
+          }
+        });
+        Assert.fail();
+      } catch (SQLException e) {
+        // expected
+      }
+      Assert.assertEquals(0, count(pool));
+
+      pool.runInTransaction(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          Connection conn = pool.getConnection();
+          try {
+            insert(conn, 1);
+          } finally {
+            conn.close();
+          }
+          return null;
+        }
+      });
+      Assert.assertEquals(1, count(pool));
+    } finally {
+      execute(pool, "DROP TABLE tx_test");
+    }
+  }
+
+  private static void execute(DBConnectionPool pool, String sql) throws Exception {
+    Connection conn = pool.getConnection(true);
+    try {
+      Statement statement = conn.createStatement();
+      try {
+        statement.execute(sql);
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
+  private static void insert(Connection conn, int id) throws Exception {
+    PreparedStatement statement = conn.prepareStatement("INSERT INTO tx_test (id) VALUES (?)");
+    try {
+      statement.setInt(1, id);
+      statement.executeUpdate();
+    } finally {
+      statement.close();
+    }
+  }
+
+  private static int count(DBConnectionPool pool) throws Exception {
+    Connection conn = pool.getConnection();
+    try {
+      PreparedStatement statement = conn.prepareStatement("SELECT COUNT(*) FROM tx_test");
+      try {
+        ResultSet rs = statement.executeQuery();
+        try {
+          Assert.assertTrue(rs.next());
+          return rs.getInt(1);
+        } finally {
+          rs.close();
+        }
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
+  private static DBConnectionPool createPool(int statementCacheSize) {
+    Configuration conf = BaseTest.createTestConf();
+    conf.setInt(Constants.DB_MAX_ACTIVE_CONNECTIONS, 1);
+    conf.setInt(Constants.DB_STATEMENT_CACHE_SIZE, statementCacheSize);
+    return Guice.createInjector(new ConfigurationModule(conf)).getInstance(DBConnectionPool.class);
+  }
+
+  // returns the statement of the database
+  private static Object prepareAndClose(DBConnectionPool pool, String sql) throws Exception {
+    Connection conn = pool.getConnection();
+    try {
+      PreparedStatement statement = conn.prepareStatement(sql);
+      try {
+        ResultSet rs = statement.executeQuery();
+        try {
+          Assert.assertTrue(rs.next());
+        } finally {
+          rs.close();
+        }
+        return statement.unwrap(PreparedStatement.class);
+      } finally {
+        statement.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test DBHelper
+ */
+public class DBHelperTest {
+
+  @Test
+  public void testPaddedInSize() {
+    Assert.assertEquals(1, DBHelper.getPaddedInSize(1));
+    Assert.assertEquals(2, DBHelper.getPaddedInSize(2));
+    Assert.assertEquals(4, DBHelper.getPaddedInSize(3));
+    Assert.assertEquals(4, DBHelper.getPaddedInSize(4));
+    Assert.assertEquals(8, DBHelper.getPaddedInSize(5));
+    Assert.assertEquals(1024, DBHelper.getPaddedInSize(1000));
+  }
+
+  @Test
+  public void testInString() {
+    Assert.assertEquals("", DBHelper.createInString(0));
+    Assert.assertEquals("(?)", DBHelper.createInString(1));
+    Assert.assertEquals("(?,?,?)", DBHelper.createInString(3));
+  }
+}
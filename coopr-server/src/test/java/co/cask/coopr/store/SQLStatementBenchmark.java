@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.Entities;
+import co.cask.coopr.codec.json.guice.CodecModules;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.provisioner.Provisioner;
+import co.cask.coopr.scheduler.ClusterAction;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.store.cluster.ClusterStore;
+import co.cask.coopr.store.cluster.SQLClusterStoreService;
+import co.cask.coopr.store.guice.TestStoreModule;
+import co.cask.coopr.store.provisioner.SQLProvisionerStore;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of hot store queries on embedded Derby, with and without reuse of prepared statements. Not run as part
+ * of the tests, run its main method to print the average time per query.
+ */
+public class SQLStatementBenchmark {
+  private static final int WARMUP_ITERATIONS = 5000;
+  private static final int ITERATIONS = 50000;
+
+  public static void main(String[] args) throws Exception {
+    // run twice, so that both settings run with a warm jvm
+    for (int i = 0; i < 2; i++) {
+      run(0);
+      run(500);
+    }
+    DBHelper.dropDerbyDB();
+  }
+
+  private static void run(int statementCacheSize) throws Exception {
+    Configuration conf = BaseTest.createTestConf();
+    conf.setInt(Constants.DB_STATEMENT_CACHE_SIZE, statementCacheSize);
+    Injector injector = Guice.createInjector(
+      new ConfigurationModule(conf),
+      new TestStoreModule(),
+      new CodecModules().getModule()
+    );
+    SQLClusterStoreService clusterStoreService = injector.getInstance(SQLClusterStoreService.class);
+    clusterStoreService.startAndWait();
+    SQLProvisionerStore provisionerStore = injector.getInstance(SQLProvisionerStore.class);
+    provisionerStore.startAndWait();
+
+    ClusterStore clusterStore = clusterStoreService.getSystemView();
+    TaskId taskId = TaskId.fromString("1-1-1");
+    clusterStore.writeClusterTask(new ClusterTask(ProvisionerAction.CREATE, taskId, "node", "service",
+                                                  ClusterAction.CLUSTER_CREATE, "template",
+                                                  Entities.USER_ACCOUNT));
+    provisionerStore.writeProvisioner(new Provisioner("p1", "host", 12345, 100, null, null));
+
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      clusterStore.getClusterTask(taskId);
+      provisionerStore.setHeartbeat("p1", i);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      clusterStore.getClusterTask(taskId);
+    }
+    long taskNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      provisionerStore.setHeartbeat("p1", i);
+    }
+    long heartbeatNanos = System.nanoTime() - start;
+
+    System.out.println(String.format("statement cache size %d: getClusterTask %.1f us, setHeartbeat %.1f us",
+                                     statementCacheSize, micros(taskNanos), micros(heartbeatNanos)));
+    clusterStoreService.clearData();
+    provisionerStore.clearData();
+    provisionerStore.stopAndWait();
+    clusterStoreService.stopAndWait();
+  }
+
+  private static double micros(long nanos) {
+    return (double) nanos / ITERATIONS / TimeUnit.MICROSECONDS.toNanos(1);
+  }
+}
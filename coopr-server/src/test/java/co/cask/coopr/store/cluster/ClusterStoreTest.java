@@ -18,6 +18,7 @@ package co.cask.coopr.store.cluster;
 import co.cask.coopr.Entities;
 import co.cask.coopr.account.Account;
 import co.cask.coopr.cluster.Cluster;
+import co.cask.coopr.cluster.ClusterOverview;
 import co.cask.coopr.cluster.ClusterSummary;
 import co.cask.coopr.cluster.Node;
 import co.cask.coopr.common.conf.Constants;
@@ -27,6 +28,8 @@ import co.cask.coopr.scheduler.task.ClusterTask;
 import co.cask.coopr.scheduler.task.JobId;
 import co.cask.coopr.scheduler.task.TaskId;
 import co.cask.coopr.spec.ProvisionerAction;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import org.junit.Assert;
@@ -36,6 +39,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Tests for getting and setting cluster objects.  Test classes for different types of stores must set the
@@ -137,6 +141,51 @@ public abstract class ClusterStoreTest {
     Assert.assertNull(systemView.getClusterJob(id));
   }
 
+  @Test
+  public void testCountFinishedTasks() throws IOException {
+    Account account = new Account("testUser", "testTenant");
+    JobId id = new JobId("1", 1);
+    ClusterJob job = new ClusterJob(id, ClusterAction.CLUSTER_CREATE);
+    job.addStage(ImmutableSet.of("1-1-1", "1-1-2"));
+    job.setTaskStatus("1-1-1", ClusterTask.Status.IN_PROGRESS);
+    job.setTaskStatus("1-1-2", ClusterTask.Status.IN_PROGRESS);
+    systemView.writeClusterJob(job);
+    ClusterTask task1 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                        ClusterAction.CLUSTER_CREATE, "test", account);
+    ClusterTask task2 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-2"), "node2", "service",
+                                        ClusterAction.CLUSTER_CREATE, "test", account);
+
+    // a new job has no finished tasks
+    job = systemView.getClusterJob(id);
+    job.countCurrentStageTasks();
+    systemView.writeClusterJob(job);
+    Assert.assertTrue(systemView.getClusterJob(id).isWaitingForTasksInProgress());
+
+    task1.setStatus(ClusterTask.Status.COMPLETE);
+    systemView.countFinishedClusterTask(task1);
+    Assert.assertTrue(systemView.getClusterJob(id).isWaitingForTasksInProgress());
+    task2.setStatus(ClusterTask.Status.COMPLETE);
+    systemView.countFinishedClusterTask(task2);
+    Assert.assertFalse(systemView.getClusterJob(id).isWaitingForTasksInProgress());
+
+    // writing the job does not change the counts of finished tasks
+    job = systemView.getClusterJob(id);
+    job.countCurrentStageTasks();
+    systemView.writeClusterJob(job);
+    Assert.assertTrue(systemView.getClusterJob(id).isWaitingForTasksInProgress());
+    task1.setStatus(ClusterTask.Status.FAILED);
+    systemView.countFinishedClusterTask(task1);
+    Assert.assertFalse(systemView.getClusterJob(id).isWaitingForTasksInProgress());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCountUnfinishedTask() throws IOException {
+    ClusterTask task = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                       ClusterAction.CLUSTER_CREATE, "test", new Account("testUser", "testTenant"));
+    task.setStatus(ClusterTask.Status.IN_PROGRESS);
+    systemView.countFinishedClusterTask(task);
+  }
+
   @Test
   public void testGetClusterJobs() throws Exception {
     Cluster cluster = createClusterObj("1");
@@ -186,6 +235,156 @@ public abstract class ClusterStoreTest {
     Assert.assertNull(systemView.getClusterTask(id));
   }
 
+  @Test
+  public void testGetClusterTasksAndStatuses() throws IOException {
+    Account account = new Account("testUser", "testTenant");
+    ClusterTask task1 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                        ClusterAction.CLUSTER_CREATE, "test", account);
+    ClusterTask task2 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-2"), "node2", "service",
+                                        ClusterAction.CLUSTER_CREATE, "test", account);
+    ClusterTask task3 = new ClusterTask(ProvisionerAction.CONFIRM, TaskId.fromString("1-2-3"), "node1", "service",
+                                        ClusterAction.CLUSTER_CREATE, "test", account);
+    ClusterTask task4 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("2-1-1"), "node3", "service",
+                                        ClusterAction.CLUSTER_CREATE, "test", account);
+    task1.setStatus(ClusterTask.Status.COMPLETE);
+    task2.setStatus(ClusterTask.Status.IN_PROGRESS);
+    task3.setStatus(ClusterTask.Status.FAILED);
+    task4.setStatus(ClusterTask.Status.NOT_SUBMITTED);
+    systemView.writeClusterTask(task1);
+    systemView.writeClusterTask(task2);
+    systemView.writeClusterTask(task3);
+    systemView.writeClusterTask(task4);
+
+    Assert.assertTrue(systemView.getClusterTasks(ImmutableList.<TaskId>of()).isEmpty());
+    Assert.assertTrue(systemView.getClusterTaskStatuses(ImmutableList.<TaskId>of()).isEmpty());
+
+    // tasks across jobs and clusters, and ids of tasks that don't exist
+    List<TaskId> taskIds = ImmutableList.of(TaskId.fromString("1-1-1"), TaskId.fromString("1-1-2"),
+                                            TaskId.fromString("1-2-3"), TaskId.fromString("2-1-1"),
+                                            TaskId.fromString("1-1-9"), TaskId.fromString("3-1-1"));
+    Assert.assertEquals(ImmutableSet.of(task1, task2, task3, task4),
+                        ImmutableSet.copyOf(systemView.getClusterTasks(taskIds)));
+    Assert.assertEquals(ImmutableMap.of(task1.getTaskId(), ClusterTask.Status.COMPLETE,
+                                        task2.getTaskId(), ClusterTask.Status.IN_PROGRESS,
+                                        task3.getTaskId(), ClusterTask.Status.FAILED,
+                                        task4.getTaskId(), ClusterTask.Status.NOT_SUBMITTED),
+                        systemView.getClusterTaskStatuses(taskIds));
+
+    Assert.assertEquals(ImmutableList.of(task3),
+                        systemView.getClusterTasks(ImmutableList.of(TaskId.fromString("1-2-3"))));
+    Assert.assertEquals(ImmutableMap.of(task4.getTaskId(), ClusterTask.Status.NOT_SUBMITTED),
+                        systemView.getClusterTaskStatuses(ImmutableList.of(TaskId.fromString("2-1-1"))));
+  }
+
+  @Test
+  public void testWriteClusterTasksAndNodes() throws Exception {
+    Account account = new Account("testUser", "testTenant");
+    ClusterTask task1 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                        ClusterAction.CLUSTER_CREATE, "test", account);
+    ClusterTask task2 = new ClusterTask(ProvisionerAction.CONFIRM, TaskId.fromString("1-1-2"), "node1", "service",
+                                        ClusterAction.CLUSTER_CREATE, "test", account);
+    systemView.writeClusterTask(task1);
+
+    // one task is updated and the other one is inserted
+    task1.setStatus(ClusterTask.Status.COMPLETE);
+    systemView.writeClusterTasks(ImmutableList.of(task1, task2));
+    Assert.assertEquals(task1, systemView.getClusterTask(TaskId.fromString("1-1-1")));
+    Assert.assertEquals(task2, systemView.getClusterTask(TaskId.fromString("1-1-2")));
+    systemView.writeClusterTasks(ImmutableList.<ClusterTask>of());
+
+    Node node1 = Entities.ClusterExample.NODE1;
+    Node node2 = Entities.ClusterExample.NODE2;
+    systemView.writeNodes(ImmutableList.of(node1, node2));
+    Assert.assertEquals(node1, systemView.getNode(node1.getId()));
+    Assert.assertEquals(node2, systemView.getNode(node2.getId()));
+    // check overwrite
+    systemView.writeNodes(ImmutableList.of(node1, node2));
+    Assert.assertEquals(ImmutableSet.of(node1, node2), systemView.getClusterNodes(node1.getClusterId()));
+  }
+
+  @Test
+  public void testTransactionCommits() throws Exception {
+    final ClusterTask task = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                             ClusterAction.CLUSTER_CREATE, "test", new Account("user", "tenant"));
+    final Node node = Entities.ClusterExample.NODE1;
+    final ClusterJob job = new ClusterJob(new JobId("1", 1), ClusterAction.CLUSTER_CREATE);
+    String result = systemView.inTransaction(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        systemView.writeClusterTask(task);
+        systemView.writeNode(node);
+        // nested transactions are part of the outer transaction
+        systemView.inTransaction(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            systemView.writeClusterJob(job);
+            return null;
+          }
+        });
+        // writes are visible within the transaction
+        return systemView.getClusterJob(new JobId("1", 1)).getJobId();
+      }
+    });
+    Assert.assertEquals(job.getJobId(), result);
+    Assert.assertEquals(task, systemView.getClusterTask(TaskId.fromString("1-1-1")));
+    Assert.assertEquals(node, systemView.getNode(node.getId()));
+    Assert.assertEquals(job, systemView.getClusterJob(new JobId("1", 1)));
+  }
+
+  @Test
+  public void testFailedTransactionWritesNothing() throws Exception {
+    final ClusterTask task1 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                              ClusterAction.CLUSTER_CREATE, "test", new Account("user", "tenant"));
+    final ClusterTask task2 = new ClusterTask(ProvisionerAction.CONFIRM, TaskId.fromString("1-1-2"), "node1",
+                                              "service", ClusterAction.CLUSTER_CREATE, "test",
+                                              new Account("user", "tenant"));
+    final Node node = Entities.ClusterExample.NODE1;
+    final ClusterJob job = new ClusterJob(new JobId("1", 1), ClusterAction.CLUSTER_CREATE);
+    systemView.writeClusterTask(task1);
+    final ClusterTask updatedTask1 = systemView.getClusterTask(TaskId.fromString("1-1-1"));
+    updatedTask1.setStatus(ClusterTask.Status.COMPLETE);
+
+    try {
+      systemView.inTransaction(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          systemView.writeClusterTask(updatedTask1);
+          systemView.writeClusterTasks(ImmutableList.of(task2));
+          systemView.writeNode(node);
+          systemView.writeClusterJob(job);
+          throw new IllegalStateException("failure midway");
+        }
+      });
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("failure midway", e.getMessage());
+    }
+    assertNothingWritten(task1);
+
+    // checked exceptions are wrapped
+    try {
+      systemView.inTransaction(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          systemView.writeClusterTasks(ImmutableList.of(updatedTask1, task2));
+          systemView.writeNodes(ImmutableList.of(node));
+          throw new Exception("failure midway");
+        }
+      });
+      Assert.fail();
+    } catch (IOException e) {
+      Assert.assertEquals("failure midway", e.getCause().getMessage());
+    }
+    assertNothingWritten(task1);
+  }
+
+  private void assertNothingWritten(ClusterTask task1) throws IOException {
+    Assert.assertEquals(task1, systemView.getClusterTask(TaskId.fromString(task1.getTaskId())));
+    Assert.assertNull(systemView.getClusterTask(TaskId.fromString("1-1-2")));
+    Assert.assertNull(systemView.getNode(Entities.ClusterExample.NODE1.getId()));
+    Assert.assertNull(systemView.getClusterJob(new JobId("1", 1)));
+  }
+
   @Test
   public void testGetAllClusters() throws Exception {
     Assert.assertEquals(0, systemView.getAllClusters().size());
@@ -374,6 +573,65 @@ public abstract class ClusterStoreTest {
     Assert.assertEquals(ImmutableSet.of(summary2), ImmutableSet.copyOf(view.getAllClusterSummaries(states)));
   }
 
+  @Test
+  public void testGetClusterOverviews() throws Exception {
+    long createTime = System.currentTimeMillis();
+    Cluster cluster1 = createClusterObj("123", createTime);
+    cluster1.setLatestJobId(new JobId("123", 1).getId());
+    Cluster cluster2 = createClusterObj("1234", createTime + 1);
+    cluster2.setLatestJobId(new JobId("1234", 1).getId());
+    cluster2.setStatus(Cluster.Status.TERMINATED);
+    Cluster cluster3 = Cluster.builder()
+      .setID("12345")
+      .setAccount(tenant1_user2)
+      .setName("cluster3")
+      .setLatestJobID(new JobId("12345", 1).getId())
+      .setNodes(ImmutableSet.of("node3", "node4"))
+      .setCreateTime(createTime + 2)
+      .build();
+    // only the first cluster has its latest job written
+    ClusterJob job1 = new ClusterJob(new JobId("123", 1), ClusterAction.CLUSTER_CREATE);
+    job1.setJobStatus(ClusterJob.Status.RUNNING);
+    systemView.writeCluster(cluster1);
+    systemView.writeCluster(cluster2);
+    systemView.writeCluster(cluster3);
+    systemView.writeClusterJob(job1);
+
+    ClusterOverview overview1 = new ClusterOverview("123", cluster1.getName(), "user1", createTime, 0, 2,
+                                                    Cluster.Status.PENDING, ClusterJob.Status.RUNNING);
+    ClusterOverview overview2 = new ClusterOverview("1234", cluster2.getName(), "user1", createTime + 1, 0, 2,
+                                                    Cluster.Status.TERMINATED, null);
+    ClusterOverview overview3 = new ClusterOverview("12345", cluster3.getName(), "user2", createTime + 2, 0, 2,
+                                                    Cluster.Status.PENDING, null);
+
+    // overviews are sorted by create time, most recent first, and only contain clusters visible to the view
+    Assert.assertEquals(ImmutableList.of(overview3, overview2, overview1), systemView.getClusterOverviews(null));
+    Assert.assertEquals(ImmutableList.of(overview3, overview2, overview1),
+                        clusterStoreService.getView(tenant1_admin).getClusterOverviews(null));
+    Assert.assertEquals(ImmutableList.of(overview2, overview1),
+                        clusterStoreService.getView(tenant1_user1).getClusterOverviews(null));
+    Assert.assertTrue(clusterStoreService.getView(tenant2_admin).getClusterOverviews(null).isEmpty());
+
+    // test filters
+    ClusterStoreView view = clusterStoreService.getView(tenant1_user1);
+    Assert.assertEquals(ImmutableList.of(overview2),
+                        view.getClusterOverviews(ImmutableSet.of(Cluster.Status.TERMINATED)));
+    Assert.assertTrue(view.getClusterOverviews(ImmutableSet.of(Cluster.Status.ACTIVE)).isEmpty());
+    Assert.assertEquals(ImmutableList.of(overview1), view.getNonTerminatedClusterOverviews());
+    Assert.assertEquals(ImmutableList.of(overview3, overview1),
+                        clusterStoreService.getView(tenant1_admin).getNonTerminatedClusterOverviews());
+
+    // node counts are kept up to date with cluster writes
+    cluster1.setNodes(ImmutableSet.of("node1", "node2", "node3"));
+    cluster1.setStatus(Cluster.Status.ACTIVE);
+    view.writeCluster(cluster1);
+    job1.setJobStatus(ClusterJob.Status.COMPLETE);
+    systemView.writeClusterJob(job1);
+    overview1 = new ClusterOverview("123", cluster1.getName(), "user1", createTime, 0, 3,
+                                    Cluster.Status.ACTIVE, ClusterJob.Status.COMPLETE);
+    Assert.assertEquals(ImmutableList.of(overview1), view.getNonTerminatedClusterOverviews());
+  }
+
   @Test
   public void testGetRunningTasks() throws Exception {
     ClusterTask task1 = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
@@ -16,16 +16,35 @@
 package co.cask.coopr.store.cluster;
 
 import co.cask.coopr.BaseTest;
+import co.cask.coopr.Entities;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.cluster.Node;
+import co.cask.coopr.cluster.NodeProperties;
 import co.cask.coopr.codec.json.guice.CodecModules;
 import co.cask.coopr.common.conf.Configuration;
 import co.cask.coopr.common.conf.Constants;
 import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.scheduler.ClusterAction;
+import co.cask.coopr.scheduler.task.ClusterJob;
+import co.cask.coopr.scheduler.task.ClusterTask;
+import co.cask.coopr.scheduler.task.JobId;
+import co.cask.coopr.scheduler.task.TaskId;
+import co.cask.coopr.spec.ProvisionerAction;
+import co.cask.coopr.spec.service.Service;
 import co.cask.coopr.store.DBHelper;
 import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
 
 /**
  *
@@ -57,6 +76,65 @@ public class SQLClusterStoreTest extends ClusterStoreTest {
     return sqlClusterStoreService;
   }
 
+  @Test
+  public void testFailedBatchWritesNothing() throws Exception {
+    Account account = new Account("user", "tenant");
+    ClusterTask task = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                       ClusterAction.CLUSTER_CREATE, "test", account);
+    // the tenant id is too long for the tasks table, so the insert fails after the first task was inserted
+    ClusterTask badTask = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-2"), "node1", "service",
+                                          ClusterAction.CLUSTER_CREATE, "test",
+                                          new Account("user", Strings.repeat("t", 100)));
+    try {
+      systemView.writeClusterTasks(ImmutableList.of(task, badTask));
+      Assert.fail();
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertNull(systemView.getClusterTask(TaskId.fromString("1-1-1")));
+
+    // the node id is too long for the nodes table
+    Node node = Entities.ClusterExample.NODE1;
+    Node badNode = new Node(Strings.repeat("n", 100), node.getClusterId(), ImmutableSet.<Service>of(),
+                            NodeProperties.builder().build());
+    try {
+      systemView.writeNodes(ImmutableList.of(node, badNode));
+      Assert.fail();
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertNull(systemView.getNode(node.getId()));
+  }
+
+  @Test
+  public void testDatabaseFailureRollsBackTransaction() throws Exception {
+    final ClusterTask task = new ClusterTask(ProvisionerAction.CREATE, TaskId.fromString("1-1-1"), "node1", "service",
+                                             ClusterAction.CLUSTER_CREATE, "test", new Account("user", "tenant"));
+    final ClusterJob job = new ClusterJob(new JobId("1", 1), ClusterAction.CLUSTER_CREATE);
+    final Node badNode = new Node(Strings.repeat("n", 100), "1", ImmutableSet.<Service>of(),
+                                  NodeProperties.builder().build());
+    try {
+      systemView.inTransaction(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          systemView.writeClusterJob(job);
+          systemView.writeClusterTask(task);
+          systemView.writeNode(badNode);
+          return null;
+        }
+      });
+      Assert.fail();
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertNull(systemView.getClusterJob(new JobId("1", 1)));
+    Assert.assertNull(systemView.getClusterTask(TaskId.fromString("1-1-1")));
+
+    // the store is still usable after the failed transaction
+    systemView.writeClusterTask(task);
+    Assert.assertEquals(task, systemView.getClusterTask(TaskId.fromString("1-1-1")));
+  }
+
   @AfterClass
   public static void afterClass() {
     DBHelper.dropDerbyDB();
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.credential;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.management.CredentialCacheStats;
+import co.cask.coopr.management.ServerStats;
+import co.cask.coopr.management.guice.ManagementModule;
+import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the credential store tests with the credential cache enabled, and tests that cached fields are used until
+ * they change, are wiped, or expire.
+ */
+public class CachingSQLCredentialStoreTest extends CredentialStoreTest {
+  private static final Map<String, Object> FIELDS = ImmutableMap.<String, Object>of("key", "secret", "flag", true);
+  private static SQLCredentialStore store;
+  private static CredentialCache credentialCache;
+  private static CredentialCacheStats stats;
+
+  @BeforeClass
+  public static void setupClass() {
+    Configuration conf = BaseTest.createTestConf();
+    conf.setBoolean(Constants.CredentialStore.CACHE_ENABLED, true);
+    Injector injector = Guice.createInjector(
+      new ConfigurationModule(conf),
+      new TestStoreModule(),
+      new ManagementModule()
+    );
+    store = injector.getInstance(SQLCredentialStore.class);
+    store.startAndWait();
+    credentialCache = injector.getInstance(CredentialCache.class);
+    stats = injector.getInstance(ServerStats.class).getCredentialCacheStats();
+  }
+
+  @Override
+  protected CredentialStore getRunningStore() {
+    return store;
+  }
+
+  @Override
+  protected void wipeStore() throws Exception {
+    store.wipe();
+  }
+
+  @Test
+  public void testCachedFieldsAreUsedUntilChanged() throws Exception {
+    store.set("tenant", "cluster", FIELDS);
+    long hits = stats.getHits();
+    long misses = stats.getMisses();
+    Assert.assertEquals(FIELDS, store.get("tenant", "cluster"));
+    Assert.assertEquals(misses + 1, stats.getMisses());
+    Assert.assertEquals(FIELDS, store.get("tenant", "cluster"));
+    Assert.assertEquals(FIELDS, store.get("tenant", "cluster"));
+    Assert.assertEquals(hits + 2, stats.getHits());
+
+    // callers get their own copy of the fields
+    store.get("tenant", "cluster").put("key", "changed");
+    Assert.assertEquals(FIELDS, store.get("tenant", "cluster"));
+
+    Map<String, Object> changed = ImmutableMap.<String, Object>of("key", "other secret");
+    store.set("tenant", "cluster", changed);
+    Assert.assertEquals(changed, store.get("tenant", "cluster"));
+
+    // wiping only the cache makes the store read the fields again
+    long wipes = stats.getWipes();
+    misses = stats.getMisses();
+    credentialCache.wipe("tenant", "cluster");
+    Assert.assertEquals(wipes + 1, stats.getWipes());
+    Assert.assertEquals(changed, store.get("tenant", "cluster"));
+    Assert.assertEquals(misses + 1, stats.getMisses());
+  }
+
+  @Test
+  public void testExpiredFieldsAreWiped() throws Exception {
+    CredentialCacheStats cacheStats = new CredentialCacheStats();
+    CredentialCache cache = new CredentialCache(true, 10, 1, cacheStats);
+    cache.put("tenant", "cluster", cache.getVersion("tenant", "cluster"), "{\"key\":\"secret\"}");
+    Assert.assertEquals(ImmutableMap.of("key", "secret"), cache.get("tenant", "cluster"));
+
+    // expired fields are removed in the background, without using the cache
+    long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (cacheStats.getEvictions() == 0 && System.currentTimeMillis() < timeout) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+    Assert.assertEquals(1, cacheStats.getEvictions());
+    Assert.assertNull(cache.get("tenant", "cluster"));
+    Assert.assertEquals(0.5, cacheStats.getHitRate(), 0.0001);
+    cache.stop();
+  }
+
+  @Test
+  public void testDisabledCacheKeepsNothing() {
+    CredentialCacheStats cacheStats = new CredentialCacheStats();
+    CredentialCache cache = new CredentialCache(false, 10, 60, cacheStats);
+    cache.put("tenant", "cluster", cache.getVersion("tenant", "cluster"), "{\"key\":\"secret\"}");
+    Assert.assertNull(cache.get("tenant", "cluster"));
+    Assert.assertEquals(0, cacheStats.getHits() + cacheStats.getMisses());
+  }
+
+  @Test
+  public void testFieldsChangedWhileReadAreNotCached() {
+    CredentialCacheStats cacheStats = new CredentialCacheStats();
+    CredentialCache cache = new CredentialCache(true, 10, 60, cacheStats);
+
+    // fields read before they were set
+    long version = cache.getVersion("tenant", "cluster");
+    cache.wipe("tenant", "cluster");
+    cache.put("tenant", "cluster", version, "{\"key\":\"old secret\"}");
+    Assert.assertNull(cache.get("tenant", "cluster"));
+
+    // fields read before all fields were wiped
+    version = cache.getVersion("tenant", "cluster");
+    cache.wipe();
+    cache.put("tenant", "cluster", version, "{\"key\":\"old secret\"}");
+    Assert.assertNull(cache.get("tenant", "cluster"));
+
+    // fields read after they were set
+    version = cache.getVersion("tenant", "cluster");
+    cache.put("tenant", "cluster", version, "{\"key\":\"secret\"}");
+    Assert.assertEquals(ImmutableMap.of("key", "secret"), cache.get("tenant", "cluster"));
+
+    // a change of another cluster does not keep the fields of the cluster
+    cache.wipe("tenant", "other");
+    Assert.assertEquals(ImmutableMap.of("key", "secret"), cache.get("tenant", "cluster"));
+    cache.stop();
+  }
+
+  @Test
+  public void testStopWipesFields() {
+    CredentialCacheStats cacheStats = new CredentialCacheStats();
+    CredentialCache cache = new CredentialCache(true, 10, 60, cacheStats);
+    cache.put("tenant", "cluster", cache.getVersion("tenant", "cluster"), "{\"key\":\"secret\"}");
+    cache.stop();
+    Assert.assertNull(cache.get("tenant", "cluster"));
+    Assert.assertEquals(1, cacheStats.getWipes());
+  }
+}
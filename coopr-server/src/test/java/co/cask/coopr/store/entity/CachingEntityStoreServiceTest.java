@@ -0,0 +1,271 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package co.cask.coopr.store.entity;
+
+import co.cask.coopr.BaseTest;
+import co.cask.coopr.account.Account;
+import co.cask.coopr.codec.json.guice.CodecModules;
+import co.cask.coopr.common.conf.Configuration;
+import co.cask.coopr.common.conf.Constants;
+import co.cask.coopr.common.conf.guice.ConfigurationModule;
+import co.cask.coopr.common.zookeeper.guice.ZookeeperModule;
+import co.cask.coopr.spec.service.Service;
+import co.cask.coopr.store.DBConnectionPool;
+import co.cask.coopr.store.DBHelper;
+import co.cask.coopr.store.guice.TestStoreModule;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.twill.internal.zookeeper.InMemoryZKServer;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the entity store tests against the {@link CachingEntityStoreService}, and tests that cached entities are
+ * read without going to the store and are invalidated on all servers when entities change.
+ */
+public class CachingEntityStoreServiceTest extends EntityStoreServiceTest {
+  private static final Account ADMIN = new Account(Constants.ADMIN_USER, "tenant1");
+  private static final EntityChangeListener NO_LISTENER = new EntityChangeListener() {
+    @Override
+    public void entityChanged(String tenantId, BaseEntityStoreView.EntityType entityType, String entityName) {
+      // no-op
+    }
+
+    @Override
+    public void entitiesChanged(String tenantId) {
+      // no-op
+    }
+  };
+  @ClassRule
+  public static TemporaryFolder tmpFolder = new TemporaryFolder();
+  private static InMemoryZKServer zkServer;
+  private static ZKClientService zkClient;
+  private static Injector injector;
+  private static CachingEntityStoreService cachingStore;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    zkServer = InMemoryZKServer.builder().setDataDir(tmpFolder.newFolder()).setTickTime(1000).build();
+    zkServer.startAndWait();
+    zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+
+    injector = createInjector();
+    cachingStore = injector.getInstance(CachingEntityStoreService.class);
+    cachingStore.startAndWait();
+    entityStoreService = cachingStore;
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    cachingStore.stopAndWait();
+    zkClient.stopAndWait();
+    zkServer.stopAndWait();
+    DBHelper.dropDerbyDB();
+  }
+
+  @Override
+  public void clearState() throws Exception {
+    cachingStore.clearData();
+  }
+
+  @Test
+  public void testCachedReadsSkipStore() throws Exception {
+    CountingEntityStoreView store = new CountingEntityStoreView(injector.getInstance(DBConnectionPool.class),
+                                                                injector.getInstance(Gson.class));
+    EntityCache cache = new EntityCache(zkClient, 100);
+    EntityStoreView view = new CachingEntityStoreView(store, ADMIN, cache, injector.getInstance(Gson.class));
+
+    Assert.assertNull(view.getService("zk"));
+    Assert.assertNull(view.getService("zk"));
+    Assert.assertEquals(1, store.numGets);
+
+    view.writeService(Service.builder().setName("zk").setDescription("v1").build());
+    Assert.assertEquals("v1", view.getService("zk").getDescription());
+    Assert.assertEquals("v1", view.getService("zk").getDescription());
+    Assert.assertEquals("v1", view.getService("zk", 1).getDescription());
+    Assert.assertEquals(3, store.numGets);
+    Assert.assertEquals(1, view.getAllServices().size());
+    Assert.assertEquals(1, view.getAllServices().size());
+    Assert.assertEquals(1, store.numGetAlls);
+
+    // reads return new objects every time
+    Assert.assertNotSame(view.getService("zk"), view.getService("zk"));
+
+    // a write starts a new generation, so the next reads go to the store
+    view.writeService(Service.builder().setName("zk").setDescription("v2").build());
+    Assert.assertEquals("v2", view.getService("zk").getDescription());
+    Assert.assertEquals("v1", view.getService("zk", 1).getDescription());
+    Assert.assertEquals("v2", view.getAllServices().iterator().next().getDescription());
+    Assert.assertEquals(5, store.numGets);
+    Assert.assertEquals(2, store.numGetAlls);
+
+    view.deleteService("zk");
+    Assert.assertNull(view.getService("zk"));
+    Assert.assertTrue(view.getAllServices().isEmpty());
+    Assert.assertEquals(6, store.numGets);
+    Assert.assertEquals(3, store.numGetAlls);
+    cache.stop();
+  }
+
+  @Test
+  public void testFailedGenerationChangeInvalidatesLocalCache() throws Exception {
+    ZKClientService failingClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    failingClient.startAndWait();
+    EntityCache cache = new EntityCache(failingClient, 100);
+    long generation = cache.getGeneration(ADMIN.getTenantId());
+    EntityCache.Key key = new EntityCache.Key(ADMIN.getTenantId(), generation,
+                                              BaseEntityStoreView.EntityType.SERVICE, "zk", 1);
+    cache.putEntity(key, new byte[] { 1 });
+    Assert.assertNotNull(cache.getEntity(key));
+
+    // the entity change is already written, so it must not fail because zookeeper can't be reached
+    failingClient.stopAndWait();
+    cache.nextGeneration(ADMIN.getTenantId());
+    Assert.assertNull(cache.getEntity(key));
+    cache.stop();
+  }
+
+  @Test
+  public void testChangesInvalidateOtherServers() throws Exception {
+    Injector injector2 = createInjector();
+    CachingEntityStoreService cachingStore2 = injector2.getInstance(CachingEntityStoreService.class);
+    cachingStore2.startAndWait();
+    try {
+      EntityStoreView view1 = cachingStore.getView(ADMIN);
+      EntityStoreView view2 = cachingStore2.getView(ADMIN);
+
+      view1.writeService(Service.builder().setName("zk").setDescription("v1").build());
+      Assert.assertEquals("v1", view2.getService("zk").getDescription());
+      Assert.assertEquals(1, view2.getAllServices().size());
+
+      view1.writeService(Service.builder().setName("zk").setDescription("v2").build());
+      view1.writeService(Service.builder().setName("hdfs").setDescription("v1").build());
+      waitForService(view2, "zk", "v2");
+      Assert.assertEquals(2, view2.getAllServices().size());
+
+      view2.deleteService("zk");
+      waitForService(view1, "zk", null);
+      Assert.assertEquals(1, view1.getAllServices().size());
+
+      // other tenants are not affected
+      Assert.assertTrue(cachingStore2.getView(new Account(Constants.ADMIN_USER, "tenant2")).getAllServices().isEmpty());
+    } finally {
+      cachingStore2.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testListenersSeeChangesOfOtherServers() throws Exception {
+    Injector injector2 = createInjector();
+    CachingEntityStoreService cachingStore2 = injector2.getInstance(CachingEntityStoreService.class);
+    cachingStore2.startAndWait();
+    final List<String> changes = new CopyOnWriteArrayList<String>();
+    cachingStore2.addChangeListener(new EntityChangeListener() {
+      @Override
+      public void entityChanged(String tenantId, BaseEntityStoreView.EntityType entityType, String entityName) {
+        changes.add(entityName);
+      }
+
+      @Override
+      public void entitiesChanged(String tenantId) {
+        changes.add(tenantId);
+      }
+    });
+    try {
+      EntityStoreView view1 = cachingStore.getView(ADMIN);
+      EntityStoreView view2 = cachingStore2.getView(ADMIN);
+      Assert.assertTrue(view2.getAllServices().isEmpty());
+
+      // changes of the server itself name the changed entity
+      view2.writeService(Service.builder().setName("zk").setDescription("v1").build());
+      waitForService(view1, "zk", "v1");
+      Assert.assertEquals(ImmutableList.of("zk"), changes);
+
+      // changes of other servers only name the tenant
+      view1.writeService(Service.builder().setName("zk").setDescription("v2").build());
+      long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (changes.size() < 2 && System.currentTimeMillis() < timeout) {
+        TimeUnit.MILLISECONDS.sleep(10);
+      }
+      Assert.assertEquals(ImmutableList.of("zk", ADMIN.getTenantId()), changes);
+    } finally {
+      cachingStore2.stopAndWait();
+    }
+  }
+
+  private static void waitForService(EntityStoreView view, String name, String description) throws Exception {
+    long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (System.currentTimeMillis() < timeout) {
+      Service service = view.getService(name);
+      String serviceDescription = service == null ? null : service.getDescription();
+      if (description == null ? serviceDescription == null : description.equals(serviceDescription)) {
+        return;
+      }
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    Assert.fail("Timed out waiting for service " + name + " to change.");
+  }
+
+  private static Injector createInjector() throws Exception {
+    Configuration conf = BaseTest.createTestConf();
+    return Guice.createInjector(
+      new ConfigurationModule(conf),
+      new ZookeeperModule(zkClient),
+      new TestStoreModule(),
+      new CodecModules().getModule()
+    );
+  }
+
+  /**
+   * Store view that counts how often entities are read.
+   */
+  private static final class CountingEntityStoreView extends SQLAdminEntityStoreView {
+    private int numGets;
+    private int numGetAlls;
+
+    private CountingEntityStoreView(DBConnectionPool dbConnectionPool, Gson gson) {
+      super(ADMIN, dbConnectionPool, gson, NO_LISTENER);
+    }
+
+    @Override
+    protected byte[] getEntity(EntityType entityType, String entityName, int entityVersion) throws IOException {
+      numGets++;
+      return super.getEntity(entityType, entityName, entityVersion);
+    }
+
+    @Override
+    protected <T> Collection<T> getAllLatestEntities(EntityType entityType,
+                                                     Function<byte[], T> transform) throws IOException {
+      numGetAlls++;
+      return super.getAllLatestEntities(entityType, transform);
+    }
+  }
+}
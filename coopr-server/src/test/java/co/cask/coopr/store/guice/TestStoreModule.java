@@ -2,6 +2,8 @@ package co.cask.coopr.store.guice;
 
 import co.cask.coopr.store.credential.CredentialStore;
 import co.cask.coopr.store.credential.InProcessCredentialStore;
+import co.cask.coopr.store.entity.EntityStoreService;
+import co.cask.coopr.store.entity.SQLEntityStoreService;
 import co.cask.coopr.store.provisioner.MemoryPluginStore;
 import co.cask.coopr.store.provisioner.PluginStore;
 import com.google.inject.Scopes;
@@ -11,6 +13,12 @@ import com.google.inject.Scopes;
  */
 public class TestStoreModule extends AbstractStoreModule {
 
+  // store tests run without zookeeper, which the caching entity store needs
+  @Override
+  void bindEntityStore() {
+    bind(EntityStoreService.class).to(SQLEntityStoreService.class).in(Scopes.SINGLETON);
+  }
+
   @Override
   void bindPluginStore() {
     bind(PluginStore.class).to(MemoryPluginStore.class).in(Scopes.SINGLETON);
@@ -77,4 +77,22 @@ public abstract class TenantStoreTest {
     store.writeTenant(tenant);
     Assert.assertEquals(tenant, store.getTenantByID(tenant.getId()));
   }
+
+  @Test
+  public void testCachedTenantSeesChanges() throws IOException {
+    String name = "cached";
+    Assert.assertNull(store.getCachedTenantByName(name));
+
+    Tenant tenant = new Tenant(UUID.randomUUID().toString(), new TenantSpecification(name, 10, 100, 1000));
+    store.writeTenant(tenant);
+    Assert.assertEquals(tenant, store.getCachedTenantByName(name));
+    Assert.assertEquals(tenant, store.getCachedTenantByName(name));
+
+    tenant = new Tenant(tenant.getId(), new TenantSpecification(name, 10, 100, 500));
+    store.writeTenant(tenant);
+    Assert.assertEquals(tenant, store.getCachedTenantByName(name));
+
+    store.deleteTenantByName(name);
+    Assert.assertNull(store.getCachedTenantByName(name));
+  }
 }